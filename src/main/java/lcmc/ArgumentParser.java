@@ -109,6 +109,8 @@ public class ArgumentParser {
     /** The --cmd-log. /var/log/lcmc.log on the servers. */
     private static final String CMD_LOG_OP = "cmd-log";
     private static final String CHECK_SWING_OP = "check-swing";
+    private static final String COMPRESS_HELPER_OUTPUT_OP = "compress-helper-output";
+    private static final String DOM_CIB_PARSER_OP = "dom-cib-parser";
     public static final String SKIP_NET_INTERFACE_OP = "skip-net-interface";
     private final UserConfig userConfig;
     private final RoboTest roboTest;
@@ -181,6 +183,10 @@ public class ArgumentParser {
         options.addOption(null, NO_EMBED_OP, false, "don't embed applet in the browser");
         options.addOption(null, CMD_LOG_OP, false, "Log executed commands to the lcmc.log on the servers");
         options.addOption(null, CHECK_SWING_OP, false, "ADVANCED USE: for testing");
+        options.addOption(null, COMPRESS_HELPER_OUTPUT_OP, false,
+                          "compress the big outputs of the lcmc-gui-helper, if the hosts support it");
+        options.addOption(null, DOM_CIB_PARSER_OP, false,
+                          "ADVANCED USE: parse the cib with the old DOM parser, to validate the stream parser");
         options.addOption(null, SKIP_NET_INTERFACE_OP, true, "Skip net interface in corosync config");
         final CommandLineParser parser = new PosixParser();
         String autoArgs = null;
@@ -244,6 +250,12 @@ public class ArgumentParser {
             if (cmd.hasOption(CHECK_SWING_OP)) {
                 swingUtils.setCheckSwing(true);
             }
+            if (cmd.hasOption(COMPRESS_HELPER_OUTPUT_OP)) {
+                application.setCompressHelperOutput(true);
+            }
+            if (cmd.hasOption(DOM_CIB_PARSER_OP)) {
+                application.setDomCibParser(true);
+            }
             final String pwd = System.getProperty("user.home");
             final String scaleOp = cmd.getOptionValue(SCALE_OP, "100");
             try {
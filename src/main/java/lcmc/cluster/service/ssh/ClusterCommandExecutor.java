@@ -0,0 +1,152 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Runs a command or a task on more hosts at the same time and waits for
+ * all of them, but not longer than the deadline.
+ */
+@Named
+@Singleton
+public class ClusterCommandExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterCommandExecutor.class);
+    /** Deadline, that means to wait until the task finishes on all hosts. */
+    public static final long NO_DEADLINE = 0;
+
+    @Inject
+    private ExecutionService executionService;
+
+    /**
+     * Runs the command from the template on all hosts and returns the
+     * outputs. The hosts, where the command exited with an error, are
+     * reported as failed, but their output is in the results too.
+     */
+    public ClusterCommandResult<SshOutput> captureCommand(final Collection<Host> hosts,
+                                                          final CommandTemplate template,
+                                                          final long deadlineMillis) {
+        return run(hosts, new HostTask<SshOutput>() {
+            @Override
+            public SshOutput run(final Host host) {
+                return host.captureCommand(template.forHost(host));
+            }
+        }, new Function<SshOutput, String>() {
+            @Override
+            public String apply(final SshOutput sshOutput) {
+                if (sshOutput.isSuccess()) {
+                    return null;
+                }
+                return "exit code " + sshOutput.getExitCode() + ": " + sshOutput.getOutput().trim();
+            }
+        }, deadlineMillis);
+    }
+
+    /**
+     * Runs the task on all hosts at the same time. Exceptions of the task
+     * are reported as failures of the host.
+     */
+    public <T> ClusterCommandResult<T> runOnHosts(final Collection<Host> hosts,
+                                                  final HostTask<T> task,
+                                                  final long deadlineMillis) {
+        return run(hosts, task, new Function<T, String>() {
+            @Override
+            public String apply(final T result) {
+                return null;
+            }
+        }, deadlineMillis);
+    }
+
+    /** The failure check returns the failure message for a result or null. */
+    private <T> ClusterCommandResult<T> run(final Collection<Host> hosts,
+                                            final HostTask<T> task,
+                                            final Function<T, String> failureCheck,
+                                            final long deadlineMillis) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        final Map<Host, CompletableFuture<T>> futures = new LinkedHashMap<Host, CompletableFuture<T>>();
+        for (final Host host : hosts) {
+            futures.put(host, CompletableFuture.supplyAsync(new Supplier<T>() {
+                @Override
+                public T get() {
+                    return task.run(host);
+                }
+            }, executionService));
+        }
+
+        final Map<Host, T> results = new LinkedHashMap<Host, T>();
+        final Map<Host, String> failures = new LinkedHashMap<Host, String>();
+        for (final Map.Entry<Host, CompletableFuture<T>> entry : futures.entrySet()) {
+            final Host host = entry.getKey();
+            try {
+                final T result;
+                if (deadlineMillis == NO_DEADLINE) {
+                    result = entry.getValue().get();
+                } else {
+                    final long remaining = Math.max(0, deadline - System.nanoTime());
+                    result = entry.getValue().get(remaining, TimeUnit.NANOSECONDS);
+                }
+                results.put(host, result);
+                final String failure = failureCheck.apply(result);
+                if (failure != null) {
+                    failures.put(host, failure);
+                }
+            } catch (final ExecutionException e) {
+                failures.put(host, String.valueOf(e.getCause().getMessage()));
+            } catch (final TimeoutException e) {
+                failures.put(host, "no result in " + deadlineMillis + " ms");
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(host, "interrupted");
+            }
+        }
+        if (!failures.isEmpty()) {
+            LOG.debug1("run: failed on " + failures.size() + " of " + futures.size() + " hosts");
+        }
+        return new ClusterCommandResult<T>(results, failures);
+    }
+
+    /** Task, that runs on one host. */
+    public interface HostTask<T> {
+        T run(Host host);
+    }
+
+    /** Creates the command for one host. */
+    public interface CommandTemplate {
+        ExecCommandConfig forHost(Host host);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import lcmc.host.domain.Host;
+
+/**
+ * Results of a task, that ran on more hosts. The hosts, where the task
+ * failed or didn't finish before the deadline, have a failure message.
+ */
+public final class ClusterCommandResult<T> {
+    private final Map<Host, T> results;
+    private final Map<Host, String> failures;
+
+    ClusterCommandResult(final Map<Host, T> results, final Map<Host, String> failures) {
+        this.results = Collections.unmodifiableMap(new LinkedHashMap<Host, T>(results));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<Host, String>(failures));
+    }
+
+    /** Returns true if the task succeeded on all hosts. */
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    /** Returns result for the host or null if the task didn't finish there or threw an exception. */
+    public T getResult(final Host host) {
+        return results.get(host);
+    }
+
+    /** Returns results of the hosts, where the task returned, in the order of the hosts. */
+    public Map<Host, T> getResults() {
+        return results;
+    }
+
+    public Set<Host> getFailedHosts() {
+        return failures.keySet();
+    }
+
+    public String getFailure(final Host host) {
+        return failures.get(host);
+    }
+
+    /** Returns one line per failed host. */
+    public String getFailureSummary() {
+        final StringBuilder summary = new StringBuilder();
+        for (final Map.Entry<Host, String> failure : failures.entrySet()) {
+            summary.append(failure.getKey().getName()).append(": ").append(failure.getValue()).append('\n');
+        }
+        return summary.toString();
+    }
+}
@@ -30,6 +30,7 @@ import lcmc.cluster.ui.SSHGui;
 import lcmc.common.domain.ConnectionCallback;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
+import lcmc.common.domain.util.ExecutionService;
 import lcmc.common.domain.util.Tools;
 
 import javax.inject.Inject;
@@ -48,6 +49,8 @@ public class ConnectionThread extends Thread {
     private Authentication authentication;
 
     private volatile SshConnection sshConnection = null;
+    private volatile SessionPool sessionPool = null;
+    private volatile SshKeepalive keepalive = null;
 
     private volatile boolean connectionFailed;
     private volatile boolean connectionEstablished = false;
@@ -57,6 +60,8 @@ public class ConnectionThread extends Thread {
     private SwingUtils swingUtils;
     @Inject
     private Provider<PopupHostKeyVerifier> popupHostKeyVerifierProvider;
+    @Inject
+    private ExecutionService executionService;
 
     void init(final Host host,
               final SSHGui sshGui,
@@ -98,6 +103,14 @@ public class ConnectionThread extends Thread {
 
     public void closeConnection() {
         connectionEstablished = false;
+        final SshKeepalive oldKeepalive = keepalive;
+        if (oldKeepalive != null) {
+            oldKeepalive.stop();
+        }
+        final SessionPool pool = sessionPool;
+        if (pool != null) {
+            pool.close();
+        }
     }
 
     public boolean isConnectionEstablished() {
@@ -127,6 +140,33 @@ public class ConnectionThread extends Thread {
         return sshConnection;
     }
 
+    /** Returns sessions of the established connection. */
+    public SessionPool getSessionPool() throws IOException {
+        final SessionPool pool = sessionPool;
+        if (!connectionEstablished || pool == null) {
+            throw new IOException("getSessionPool: connection closed");
+        }
+        return pool;
+    }
+
+    /** Returns session pool statistics or null if there was no connection. */
+    public String getSessionPoolStatistics() {
+        final SessionPool pool = sessionPool;
+        if (pool == null) {
+            return null;
+        }
+        return pool.getStatistics();
+    }
+
+    /** Returns the round-trip time of the last keepalive in milliseconds or -1, if it's not known. */
+    public long getRoundTripTime() {
+        final SshKeepalive currentKeepalive = keepalive;
+        if (!connectionEstablished || currentKeepalive == null) {
+            return SshKeepalive.NO_RTT;
+        }
+        return currentKeepalive.getRttMillis();
+    }
+
     public boolean isDisconnectedForGood() {
         return sshConnection != null && sshConnection.isDisconnectedForGood();
     }
@@ -191,7 +231,31 @@ public class ConnectionThread extends Thread {
 
     private void authenticationOk(final SshConnection newSshConnection) {
         sshConnection = newSshConnection;
+        sessionPool = new SessionPool(host.getName(),
+                                      SessionPool.sessionOpener(newSshConnection),
+                                      executionService,
+                                      Tools.getDefaultInt("SSH.MaxSessions"),
+                                      Tools.getDefaultInt("SSH.SessionWait"));
         connectionEstablished = true;
+        keepalive = new SshKeepalive(host.getName(),
+                                     SshKeepalive.connectionBeat(newSshConnection),
+                                     executionService,
+                                     Tools.getDefaultInt("SSH.KeepaliveInterval"),
+                                     Tools.getDefaultInt("SSH.KeepaliveMissedBeats"),
+                                     new Runnable() {
+                                         @Override
+                                         public void run() {
+                                             host.getSSH().forceReconnect();
+                                             host.setConnected();
+                                         }
+                                     },
+                                     new Runnable() {
+                                         @Override
+                                         public void run() {
+                                             host.roundTripTimeChanged();
+                                         }
+                                     });
+        keepalive.start();
         host.setConnected();
         swingUtils.invokeLater(new Runnable() {
             @Override
@@ -199,7 +263,7 @@ public class ConnectionThread extends Thread {
                 host.getTerminalPanel().nextCommand();
             }
         });
-        final Thread thread = new Thread(new Runnable() {
+        executionService.execute(new Runnable() {
             @Override
             public void run() {
                 if (connectionCallback != null) {
@@ -207,7 +271,6 @@ public class ConnectionThread extends Thread {
                 }
             }
         });
-        thread.start();
         LOG.debug1("authenticate: " + host.getName() + ": authentication ok");
     }
 }
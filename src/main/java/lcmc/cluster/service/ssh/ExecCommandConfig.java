@@ -30,6 +30,7 @@ import lcmc.common.domain.ExecCallback;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 import lcmc.common.domain.NewOutputCallback;
+import lcmc.common.domain.util.ExecutionService;
 import lcmc.common.domain.util.Tools;
 
 public class ExecCommandConfig {
@@ -123,16 +124,21 @@ public class ExecCommandConfig {
         return this;
     }
 
-    public ExecCommandThread execute(final MainPanel mainPanel, final ProgressIndicator progressIndicator) {
+    public ExecCommandThread execute(final MainPanel mainPanel,
+                                     final ProgressIndicator progressIndicator,
+                                     final ExecutionService executionService) {
         if (isOutputVisible()) {
             mainPanel.setTerminalPanel(host.getTerminalPanel());
         }
-        final ExecCommandThread execCommandThread = new ExecCommandThread(mainPanel, progressIndicator, this);
+        final ExecCommandThread execCommandThread =
+                                    new ExecCommandThread(mainPanel, progressIndicator, executionService, this);
         execCommandThread.start();
         return execCommandThread;
     }
 
-    public SshOutput capture(final MainPanel mainPanel, final ProgressIndicator progressIndicator) {
+    public SshOutput capture(final MainPanel mainPanel,
+                             final ProgressIndicator progressIndicator,
+                             final ExecutionService executionService) {
         final StringBuilder output = new StringBuilder("");
         final Integer[] exitCodeHolder = new Integer[]{0};
         if (execCallback == null) {
@@ -153,7 +159,7 @@ public class ExecCommandConfig {
                 }
             };
         }
-        final ExecCommandThread execCommandThread = execute(mainPanel, progressIndicator);
+        final ExecCommandThread execCommandThread = execute(mainPanel, progressIndicator, executionService);
         execCommandThread.block();
         return new SshOutput(output.toString(), exitCodeHolder[0]);
     }
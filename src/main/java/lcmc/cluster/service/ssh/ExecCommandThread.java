@@ -21,10 +21,16 @@
 package lcmc.cluster.service.ssh;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
 import com.trilead.ssh2.ChannelCondition;
 import com.trilead.ssh2.Session;
@@ -38,11 +44,12 @@ import lcmc.common.domain.ExecCallback;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 import lcmc.common.domain.NewOutputCallback;
+import lcmc.common.domain.util.ExecutionService;
 import lcmc.common.domain.util.Tools;
 import lombok.SneakyThrows;
 
-/** This class is a thread that executes commands. */
-public final class ExecCommandThread extends Thread {
+/** This class is a task that executes commands in the execution service. */
+public final class ExecCommandThread implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(ExecCommandThread.class);
 
     private final Host host;
@@ -55,22 +62,26 @@ public final class ExecCommandThread extends Thread {
     private final boolean commandVisible;
     private final MainPanel mainPanel;
     private final ProgressIndicator progressIndicator;
+    private final ExecutionService executionService;
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
 
     private volatile boolean cancelIt = false;
     private final Lock mSessionLock = new ReentrantLock();
-    private Session sess = null;
+    private SessionPool.PooledSession sess = null;
     private final int sshCommandTimeout;
 
     private static final int ERROR_EXIT_CODE = 255;
     private static final int EXEC_OUTPUT_BUFFER_SIZE = 8192;
     private static final int DEFAULT_EXIT_CODE = 100;
-    private static final String ENCODING = "UTF-8";
+    private static final Charset ENCODING = StandardCharsets.UTF_8;
 
     ExecCommandThread(final MainPanel mainPanel,
                       final ProgressIndicator progressIndicator,
+                      final ExecutionService executionService,
                       final ExecCommandConfig execCommandConfig) {
         this.mainPanel = mainPanel;
         this.progressIndicator = progressIndicator;
+        this.executionService = executionService;
 
         this.host = execCommandConfig.getHost();
         this.connectionThread = execCommandConfig.getConnectionThread();
@@ -102,25 +113,52 @@ public final class ExecCommandThread extends Thread {
      */
     @Override
     public void run() {
-        if (!connectionThread.isConnectionEstablished()) {
-            if (execCallback != null) {
-                execCallback.doneError("not connected", 139);
+        try {
+            if (!connectionThread.isConnectionEstablished()) {
+                if (execCallback != null) {
+                    execCallback.doneError("not connected", 139);
+                }
+            } else {
+                if (commandVisible || outputVisible) {
+                    mainPanel.expandTerminalSplitPane(MainPanel.TerminalSize.EXPAND);
+                }
+                exec();
+                if (commandVisible || outputVisible) {
+                    mainPanel.expandTerminalSplitPane(MainPanel.TerminalSize.COLLAPSE);
+                }
             }
+        } finally {
+            finishedLatch.countDown();
+        }
+    }
+
+    /** Starts the command in the execution service. */
+    void start() {
+        executionService.execute(this);
+    }
+
+    /** Waits for the command to finish. */
+    public void join() throws InterruptedException {
+        finishedLatch.await();
+    }
+
+    /** Waits for the command to finish, but not longer than millis, 0 means forever. */
+    public void join(final long millis) throws InterruptedException {
+        if (millis == 0) {
+            join();
         } else {
-            if (commandVisible || outputVisible) {
-                mainPanel.expandTerminalSplitPane(MainPanel.TerminalSize.EXPAND);
-            }
-            exec();
-            if (commandVisible || outputVisible) {
-                mainPanel.expandTerminalSplitPane(MainPanel.TerminalSize.COLLAPSE);
-            }
+            finishedLatch.await(millis, TimeUnit.MILLISECONDS);
         }
     }
 
+    public boolean isAlive() {
+        return finishedLatch.getCount() > 0;
+    }
+
     public void cancelTheSession() {
         cancelIt = true;
         mSessionLock.lock();
-        final Session thisSession;
+        final SessionPool.PooledSession thisSession;
         try {
             thisSession = sess;
             sess = null;
@@ -133,7 +171,8 @@ public final class ExecCommandThread extends Thread {
     }
 
     static private class ConnectionTimeout {
-        private boolean timeout = false;
+        private volatile boolean timeout = false;
+        private volatile ScheduledFuture<?> timeoutFuture = null;
 
         private void setTimeout() {
             timeout = true;
@@ -142,11 +181,18 @@ public final class ExecCommandThread extends Thread {
         private boolean wasTimeout() {
             return timeout;
         }
+
+        private void cancel() {
+            final ScheduledFuture<?> f = timeoutFuture;
+            if (f != null) {
+                f.cancel(false);
+            }
+        }
     }
 
     public ExecCommandThread block() {
         try {
-            join();
+            finishedLatch.await();
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -165,6 +211,8 @@ public final class ExecCommandThread extends Thread {
             } catch (final IOException e) {
                 handleSshSessionFailure();
                 break;
+            } finally {
+                connectionTimeout.cancel();
             }
             final String cmd = command1.trim();
             writeCommandToTerminal(cmd);
@@ -210,7 +258,7 @@ public final class ExecCommandThread extends Thread {
             throws IOException {
         /* it may hang here if we lost connection, so it will be
          * interrupted after a timeout. */
-        final Session newSession = connectionThread.getConnection().openSession();
+        final SessionPool.PooledSession newSession = connectionThread.getSessionPool().acquire();
         mSessionLock.lock();
         try {
             sess = newSession;
@@ -225,10 +273,9 @@ public final class ExecCommandThread extends Thread {
 
     private ConnectionTimeout setupConnectionTimeout() {
         final ConnectionTimeout connectionTimeout = new ConnectionTimeout();
-        final Thread thread = new Thread(new Runnable() {
+        connectionTimeout.timeoutFuture = executionService.schedule(new Runnable() {
             @Override
             public void run() {
-                Tools.sleep(Tools.getDefaultInt("SSH.ConnectTimeout"));
                 if (!connectionTimeout.wasTimeout()) {
                     LOG.debug1("run: " + host.getName() + ": open ssh session: timeout");
                     connectionTimeout.setTimeout();
@@ -242,11 +289,18 @@ public final class ExecCommandThread extends Thread {
                     }
                 }
             }
-        });
-        thread.start();
+        }, Tools.getDefaultInt("SSH.ConnectTimeout"));
         return connectionTimeout;
     }
 
+    /** Returns the command, how it is executed on the remote host. */
+    static String remoteCommand(final Host host, final String oneCommand) {
+        return "bash -c '"
+               + Tools.escapeSingleQuotes("export LC_ALL=C;"
+                                          + host.getSudoCommand(host.getHoppedCommand(oneCommand), false), 1)
+               + '\'';
+    }
+
     @SneakyThrows
     private SshOutput execOneCommand(final String oneCommand) {
         if (sshCommandTimeout > 0 && sshCommandTimeout < 2000) {
@@ -260,29 +314,22 @@ public final class ExecCommandThread extends Thread {
         String outputString = "";
         try {
             mSessionLock.lock();
-            final Session thisSession;
+            final SessionPool.PooledSession pooledSession;
             try {
-                thisSession = sess;
+                pooledSession = sess;
             } finally {
                 mSessionLock.unlock();
             }
-            if (thisSession == null) {
+            if (pooledSession == null) {
                 return new SshOutput("", 130);
             }
-            /* requestPTY mixes stdout and strerr together, but it works
-            better at the moment.
-            With pty, the sudo wouldn't work, because we don't want
-            to enter sudo password by every command.
-            (It would be exposed) */
-            thisSession.requestPTY("dumb", 0, 0, 0, 0, null);
+            /* the pty was already requested by the session pool */
+            final Session thisSession = pooledSession.getSession();
             LOG.debug2("execOneCommand: command: "
                        + host.getName()
                        + ": "
                        + host.getSudoCommand(host.getHoppedCommand(oneCommand), true));
-            thisSession.execCommand("bash -c '"
-                                    + Tools.escapeSingleQuotes("export LC_ALL=C;"
-                                                               + host.getSudoCommand(host.getHoppedCommand(oneCommand),
-                                                                                     false), 1) + '\'');
+            thisSession.execCommand(remoteCommand(host, oneCommand));
             outputString = execCommandAndCaptureOutput(oneCommand, thisSession);
             if (cancelIt) {
                 return new SshOutput("", 130);
@@ -295,7 +342,7 @@ public final class ExecCommandThread extends Thread {
             if (ec != null) {
                 exitCode = ec;
             }
-            thisSession.close();
+            pooledSession.close();
             sess = null;
         } catch (final IOException e) {
             LOG.appWarning("execOneCommand: " + host.getName() + ':' + e.getMessage() + ':' + oneCommand);
@@ -308,15 +355,22 @@ public final class ExecCommandThread extends Thread {
 
     @SneakyThrows
     private String execCommandAndCaptureOutput(final String oneCommand, final Session thisSession) throws IOException {
-        final InputStream stdout = thisSession.getStdout();
         final OutputStream stdin = thisSession.getStdin();
-        final InputStream stderr = thisSession.getStderr();
-        final byte[] buff = new byte[EXEC_OUTPUT_BUFFER_SIZE];
+        final BooleanSupplier canceled = new BooleanSupplier() {
+            @Override
+            public boolean getAsBoolean() {
+                return cancelIt;
+            }
+        };
+        final SshOutputReader stdout =
+                  new SshOutputReader(thisSession.getStdout(), ENCODING, EXEC_OUTPUT_BUFFER_SIZE, canceled);
+        final SshOutputReader stderr =
+                  new SshOutputReader(thisSession.getStderr(), ENCODING, EXEC_OUTPUT_BUFFER_SIZE, canceled);
         boolean skipNextLine = false;
         final StringBuilder res = new StringBuilder("");
         while (true) {
             final String sudoPwd = host.getSudoPassword();
-            if ((stdout.available() == 0) && (stderr.available() == 0)) {
+            if ((thisSession.getStdout().available() == 0) && (thisSession.getStderr().available() == 0)) {
                 /* Even though currently there is no data available,
                  * it may be that new data arrives and the session's
                  * underlying channel is closed before we call
@@ -354,38 +408,37 @@ public final class ExecCommandThread extends Thread {
                 /* OK, either STDOUT_DATA or STDERR_DATA (or both) */
                 /* ... is set. */
             }
-            final StringBuilder output = readStdout(stdout, buff);
-            if (output.indexOf(Ssh.SUDO_PROMPT) >= 0) {
+            final CharBuffer output = readStdout(stdout);
+            if (SshOutputReader.indexOf(output, Ssh.SUDO_PROMPT) >= 0) {
                 if (sudoPwd == null) {
                     enterSudoPassword();
                 }
                 final String pwd = host.getSudoPassword() + '\n';
-                stdin.write(pwd.getBytes("UTF-8"));
+                stdin.write(pwd.getBytes(ENCODING));
                 skipNextLine = true;
                 continue;
-            } else if (output.indexOf(Ssh.SUDO_FAIL) >= 0) {
+            } else if (SshOutputReader.indexOf(output, Ssh.SUDO_FAIL) >= 0) {
                 host.setSudoPassword(null);
             } else {
                 if (skipNextLine) {
                     /* this is the "enter" after pwd */
                     skipNextLine = false;
-                    if (output.charAt(0) == 13 && output.charAt(1) == 10) {
-                        output.delete(0, 2);
+                    if (output.length() >= 2 && output.charAt(0) == 13 && output.charAt(1) == 10) {
+                        output.position(output.position() + 2);
                         if (output.length() == 0) {
                             continue;
                         }
                     }
                 }
             }
-            final StringBuilder errOutput = readStderr(stderr, buff);
-            res.append(errOutput);
+            res.append(readStderr(stderr));
             if (newOutputCallback != null && !cancelIt) {
                 LOG.debug2("execOneCommand: output: "
                            + ": "
                            + host.getName()
                            + ": "
-                           + output.toString());
-                newOutputCallback.output(output.toString());
+                           + output);
+                newOutputCallback.output(output);
             }
             if (cancelIt) {
                 return res.toString();
@@ -394,45 +447,36 @@ public final class ExecCommandThread extends Thread {
                 res.append(output);
             }
         }
+        final CharBuffer rest = stdout.finish();
+        if (rest.length() > 0) {
+            if (newOutputCallback == null) {
+                res.append(rest);
+            } else {
+                newOutputCallback.output(rest);
+            }
+        }
         return res.toString();
     }
 
-    /** If you below replace "while" with "if", then the way
-     * the output appears on the local stdout and stder streams
-     * is more "balanced". Addtionally reducing the buffer size
-     * will also improve the interleaving, but performance will
-     * slightly suffer. OKOK, that all matters only if you get
-     * HUGE amounts of stdout and stderr data =)
+    /**
+     * Returns the decoded output, that is available. The buffer is reused
+     * by the next read.
      */
-    private StringBuilder readStdout(final InputStream stdout, final byte[] buff) throws IOException {
-        final StringBuilder output = new StringBuilder();
-        while (stdout.available() > 0 && !cancelIt) {
-            final int len = stdout.read(buff);
-            if (len > 0) {
-                final String buffString = new String(buff, 0, len, ENCODING);
-                output.append(buffString);
-                if (outputVisible) {
-                    host.getTerminalPanel().addContent(buffString);
-                }
-            }
+    private CharBuffer readStdout(final SshOutputReader stdout) throws IOException {
+        final CharBuffer output = stdout.readAvailable();
+        if (outputVisible && output.length() > 0) {
+            host.getTerminalPanel().addContent(output.toString());
         }
         return output;
     }
 
-    private StringBuilder readStderr(final InputStream stderr, final byte[] buff) throws IOException {
-        final StringBuilder output = new StringBuilder();
-        while (stderr.available() > 0 && !cancelIt) {
-            // this is unreachable.
-            // stdout and stderr are mixed in the stdout
-            // if pty is requested.
-            final int len = stderr.read(buff);
-            if (len > 0) {
-                final String buffString = new String(buff, 0, len, ENCODING);
-                output.append(buffString);
-                if (outputVisible) {
-                    host.getTerminalPanel().addContentErr(buffString);
-                }
-            }
+    private CharBuffer readStderr(final SshOutputReader stderr) throws IOException {
+        // this is mostly unreachable.
+        // stdout and stderr are mixed in the stdout
+        // if pty is requested.
+        final CharBuffer output = stderr.readAvailable();
+        if (outputVisible && output.length() > 0) {
+            host.getTerminalPanel().addContentErr(output.toString());
         }
         return output;
     }
@@ -0,0 +1,278 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.trilead.ssh2.Session;
+
+import lcmc.common.domain.util.Tools;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Client for the gui helper running in the serve mode. The helper stays
+ * running on the host, so that the perl modules are compiled and sudo is
+ * called only once. Every request gets an id and the responses are matched
+ * by this id, so more threads can send requests over the one ssh channel.
+ *
+ * The helper serves the requests one at a time, so a slow action delays the
+ * others. It serves only the queries, that don't change anything, because
+ * an action, that timed out, still runs and the caller may run it again.
+ */
+final class ResidentGuiHelper {
+    private static final Logger LOG = LoggerFactory.getLogger(ResidentGuiHelper.class);
+    static final String SERVE_READY = "--serve-ready--";
+    static final String SERVE_RESPONSE = "--serve-response--";
+    /** Exit code if the response didn't come. */
+    private static final int NO_RESPONSE_EXIT_CODE = 100;
+    /** The same as %SERVED in Main.pl. */
+    private static final Set<String> SERVED_ACTIONS =
+            new HashSet<String>(Arrays.asList("hw-info",
+                                              "hw-info-lvm",
+                                              "get-vm-info",
+                                              "get-drbd-xml",
+                                              "get-drbd-info"));
+
+    private final Host host;
+    private final ConnectionThread connectionThread;
+    private final Executor executor;
+    private final Map<Integer, CompletableFuture<SshOutput>> pendingResponses = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final CountDownLatch readyLatch = new CountDownLatch(1);
+    private final Lock mRequestLock = new ReentrantLock();
+    private SessionPool.PooledSession pooledSession = null;
+    private OutputStream stdin = null;
+    private volatile boolean running = false;
+
+    ResidentGuiHelper(final Host host, final ConnectionThread connectionThread, final Executor executor) {
+        this.host = host;
+        this.connectionThread = connectionThread;
+        this.executor = executor;
+    }
+
+    /** Starts the helper and waits until it is ready. Returns false if it failed. */
+    boolean start() {
+        final String command = new ExecCommandConfig().host(host).commandString("GuiHelperServe").getCommand();
+        try {
+            pooledSession = connectionThread.getSessionPool().acquire();
+            final Session session = pooledSession.getSession();
+            session.execCommand(ExecCommandThread.remoteCommand(host, command));
+            stdin = session.getStdin();
+            final InputStream stdout = session.getStdout();
+            running = true;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    readResponses(stdout);
+                }
+            });
+            if (readyLatch.await(Tools.getDefaultInt("SSH.ConnectTimeout"), TimeUnit.MILLISECONDS) && running) {
+                LOG.debug1("start: " + host.getName() + ": resident gui helper ready");
+                return true;
+            }
+        } catch (final IOException e) {
+            LOG.debug1("start: " + host.getName() + ": " + e.getMessage());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stop();
+        return false;
+    }
+
+    /** Returns whether the action, without its options, can be sent to the helper. */
+    static boolean isServed(final String action) {
+        return SERVED_ACTIONS.contains(action.split(" ", 2)[0]);
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    ConnectionThread getConnectionThread() {
+        return connectionThread;
+    }
+
+    /**
+     * Executes one gui helper action with its options, e.g. "get-vm-info",
+     * and waits for the output. Timeout 0 means no timeout. After a timeout
+     * the helper is stopped, because the requests, that came after, would
+     * wait for the action, that is still running.
+     */
+    SshOutput call(final String action, final int timeout) throws IOException {
+        if (!running) {
+            throw new IOException("call: resident gui helper is not running");
+        }
+        final int requestId = nextRequestId.getAndIncrement();
+        final CompletableFuture<SshOutput> response = new CompletableFuture<>();
+        pendingResponses.put(requestId, response);
+        try {
+            final byte[] request = action.getBytes(StandardCharsets.UTF_8);
+            mRequestLock.lock();
+            try {
+                stdin.write((requestId + " " + request.length + '\n').getBytes(StandardCharsets.UTF_8));
+                stdin.write(request);
+                stdin.flush();
+            } finally {
+                mRequestLock.unlock();
+            }
+            if (timeout > 0) {
+                return response.get(timeout, TimeUnit.MILLISECONDS);
+            }
+            return response.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new SshOutput("", NO_RESPONSE_EXIT_CODE);
+        } catch (final ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (final TimeoutException e) {
+            LOG.debug1("call: " + host.getName() + ": timeout: " + action + ": stopping resident gui helper");
+            stop();
+            throw new IOException("call: timeout: " + action);
+        } finally {
+            pendingResponses.remove(requestId);
+        }
+    }
+
+    void stop() {
+        running = false;
+        if (pooledSession != null) {
+            pooledSession.close();
+        }
+        failPendingResponses();
+    }
+
+    private void readResponses(final InputStream stdout) {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(stdout));
+        try {
+            while (true) {
+                final String line = readLine(in);
+                if (line == null) {
+                    break;
+                }
+                if (line.endsWith(Ssh.SUDO_PROMPT)) {
+                    if (!enterSudoPassword()) {
+                        break;
+                    }
+                } else if (line.startsWith(SERVE_READY)) {
+                    readyLatch.countDown();
+                } else if (line.startsWith(SERVE_RESPONSE)) {
+                    readResponse(in, line);
+                }
+            }
+        } catch (final IOException e) {
+            LOG.debug1("readResponses: " + host.getName() + ": " + e.getMessage());
+        }
+        LOG.debug1("readResponses: " + host.getName() + ": resident gui helper stopped");
+        running = false;
+        readyLatch.countDown();
+        stop();
+    }
+
+    /** Response header is: --serve-response-- id exit-code length. */
+    private void readResponse(final DataInputStream in, final String header) throws IOException {
+        final String[] fields = header.trim().split(" ");
+        if (fields.length != 4) {
+            throw new IOException("readResponse: wrong header: " + header);
+        }
+        final int requestId;
+        final int exitCode;
+        final byte[] output;
+        try {
+            requestId = Integer.parseInt(fields[1]);
+            exitCode = Integer.parseInt(fields[2]);
+            output = new byte[Integer.parseInt(fields[3])];
+        } catch (final NumberFormatException e) {
+            throw new IOException("readResponse: wrong header: " + header);
+        }
+        in.readFully(output);
+        final CompletableFuture<SshOutput> response = pendingResponses.get(requestId);
+        if (response != null) {
+            response.complete(new SshOutput(new String(output, StandardCharsets.UTF_8), exitCode));
+        }
+    }
+
+    /** Returns a line or the sudo prompt, that doesn't end with a new line. */
+    private String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            final int b = in.read();
+            if (b < 0) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                break;
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (b == ' ' && line.toString("UTF-8").endsWith(Ssh.SUDO_PROMPT)) {
+                break;
+            }
+        }
+        return line.toString("UTF-8");
+    }
+
+    private boolean enterSudoPassword() throws IOException {
+        final String sudoPassword = host.getSudoPassword();
+        if (sudoPassword == null) {
+            return false;
+        }
+        mRequestLock.lock();
+        try {
+            stdin.write((sudoPassword + '\n').getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+        } finally {
+            mRequestLock.unlock();
+        }
+        return true;
+    }
+
+    private void failPendingResponses() {
+        for (final CompletableFuture<SshOutput> response : pendingResponses.values()) {
+            response.completeExceptionally(new IOException("resident gui helper stopped"));
+        }
+    }
+}
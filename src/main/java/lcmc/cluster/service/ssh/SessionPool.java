@@ -0,0 +1,315 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.trilead.ssh2.Session;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Sessions of one ssh connection.
+ *
+ * All commands to a host are multiplexed as channels over the one
+ * authenticated connection. An ssh session channel can execute only one
+ * command, so the channels cannot be reused, but one spare session with
+ * the pty already allocated is kept open, so that the next command doesn't
+ * have to wait for the open-channel and pty round trips. The number of
+ * concurrently open sessions is bounded, so that the MaxSessions limit of
+ * the sshd is not hit.
+ */
+public final class SessionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionPool.class);
+
+    private final String hostName;
+    private final SessionOpener sessionOpener;
+    private final Executor executor;
+    private final Semaphore sessionPermits;
+    private final int maxSessions;
+    private final long permitWaitMillis;
+
+    private final Lock mSpareLock = new ReentrantLock();
+    /** Open session waiting for the next command. Holds one permit. */
+    private PooledSession spareSession = null;
+    private boolean spareOpening = false;
+    private volatile boolean closed = false;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong overcommitted = new AtomicLong(0);
+    private final AtomicLong totalWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxWaitNanos = new AtomicLong(0);
+
+    SessionPool(final String hostName,
+                final SessionOpener sessionOpener,
+                final Executor executor,
+                final int maxSessions,
+                final long permitWaitMillis) {
+        this.hostName = hostName;
+        this.sessionOpener = sessionOpener;
+        this.executor = executor;
+        this.maxSessions = maxSessions;
+        this.permitWaitMillis = permitWaitMillis;
+        sessionPermits = new Semaphore(maxSessions, true);
+    }
+
+    /** Returns ssh session factory for the connection. */
+    static SessionOpener sessionOpener(final SshConnection sshConnection) {
+        return new SessionOpener() {
+            @Override
+            public Session open() throws IOException {
+                final Session session = sshConnection.openSession();
+                /* requestPTY mixes stdout and strerr together, but it works
+                better at the moment.
+                With pty, the sudo wouldn't work, because we don't want
+                to enter sudo password by every command.
+                (It would be exposed) */
+                try {
+                    session.requestPTY("dumb", 0, 0, 0, 0, null);
+                } catch (final IOException e) {
+                    session.close();
+                    throw e;
+                }
+                return session;
+            }
+        };
+    }
+
+    /**
+     * Returns a session with pty for one command. The spare session is
+     * used if it is ready, otherwise a new one is opened. It waits for a
+     * free slot, if there are too many sessions open, but not longer than
+     * the permit wait time, so that the long running commands like event
+     * streams cannot block everything else.
+     */
+    PooledSession acquire() throws IOException {
+        if (closed) {
+            throw new IOException("acquire: " + hostName + ": session pool closed");
+        }
+        final long start = System.nanoTime();
+        PooledSession session = takeSpare();
+        if (session != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            final boolean permit = acquirePermit();
+            try {
+                session = new PooledSession(sessionOpener.open(), permit);
+            } catch (final IOException e) {
+                if (permit) {
+                    sessionPermits.release();
+                }
+                throw e;
+            }
+        }
+        recordWait(System.nanoTime() - start);
+        openSpareInBackground();
+        return session;
+    }
+
+    /** Closes the spare session, the running sessions get closed on their own. */
+    void close() {
+        closed = true;
+        final PooledSession spare = takeSpare();
+        if (spare != null) {
+            spare.close();
+        }
+        LOG.debug1("close: " + hostName + ": " + getStatistics());
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Returns ratio of commands that got the spare session. */
+    public double getHitRate() {
+        final long h = hits.get();
+        final long all = h + misses.get();
+        if (all == 0) {
+            return 0;
+        }
+        return (double) h / all;
+    }
+
+    /** Returns average time in milliseconds that commands waited for a session. */
+    public double getAverageWaitMillis() {
+        final long all = hits.get() + misses.get();
+        if (all == 0) {
+            return 0;
+        }
+        return totalWaitNanos.get() / 1000000.0 / all;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000.0;
+    }
+
+    /** Returns how many sessions were opened above the limit. */
+    public long getOvercommitted() {
+        return overcommitted.get();
+    }
+
+    public int getOpenSessions() {
+        return maxSessions - sessionPermits.availablePermits();
+    }
+
+    public String getStatistics() {
+        return String.format("sessions: %d/%d, hits: %d, misses: %d, hit rate: %.0f%%, "
+                             + "wait avg: %.1f ms, max: %.1f ms, overcommitted: %d",
+                             getOpenSessions(),
+                             maxSessions,
+                             hits.get(),
+                             misses.get(),
+                             getHitRate() * 100,
+                             getAverageWaitMillis(),
+                             getMaxWaitMillis(),
+                             overcommitted.get());
+    }
+
+    private boolean acquirePermit() {
+        try {
+            if (sessionPermits.tryAcquire(permitWaitMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        overcommitted.incrementAndGet();
+        LOG.appWarning("acquirePermit: " + hostName + ": more than " + maxSessions + " ssh sessions");
+        return false;
+    }
+
+    private PooledSession takeSpare() {
+        mSpareLock.lock();
+        try {
+            final PooledSession spare = spareSession;
+            spareSession = null;
+            return spare;
+        } finally {
+            mSpareLock.unlock();
+        }
+    }
+
+    private void openSpareInBackground() {
+        mSpareLock.lock();
+        try {
+            if (closed || spareOpening || spareSession != null) {
+                return;
+            }
+            spareOpening = true;
+        } finally {
+            mSpareLock.unlock();
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                openSpare();
+            }
+        });
+    }
+
+    private void openSpare() {
+        PooledSession spare = null;
+        /* the spare doesn't overcommit, it's only opened, if there is room */
+        if (sessionPermits.tryAcquire()) {
+            try {
+                spare = new PooledSession(sessionOpener.open(), true);
+            } catch (final IOException e) {
+                sessionPermits.release();
+                LOG.debug1("openSpare: " + hostName + ": " + e.getMessage());
+            }
+        }
+        boolean discard = false;
+        mSpareLock.lock();
+        try {
+            spareOpening = false;
+            if (spare != null) {
+                if (closed || spareSession != null) {
+                    discard = true;
+                } else {
+                    spareSession = spare;
+                }
+            }
+        } finally {
+            mSpareLock.unlock();
+        }
+        if (discard) {
+            spare.close();
+        }
+    }
+
+    private void recordWait(final long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        while (true) {
+            final long max = maxWaitNanos.get();
+            if (waitNanos <= max || maxWaitNanos.compareAndSet(max, waitNanos)) {
+                return;
+            }
+        }
+    }
+
+    /** Opens a new ssh session. */
+    interface SessionOpener {
+        Session open() throws IOException;
+    }
+
+    /** Session, that gives back its slot to the pool, when it's closed. */
+    final class PooledSession {
+        private final Session session;
+        private final boolean holdsPermit;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private PooledSession(final Session session, final boolean holdsPermit) {
+            this.session = session;
+            this.holdsPermit = holdsPermit;
+        }
+
+        Session getSession() {
+            return session;
+        }
+
+        /** Closes the session. It can be called more than once. */
+        void close() {
+            if (released.compareAndSet(false, true)) {
+                try {
+                    session.close();
+                } finally {
+                    if (holdsPermit) {
+                        sessionPermits.release();
+                    }
+                }
+            }
+        }
+    }
+}
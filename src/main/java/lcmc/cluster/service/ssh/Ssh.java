@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import lcmc.common.domain.util.ExecutionService;
 import lcmc.common.domain.util.GuiHelperFiles;
 import lcmc.common.ui.main.MainData;
 import lcmc.common.ui.MainPanel;
@@ -77,6 +78,10 @@ public class Ssh {
     private final Lock mConnectionLock = new ReentrantLock();
     private final Lock mConnectionThreadLock = new ReentrantLock();
     private LocalPortForwarder localPortForwarder = null;
+    private final Lock mResidentGuiHelperLock = new ReentrantLock();
+    private ResidentGuiHelper residentGuiHelper = null;
+    /** Connection, on which the resident gui helper couldn't be started. */
+    private ConnectionThread residentGuiHelperFailedOn = null;
     @Inject
     private MainData mainData;
     @Inject
@@ -91,6 +96,8 @@ public class Ssh {
     private Provider<Authentication> authenticationProvider;
     @Inject
     private GuiHelperFiles guiHelperFiles;
+    @Inject
+    private ExecutionService executionService;
 
     boolean reconnect() {
         swingUtils.isNotSwingThread();
@@ -298,6 +305,32 @@ public class Ssh {
         return connectionThread.isConnectionFailed();
     }
 
+    /** Returns the round-trip time of the last keepalive in milliseconds or -1. */
+    public long getRoundTripTime() {
+        mConnectionLock.lock();
+        try {
+            if (connectionThread == null) {
+                return -1;
+            }
+            return connectionThread.getRoundTripTime();
+        } finally {
+            mConnectionLock.unlock();
+        }
+    }
+
+    /** Returns hit rate and wait times of the ssh sessions or null. */
+    public String getSessionPoolStatistics() {
+        mConnectionLock.lock();
+        try {
+            if (connectionThread == null) {
+                return null;
+            }
+            return connectionThread.getSessionPoolStatistics();
+        } finally {
+            mConnectionLock.unlock();
+        }
+    }
+
     /**
      * Executes command and returns an exit code.
      * 100 is timeout
@@ -333,7 +366,7 @@ public class Ssh {
                          .connectionThread(connectionThread)
                          .sshGui(sshGui)
                          .execCallback(execCallback)
-                         .execute(mainPanel, progressIndicator).block();
+                         .execute(mainPanel, progressIndicator, executionService).block();
         return new SshOutput(answer[0], exitCode[0]);
     }
 
@@ -347,7 +380,7 @@ public class Ssh {
         return execCommandConfig.host(host)
                                 .connectionThread(connectionThread)
                                 .sshGui(sshGui)
-                                .execute(mainPanel, progressIndicator);
+                                .execute(mainPanel, progressIndicator, executionService);
     }
 
     public SshOutput captureCommand(final ExecCommandConfig execCommandConfig) {
@@ -355,14 +388,110 @@ public class Ssh {
         return execCommandConfig.host(host)
                                 .connectionThread(connectionThread)
                                 .sshGui(sshGui)
-                                .capture(mainPanel, progressIndicator);
+                                .capture(mainPanel, progressIndicator, executionService);
     }
 
-    /** Installs gui-helper on the remote host. */
+    /**
+     * Executes a gui helper action in the resident gui helper, without
+     * starting a new process. If the resident helper is not available, or it
+     * doesn't serve the action, the command from the execCommandConfig is
+     * executed instead. It's executed also, if the resident helper failed or
+     * timed out, because it serves only the actions, that don't change
+     * anything.
+     */
+    public SshOutput captureGuiHelperAction(final String action, final ExecCommandConfig execCommandConfig) {
+        if (!ResidentGuiHelper.isServed(action)) {
+            return captureCommand(execCommandConfig);
+        }
+        final ResidentGuiHelper helper = getResidentGuiHelper();
+        if (helper != null) {
+            try {
+                return helper.call(action, execCommandConfig.getSshCommandTimeout());
+            } catch (final IOException e) {
+                LOG.appWarning("captureGuiHelperAction: " + host.getName() + ": " + action + ": " + e.getMessage());
+            }
+        }
+        return captureCommand(execCommandConfig);
+    }
+
+    private ResidentGuiHelper getResidentGuiHelper() {
+        reconnect();
+        final ConnectionThread ct;
+        mConnectionLock.lock();
+        try {
+            ct = connectionThread;
+        } finally {
+            mConnectionLock.unlock();
+        }
+        if (ct == null || !ct.isConnectionEstablished()) {
+            return null;
+        }
+        mResidentGuiHelperLock.lock();
+        try {
+            if (residentGuiHelper != null) {
+                if (residentGuiHelper.getConnectionThread() == ct && residentGuiHelper.isRunning()) {
+                    return residentGuiHelper;
+                }
+                residentGuiHelper.stop();
+                residentGuiHelper = null;
+            }
+            if (residentGuiHelperFailedOn == ct) {
+                return null;
+            }
+            final ResidentGuiHelper helper = new ResidentGuiHelper(host, ct, executionService);
+            if (!helper.start()) {
+                LOG.debug1("getResidentGuiHelper: " + host.getName() + ": serve mode not available");
+                residentGuiHelperFailedOn = ct;
+                return null;
+            }
+            residentGuiHelper = helper;
+            return helper;
+        } finally {
+            mResidentGuiHelperLock.unlock();
+        }
+    }
+
+    private void stopResidentGuiHelper() {
+        mResidentGuiHelperLock.lock();
+        try {
+            if (residentGuiHelper != null) {
+                residentGuiHelper.stop();
+                residentGuiHelper = null;
+            }
+            residentGuiHelperFailedOn = null;
+        } finally {
+            mResidentGuiHelperLock.unlock();
+        }
+    }
+
+    /**
+     * Installs the gui helper, unless it should be kept or the same version
+     * is already installed.
+     */
     public void installGuiHelper() {
-        if (!application.getKeepHelper()) {
-            scp(guiHelperFiles.readGuiHelper(), "@GUI-HELPER-PROG@", "0700", false, null, null, null);
+        if (application.getKeepHelper()) {
+            return;
+        }
+        if (isGuiHelperInstalled()) {
+            LOG.debug1("installGuiHelper: " + host.getName() + ": helper is up to date");
+            return;
+        }
+        /* the resident helper would still run the old version */
+        stopResidentGuiHelper();
+        scp(guiHelperFiles.readGuiHelper(), "@GUI-HELPER-PROG@", "0700", false, null, null, null);
+    }
+
+    /** Returns whether the installed helper has the same hash as the local one. */
+    private boolean isGuiHelperInstalled() {
+        final SshOutput sshOutput = execCommandAndWait(new ExecCommandConfig().commandString("GuiHelperSha256")
+                                                                              .silentCommand()
+                                                                              .silentOutput()
+                                                                              .sshCommandTimeout(10000));
+        if (!sshOutput.isSuccess()) {
+            return false;
         }
+        /* sha256sum prints: hash  file name */
+        return sshOutput.getOutput().contains(guiHelperFiles.getGuiHelperSha256() + ' ');
     }
 
     /** Installs test suite on the remote host. */
@@ -509,14 +638,12 @@ public class Ssh {
              if (line.indexOf("error:") != 0) {
                  continue;
              }
-             final Thread t = new Thread(
-             new Runnable() {
+             executionService.execute(new Runnable() {
                  @Override
                  public void run() {
                      progressIndicator.progressIndicatorFailed(host.getName(), line, 3000);
                  }
              });
-             t.start();
          }
     }
 
@@ -0,0 +1,180 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.trilead.ssh2.Connection;
+
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Checks, that the ssh connection is alive, with keepalive global requests
+ * on the connection itself, without a remote command.
+ *
+ * Every interval a beat is sent, if the previous one was answered. A beat,
+ * that is still not answered at the next interval, is counted as missed and
+ * after the maximum of missed beats in a row, or if the request fails, the
+ * connection is reported as lost. The time from a request to its answer is
+ * the round-trip time, its changes are reported, so that it can be shown.
+ */
+final class SshKeepalive {
+    private static final Logger LOG = LoggerFactory.getLogger(SshKeepalive.class);
+    /** Round-trip time, that wasn't measured yet. */
+    static final long NO_RTT = -1;
+
+    private final String hostName;
+    private final Beat beat;
+    private final ExecutionService executionService;
+    private final long intervalMillis;
+    private final int maxMissedBeats;
+    private final Runnable connectionLost;
+    private final Runnable rttChanged;
+
+    private ScheduledFuture<?> checkFuture = null;
+    private boolean beatInFlight = false;
+    private int missedBeats = 0;
+    private boolean stopped = false;
+    private volatile long rttMillis = NO_RTT;
+
+    SshKeepalive(final String hostName,
+                 final Beat beat,
+                 final ExecutionService executionService,
+                 final long intervalMillis,
+                 final int maxMissedBeats,
+                 final Runnable connectionLost,
+                 final Runnable rttChanged) {
+        this.hostName = hostName;
+        this.beat = beat;
+        this.executionService = executionService;
+        this.intervalMillis = intervalMillis;
+        this.maxMissedBeats = maxMissedBeats;
+        this.connectionLost = connectionLost;
+        this.rttChanged = rttChanged;
+    }
+
+    static Beat connectionBeat(final Connection connection) {
+        return new Beat() {
+            @Override
+            public void send() throws IOException {
+                connection.ping();
+            }
+        };
+    }
+
+    synchronized void start() {
+        if (intervalMillis <= 0 || stopped || checkFuture != null) {
+            return;
+        }
+        checkFuture = executionService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, intervalMillis, intervalMillis);
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        if (checkFuture != null) {
+            checkFuture.cancel(false);
+        }
+    }
+
+    /** Returns the last round-trip time in milliseconds or NO_RTT. */
+    long getRttMillis() {
+        return rttMillis;
+    }
+
+    synchronized int getMissedBeats() {
+        return missedBeats;
+    }
+
+    /** Runs on the scheduler, the beat itself blocks and is sent from the executor. */
+    void check() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            if (beatInFlight) {
+                missedBeats++;
+                LOG.debug2("check: " + hostName + ": missed beats: " + missedBeats);
+                if (missedBeats < maxMissedBeats) {
+                    return;
+                }
+            } else {
+                beatInFlight = true;
+                executionService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendBeat();
+                    }
+                });
+                return;
+            }
+        }
+        lost("no answer to " + missedBeats + " beats");
+    }
+
+    private void sendBeat() {
+        final long start = System.nanoTime();
+        try {
+            beat.send();
+        } catch (final IOException e) {
+            lost(e.getMessage());
+            return;
+        }
+        final long newRttMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        synchronized (this) {
+            beatInFlight = false;
+            missedBeats = 0;
+        }
+        setRttMillis(newRttMillis);
+    }
+
+    private void setRttMillis(final long newRttMillis) {
+        if (rttMillis != newRttMillis) {
+            rttMillis = newRttMillis;
+            rttChanged.run();
+        }
+    }
+
+    private void lost(final String reason) {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stop();
+        }
+        setRttMillis(NO_RTT);
+        LOG.info("lost: " + hostName + ": connection lost: " + reason);
+        connectionLost.run();
+    }
+
+    /** Sends one keepalive request and waits for the answer. */
+    interface Beat {
+        void send() throws IOException;
+    }
+}
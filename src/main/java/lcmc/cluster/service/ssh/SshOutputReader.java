@@ -0,0 +1,132 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reads and decodes the output of one ssh command.
+ *
+ * The decoder and the byte and char buffers are created once and reused for
+ * every chunk. A multibyte character split between two reads stays in the
+ * byte buffer until the rest of it arrives. The chunk is returned as a view
+ * of the char buffer, that is valid only until the next read, the callers,
+ * that need to keep it, must copy it. One read returns at most the size of
+ * the char buffer, a long output comes in more chunks.
+ */
+final class SshOutputReader {
+    /** How many reads fit into the char buffer. */
+    private static final int READS_PER_CHUNK = 4;
+
+    private final InputStream in;
+    private final BooleanSupplier canceled;
+    private final CharsetDecoder decoder;
+    /** Bytes, that were read, but not decoded yet. */
+    private final ByteBuffer bytes;
+    private CharBuffer chars;
+
+    SshOutputReader(final InputStream in,
+                    final Charset charset,
+                    final int bufferSize,
+                    final BooleanSupplier canceled) {
+        this.in = in;
+        this.canceled = canceled;
+        decoder = charset.newDecoder()
+                         .onMalformedInput(CodingErrorAction.REPLACE)
+                         .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        bytes = ByteBuffer.allocate(bufferSize);
+        chars = CharBuffer.allocate(bufferSize * READS_PER_CHUNK);
+    }
+
+    /** Returns index of the string in the chars or -1. */
+    static int indexOf(final CharSequence chars, final String s) {
+        final int last = chars.length() - s.length();
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < s.length() && chars.charAt(i + j) == s.charAt(j)) {
+                j++;
+            }
+            if (j == s.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads and decodes what can be read without blocking, until the char
+     * buffer is full. The returned buffer is overwritten by the next call.
+     */
+    CharBuffer readAvailable() throws IOException {
+        chars.clear();
+        /* a byte doesn't decode to more than one char */
+        while (chars.remaining() >= bytes.capacity() && in.available() > 0 && !canceled.getAsBoolean()) {
+            final int len = in.read(bytes.array(), bytes.position(), bytes.remaining());
+            if (len <= 0) {
+                break;
+            }
+            bytes.position(bytes.position() + len);
+            decode(false);
+        }
+        chars.flip();
+        return chars;
+    }
+
+    /** Decodes the bytes of an incomplete character left at the end of the output. */
+    CharBuffer finish() {
+        chars.clear();
+        decode(true);
+        while (decoder.flush(chars).isOverflow()) {
+            grow();
+        }
+        decoder.reset();
+        chars.flip();
+        return chars;
+    }
+
+    private void decode(final boolean endOfInput) {
+        bytes.flip();
+        while (true) {
+            final CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (!result.isOverflow()) {
+                break;
+            }
+            grow();
+        }
+        bytes.compact();
+    }
+
+    /** Doubles the char buffer, if the chunk doesn't fit, e.g. in charsets with surrogate pairs. */
+    private void grow() {
+        final CharBuffer bigger = CharBuffer.allocate(chars.capacity() * 2);
+        chars.flip();
+        bigger.put(chars);
+        chars = bigger;
+    }
+}
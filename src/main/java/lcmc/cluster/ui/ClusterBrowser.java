@@ -33,6 +33,10 @@ import lcmc.cluster.ui.network.NetworkPresenter;
 import lcmc.common.domain.Application;
 import lcmc.common.domain.ExecCallback;
 import lcmc.common.domain.NewOutputCallback;
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.common.domain.util.StartupTiming;
+import lcmc.common.domain.util.StatusStaleness;
+import lcmc.crm.service.CrmStatusFailover;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.*;
 import lcmc.common.ui.main.MainData;
@@ -40,10 +44,11 @@ import lcmc.common.ui.main.ProgressIndicator;
 import lcmc.common.ui.treemenu.ClusterTreeMenu;
 import lcmc.common.ui.utils.ButtonCallback;
 import lcmc.common.ui.utils.ComponentWithTest;
+import lcmc.common.ui.utils.InvalidationDispatcher;
 import lcmc.common.ui.utils.SwingUtils;
 import lcmc.crm.domain.*;
-import lcmc.crm.service.CRM;
 import lcmc.crm.service.Heartbeat;
+import lcmc.crm.service.PtestService;
 import lcmc.crm.ui.CrmGraph;
 import lcmc.crm.ui.resource.*;
 import lcmc.crm.ui.resource.update.ResourceUpdater;
@@ -57,6 +62,7 @@ import lcmc.drbd.ui.resource.ResourceInfo;
 import lcmc.drbd.ui.resource.VolumeInfo;
 import lcmc.event.NetworkChangedEvent;
 import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.FrameDecoder;
 import lcmc.host.ui.ClusterHostsInfo;
 import lcmc.host.ui.HostBrowser;
 import lcmc.logger.Logger;
@@ -80,12 +86,19 @@ import java.awt.*;
 import java.awt.geom.Point2D;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -150,15 +163,15 @@ public class ClusterBrowser extends Browser {
                                                             CRM_PREREQ_PARAMETER,
                                                             CRM_ON_FAIL_PARAMETER};
     public static final String STARTING_PTEST_TOOLTIP = Tools.getString("ClusterBrowser.StartingPtest");
-    private static final String CLUSTER_STATUS_ERROR = "---start---\r\nerror\r\n\r\n---done---\r\n";
+    private static final String CLUSTER_STATUS_ERROR = "error";
     public static final ImageIcon CLUSTER_ICON_SMALL = Tools.createImageIcon(
                                                               Tools.getDefault("ClusterBrowser.ClusterIconSmall"));
     /** String that appears as a tooltip in menu items if status was disabled.*/
     public static final String UNKNOWN_CLUSTER_STATUS_STRING = "unknown cluster status";
     private static final Collection<String> DEFAULT_OPERATION_PARAMS =
                                    new ArrayList<String>(Arrays.asList(CRM_TIMEOUT_PARAMETER, CRM_INTERVAL_PARAMETER));
-    private static final String RESET_STRING = "---reset---\r\n";
-    private static final int RESET_STRING_LEN = RESET_STRING.length();
+    /** How long to wait for a host to connect, before trying to connect again. */
+    private static final long HOST_RECONNECT_INTERVAL = 30000;
     /** Match ...by-res/r0 or by-res/r0/0 from DRBD 8.4. */
     private static final Pattern DEV_DRBD_BY_RES_PATTERN = Pattern.compile("^/dev/drbd/by-res/([^/]+)(?:/(\\d+))?$");
     /** Hash that holds all hb classes with descriptions that appear in the
@@ -217,6 +230,12 @@ public class ClusterBrowser extends Browser {
     private NetworkFactory networkFactory;
     @Inject
     private Provider<ResourceUpdater> resourceUpdaterProvider;
+    @Inject
+    private ExecutionService executionService;
+    @Inject
+    private InvalidationDispatcher invalidationDispatcher;
+    @Inject
+    private PtestService ptestService;
 
     public static String getClassMenuName(final String cl) {
         final String name = CRM_CLASS_MENU.get(cl);
@@ -252,6 +271,8 @@ public class ClusterBrowser extends Browser {
     @Inject
     private DrbdGraph drbdGraph;
     private ClusterStatus clusterStatus;
+    /** Times of the phases of the cluster loading. */
+    private volatile StartupTiming startupTiming;
     @Inject
     private CrmXml crmXml;
     @Inject
@@ -265,7 +286,10 @@ public class ClusterBrowser extends Browser {
     private DRBDtestData drbdtestData;
     private boolean drbdStatusCanceledByUser = false;
     /** Whether hb status was canceled by user. */
-    private boolean crmStatusCanceledByUser = false;
+    private volatile boolean crmStatusCanceledByUser = false;
+    private volatile CrmStatusFailover crmStatusFailover = null;
+    private volatile StatusStaleness crmStatusStaleness =
+                                               new StatusStaleness("crm status", CrmStatusFailover.STALE_AFTER);
     private final Lock mPtestLock = new ReentrantLock();
     private final Lock mDrbdTestDataLock = new ReentrantLock();
     private volatile boolean serverStatusCanceled = false;
@@ -307,6 +331,7 @@ public class ClusterBrowser extends Browser {
 
     public void init(final Cluster cluster) {
         this.cluster = cluster;
+        ptestService.init(mPtestLock);
         clusterEventBus.register(this);
         crmGraph.initGraph(this);
         drbdGraph.initGraph(this);
@@ -542,7 +567,8 @@ public class ClusterBrowser extends Browser {
     /** Starts everything. */
     private void updateHeartbeatDrbdThread() {
         LOG.debug("updateHeartbeatDrbdThread: load cluster");
-        final Thread tt = new Thread(new Runnable() {
+        startupTiming = new StartupTiming(cluster.getName());
+        executionService.execute(new Runnable() {
             @Override
             public void run() {
                 final Host[] hosts = cluster.getHostsArray();
@@ -561,7 +587,6 @@ public class ClusterBrowser extends Browser {
                 });
             }
         });
-        tt.start();
         final Runnable runnable = new Runnable() {
             @Override
             public void run() {
@@ -575,45 +600,19 @@ public class ClusterBrowser extends Browser {
                         }
                     }
                 });
-                int notConnectedCount = 0;
-                Host firstHost = null;
-                do { /* wait here until a host is connected. */
-                    boolean notConnected = true;
-                    for (final Host host : hosts) {
-                        // TODO: fix that, use latches or callback
-                        if (host.isConnected()) {
-                            /* at least one connected. */
-                            notConnected = false;
-                            break;
-                        }
-                    }
-                    if (notConnected) {
-                        notConnectedCount++;
-                    } else {
-                        firstHost = getFirstHost();
-                    }
-                    if (firstHost == null) {
-                        try {
-                            Thread.sleep(30000);
-                        } catch (final InterruptedException ex) {
-                            Thread.currentThread().interrupt();
-                        }
-                        final boolean ok =
-                                 cluster.connect(null, notConnectedCount < 1, notConnectedCount + 1);
-                        if (!ok) {
-                            break;
-                        }
-                    }
-                } while (firstHost == null);
+                final Host firstHost = waitForFirstUsableHost(hosts);
                 if (firstHost == null) {
                     return;
                 }
+                startupTiming.phaseReached(StartupTiming.Phase.FIRST_HOST);
                 if (!firstHost.isInCluster()) {
                     return;
                 }
 
                 LOG.debug1("updateHeartbeatDrbdThread: first host: " + firstHost);
+                final long raMetadataStart = System.nanoTime();
                 crmXml.init(firstHost, getServicesInfo());
+                startupTiming.phaseDone(StartupTiming.Phase.RA_METADATA, raMetadataStart);
                 final ClusterStatus newClusterStatus = clusterStatusProvider.get();
                 newClusterStatus.init(firstHost, crmXml);
                 clusterStatus = newClusterStatus;
@@ -628,15 +627,47 @@ public class ClusterBrowser extends Browser {
                 progressIndicator.stopProgressIndicator(clusterName, Tools.getString("ClusterBrowser.HbUpdateResources"));
                 progressIndicator.startProgressIndicator(clusterName, Tools.getString("ClusterBrowser.DrbdUpdate"));
                 progressIndicator.stopProgressIndicator(clusterName, Tools.getString("ClusterBrowser.DrbdUpdate"));
-                cluster.getBrowser().startConnectionStatusOnAllHosts();
                 cluster.getBrowser().startServerStatus();
                 cluster.getBrowser().startDrbdStatusOnAllHosts();
                 cluster.getBrowser().startCrmStatus();
                 LOG.debug1("updateHeartbeatDrbdThread: cluster loading done");
             }
         };
-        final Thread thread = new Thread(runnable);
-        thread.start();
+        executionService.execute(runnable);
+    }
+
+    /**
+     * Waits until one of the hosts is connected and usable and returns it.
+     * If none of them connects in the reconnect interval, tries to connect
+     * them again. Returns null, if the connecting was canceled.
+     */
+    private Host waitForFirstUsableHost(final Host[] hosts) {
+        final CompletableFuture<?>[] usableFutures = new CompletableFuture<?>[hosts.length];
+        int notConnectedCount = 0;
+        while (true) {
+            for (int i = 0; i < hosts.length; i++) {
+                usableFutures[i] = hosts[i].getUsableFuture();
+            }
+            try {
+                return (Host) CompletableFuture.anyOf(usableFutures).get(HOST_RECONNECT_INTERVAL,
+                                                                         TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException e) {
+                notConnectedCount++;
+                LOG.debug1("waitForFirstUsableHost: no host connected, attempt: " + notConnectedCount);
+            } catch (final ExecutionException e) {
+                LOG.appWarning("waitForFirstUsableHost: " + e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (!cluster.connect(null, notConnectedCount < 1, notConnectedCount + 1)) {
+                return null;
+            }
+        }
+    }
+
+    public StartupTiming getStartupTiming() {
+        return startupTiming;
     }
 
     /**
@@ -647,45 +678,34 @@ public class ClusterBrowser extends Browser {
     void startServerStatus() {
         final Host[] hosts = cluster.getHostsArray();
         for (final Host host : hosts) {
-            final Thread thread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    startServerStatus(host);
-                }
-            });
-            thread.start();
-        }
-    }
-
-    private void startPing(final Host host) {
-        while (true) {
-            host.startPing();
-            Tools.sleep(10000);
-            if (serverStatusCanceled) {
-                break;
-            }
+            startServerStatus(host);
         }
     }
 
-    /** Start polling of the server status on one host. */
+    /**
+     * Start polling of the server status on one host. The hw info daemon
+     * runs until the connection breaks, then it's restarted after 10
+     * seconds.
+     */
     void startServerStatus(final Host host) {
         final String hostName = host.getName();
         final CategoryInfo[] infosToUpdate = new CategoryInfo[]{clusterHostsInfo};
-        while (true) {
-            if (host.getHostParser().getWaitForServerStatusLatch()) {
-                progressIndicator.startProgressIndicator(hostName, Tools.getString("ClusterBrowser.UpdatingServerInfo"));
-            }
+        executionService.repeatWithFixedDelay(new BooleanSupplier() {
+            @Override
+            public boolean getAsBoolean() {
+                if (serverStatusCanceled) {
+                    return false;
+                }
+                if (host.getHostParser().getWaitForServerStatusLatch()) {
+                    progressIndicator.startProgressIndicator(hostName,
+                                                             Tools.getString("ClusterBrowser.UpdatingServerInfo"));
+                }
 
-            host.setIsLoading();
-            host.getHostParser().startHWInfoDaemon(infosToUpdate, new ResourceGraph[]{drbdGraph, crmGraph});
-            if (serverStatusCanceled) {
-                break;
+                host.setIsLoading();
+                host.getHostParser().startHWInfoDaemon(infosToUpdate, new ResourceGraph[]{drbdGraph, crmGraph});
+                return !serverStatusCanceled;
             }
-            Tools.sleep(10000);
-            if (serverStatusCanceled) {
-                break;
-            }
-        }
+        }, 10000);
     }
 
     public void updateServerStatus(final Host host) {
@@ -705,11 +725,11 @@ public class ClusterBrowser extends Browser {
             LOG.debug("updateServerStatus: " + host.getName() + " loading done");
         }
         host.getHostParser().serverStatusLatchDone();
-        clusterHostsInfo.updateTable(CategoryInfo.MAIN_TABLE);
+        invalidationDispatcher.updateTable(clusterHostsInfo, CategoryInfo.MAIN_TABLE);
         for (final ResourceGraph graph : new ResourceGraph[]{drbdGraph, crmGraph}) {
             if (graph != null) {
-                graph.repaint();
-                graph.updatePopupMenus();
+                invalidationDispatcher.repaint(graph);
+                invalidationDispatcher.updatePopupMenus(graph);
             }
         }
     }
@@ -759,30 +779,15 @@ public class ClusterBrowser extends Browser {
         return serverStatusCanceled;
     }
 
-    void startConnectionStatusOnAllHosts() {
-        final Host[] hosts = cluster.getHostsArray();
-        for (final Host host : hosts) {
-            final Thread pingThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    startPing(host);
-                }
-            });
-            pingThread.start();
-            host.startConnectionStatus();
-        }
-    }
-
     void startDrbdStatusOnAllHosts() {
         final Host[] hosts = cluster.getHostsArray();
         for (final Host host : hosts) {
-            final Thread thread = new Thread(new Runnable() {
+            executionService.execute(new Runnable() {
                 @Override
                 public void run() {
                     startDrbdStatus(host);
                 }
             });
-            thread.start();
         }
     }
 
@@ -803,7 +808,7 @@ public class ClusterBrowser extends Browser {
         final String hostName = host.getName();
         /* now what we do if the status finished for the first time. */
         progressIndicator.startProgressIndicator( hostName, Tools.getString("ClusterBrowser.UpdatingDrbdStatus"));
-        final Thread thread = new Thread(new Runnable() {
+        executionService.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -811,6 +816,7 @@ public class ClusterBrowser extends Browser {
                 } catch (final InterruptedException ignored) {
                     Thread.currentThread().interrupt();
                 }
+                startupTiming.phaseReached(StartupTiming.Phase.FIRST_DRBD_STATUS);
                 swingUtils.invokeLater(new Runnable() {
                     @Override
                     public void run() {
@@ -820,7 +826,6 @@ public class ClusterBrowser extends Browser {
                 progressIndicator.stopProgressIndicator(hostName, Tools.getString("ClusterBrowser.UpdatingDrbdStatus"));
             }
         });
-        thread.start();
 
         drbdStatusCanceledByUser = false;
         while (true) {
@@ -831,9 +836,9 @@ public class ClusterBrowser extends Browser {
                            firstTime.countDown();
                            if (!host.isDrbdStatusOk()) {
                                host.setDrbdStatusOk(true);
-                               drbdGraph.repaint();
+                               invalidationDispatcher.repaint(drbdGraph);
                                LOG.debug1("startDrbdStatus: host: " + host.getName());
-                               clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
+                               invalidationDispatcher.updateTable(clusterHostsInfo, ClusterHostsInfo.MAIN_TABLE);
                            }
                        }
 
@@ -848,8 +853,8 @@ public class ClusterBrowser extends Browser {
                                if (host.isDrbdStatusOk()) {
                                    host.setDrbdStatusOk(false);
                                    LOG.debug1("startDrbdStatus: host: " + host.getName());
-                                   drbdGraph.repaint();
-                                   clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
+                                   invalidationDispatcher.repaint(drbdGraph);
+                                   invalidationDispatcher.updateTable(clusterHostsInfo, ClusterHostsInfo.MAIN_TABLE);
                                }
                                if (exitCode == 255) {
                                    /* looks like connection was lost */
@@ -865,15 +870,43 @@ public class ClusterBrowser extends Browser {
                    },
 
                    new NewOutputCallback() {
-                       private final StringBuffer outputBuffer = new StringBuffer(300);
+                       private boolean drbdUpdate = false;
+                       private boolean eventUpdate = false;
+                       private final FrameDecoder frameDecoder = host.getHostParser().createInfoFrameDecoder()
+                           .handle("drbd", new FrameDecoder.FrameHandler() {
+                               @Override
+                               public void frame(final String drbdConfig) {
+                                   host.drbdStatusLock();
+                                   try {
+                                       final DrbdXml newDrbdXml = drbdXmlProvider.get();
+                                       newDrbdXml.init(cluster.getHostsArray(), hostDrbdParameters);
+                                       newDrbdXml.update(drbdConfig);
+                                       drbdXml = newDrbdXml;
+                                   } finally {
+                                       host.drbdStatusUnlock();
+                                   }
+                                   drbdUpdate = true;
+                                   firstTime.countDown();
+                               }
+                           })
+                           .handle("event", new FrameDecoder.FrameHandler() {
+                               @Override
+                               public void frame(final String event) {
+                                   if (drbdXml.parseDrbdEvent(host.getName(), drbdGraph, event)) {
+                                       host.setDrbdStatusOk(true);
+                                       eventUpdate = true;
+                                   }
+                               }
+                           });
+
                        @Override
-                       public void output(final String output) {
-                           if ("--nm--".equals(output.trim())) {
+                       public void output(final CharSequence output) {
+                           if ("--nm--".equals(output.toString().trim())) {
                                if (host.isDrbdStatusOk()) {
                                    LOG.debug1("startDrbdStatus: host: " + host.getName());
                                    host.setDrbdStatusOk(false);
-                                   drbdGraph.repaint();
-                                   clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
+                                   invalidationDispatcher.repaint(drbdGraph);
+                                   invalidationDispatcher.updateTable(clusterHostsInfo, ClusterHostsInfo.MAIN_TABLE);
                                }
                                firstTime.countDown();
                                return;
@@ -882,32 +915,12 @@ public class ClusterBrowser extends Browser {
                            if (!host.isDrbdStatusOk()) {
                                LOG.debug1("startDrbdStatus: host: " + host.getName());
                                host.setDrbdStatusOk(true);
-                               drbdGraph.repaint();
-                               clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
+                               invalidationDispatcher.repaint(drbdGraph);
+                               invalidationDispatcher.updateTable(clusterHostsInfo, ClusterHostsInfo.MAIN_TABLE);
                            }
-                           outputBuffer.append(output);
-                           String drbdConfig, event;
-                           boolean drbdUpdate = false;
-                           boolean eventUpdate = false;
-                           do {
-                               host.drbdStatusLock();
-                               drbdConfig = host.getHostParser().getOutput("drbd", outputBuffer);
-                               if (drbdConfig != null) {
-                                   final DrbdXml newDrbdXml = drbdXmlProvider.get();
-                                   newDrbdXml.init(cluster.getHostsArray(), hostDrbdParameters);
-                                   newDrbdXml.update(drbdConfig);
-                                   drbdXml = newDrbdXml;
-                                   drbdUpdate = true;
-                                   firstTime.countDown();
-                               }
-                               host.drbdStatusUnlock();
-                               event = host.getHostParser().getOutput("event", outputBuffer);
-                               if (event != null && drbdXml.parseDrbdEvent(host.getName(), drbdGraph, event)) {
-                                   host.setDrbdStatusOk(true);
-                                   eventUpdate = true;
-                               }
-                           } while (event != null || drbdConfig != null);
-                           Tools.chomp(outputBuffer);
+                           drbdUpdate = false;
+                           eventUpdate = false;
+                           frameDecoder.feed(output);
                            if (drbdUpdate) {
                                swingUtils.invokeLater(new Runnable() {
                                    @Override
@@ -918,20 +931,18 @@ public class ClusterBrowser extends Browser {
                                });
                            }
                            if (eventUpdate) {
-                               drbdGraph.repaint();
+                               invalidationDispatcher.repaint(drbdGraph);
                                LOG.debug1("drbd status update: " + host.getName());
-                               clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
+                               invalidationDispatcher.updateTable(clusterHostsInfo, ClusterHostsInfo.MAIN_TABLE);
                                firstTime.countDown();
-                               final Thread thread = new Thread(
-                                   new Runnable() {
-                                       @Override
-                                       public void run() {
-                                           repaintSplitPane();
-                                           drbdGraph.updatePopupMenus();
-                                           clusterTreeMenu.repaintMenuTree();
-                                       }
-                                   });
-                               thread.start();
+                               invalidationDispatcher.invalidate(ClusterBrowser.this, "split pane", new Runnable() {
+                                   @Override
+                                   public void run() {
+                                       repaintSplitPane();
+                                   }
+                               });
+                               invalidationDispatcher.updatePopupMenus(drbdGraph);
+                               invalidationDispatcher.repaintMenuTree(clusterTreeMenu);
                            }
                        }
                    });
@@ -945,6 +956,10 @@ public class ClusterBrowser extends Browser {
 
     public void stopCrmStatus() {
         crmStatusCanceledByUser = true;
+        final CrmStatusFailover failover = crmStatusFailover;
+        if (failover != null) {
+            failover.cancel();
+        }
         final Host[] hosts = cluster.getHostsArray();
         for (final Host host : hosts) {
             host.stopCrmStatus();
@@ -1000,85 +1015,102 @@ public class ClusterBrowser extends Browser {
         }
     }
 
-    public void parseClusterOutput(final String output,
-                            final StringBuffer clusterStatusOutput,
-                            final Host host,
-                            final CountDownLatch firstTime,
-                            final Application.RunMode runMode) {
+    /** Feeds the crm status output to the decoder, that parses the complete statuses. */
+    public void parseClusterOutput(final CharSequence output,
+                                   final FrameDecoder clusterStatusDecoder,
+                                   final Host host,
+                                   final CountDownLatch firstTime) {
         final ClusterStatus clusterStatus0 = this.clusterStatus;
         clStatusLock();
-        if (crmStatusCanceledByUser || clusterStatus0 == null) {
+        try {
+            if (crmStatusCanceledByUser || clusterStatus0 == null) {
+                firstTime.countDown();
+                return;
+            }
+            if (output == null || output.length() == 0) {
+                clusterStatus0.setOnlineNode(host.getName(), "no");
+                setCrmStatus(host, false);
+                firstTime.countDown();
+            } else {
+                // TODO: if we get ERROR:... show it somewhere
+                clusterStatusDecoder.feed(output);
+            }
+        } finally {
             clStatusUnlock();
+        }
+    }
+
+    /** Returns a decoder of the crm status output, that parses every complete status. */
+    public FrameDecoder createClusterStatusDecoder(final Host host,
+                                                   final CountDownLatch firstTime,
+                                                   final Application.RunMode runMode) {
+        return FrameDecoder.statusFrames()
+                           .expanding(host.getHostParser().getCompressedFrames())
+                           .handle(FrameDecoder.STATUS, new FrameDecoder.FrameHandler() {
+            @Override
+            public void frame(final String status) {
+                parseClusterStatus(status, host, firstTime, runMode);
+            }
+        });
+    }
+
+    /** Parses one complete crm status. */
+    private void parseClusterStatus(final String status,
+                                    final Host host,
+                                    final CountDownLatch firstTime,
+                                    final Application.RunMode runMode) {
+        final ClusterStatus clusterStatus0 = this.clusterStatus;
+        if (crmStatusCanceledByUser || clusterStatus0 == null) {
             firstTime.countDown();
             return;
         }
-        if (output == null || "".equals(output)) {
-            clusterStatus0.setOnlineNode(host.getName(), "no");
-            setCrmStatus(host, false);
-            firstTime.countDown();
+        if (status.contains("is stopped")) {
+            /* TODO: heartbeat's not running. */
         } else {
-            // TODO: if we get ERROR:... show it somewhere
-            clusterStatusOutput.append(output);
-            /* removes the string from the output. */
-            int s = clusterStatusOutput.indexOf(RESET_STRING);
-            while (s >= 0) {
-                clusterStatusOutput.delete(s, s + RESET_STRING_LEN);
-                s = clusterStatusOutput.indexOf(RESET_STRING);
-            }
-            if (clusterStatusOutput.length() > 12) {
-                final String e = clusterStatusOutput.substring(clusterStatusOutput.length() - 12);
-                if (e.trim().equals("---done---")) {
-                    final int i = clusterStatusOutput.lastIndexOf("---start---");
-                    if (i >= 0) {
-                        if (clusterStatusOutput.indexOf("is stopped") >= 0) {
-                            /* TODO: heartbeat's not running. */
-                        } else {
-                            final String status = clusterStatusOutput.substring(i);
-                            clusterStatusOutput.delete(0, clusterStatusOutput.length());
-                            if (CLUSTER_STATUS_ERROR.equals(status)) {
-                                final boolean oldStatus = host.isCrmStatusOk();
-                                clusterStatus0.setOnlineNode(host.getName(), "no");
-                                setCrmStatus(host, false);
-                                if (oldStatus) {
-                                   crmGraph.repaint();
-                                }
-                            } else {
-                                if (clusterStatus0.parseStatus(status)) {
-                                    LOG.debug1("processClusterOutput: host: " + host.getName());
-                                    final ServicesInfo ssi = servicesInfo;
-                                    rscDefaultsInfo.setParameters(clusterStatus0.getRscDefaultsValuePairs());
-                                    ssi.setGlobalConfig(clusterStatus0);
-                                    resourceUpdaterProvider.get().updateAllResources(ssi, ssi.getBrowser(), clusterStatus0, runMode);
-                                    if (firstTime.getCount() == 1) {
-                                        /* one more time so that id-refs work.*/
-                                        resourceUpdaterProvider.get().updateAllResources(ssi, ssi.getBrowser(), clusterStatus0, runMode);
-                                    }
-                                    clusterTreeMenu.repaintMenuTree();
-                                    clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
-                                }
-                                final String online = clusterStatus0.isOnlineNode(host.getName());
-                                if ("yes".equals(online)) {
-                                    setCrmStatus(host, true);
-                                    setCrmStatus();
-                                } else {
-                                    setCrmStatus(host, false);
-                                }
-                            }
-                        }
-                        firstTime.countDown();
+            if (CLUSTER_STATUS_ERROR.equals(status.trim())) {
+                final boolean oldStatus = host.isCrmStatusOk();
+                clusterStatus0.setOnlineNode(host.getName(), "no");
+                setCrmStatus(host, false);
+                if (oldStatus) {
+                   invalidationDispatcher.repaint(crmGraph);
+                }
+            } else {
+                final boolean updated = clusterStatus0.parseStatus(status);
+                crmStatusStaleness.statusReceived();
+                if (updated) {
+                    LOG.debug1("processClusterOutput: host: " + host.getName());
+                    final ServicesInfo ssi = servicesInfo;
+                    rscDefaultsInfo.setParameters(clusterStatus0.getRscDefaultsValuePairs());
+                    ssi.setGlobalConfig(clusterStatus0);
+                    if (firstTime.getCount() == 1) {
+                        resourceUpdaterProvider.get().updateAllResources(ssi, ssi.getBrowser(), clusterStatus0, runMode);
+                    } else {
+                        resourceUpdaterProvider.get().updateChangedResources(ssi,
+                                                                             ssi.getBrowser(),
+                                                                             clusterStatus0,
+                                                                             runMode,
+                                                                             clusterStatus0.getLastChanges());
                     }
+                    invalidationDispatcher.repaintMenuTree(clusterTreeMenu);
+                    invalidationDispatcher.updateTable(clusterHostsInfo, ClusterHostsInfo.MAIN_TABLE);
+                }
+                final String online = clusterStatus0.isOnlineNode(host.getName());
+                if ("yes".equals(online)) {
+                    setCrmStatus(host, true);
+                    setCrmStatus();
+                } else {
+                    setCrmStatus(host, false);
                 }
             }
-            Tools.chomp(clusterStatusOutput);
         }
-        clStatusUnlock();
+        firstTime.countDown();
     }
 
     void startCrmStatus() {
         final CountDownLatch firstTime = new CountDownLatch(1);
         final String clusterName = getCluster().getName();
         startClStatusProgressIndicator(clusterName);
-        final Thread thread = new Thread(new Runnable() {
+        executionService.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -1089,6 +1121,7 @@ public class ClusterBrowser extends Browser {
                 if (crmStatusFailed()) {
                      progressIndicator.progressIndicatorFailed(clusterName, Tools.getString("ClusterBrowser.ClusterStatusFailed"));
                 } else {
+                    startupTiming.phaseReached(StartupTiming.Phase.FIRST_CIB);
                     swingUtils.invokeLater(new Runnable() {
                         @Override
                         public void run() {
@@ -1099,31 +1132,59 @@ public class ClusterBrowser extends Browser {
                 stopClStatusProgressIndicator(clusterName);
             }
         });
-        thread.start();
         crmStatusCanceledByUser = false;
+        crmStatusStaleness = new StatusStaleness(clusterName + ": crm status", CrmStatusFailover.STALE_AFTER);
         final Application.RunMode runMode = Application.RunMode.LIVE;
-        while (true) {
-            final Host host = getDCHost();
-            if (host == null) {
-                try {
-                    Thread.sleep(5000);
-                } catch (final InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                }
-                continue;
+        final CrmStatusFailover failover = new CrmStatusFailover(clusterName,
+                                                                 new CrmStatusFailover.StreamStarter() {
+            @Override
+            public Host getPreferredHost() {
+                return getDCHost();
             }
-            //clStatusCanceled = false;
-            host.execCrmStatusCommand(
-                    new ExecCallback() {
-                        @Override
-                        public void done(final String answer) {
+
+            @Override
+            public Host[] getHosts() {
+                return getClusterHosts();
+            }
+
+            @Override
+            public CrmStatusFailover.Stream start(final Host host) {
+                return startCrmStatusStream(host, firstTime, runMode);
+            }
+        }, crmStatusStaleness);
+        crmStatusFailover = failover;
+        if (crmStatusCanceledByUser) {
+            failover.cancel();
+        }
+        failover.run();
+    }
+
+    /** Returns how long the crm status view was stale. */
+    public StatusStaleness getCrmStatusStaleness() {
+        return crmStatusStaleness;
+    }
+
+    /** Starts the crm status stream on the host as a standby stream. */
+    private CrmStatusStream startCrmStatusStream(final Host host,
+                                                 final CountDownLatch firstTime,
+                                                 final Application.RunMode runMode) {
+        final CrmStatusFailover failover = crmStatusFailover;
+        final CrmStatusStream stream = new CrmStatusStream(host, firstTime, runMode);
+        host.execCrmStatusCommand(
+                new ExecCallback() {
+                    @Override
+                    public void done(final String answer) {
+                        if (stream.isActive()) {
                             final String online = clusterStatus.isOnlineNode(host.getName());
                             setCrmStatus(host, "yes".equals(online));
                             firstTime.countDown();
                         }
+                        failover.streamEnded(host);
+                    }
 
-                        @Override
-                        public void doneError(final String answer, final int exitCode) {
+                    @Override
+                    public void doneError(final String answer, final int exitCode) {
+                        if (stream.isActive()) {
                             if (firstTime.getCount() == 1) {
                                 LOG.debug2("startClStatus: status failed: " + host.getName() + ", ec: " + exitCode);
                             }
@@ -1132,35 +1193,19 @@ public class ClusterBrowser extends Browser {
                             setCrmStatus(host, false);
                             clusterStatus.setDC(null);
                             clStatusUnlock();
-                            if (exitCode == 255) {
-                             /* looks like connection was lost */
-                                //crmGraph.repaint();
-                                //host.getSSH().forceReconnect();
-                                //host.setConnected();
-                            }
                             firstTime.countDown();
                         }
-                    },
-
-                    new NewOutputCallback() {
-                        //TODO: check this buffer's size
-                        private final StringBuffer clusterStatusOutput = new StringBuffer(300);
+                        failover.streamEnded(host);
+                    }
+                },
 
-                        @Override
-                        public void output(final String output) {
-                            parseClusterOutput(output, clusterStatusOutput, host, firstTime, runMode);
-                        }
-                    });
-            host.waitForCrmStatusFinish();
-            if (crmStatusCanceledByUser) {
-                break;
-            }
-            try {
-                Thread.sleep(5000);
-            } catch (final InterruptedException ex) {
-                Thread.currentThread().interrupt();
-            }
-        }
+                new NewOutputCallback() {
+                    @Override
+                    public void output(final CharSequence output) {
+                        stream.output(output);
+                    }
+                });
+        return stream;
     }
 
     /** Returns 'add service' list for menus. */
@@ -1186,6 +1231,11 @@ public class ClusterBrowser extends Browser {
         }
     }
 
+    /** Updates the table of the cluster hosts, e.g. with the new round-trip times. */
+    public void updateClusterHostsTable() {
+        invalidationDispatcher.updateTable(clusterHostsInfo, ClusterHostsInfo.MAIN_TABLE);
+    }
+
     /** Updates VM nodes. */
     public void updateVms() {
         LOG.debug1("updateVMS: status update");
@@ -1814,6 +1864,18 @@ public class ClusterBrowser extends Browser {
         mPtestLock.unlock();
     }
 
+    /**
+     * Computes the ptest of the action in the background, so that it is
+     * ready, when the mouse gets over its menu item.
+     */
+    public void precomputePtest(final CallbackAction action) {
+        final Host dcHost = getDCHost();
+        if (clusterStatus == null || dcHost == null || Tools.versionBeforePacemaker(dcHost)) {
+            return;
+        }
+        ptestService.precompute(dcHost, clusterStatus.getCibSerial(), action);
+    }
+
     protected void drbdTestDataLockAcquire() {
         mDrbdTestDataLock.lock();
     }
@@ -2104,6 +2166,11 @@ public class ClusterBrowser extends Browser {
         crmGraph.repaint();
     }
 
+    /** Repaints the crm graph with the next frame, the status updates come too often to repaint every time. */
+    public void repaintAfterStatusUpdate() {
+        invalidationDispatcher.repaint(crmGraph);
+    }
+
     public ResourceAgent getCloneResourceAgent() {
         return crmXml.getCloneResourceAgent();
     }
@@ -2131,6 +2198,8 @@ public class ClusterBrowser extends Browser {
         /** Host if over a menu item that belongs to a host. */
         private final Host menuHost;
         private volatile boolean mouseStillOver = false;
+        /** Ptest, that is shown or computed for the mouse over, or null. */
+        private volatile Future<PtestData> ptest = null;
 
         private CallbackAction action;
 
@@ -2157,12 +2226,20 @@ public class ClusterBrowser extends Browser {
         public final void mouseOut(final ComponentWithTest component) {
             if (isEnabled()) {
                 mouseStillOver = false;
+                final Future<PtestData> p = ptest;
+                ptest = null;
+                if (p != null) {
+                    ptestService.cancel(p);
+                }
                 crmGraph.stopTestAnimation((JComponent) component);
                 component.setToolTipText("");
             }
         }
 
-        /** Mouse over, starts animation, calls action() and sets tooltip. */
+        /**
+         * Mouse over, starts animation, gets the ptest of the action and sets
+         * tooltip. The ptest runs in the background or is cached already.
+         */
         @Override
         public final void mouseOver(final ComponentWithTest component) {
             if (isEnabled()) {
@@ -2176,22 +2253,39 @@ public class ClusterBrowser extends Browser {
                 mouseStillOver = false;
                 final CountDownLatch startTestLatch = new CountDownLatch(1);
                 crmGraph.startTestAnimation((JComponent) component, startTestLatch);
+                final Host h;
+                if (menuHost == null) {
+                    h = getDCHost();
+                } else {
+                    h = menuHost;
+                }
+                final Future<PtestData> p;
                 ptestLockAcquire();
                 try {
                     clusterStatus.setPtestResult(null);
-                    final Host h;
-                    if (menuHost == null) {
-                        h = getDCHost();
-                    } else {
-                        h = menuHost;
-                    }
-                    action.run(h);
-                    final PtestData ptestData = new PtestData(CRM.getPtest(h));
-                    component.setToolTipText(ptestData.getToolTip());
-                    clusterStatus.setPtestResult(ptestData);
+                    p = ptestService.simulate(h, clusterStatus.getCibSerial(), action);
                 } finally {
                     ptestLockRelease();
                 }
+                ptest = p;
+                try {
+                    final PtestData ptestData = p.get();
+                    if (ptest == p) {
+                        ptestLockAcquire();
+                        try {
+                            component.setToolTipText(ptestData.getToolTip());
+                            clusterStatus.setPtestResult(ptestData);
+                        } finally {
+                            ptestLockRelease();
+                        }
+                    }
+                } catch (final CancellationException e) {
+                    LOG.debug2("mouseOver: ptest cancelled");
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (final ExecutionException e) {
+                    LOG.appWarning("mouseOver: ptest failed: " + e.getMessage());
+                }
                 startTestLatch.countDown();
             }
         }
@@ -2296,4 +2390,86 @@ public class ClusterBrowser extends Browser {
         clusterTreeMenu.addListeners(listener);
         return tree;
     }
+
+    /**
+     * Crm status stream of one host. The output of the active stream is
+     * parsed, the standby stream keeps only its last complete status, that
+     * is parsed, when it becomes active.
+     */
+    private final class CrmStatusStream implements CrmStatusFailover.Stream {
+        private final Host host;
+        private final CountDownLatch firstTime;
+        private final Application.RunMode runMode;
+        private final FrameDecoder clusterStatusDecoder;
+        private String lastStatus = null;
+        private volatile boolean active = false;
+
+        CrmStatusStream(final Host host, final CountDownLatch firstTime, final Application.RunMode runMode) {
+            this.host = host;
+            this.firstTime = firstTime;
+            this.runMode = runMode;
+            clusterStatusDecoder = FrameDecoder.statusFrames()
+                                               .expanding(host.getHostParser().getCompressedFrames())
+                                               .handle(FrameDecoder.STATUS, new FrameDecoder.FrameHandler() {
+                @Override
+                public void frame(final String status) {
+                    if (active) {
+                        parseClusterStatus(status, host, firstTime, runMode);
+                    } else {
+                        lastStatus = status;
+                    }
+                }
+            });
+        }
+
+        @Override
+        public Host getHost() {
+            return host;
+        }
+
+        boolean isActive() {
+            return active;
+        }
+
+        void output(final CharSequence output) {
+            clStatusLock();
+            try {
+                if (active) {
+                    crmStatusStaleness.outputReceived();
+                    parseClusterOutput(output, clusterStatusDecoder, host, firstTime);
+                } else {
+                    clusterStatusDecoder.feed(output);
+                }
+            } finally {
+                clStatusUnlock();
+            }
+        }
+
+        /**
+         * Makes the stream active and parses the status, that it got as a
+         * standby. The incomplete status stays in the decoder.
+         */
+        @Override
+        public void activate() {
+            clStatusLock();
+            try {
+                active = true;
+                final ClusterStatus clusterStatus0 = clusterStatus;
+                if (clusterStatus0 != null) {
+                    clusterStatus0.setStatusHost(host);
+                }
+                if (lastStatus != null) {
+                    parseClusterStatus(lastStatus, host, firstTime, runMode);
+                    lastStatus = null;
+                }
+            } finally {
+                clStatusUnlock();
+            }
+        }
+
+        @Override
+        public void deactivate() {
+            active = false;
+        }
+    }
 }
@@ -75,6 +75,7 @@ import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 import lcmc.common.ui.utils.MyButton;
 import lcmc.crm.service.Openais;
+import lcmc.cluster.service.ssh.ClusterCommandExecutor;
 import lcmc.cluster.service.ssh.ExecCommandConfig;
 import lcmc.cluster.service.ssh.ExecCommandThread;
 import lcmc.common.domain.util.Tools;
@@ -136,6 +137,8 @@ final class CoroConfig extends DialogCluster {
     private NetworkService networkService;
     @Inject
     private Access access;
+    @Inject
+    private ClusterCommandExecutor clusterCommandExecutor;
 
     public void init(final WizardDialog previousDialog, final Cluster cluster) {
         super.init(previousDialog, cluster);
@@ -172,9 +175,9 @@ final class CoroConfig extends DialogCluster {
                                 String corosyncVersion = hosts[0].getHostParser().getCorosyncVersion();
                                 config.append(new CorosyncPacemakerConfig("\t", serviceVersion, corosyncVersion, hosts).create());
                                 if (hosts[0].getHostParser().isCorosyncInstalled()) {
-                                    Corosync.createCorosyncConfig(hosts, config);
+                                    Corosync.createCorosyncConfig(clusterCommandExecutor, hosts, config);
                                 } else {
-                                    Openais.createAISConfig(hosts, config);
+                                    Openais.createAISConfig(clusterCommandExecutor, hosts, config);
                                 }
                                 final boolean configOk = updateOldAisConfig();
                                 if (hosts[0].getHostParser().isCorosyncInstalled() && !hosts[0].getHostParser().isOpenaisWrapper()) {
@@ -77,6 +77,7 @@ import lcmc.cluster.service.NetworkService;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 import lcmc.common.ui.utils.MyButton;
+import lcmc.cluster.service.ssh.ClusterCommandExecutor;
 import lcmc.cluster.service.ssh.ExecCommandConfig;
 import lcmc.cluster.service.ssh.ExecCommandThread;
 import lcmc.common.domain.util.Tools;
@@ -205,6 +206,8 @@ final class HbConfig extends DialogCluster {
     private NetworkService networkService;
     @Inject
     private Access access;
+    @Inject
+    private ClusterCommandExecutor clusterCommandExecutor;
 
     @Override
     public void init(final WizardDialog previousDialog, final Cluster cluster) {
@@ -273,7 +276,7 @@ final class HbConfig extends DialogCluster {
                                 config.append(hbConfigDopd(dopdWidget.isSelected()));
                                 config.append(hbConfigMgmtd(mgmtdWidget.isSelected()));
 
-                                Heartbeat.createHBConfig(hosts, config);
+                                Heartbeat.createHBConfig(clusterCommandExecutor, hosts, config);
                                 final boolean configOk = updateOldHbConfig();
                                 if (dopdWidget.isSelected()) {
                                     for (final Host h : hosts) {
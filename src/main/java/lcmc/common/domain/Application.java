@@ -115,6 +115,8 @@ public class Application {
     private boolean noPassphrase = false;
     private boolean embedApplet = Tools.isLinux();
     private boolean cmdLog = false;
+    private boolean compressHelperOutput = false;
+    private boolean domCibParser = false;
     private Test autoTest = null;
 
     @Inject
@@ -517,6 +519,24 @@ public class Application {
         return cmdLog;
     }
 
+    /** Sets whether the gui helper should compress the big outputs, if it can. */
+    public void setCompressHelperOutput(final boolean compressHelperOutput) {
+        this.compressHelperOutput = compressHelperOutput;
+    }
+
+    public boolean isCompressHelperOutput() {
+        return compressHelperOutput;
+    }
+
+    /** Sets whether the cib should be parsed with the DOM parser instead of the stream parser. */
+    public void setDomCibParser(final boolean domCibParser) {
+        this.domCibParser = domCibParser;
+    }
+
+    public boolean isDomCibParser() {
+        return domCibParser;
+    }
+
     /**
      * Returns default value for integer option from AppDefaults resource
      * bundle and scales it according the --scale option.
@@ -0,0 +1,272 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.common.domain.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Runs all the background work: ssh commands, status polls and timeouts.
+ *
+ * Tasks run in virtual threads if the JVM supports them well, otherwise in
+ * a bounded pool of platform threads. If all the pool threads are busy, the
+ * tasks wait in a queue, till a thread is free. Timeouts and delays between
+ * the periodic polls are handled by one shared scheduler, so that no thread
+ * sleeps while waiting for them.
+ */
+@Named
+@Singleton
+public class ExecutionService implements Executor {
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionService.class);
+    /**
+     * Virtual threads blocked in synchronized code, like in the ssh library,
+     * pin their carrier threads before Java 24.
+     */
+    private static final int VIRTUAL_THREADS_MIN_JAVA_VERSION = 24;
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final ExecutorService executor;
+    /** Platform thread pool or null if virtual threads are used. */
+    private final ThreadPoolExecutor threadPool;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final AtomicLong submittedTasks = new AtomicLong(0);
+    private final AtomicLong completedTasks = new AtomicLong(0);
+    private final AtomicInteger runningTasks = new AtomicInteger(0);
+    private final AtomicInteger repeatedTasks = new AtomicInteger(0);
+    private final AtomicLong queuedTasks = new AtomicLong(0);
+    private final AtomicInteger maxQueueLength = new AtomicInteger(0);
+
+    public ExecutionService() {
+        this(Tools.getDefaultInt("ExecutionService.MaxThreads"),
+             Tools.getDefaultInt("ExecutionService.SchedulerThreads"),
+             true);
+    }
+
+    ExecutionService(final int maxThreads, final int schedulerThreads, final boolean virtualThreadsAllowed) {
+        scheduler = new ScheduledThreadPoolExecutor(schedulerThreads, new NamedThreadFactory("lcmc-scheduler"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        final ExecutorService virtualThreadExecutor = virtualThreadsAllowed ? createVirtualThreadExecutor() : null;
+        if (virtualThreadExecutor == null) {
+            threadPool = new ThreadPoolExecutor(maxThreads,
+                                                maxThreads,
+                                                IDLE_THREAD_KEEP_ALIVE_SECONDS,
+                                                TimeUnit.SECONDS,
+                                                new LinkedBlockingQueue<Runnable>(),
+                                                new NamedThreadFactory("lcmc-exec"));
+            threadPool.allowCoreThreadTimeOut(true);
+            executor = threadPool;
+        } else {
+            threadPool = null;
+            executor = virtualThreadExecutor;
+        }
+        LOG.debug1("ExecutionService: virtual threads: " + isVirtual());
+    }
+
+    /**
+     * Runs the task in the background. If all the pool threads are busy, the
+     * task waits for a free one.
+     */
+    @Override
+    public void execute(final Runnable task) {
+        submittedTasks.incrementAndGet();
+        final boolean saturated = threadPool != null
+                                  && threadPool.getActiveCount() >= threadPool.getMaximumPoolSize();
+        executor.execute(new CountedTask(task));
+        if (saturated) {
+            if (queuedTasks.incrementAndGet() == 1) {
+                LOG.appWarning("execute: all " + threadPool.getMaximumPoolSize() + " threads are busy");
+            }
+            maxQueueLength.accumulateAndGet(threadPool.getQueue().size(), Math::max);
+        }
+    }
+
+    /** Runs a short task, that must not block, after a delay. */
+    public ScheduledFuture<?> schedule(final Runnable task, final long delayMillis) {
+        return scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Runs a short task, that must not block, periodically. */
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable task,
+                                                     final long initialDelayMillis,
+                                                     final long delayMillis) {
+        return scheduler.scheduleWithFixedDelay(task, initialDelayMillis, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the task in the background until it returns false. The next run
+     * starts after the delay since the last one finished. The task may
+     * block, no thread is held during the delay.
+     */
+    public void repeatWithFixedDelay(final BooleanSupplier task, final long delayMillis) {
+        repeatedTasks.incrementAndGet();
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean again = false;
+                try {
+                    again = task.getAsBoolean();
+                } finally {
+                    if (again) {
+                        final Runnable next = this;
+                        schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                execute(next);
+                            }
+                        }, delayMillis);
+                    } else {
+                        repeatedTasks.decrementAndGet();
+                    }
+                }
+            }
+        });
+    }
+
+    public boolean isVirtual() {
+        return threadPool == null;
+    }
+
+    public long getSubmittedTasks() {
+        return submittedTasks.get();
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks.get();
+    }
+
+    public int getRunningTasks() {
+        return runningTasks.get();
+    }
+
+    /** Returns number of tasks, that are repeated with a delay. */
+    public int getRepeatedTasks() {
+        return repeatedTasks.get();
+    }
+
+    /** Returns number of platform threads in the pool, 0 with virtual threads. */
+    public int getPoolThreads() {
+        if (threadPool == null) {
+            return 0;
+        }
+        return threadPool.getPoolSize();
+    }
+
+    /** Returns number of tasks, that had to wait for a free pool thread. */
+    public long getQueuedTasks() {
+        return queuedTasks.get();
+    }
+
+    /** Returns number of tasks, that wait for a free pool thread now. */
+    public int getQueueLength() {
+        if (threadPool == null) {
+            return 0;
+        }
+        return threadPool.getQueue().size();
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength.get();
+    }
+
+    public int getScheduledTasks() {
+        return scheduler.getQueue().size();
+    }
+
+    public String getStatistics() {
+        return "virtual threads: " + isVirtual()
+               + ", pool threads: " + getPoolThreads()
+               + ", queued tasks: " + getQueuedTasks()
+               + ", queue length: " + getQueueLength()
+               + ", max queue length: " + getMaxQueueLength()
+               + ", running tasks: " + getRunningTasks()
+               + ", submitted: " + getSubmittedTasks()
+               + ", completed: " + getCompletedTasks()
+               + ", repeated: " + getRepeatedTasks()
+               + ", scheduled: " + getScheduledTasks()
+               + ", all threads: " + Thread.activeCount();
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        if (Runtime.version().feature() < VIRTUAL_THREADS_MIN_JAVA_VERSION) {
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException e) {
+            LOG.appWarning("createVirtualThreadExecutor: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private final class CountedTask implements Runnable {
+        private final Runnable task;
+
+        CountedTask(final Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            runningTasks.incrementAndGet();
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                LOG.appError("run: background task failed", e);
+            } finally {
+                runningTasks.decrementAndGet();
+                completedTasks.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, prefix + '-' + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
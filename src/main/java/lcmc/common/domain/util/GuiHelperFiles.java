@@ -1,10 +1,12 @@
 package lcmc.common.domain.util;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -17,14 +19,40 @@ public class GuiHelperFiles {
     private static final String GUI_HELPER_DIR = "/help-progs/lcmc-gui-helper/";
     private static final String GUI_HELPER_FILENAME = GUI_HELPER_DIR + "Main.pl";
     private final URI dirUri;
+    /** Assembled helper, it is read only once. */
+    private String guiHelper = null;
+    private String guiHelperSha256 = null;
 
     @SneakyThrows
     public GuiHelperFiles() {
         dirUri = Tools.class.getResource(GUI_HELPER_DIR).toURI();
     }
 
+    @Synchronized
     public String readGuiHelper() {
-        return Tools.readFile(GUI_HELPER_FILENAME) + inlinePerlModules();
+        if (guiHelper == null) {
+            guiHelper = Tools.readFile(GUI_HELPER_FILENAME) + inlinePerlModules();
+        }
+        return guiHelper;
+    }
+
+    /**
+     * Returns SHA-256 of the installed helper as hex string. The helper is
+     * installed with echo, that adds a new line at the end.
+     */
+    @SneakyThrows
+    @Synchronized
+    public String getGuiHelperSha256() {
+        if (guiHelperSha256 == null) {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[] hash = digest.digest((readGuiHelper() + '\n').getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (final byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            guiHelperSha256 = hex.toString();
+        }
+        return guiHelperSha256;
     }
 
     private String inlinePerlModules() {
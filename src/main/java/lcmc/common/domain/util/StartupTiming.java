@@ -0,0 +1,108 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.common.domain.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Times of the phases of connecting a host or loading a cluster. Every
+ * phase is recorded only the first time.
+ */
+public final class StartupTiming {
+    private static final Logger LOG = LoggerFactory.getLogger(StartupTiming.class);
+
+    public enum Phase {
+        /** ssh connection and authentication of a host. */
+        CONNECT("connect"),
+        /** Check and upload of the gui helper. */
+        HELPER_UPLOAD("helper upload"),
+        /** The first hw and version info of a host. */
+        HOST_INFO("host info"),
+        /** Waiting for the first host, that can be used. */
+        FIRST_HOST("first host"),
+        /** Loading of the resource agents and their meta-data. */
+        RA_METADATA("RA metadata"),
+        FIRST_CIB("first CIB"),
+        FIRST_DRBD_STATUS("first DRBD status");
+
+        private final String description;
+
+        Phase(final String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private final String name;
+    private final long startNanos = System.nanoTime();
+    private final Map<Phase, Long> phaseMillis = new EnumMap<Phase, Long>(Phase.class);
+
+    public StartupTiming(final String name) {
+        this.name = name;
+    }
+
+    /** Records the phase, that was reached now, as time since the start. */
+    public void phaseReached(final Phase phase) {
+        record(phase, System.nanoTime() - startNanos);
+    }
+
+    /** Records the phase, that started at the phaseStartNanos and ended now. */
+    public void phaseDone(final Phase phase, final long phaseStartNanos) {
+        record(phase, System.nanoTime() - phaseStartNanos);
+    }
+
+    /** Returns the time of the phase in milliseconds or -1, if it wasn't recorded. */
+    public synchronized long getMillis(final Phase phase) {
+        final Long millis = phaseMillis.get(phase);
+        if (millis == null) {
+            return -1;
+        }
+        return millis;
+    }
+
+    public synchronized String getSummary() {
+        final StringBuilder summary = new StringBuilder(name);
+        for (final Map.Entry<Phase, Long> entry : phaseMillis.entrySet()) {
+            summary.append(", ").append(entry.getKey()).append(": ").append(entry.getValue()).append(" ms");
+        }
+        return summary.toString();
+    }
+
+    private void record(final Phase phase, final long nanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        synchronized (this) {
+            if (phaseMillis.containsKey(phase)) {
+                return;
+            }
+            phaseMillis.put(phase, millis);
+        }
+        LOG.info("record: " + name + ": " + phase + ": " + millis + " ms");
+    }
+}
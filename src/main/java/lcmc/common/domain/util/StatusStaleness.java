@@ -0,0 +1,142 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.common.domain.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Measures how long a status view was stale: the time since the last output
+ * of its status stream. The view is stale, if the stream was lost, or if no
+ * output, not even a keep-alive, came for longer than the limit, like from
+ * a stream, that hangs without ending.
+ */
+public final class StatusStaleness {
+    private static final Logger LOG = LoggerFactory.getLogger(StatusStaleness.class);
+
+    private final String name;
+    private final long staleAfterMillis;
+    private final LongSupplier nanoTime;
+    private long lastOutputNanos;
+    /** Why the stream was lost or null. */
+    private String lostReason = null;
+    private int staleCount = 0;
+    private long lastStaleMillis = 0;
+    private long maxStaleMillis = 0;
+    private long totalStaleMillis = 0;
+
+    public StatusStaleness(final String name, final long staleAfterMillis) {
+        this(name, staleAfterMillis, new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return System.nanoTime();
+            }
+        });
+    }
+
+    public StatusStaleness(final String name, final long staleAfterMillis, final LongSupplier nanoTime) {
+        this.name = name;
+        this.staleAfterMillis = staleAfterMillis;
+        this.nanoTime = nanoTime;
+        lastOutputNanos = nanoTime.getAsLong();
+    }
+
+    /** The status stream was lost, the view is stale until the next status. */
+    public synchronized void statusLost(final String reason) {
+        if (lostReason == null) {
+            lostReason = reason;
+        }
+    }
+
+    /** Some output, like a keep-alive, came from the status stream. */
+    public void outputReceived() {
+        received(false);
+    }
+
+    /** A new status came from the status stream. */
+    public void statusReceived() {
+        received(true);
+    }
+
+    private void received(final boolean status) {
+        final long millis;
+        final String staleReason;
+        synchronized (this) {
+            if (lostReason != null && !status) {
+                return;
+            }
+            final long now = nanoTime.getAsLong();
+            millis = TimeUnit.NANOSECONDS.toMillis(now - lastOutputNanos);
+            lastOutputNanos = now;
+            if (lostReason == null && millis <= staleAfterMillis) {
+                return;
+            }
+            staleReason = lostReason == null ? "no output" : lostReason;
+            lostReason = null;
+            staleCount++;
+            lastStaleMillis = millis;
+            maxStaleMillis = Math.max(maxStaleMillis, millis);
+            totalStaleMillis += millis;
+        }
+        LOG.info("received: " + name + ": status was stale for " + millis + " ms (" + staleReason + ')');
+    }
+
+    public synchronized boolean isStale() {
+        return lostReason != null || getMillisSinceLastOutput() > staleAfterMillis;
+    }
+
+    public synchronized long getMillisSinceLastOutput() {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime.getAsLong() - lastOutputNanos);
+    }
+
+    /** Returns how long the view is stale now, or 0. */
+    public synchronized long getCurrentStaleMillis() {
+        if (!isStale()) {
+            return 0;
+        }
+        return getMillisSinceLastOutput();
+    }
+
+    public synchronized int getStaleCount() {
+        return staleCount;
+    }
+
+    public synchronized long getLastStaleMillis() {
+        return lastStaleMillis;
+    }
+
+    public synchronized long getMaxStaleMillis() {
+        return maxStaleMillis;
+    }
+
+    public synchronized String getSummary() {
+        return String.format("%s: stale %d times, last: %d ms, max: %d ms, total: %d ms, now: %d ms",
+                             name,
+                             staleCount,
+                             lastStaleMillis,
+                             maxStaleMillis,
+                             totalStaleMillis,
+                             getCurrentStaleMillis());
+    }
+}
@@ -44,6 +44,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -81,6 +82,8 @@ import javax.swing.text.html.HTMLDocument;
 import com.google.common.base.Optional;
 
 import lcmc.Exceptions;
+import lcmc.cluster.service.ssh.ClusterCommandExecutor;
+import lcmc.cluster.service.ssh.ClusterCommandResult;
 import lcmc.cluster.domain.Cluster;
 import lcmc.common.domain.StringValue;
 import lcmc.common.domain.Value;
@@ -594,16 +597,27 @@ public final class Tools {
 
     /**
      * Creates config on all hosts with specified name in the specified
-     * directory.
+     * directory. The config is copied to all hosts at the same time.
      */
-    public static void createConfigOnAllHosts(final Host[] hosts,
+    public static void createConfigOnAllHosts(final ClusterCommandExecutor clusterCommandExecutor,
+                                              final Host[] hosts,
                                               final String config,
                                               final String fileName,
                                               final String dir,
                                               final String mode,
                                               final boolean makeBackup) {
-        for (final Host host : hosts) {
-            host.getSSH().createConfig(config, fileName, dir, mode, makeBackup, null, null);
+        final ClusterCommandResult<Void> result = clusterCommandExecutor.runOnHosts(
+                Arrays.asList(hosts),
+                new ClusterCommandExecutor.HostTask<Void>() {
+                    @Override
+                    public Void run(final Host host) {
+                        host.getSSH().createConfig(config, fileName, dir, mode, makeBackup, null, null);
+                        return null;
+                    }
+                },
+                ClusterCommandExecutor.NO_DEADLINE);
+        if (!result.isSuccess()) {
+            LOG.appWarning("createConfigOnAllHosts: " + dir + fileName + ": " + result.getFailureSummary());
         }
     }
 
@@ -43,13 +43,17 @@ import javax.swing.JTextPane;
 
 import lcmc.cluster.domain.Cluster;
 import lcmc.cluster.domain.Clusters;
+import lcmc.common.ui.utils.InvalidationDispatcher;
 import lcmc.common.ui.utils.SwingUtils;
 import lcmc.crm.domain.ClusterStatus;
 import lcmc.drbd.domain.DrbdXml;
 import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
 import lcmc.vm.domain.VmsXml;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.common.domain.Http;
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.common.domain.util.StartupTiming;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 import lcmc.common.domain.util.Tools;
@@ -66,6 +70,7 @@ public final class BugReport extends ConfigDialog {
     private static final String CONFIG_LIBVIRT = "libvirt configs";
     private static final String GENERATED_DELIM = "=== configs ===";
     private static final String LOG_BUFFER_DELIM = "=== logs ===";
+    private static final String STATISTICS_DELIM = "=== statistics ===";
     public static final Cluster UNKNOWN_CLUSTER = null;
     public static final String NO_ERROR_TEXT = null;
     public static final int MINIMUM_CLUSTERS_PANE_HEIGHT = 75;
@@ -80,6 +85,10 @@ public final class BugReport extends ConfigDialog {
     private SwingUtils swingUtils;
     @Inject
     private Clusters allClusters;
+    @Inject
+    private InvalidationDispatcher invalidationDispatcher;
+    @Inject
+    private ExecutionService executionService;
 
     public void init(final Cluster selectedCluster, final String errorText) {
         this.selectedCluster = selectedCluster;
@@ -208,6 +217,7 @@ public final class BugReport extends ConfigDialog {
                 appendLibvirtText(text, cluster);
             }
         }
+        appendStatisticsText(text);
         appendLogText(text);
         swingUtils.invokeLater(new Runnable() {
             @Override
@@ -228,6 +238,10 @@ public final class BugReport extends ConfigDialog {
             text.append(" *");
         }
         text.append(" ==\n");
+        final ClusterBrowser cb = cluster.getBrowser();
+        if (cb != null) {
+            appendTimingText(text, cb.getStartupTiming());
+        }
     }
 
     private void appendHostText(StringBuffer text, Cluster cluster) {
@@ -244,6 +258,27 @@ public final class BugReport extends ConfigDialog {
                 }
             }
             text.append('\n');
+            if (host != null) {
+                appendTimingText(text, host.getConnectTiming());
+                appendCompressionText(text, host);
+                final String sessionPoolStatistics = host.getSessionPoolStatistics();
+                if (sessionPoolStatistics != null) {
+                    text.append("ssh ").append(sessionPoolStatistics).append('\n');
+                }
+            }
+        }
+    }
+
+    private void appendCompressionText(StringBuffer text, Host host) {
+        final HostParser hostParser = host.getHostParser();
+        if (hostParser != null && hostParser.getCompressedFrames().isEnabled()) {
+            text.append("compressed output: ").append(hostParser.getCompressedFrames().getStatistics()).append('\n');
+        }
+    }
+
+    private void appendTimingText(StringBuffer text, StartupTiming timing) {
+        if (timing != null) {
+            text.append("timing: ").append(timing.getSummary()).append('\n');
         }
     }
 
@@ -253,6 +288,8 @@ public final class BugReport extends ConfigDialog {
             String cib = null;
             final ClusterBrowser cb = cluster.getBrowser();
             if (cb != null) {
+                text.append(cb.getCrmStatusStaleness().getSummary()).append('\n');
+                text.append("ui ").append(invalidationDispatcher.getStatistics()).append('\n');
                 final ClusterStatus cs = cb.getClusterStatus();
                 if (cs != null) {
                     cib = cs.getCibXml();
@@ -311,6 +348,11 @@ public final class BugReport extends ConfigDialog {
         }
     }
 
+    private void appendStatisticsText(StringBuffer text) {
+        text.append('\n').append(STATISTICS_DELIM).append('\n');
+        text.append("execution ").append(executionService.getStatistics()).append('\n');
+    }
+
     private void appendLogText(StringBuffer text) {
         text.append('\n').append(LOG_BUFFER_DELIM).append('\n').append(logBuffer);
     }
@@ -60,12 +60,14 @@ import javax.swing.text.StyleConstants;
 import lcmc.cluster.ui.widget.WidgetFactory;
 import lcmc.common.ui.utils.SwingUtils;
 import lcmc.host.domain.Host;
-import lcmc.common.domain.ExecCallback;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 import lcmc.common.ui.utils.MyButton;
 import lcmc.common.domain.util.Tools;
+import lcmc.cluster.service.ssh.ClusterCommandExecutor;
+import lcmc.cluster.service.ssh.ClusterCommandResult;
 import lcmc.cluster.service.ssh.ExecCommandConfig;
+import lcmc.cluster.service.ssh.SshOutput;
 
 /**
  * An implementation of an dialog with log files from many hosts.
@@ -73,6 +75,9 @@ import lcmc.cluster.service.ssh.ExecCommandConfig;
 @Named
 public class Logs extends ConfigDialog {
     private static final Logger LOG = LoggerFactory.getLogger(Logs.class);
+    private static final int LOG_COMMAND_TIMEOUT = 30000;
+    /** The logs, that didn't come in this time, are not shown. */
+    private static final long LOGS_DEADLINE = 40000;
     private final JTextPane logTextArea = new JTextPane();
     private final Map<String, JCheckBox> patternToCheckBoxMap = new HashMap<String, JCheckBox>();
     private final Lock mRefreshLock = new ReentrantLock();
@@ -81,6 +86,8 @@ public class Logs extends ConfigDialog {
     private SwingUtils swingUtils;
     @Inject
     private WidgetFactory widgetFactory;
+    @Inject
+    private ClusterCommandExecutor clusterCommandExecutor;
 
     /**
      * Command that gets the log. The command must be specified in the
@@ -165,51 +172,42 @@ public class Logs extends ConfigDialog {
     protected final void refreshLogs() {
         enableAllComponents(false);
         final Host[] hosts = getHosts();
-        final Thread[] threads = new Thread[hosts.length];
-        final String[] texts = new String[hosts.length];
-
         final Map<String, String> replaceHash = getOptionsHash();
-
-        int i = 0;
-        final String stacktrace = Tools.getStackTrace();
+        final Map<Host, String> commands = new HashMap<Host, String>();
         for (final Host host : hosts) {
-            final int index = i;
-            final String command = host.getHostParser().getDistCommand(logFileCommand(), replaceHash);
-            threads[index] = host.execCommand(new ExecCommandConfig()
-                                                   .command(command)
-                                                   .execCallback(new ExecCallback() {
-                                                       @Override
-                                                       public void done(final String answer) {
-                                                           texts[index] = answer;
-                                                       }
-                                                       @Override
-                                                       public void doneError(final String answer,
-                                                                             final int errorCode) {
-                                                           texts[index] = host.getName() + ": " + answer + '\n';
-                                                           LOG.sshError(host, command, answer, stacktrace, errorCode);
-                                                       }
-                                                   })
-                                                   .sshCommandTimeout(30000)
-                                                   .silentCommand()
-                                                   .silentOutput());
-            i++;
+            commands.put(host, host.getHostParser().getDistCommand(logFileCommand(), replaceHash));
         }
-        i = 0;
+
+        final String stacktrace = Tools.getStackTrace();
+        final ClusterCommandResult<SshOutput> result = clusterCommandExecutor.captureCommand(
+                Arrays.asList(hosts),
+                new ClusterCommandExecutor.CommandTemplate() {
+                    @Override
+                    public ExecCommandConfig forHost(final Host host) {
+                        return new ExecCommandConfig().command(commands.get(host))
+                                                      .sshCommandTimeout(LOG_COMMAND_TIMEOUT)
+                                                      .silentCommand()
+                                                      .silentOutput();
+                    }
+                },
+                LOGS_DEADLINE);
         final StringBuilder ans = new StringBuilder("");
-        for (final Thread t : threads) {
-            try {
-                t.join();
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
+        for (final Host host : hosts) {
+            final SshOutput sshOutput = result.getResult(host);
+            if (sshOutput == null) {
+                ans.append(host.getName()).append(": ").append(result.getFailure(host)).append('\n');
+            } else if (sshOutput.isSuccess()) {
+                ans.append(sshOutput.getOutput());
+            } else {
+                ans.append(host.getName()).append(": ").append(sshOutput.getOutput()).append('\n');
+                LOG.sshError(host, commands.get(host), sshOutput.getOutput(), stacktrace, sshOutput.getExitCode());
             }
-            ans.append(texts[i]);
-            i++;
         }
         final String[] output = ans.toString().split("\r\n");
         final String[] months = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
         final Pattern p = Pattern.compile('(' + Tools.join("|", months) + ") +(\\d+) +(\\d+):(\\d+):(\\d+).*");
         final Map<String, Integer> monthsHash = new HashMap<String, Integer>();
-        i = 0;
+        int i = 0;
         for (final String m : months) {
             monthsHash.put(m, i);
             i++;
@@ -0,0 +1,265 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.common.ui.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.common.domain.util.Tools;
+import lcmc.common.ui.Info;
+import lcmc.common.ui.ResourceGraph;
+import lcmc.common.ui.treemenu.ClusterTreeMenu;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Coalesces the repaints and updates of the graphs, tables and the menu
+ * tree, that the status updates request.
+ *
+ * A component is only marked dirty and is updated with the next frame,
+ * once for all the requests since the last frame. There are at most
+ * InvalidationDispatcher.FrameRate frames per second. The repaints run in
+ * the EDT, the popup menus, that may take a while, in the background. The
+ * background updates of a frame don't start, before the ones of the
+ * previous frame are done, they stay dirty until then.
+ */
+@Named
+@Singleton
+public class InvalidationDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(InvalidationDispatcher.class);
+    private static final String REPAINT = "repaint";
+    private static final String POPUP_MENUS = "popup menus";
+    private static final String TABLE = "table: ";
+
+    @Inject
+    private SwingUtils swingUtils;
+    @Inject
+    private ExecutionService executionService;
+
+    private final long frameNanos =
+                     TimeUnit.SECONDS.toNanos(1) / Tools.getDefaultInt("InvalidationDispatcher.FrameRate");
+    private final Map<DirtyKey, Runnable> dirtyInEdt = new LinkedHashMap<DirtyKey, Runnable>();
+    private final Map<DirtyKey, Runnable> dirtyInBackground = new LinkedHashMap<DirtyKey, Runnable>();
+    /** Guarded by this. */
+    private boolean frameScheduled = false;
+    /** Guarded by this. */
+    private long lastFrameNanos = 0;
+    /** Guarded by this. */
+    private boolean backgroundRunning = false;
+
+    private final AtomicLong invalidations = new AtomicLong(0);
+    private final AtomicLong updates = new AtomicLong(0);
+    private final AtomicLong frames = new AtomicLong(0);
+
+    public void repaint(final ResourceGraph graph) {
+        invalidate(graph, REPAINT, new Runnable() {
+            @Override
+            public void run() {
+                graph.repaint();
+            }
+        });
+    }
+
+    public void updatePopupMenus(final ResourceGraph graph) {
+        invalidateInBackground(graph, POPUP_MENUS, new Runnable() {
+            @Override
+            public void run() {
+                graph.updatePopupMenus();
+            }
+        });
+    }
+
+    public void updateTable(final Info info, final String tableName) {
+        invalidate(info, TABLE + tableName, new Runnable() {
+            @Override
+            public void run() {
+                info.updateTable(tableName);
+            }
+        });
+    }
+
+    public void repaintMenuTree(final ClusterTreeMenu clusterTreeMenu) {
+        invalidate(clusterTreeMenu, REPAINT, new Runnable() {
+            @Override
+            public void run() {
+                clusterTreeMenu.repaintMenuTree();
+            }
+        });
+    }
+
+    /**
+     * Marks the component dirty. The update runs in the EDT with the next
+     * frame, once for all the invalidations with the same component and
+     * what since the last frame.
+     */
+    public void invalidate(final Object component, final String what, final Runnable update) {
+        invalidate(dirtyInEdt, new DirtyKey(component, what), update);
+    }
+
+    /** Same as invalidate, but the update runs in the background. */
+    public void invalidateInBackground(final Object component, final String what, final Runnable update) {
+        invalidate(dirtyInBackground, new DirtyKey(component, what), update);
+    }
+
+    private void invalidate(final Map<DirtyKey, Runnable> dirty, final DirtyKey key, final Runnable update) {
+        invalidations.incrementAndGet();
+        final long delayNanos;
+        synchronized (this) {
+            dirty.put(key, update);
+            if (frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+            delayNanos = Math.max(0, lastFrameNanos + frameNanos - System.nanoTime());
+        }
+        scheduleFrame(delayNanos);
+    }
+
+    private void scheduleFrame(final long delayNanos) {
+        executionService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                nextFrame();
+            }
+        }, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+    }
+
+    private void nextFrame() {
+        final List<Runnable> inEdt;
+        final List<Runnable> inBackground;
+        synchronized (this) {
+            inEdt = new ArrayList<Runnable>(dirtyInEdt.values());
+            dirtyInEdt.clear();
+            if (backgroundRunning) {
+                inBackground = new ArrayList<Runnable>();
+            } else {
+                inBackground = new ArrayList<Runnable>(dirtyInBackground.values());
+                dirtyInBackground.clear();
+                backgroundRunning = !inBackground.isEmpty();
+            }
+            frameScheduled = false;
+            lastFrameNanos = System.nanoTime();
+        }
+        frames.incrementAndGet();
+        if (!inEdt.isEmpty()) {
+            swingUtils.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    runUpdates(inEdt);
+                }
+            });
+        }
+        if (!inBackground.isEmpty()) {
+            executionService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runUpdates(inBackground);
+                    } finally {
+                        backgroundDone();
+                    }
+                }
+            });
+        }
+    }
+
+    /** Schedules a frame for the background updates, that waited for the running ones. */
+    private void backgroundDone() {
+        final long delayNanos;
+        synchronized (this) {
+            backgroundRunning = false;
+            if (dirtyInBackground.isEmpty() || frameScheduled) {
+                return;
+            }
+            frameScheduled = true;
+            delayNanos = Math.max(0, lastFrameNanos + frameNanos - System.nanoTime());
+        }
+        scheduleFrame(delayNanos);
+    }
+
+    private void runUpdates(final Collection<Runnable> dirtyUpdates) {
+        for (final Runnable update : dirtyUpdates) {
+            updates.incrementAndGet();
+            try {
+                update.run();
+            } catch (final RuntimeException e) {
+                LOG.appError("runUpdates: update failed", e);
+            }
+        }
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /** Returns how many updates actually ran. */
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    public String getStatistics() {
+        return "invalidations: " + getInvalidations()
+               + ", updates: " + getUpdates()
+               + ", frames: " + getFrames();
+    }
+
+    /** The component with what is dirty on it. */
+    private static final class DirtyKey {
+        private final Object component;
+        private final String what;
+
+        DirtyKey(final Object component, final String what) {
+            this.component = component;
+            this.what = what;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof DirtyKey)) {
+                return false;
+            }
+            final DirtyKey otherKey = (DirtyKey) other;
+            return component == otherKey.component && what.equals(otherKey.what);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(component) + what.hashCode();
+        }
+    }
+}
@@ -100,6 +100,7 @@ public final class AppDefaults extends ListResourceBundle {
         {"MainMenu.DrbdGuiFiles.Extension",     "lcmc"},
         {"MainMenu.DrbdGuiFiles.Default",       System.getProperty("user.home") + '/' + "lcmc-conf.lcmc"},
         {"MainMenu.DrbdGuiFiles.Old",       System.getProperty("user.home") + '/' + "drbd-gui.drbdg"},
+        {"ResourceAgentMetaDataCache.Dir",  System.getProperty("user.home") + '/' + ".lcmc/ra-metadata"},
 
         /* Colors */
         {"DrbdMC.TableHeader",               BACKGROUND},
@@ -339,6 +340,10 @@ public final class AppDefaults extends ListResourceBundle {
         {"SSH.KexTimeout",           0}, /* milliseconds, 0 no timeout */
         {"SSH.Command.Timeout.Long", 0},     /* milliseconds, 0 no timeout */
         {"SSH.Command.Timeout",      180000}, /* milliseconds */
+        {"SSH.MaxSessions",          8},     /* sshd allows 10 by default */
+        {"SSH.SessionWait",          5000},  /* milliseconds, then go over the limit */
+        {"SSH.KeepaliveInterval",    5000},  /* milliseconds, 0 no keepalive */
+        {"SSH.KeepaliveMissedBeats", 3},     /* then the connection is lost */
         {"ProgressBar.Sleep",        100},   /* milliseconds */
         {"ProgressBar.Delay",        50},    /* milliseconds */
 
@@ -351,6 +356,9 @@ public final class AppDefaults extends ListResourceBundle {
 
         /* other */
         {"MaxHops",                           20},
+        {"ExecutionService.MaxThreads",       512}, /* without virtual threads */
+        {"ExecutionService.SchedulerThreads", 2},
+        {"InvalidationDispatcher.FrameRate",  10}, /* frames per second */
     };
 
     @Override
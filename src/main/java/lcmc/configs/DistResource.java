@@ -87,6 +87,9 @@ public final class DistResource extends ListResourceBundle {
 
         {"TestCommand", "uptime"},
 
+        {"GuiHelperServe", SUDO + "@GUI-HELPER@ serve"},
+        {"GuiHelperSha256", SUDO + "sha256sum @GUI-HELPER-PROG@ 2>/dev/null"},
+        {"GuiHelperFeatures", SUDO + "@GUI-HELPER-PROG@ features 2>/dev/null"},
         {"GetHostAllInfo", SUDO + "@GUI-HELPER@ all"},
         {"HostHWInfoDaemon", SUDO + "@GUI-HELPER@ hw-info-daemon"},
         {"GetHostHWInfo", SUDO + "@GUI-HELPER@ hw-info"},
@@ -94,8 +97,6 @@ public final class DistResource extends ListResourceBundle {
         {"GetHostHWInfoLazy", "nice -n 19 " + SUDO + "@GUI-HELPER@ hw-info-lazy"},
         {"GetNetInfo",  SUDO + "@GUI-HELPER@ get-net-info"},
 
-        {"PingCommand", "while true; do echo; sleep 5; done"},
-
         /* heartbeat crm commands */
         {"CRM.cleanupResource", SUDO + "/usr/sbin/crm_resource -C -r @ID@ -H @HOST@; true"},
 
@@ -142,6 +143,13 @@ public final class DistResource extends ListResourceBundle {
         {"Heartbeat.getOCFParameters",
          SUDO + "@GUI-HELPER@ get-resource-agents;"},
 
+        {"Heartbeat.getOCFChecksums",
+         SUDO + "@GUI-HELPER@ get-resource-agents checksums;"},
+
+        /* @AGENTS@ are class:provider:name of the agents */
+        {"Heartbeat.getOCFParametersOf",
+         SUDO + "@GUI-HELPER@ get-resource-agents agents @AGENTS@;"},
+
         /* vmxpath env is needed so that vmware meta-data does not hang */
         {"Heartbeat.getClusterMetadata",
          SUDO + "@GUI-HELPER@ get-cluster-metadata"},
@@ -149,6 +157,9 @@ public final class DistResource extends ListResourceBundle {
         {"Heartbeat.getClStatus",
          SUDO + "@GUI-HELPER@ get-cluster-events"},
 
+        {"Heartbeat.getClusterInfo",
+         SUDO + "@GUI-HELPER@ get-cluster-info"},
+
         {"Heartbeat.startHeartbeat",
          SUDO + "/etc/init.d/heartbeat start"},
 
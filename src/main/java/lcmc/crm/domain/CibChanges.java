@@ -0,0 +1,411 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Objects;
+import lcmc.common.domain.Value;
+import org.apache.commons.collections15.keyvalue.MultiKey;
+
+/**
+ * Which resources and constraints changed between two cluster statuses.
+ *
+ * If the resources were added, removed, regrouped or the global defaults
+ * changed, everything has to be updated. Otherwise only the changed
+ * resources with their dependents: the groups and clones they are in and
+ * the resources, that refer to their meta attributes or operations.
+ */
+public final class CibChanges {
+    /** Everything has to be updated. */
+    public static final CibChanges ALL = new CibChanges(true, true, Collections.<String>emptySet());
+    public static final CibChanges NONE = new CibChanges(false, false, Collections.<String>emptySet());
+    /** Resources, that are not in a group, are in the "none" group. */
+    private static final String NO_GROUP = "none";
+
+    private final boolean all;
+    private final boolean constraintsChanged;
+    private final Set<String> changedResources;
+
+    private CibChanges(final boolean all, final boolean constraintsChanged, final Set<String> changedResources) {
+        this.all = all;
+        this.constraintsChanged = constraintsChanged;
+        this.changedResources = Collections.unmodifiableSet(changedResources);
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    /** Whether some colocations, orders or resource sets changed. */
+    public boolean isConstraintsChanged() {
+        return constraintsChanged;
+    }
+
+    /** Returns ids of changed resources, groups and clones including their dependents. */
+    public Set<String> getChangedResources() {
+        return changedResources;
+    }
+
+    public boolean isEmpty() {
+        return !all && !constraintsChanged && changedResources.isEmpty();
+    }
+
+    /** Returns the changes from the old to the new cib and resource status. */
+    static CibChanges between(final CibQuery oldCib,
+                              final Map<String, CrmXml.ResourceStatus> oldStatus,
+                              final CibQuery newCib,
+                              final Map<String, CrmXml.ResourceStatus> newStatus) {
+        if (oldCib == newCib && oldStatus == newStatus) {
+            return NONE;
+        }
+        if (isStructureChanged(oldCib, newCib)) {
+            return ALL;
+        }
+        final Set<String> changed = new HashSet<String>();
+        addChangedKeys(changed, oldCib.getResourceParameters(), newCib.getResourceParameters());
+        addChangedKeys(changed, oldCib.getResourceParametersNvpairsIds(), newCib.getResourceParametersNvpairsIds());
+        addChangedKeys(changed, oldCib.getResourceInstanceAttrId(), newCib.getResourceInstanceAttrId());
+        addChangedKeys(changed, oldCib.getMetaAttrsId(), newCib.getMetaAttrsId());
+        addChangedKeys(changed, oldCib.getMetaAttrsRefs(), newCib.getMetaAttrsRefs());
+        addChangedKeys(changed, oldCib.getOperationsId(), newCib.getOperationsId());
+        addChangedKeys(changed, oldCib.getOperationsRefs(), newCib.getOperationsRefs());
+        addChangedKeys(changed, oldCib.getResOpIds(), newCib.getResOpIds());
+        addChangedKeys(changed, getOperationsByResource(oldCib), getOperationsByResource(newCib));
+        addChangedKeys(changed, oldCib.getLocations(), newCib.getLocations());
+        addChangedKeys(changed, oldCib.getPingLocations(), newCib.getPingLocations());
+        addChangedKeys(changed, oldCib.getLocationsId(), newCib.getLocationsId());
+        addChangedKeys(changed, oldCib.getResHostToLocId().rowMap(), newCib.getResHostToLocId().rowMap());
+        addChangedKeys(changed, oldCib.getResPingToLocId(), newCib.getResPingToLocId());
+        addChangedKeys(changed, oldCib.getNodeFailedCount().columnMap(), newCib.getNodeFailedCount().columnMap());
+        addChangedKeys(changed,
+                       oldCib.getResourceFailedCloneIds().columnMap(),
+                       newCib.getResourceFailedCloneIds().columnMap());
+        addChangedInLRM(changed, oldCib.getInLRM(), newCib.getInLRM());
+        addChangedStatus(changed, oldStatus, newStatus);
+
+        final boolean colocationsChanged = addChangedColocations(changed, oldCib, newCib);
+        final boolean ordersChanged = addChangedOrders(changed, oldCib, newCib);
+        final boolean rscSetsChanged =
+                      addChangedRscSets(changed, oldCib.getColocationIdRscSets(), newCib.getColocationIdRscSets())
+                      | addChangedRscSets(changed, oldCib.getOrderIdRscSets(), newCib.getOrderIdRscSets());
+
+        addDependents(changed, newCib);
+        return new CibChanges(false, colocationsChanged || ordersChanged || rscSetsChanged, changed);
+    }
+
+    /** Resources added, removed, regrouped or the defaults for all of them changed. */
+    private static boolean isStructureChanged(final CibQuery oldCib, final CibQuery newCib) {
+        return !Objects.equal(oldCib.getResourceType(), newCib.getResourceType())
+               || !Objects.equal(oldCib.getGroupsToResources(), newCib.getGroupsToResources())
+               || !Objects.equal(oldCib.getCloneToResource(), newCib.getCloneToResource())
+               || !Objects.equal(oldCib.getMasterList(), newCib.getMasterList())
+               || !Objects.equal(oldCib.getOrphaned(), newCib.getOrphaned())
+               || !Objects.equal(oldCib.getNodeIds(), newCib.getNodeIds())
+               || !Objects.equal(oldCib.getCrmConfig(), newCib.getCrmConfig())
+               || !Objects.equal(oldCib.getRscDefaultsId(), newCib.getRscDefaultsId())
+               || !Objects.equal(oldCib.getRscDefaultsParams(), newCib.getRscDefaultsParams())
+               || !Objects.equal(oldCib.getOpDefaultsParams(), newCib.getOpDefaultsParams());
+    }
+
+    private static <V> void addChangedKeys(final Collection<String> changed,
+                                           final Map<String, V> oldMap,
+                                           final Map<String, V> newMap) {
+        if (oldMap == newMap) {
+            return;
+        }
+        for (final Map.Entry<String, V> entry : newMap.entrySet()) {
+            if (!Objects.equal(entry.getValue(), oldMap.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (final String key : oldMap.keySet()) {
+            if (!newMap.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+    }
+
+    /** Operations are keyed by resource, operation and parameter. */
+    private static Map<String, Map<MultiKey<String>, Value>> getOperationsByResource(final CibQuery cib) {
+        final Map<String, Map<MultiKey<String>, Value>> operations = new HashMap<String, Map<MultiKey<String>, Value>>();
+        for (final Map.Entry<MultiKey<String>, Value> entry : cib.getOperations().entrySet()) {
+            final String rscId = entry.getKey().getKey(0);
+            Map<MultiKey<String>, Value> rscOperations = operations.get(rscId);
+            if (rscOperations == null) {
+                rscOperations = new HashMap<MultiKey<String>, Value>();
+                operations.put(rscId, rscOperations);
+            }
+            rscOperations.put(entry.getKey(), entry.getValue());
+        }
+        return operations;
+    }
+
+    private static void addChangedInLRM(final Collection<String> changed,
+                                        final Map<String, Set<String>> oldInLRM,
+                                        final Map<String, Set<String>> newInLRM) {
+        final Set<String> hosts = new HashSet<String>(oldInLRM.keySet());
+        hosts.addAll(newInLRM.keySet());
+        for (final String host : hosts) {
+            final Set<String> oldRscs = nullToEmpty(oldInLRM.get(host));
+            final Set<String> newRscs = nullToEmpty(newInLRM.get(host));
+            for (final String rscId : newRscs) {
+                if (!oldRscs.contains(rscId)) {
+                    changed.add(rscId);
+                }
+            }
+            for (final String rscId : oldRscs) {
+                if (!newRscs.contains(rscId)) {
+                    changed.add(rscId);
+                }
+            }
+        }
+    }
+
+    private static void addChangedStatus(final Collection<String> changed,
+                                         final Map<String, CrmXml.ResourceStatus> oldStatus,
+                                         final Map<String, CrmXml.ResourceStatus> newStatus) {
+        if (oldStatus == newStatus) {
+            return;
+        }
+        final Map<String, CrmXml.ResourceStatus> oldMap = nullToEmpty(oldStatus);
+        final Map<String, CrmXml.ResourceStatus> newMap = nullToEmpty(newStatus);
+        for (final Map.Entry<String, CrmXml.ResourceStatus> entry : newMap.entrySet()) {
+            if (!isSameStatus(oldMap.get(entry.getKey()), entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (final String rscId : oldMap.keySet()) {
+            if (!newMap.containsKey(rscId)) {
+                changed.add(rscId);
+            }
+        }
+    }
+
+    private static boolean isSameStatus(final CrmXml.ResourceStatus oldStatus, final CrmXml.ResourceStatus newStatus) {
+        if (oldStatus == null || newStatus == null) {
+            return oldStatus == newStatus;
+        }
+        return oldStatus.isManagedByCrm() == newStatus.isManagedByCrm()
+               && Objects.equal(oldStatus.getRunningOnNodes(), newStatus.getRunningOnNodes())
+               && Objects.equal(oldStatus.getMasterOnNodes(), newStatus.getMasterOnNodes())
+               && Objects.equal(oldStatus.getSlaveOnNodes(), newStatus.getSlaveOnNodes())
+               && Objects.equal(oldStatus.getAllocationScores(), newStatus.getAllocationScores());
+    }
+
+    /** Adds resources of the changed colocations and returns whether some changed. */
+    private static boolean addChangedColocations(final Collection<String> changed,
+                                                 final CibQuery oldCib,
+                                                 final CibQuery newCib) {
+        final Map<String, CrmXml.ColocationData> oldColocations = oldCib.getColocationId();
+        final Map<String, CrmXml.ColocationData> newColocations = newCib.getColocationId();
+        if (oldColocations == newColocations) {
+            return false;
+        }
+        final Set<String> ids = new HashSet<String>(oldColocations.keySet());
+        ids.addAll(newColocations.keySet());
+        boolean colocationsChanged = false;
+        for (final String id : ids) {
+            final CrmXml.ColocationData oldData = oldColocations.get(id);
+            final CrmXml.ColocationData newData = newColocations.get(id);
+            if (!isSameColocation(oldData, newData)) {
+                colocationsChanged = true;
+                for (final CrmXml.ColocationData data : new CrmXml.ColocationData[]{oldData, newData}) {
+                    if (data != null) {
+                        addId(changed, data.getRsc());
+                        addId(changed, data.getWithRsc());
+                    }
+                }
+            }
+        }
+        return colocationsChanged;
+    }
+
+    private static boolean isSameColocation(final CrmXml.ColocationData oldData, final CrmXml.ColocationData newData) {
+        if (oldData == null || newData == null) {
+            return oldData == newData;
+        }
+        return Objects.equal(oldData.getRsc(), newData.getRsc())
+               && Objects.equal(oldData.getWithRsc(), newData.getWithRsc())
+               && Objects.equal(oldData.getRscRole(), newData.getRscRole())
+               && Objects.equal(oldData.getWithRscRole(), newData.getWithRscRole())
+               && Objects.equal(oldData.getScore(), newData.getScore());
+    }
+
+    /** Adds resources of the changed orders and returns whether some changed. */
+    private static boolean addChangedOrders(final Collection<String> changed,
+                                            final CibQuery oldCib,
+                                            final CibQuery newCib) {
+        final Map<String, CrmXml.OrderData> oldOrders = oldCib.getOrderId();
+        final Map<String, CrmXml.OrderData> newOrders = newCib.getOrderId();
+        if (oldOrders == newOrders) {
+            return false;
+        }
+        final Set<String> ids = new HashSet<String>(oldOrders.keySet());
+        ids.addAll(newOrders.keySet());
+        boolean ordersChanged = false;
+        for (final String id : ids) {
+            final CrmXml.OrderData oldData = oldOrders.get(id);
+            final CrmXml.OrderData newData = newOrders.get(id);
+            if (!isSameOrder(oldData, newData)) {
+                ordersChanged = true;
+                for (final CrmXml.OrderData data : new CrmXml.OrderData[]{oldData, newData}) {
+                    if (data != null) {
+                        addId(changed, data.getRscFirst());
+                        addId(changed, data.getRscThen());
+                    }
+                }
+            }
+        }
+        return ordersChanged;
+    }
+
+    private static boolean isSameOrder(final CrmXml.OrderData oldData, final CrmXml.OrderData newData) {
+        if (oldData == null || newData == null) {
+            return oldData == newData;
+        }
+        return Objects.equal(oldData.getRscFirst(), newData.getRscFirst())
+               && Objects.equal(oldData.getRscThen(), newData.getRscThen())
+               && Objects.equal(oldData.getScore(), newData.getScore())
+               && Objects.equal(oldData.getSymmetrical(), newData.getSymmetrical())
+               && Objects.equal(oldData.getFirstAction(), newData.getFirstAction())
+               && Objects.equal(oldData.getThenAction(), newData.getThenAction());
+    }
+
+    /** Adds resources of the changed resource sets and returns whether some changed. */
+    private static boolean addChangedRscSets(final Collection<String> changed,
+                                             final Map<String, List<CrmXml.RscSet>> oldRscSets,
+                                             final Map<String, List<CrmXml.RscSet>> newRscSets) {
+        if (oldRscSets == newRscSets) {
+            return false;
+        }
+        final Set<String> ids = new HashSet<String>(oldRscSets.keySet());
+        ids.addAll(newRscSets.keySet());
+        boolean rscSetsChanged = false;
+        for (final String id : ids) {
+            final List<CrmXml.RscSet> oldSets = oldRscSets.get(id);
+            final List<CrmXml.RscSet> newSets = newRscSets.get(id);
+            if (!isSameRscSets(oldSets, newSets)) {
+                rscSetsChanged = true;
+                for (final List<CrmXml.RscSet> sets : asList(oldSets, newSets)) {
+                    for (final CrmXml.RscSet rscSet : sets) {
+                        if (rscSet != null) {
+                            changed.addAll(rscSet.getRscIds());
+                        }
+                    }
+                }
+            }
+        }
+        return rscSetsChanged;
+    }
+
+    private static boolean isSameRscSets(final List<CrmXml.RscSet> oldSets, final List<CrmXml.RscSet> newSets) {
+        if (oldSets == null || newSets == null) {
+            return oldSets == newSets;
+        }
+        if (oldSets.size() != newSets.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldSets.size(); i++) {
+            final CrmXml.RscSet oldSet = oldSets.get(i);
+            final CrmXml.RscSet newSet = newSets.get(i);
+            if (oldSet == null || newSet == null) {
+                if (oldSet != newSet) {
+                    return false;
+                }
+            } else if (!Objects.equal(oldSet.getId(), newSet.getId())
+                       || !Objects.equal(oldSet.getRscIds(), newSet.getRscIds())
+                       || !Objects.equal(oldSet.getSequential(), newSet.getSequential())
+                       || !Objects.equal(oldSet.getRequireAll(), newSet.getRequireAll())
+                       || !Objects.equal(oldSet.getOrderAction(), newSet.getOrderAction())
+                       || !Objects.equal(oldSet.getColocationRole(), newSet.getColocationRole())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the resources that refer to the meta attributes or operations of
+     * the changed resources and then the groups and clones of all of them.
+     */
+    private static void addDependents(final Collection<String> changed, final CibQuery cib) {
+        for (final Map<String, String> refs : asList(cib.getMetaAttrsRefs(), cib.getOperationsRefs())) {
+            for (final Map.Entry<String, String> refEntry : refs.entrySet()) {
+                if (changed.contains(refEntry.getValue())) {
+                    changed.add(refEntry.getKey());
+                }
+            }
+        }
+        /* groups in clones are two levels deep */
+        for (int level = 0; level < 2; level++) {
+            for (final Map.Entry<String, List<String>> groupEntry : cib.getGroupsToResources().entrySet()) {
+                if (NO_GROUP.equals(groupEntry.getKey()) || changed.contains(groupEntry.getKey())) {
+                    continue;
+                }
+                for (final String rscId : groupEntry.getValue()) {
+                    if (changed.contains(rscId)) {
+                        changed.add(groupEntry.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addId(final Collection<String> changed, final String id) {
+        if (id != null) {
+            changed.add(id);
+        }
+    }
+
+    private static <T> List<T> asList(final T first, final T second) {
+        final List<T> list = new ArrayList<T>();
+        if (first != null) {
+            list.add(first);
+        }
+        if (second != null) {
+            list.add(second);
+        }
+        return list;
+    }
+
+    private static Set<String> nullToEmpty(final Set<String> set) {
+        if (set == null) {
+            return Collections.emptySet();
+        }
+        return set;
+    }
+
+    private static <V> Map<String, V> nullToEmpty(final Map<String, V> map) {
+        if (map == null) {
+            return Collections.emptyMap();
+        }
+        return map;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import lcmc.common.domain.XMLTools;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Applies the cib deltas from the gui helper. A delta has only the
+ * sections of the cib, that changed since the previous one:
+ *
+ * <cib_delta full="false" base="0:5:12" version="0:5:13">
+ *   <section id="cib"><cib epoch="5" num_updates="13" .../></section>
+ *   <section id="node_state:1"><node_state id="1" ...>...</node_state></section>
+ *   <removed id="node_state:2"/>
+ * </cib_delta>
+ *
+ * Only the changed configuration sections are parsed again, the status is
+ * made again from the kept node states. A section replaces the old one
+ * whole, so a delta can be applied on any cib at least as new as its base.
+ * If the cib here is older than the base, some changes are missing and the
+ * whole cib must be fetched again.
+ */
+final class CibDeltaApplier {
+    private static final Logger LOG = LoggerFactory.getLogger(CibDeltaApplier.class);
+    static final String CIB_SECTION = "cib";
+    static final String FENCED_SECTION = "fenced";
+    static final String NODE_STATE_PREFIX = CrmXml.NODE_STATE + ':';
+
+    enum Result {
+        CHANGED,
+        UNCHANGED,
+        /** Changes are missing, the whole cib must be applied. */
+        GAP
+    }
+
+    private final CrmXml crmXml;
+    /** <cib> node with the attributes only. */
+    private Node cibAttributes = null;
+    private final Map<String, Node> configurationSections = new HashMap<String, Node>();
+    private final Map<String, Node> nodeStates = new LinkedHashMap<String, Node>();
+    /** <fenced> node with the fenced nodes or null. */
+    private Node fencedSection = null;
+    private Set<String> fencedNodes = Collections.emptySet();
+    /** Parsed configuration sections, without the status. */
+    private CibQuery configuration = new CibQuery();
+    private CibQuery cibQuery = new CibQuery();
+    /** Version of the applied cib or null, if there is none, or it is not valid. */
+    private CibVersion version = null;
+
+    CibDeltaApplier(final CrmXml crmXml) {
+        this.crmXml = crmXml;
+    }
+
+    CibQuery getCibQuery() {
+        return cibQuery;
+    }
+
+    Result apply(final String delta) {
+        final Document document = XMLTools.getXMLDocument(delta);
+        final Node deltaNode = document == null ? null : XMLTools.getChildNode(document, "cib_delta");
+        if (deltaNode == null) {
+            LOG.appWarning("apply: could not parse the cib delta");
+            version = null;
+            return Result.GAP;
+        }
+        final boolean full = "true".equals(XMLTools.getAttribute(deltaNode, "full"));
+        final CibVersion deltaVersion = CibVersion.parse(XMLTools.getAttribute(deltaNode, "version"));
+        if (full) {
+            cibAttributes = null;
+            configurationSections.clear();
+            nodeStates.clear();
+            fencedSection = null;
+            fencedNodes = Collections.emptySet();
+        } else {
+            final CibVersion base = CibVersion.parse(XMLTools.getAttribute(deltaNode, "base"));
+            if (version == null || base.compareTo(version) > 0) {
+                LOG.info("apply: cib epoch gap: " + version + ", delta: " + base + " -> " + deltaVersion);
+                return Result.GAP;
+            }
+            if (deltaVersion.compareTo(version) < 0) {
+                LOG.debug1("apply: old delta skipped: " + deltaVersion + ", cib: " + version);
+                return Result.UNCHANGED;
+            }
+        }
+        final Set<String> changedConfiguration = new LinkedHashSet<String>();
+        boolean statusChanged = full;
+        final NodeList children = deltaNode.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node child = children.item(i);
+            final String name = child.getNodeName();
+            if (!"section".equals(name) && !"removed".equals(name)) {
+                continue;
+            }
+            final String id = XMLTools.getAttribute(child, "id");
+            final Node sectionNode = "section".equals(name) ? getFirstElement(child) : null;
+            if (CIB_SECTION.equals(id)) {
+                cibAttributes = sectionNode;
+                statusChanged = true;
+            } else if (FENCED_SECTION.equals(id)) {
+                fencedSection = sectionNode;
+                fencedNodes = crmXml.parseFencedNodes(sectionNode);
+                statusChanged = true;
+            } else if (id != null && id.startsWith(NODE_STATE_PREFIX)) {
+                if (sectionNode == null) {
+                    nodeStates.remove(id);
+                } else {
+                    nodeStates.put(id, sectionNode);
+                }
+                statusChanged = true;
+            } else if (isConfigurationSection(id)) {
+                if (sectionNode == null) {
+                    configurationSections.remove(id);
+                } else {
+                    configurationSections.put(id, sectionNode);
+                }
+                changedConfiguration.add(id);
+            } else {
+                LOG.appWarning("apply: unknown cib section: " + id);
+            }
+        }
+        version = deltaVersion;
+        if (full) {
+            changedConfiguration.addAll(Arrays.asList(CrmXml.CIB_CONFIGURATION_SECTIONS));
+        }
+        if (!changedConfiguration.isEmpty()) {
+            final CibQuery newConfiguration = configuration.copy();
+            for (final String section : CrmXml.CIB_CONFIGURATION_SECTIONS) {
+                if (changedConfiguration.contains(section)) {
+                    crmXml.parseConfigurationSection(section, configurationSections.get(section), newConfiguration);
+                }
+            }
+            configuration = newConfiguration;
+        } else if (!statusChanged) {
+            return Result.UNCHANGED;
+        }
+        LOG.debug1("apply: cib " + version + ", configuration sections: " + changedConfiguration);
+        final String dcUuid = cibAttributes == null ? null : XMLTools.getAttribute(cibAttributes, "dc-uuid");
+        cibQuery = crmXml.parseCibStatus(configuration, dcUuid, nodeStates.values(), fencedNodes);
+        return Result.CHANGED;
+    }
+
+    /** Returns the applied cib in the <pcmk> document, as the whole cib comes, or null. */
+    String getCibXml() {
+        if (cibAttributes == null) {
+            return null;
+        }
+        try {
+            final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+            final Element pcmk = document.createElement("pcmk");
+            document.appendChild(pcmk);
+            if (fencedSection != null) {
+                pcmk.appendChild(document.importNode(fencedSection, true));
+            }
+            final Element cib = (Element) document.importNode(cibAttributes, false);
+            pcmk.appendChild(cib);
+            final Element conf = document.createElement("configuration");
+            cib.appendChild(conf);
+            for (final String section : CrmXml.CIB_CONFIGURATION_SECTIONS) {
+                final Node sectionNode = configurationSections.get(section);
+                if (sectionNode != null) {
+                    conf.appendChild(document.importNode(sectionNode, true));
+                }
+            }
+            final Element status = document.createElement("status");
+            cib.appendChild(status);
+            for (final Node nodeState : nodeStates.values()) {
+                status.appendChild(document.importNode(nodeState, true));
+            }
+            final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            final StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(document), new StreamResult(writer));
+            return writer.toString();
+        } catch (final ParserConfigurationException e) {
+            LOG.appWarning("getCibXml: " + e.getMessage());
+        } catch (final TransformerException e) {
+            LOG.appWarning("getCibXml: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static boolean isConfigurationSection(final String id) {
+        for (final String section : CrmXml.CIB_CONFIGURATION_SECTIONS) {
+            if (section.equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Node getFirstElement(final Node node) {
+        final NodeList children = node.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                return children.item(i);
+            }
+        }
+        return null;
+    }
+
+    /** admin_epoch:epoch:num_updates of the cib. */
+    static final class CibVersion implements Comparable<CibVersion> {
+        private final long[] parts = new long[3];
+
+        static CibVersion parse(final String version) {
+            final CibVersion cibVersion = new CibVersion();
+            if (version != null) {
+                final String[] parts = version.split(":");
+                for (int i = 0; i < parts.length && i < cibVersion.parts.length; i++) {
+                    try {
+                        cibVersion.parts[i] = Long.parseLong(parts[i].trim());
+                    } catch (final NumberFormatException e) {
+                        LOG.appWarning("parse: wrong cib version: " + version);
+                    }
+                }
+            }
+            return cibVersion;
+        }
+
+        @Override
+        public int compareTo(final CibVersion other) {
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i] != other.parts[i]) {
+                    return parts[i] < other.parts[i] ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return parts[0] + ":" + parts[1] + ':' + parts[2];
+        }
+    }
+}
@@ -23,15 +23,20 @@
 package lcmc.crm.domain;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Table;
 import lcmc.common.domain.Value;
 import org.apache.commons.collections15.map.MultiKeyMap;
@@ -39,54 +44,127 @@ import org.apache.commons.collections15.map.MultiKeyMap;
 /**
  * This class holds data that were parsed from cib xml. This is not used in old
  * heartbeats before pacemaker.
+ *
+ * The collections are frozen, when they are set: they are copied into
+ * unmodifiable collections of the exact size, with the ids and names
+ * interned, so that a cib query can be read from any thread without locks,
+ * after it was published. The changes make a new cib query.
  */
 final class CibQuery {
-    private Map<String, String> crmConfig = new HashMap<String, String>();
-    private Map<String, Map<String, String>> resourceParameters = new HashMap<String, Map<String, String>>();
-    private Map<String, Map<String, String>> resourceParametersNvpairsIds;
-    private Map<String, ResourceAgent> resourceType;
-    private Set<String> orphanedResourcesList;
-    private Map<String, Set<String>> resourcesInLRMList;
-    private Map<String, String> resourceInstanceAttrId;
-    private Map<String, List<CrmXml.ColocationData>> colocationRsc =
-                                                          new LinkedHashMap<String, List<CrmXml.ColocationData>>();
-    private Map<String, CrmXml.ColocationData> colocationId = new LinkedHashMap<String, CrmXml.ColocationData>();
-    private Map<String, List<CrmXml.OrderData>> orderRsc = new LinkedHashMap<String, List<CrmXml.OrderData>>();
-    private Map<String, CrmXml.OrderData> orderId = new LinkedHashMap<String, CrmXml.OrderData>();
-    private Map<String, List<CrmXml.RscSet>> orderIdRscSets = new LinkedHashMap<String, List<CrmXml.RscSet>>();
-    private Map<String, List<CrmXml.RscSet>> colocationIdRscSets = new LinkedHashMap<String, List<CrmXml.RscSet>>();
-    private List<RscSetConnectionData> rscSetConnections = new ArrayList<RscSetConnectionData>();
-    private Table<String, String, String> nodeParameters;
-    private Map<String, Map<String, HostLocation>> locations = new HashMap<String, Map<String, HostLocation>>();
-    private Map<String, HostLocation> pingLocations = new HashMap<String, HostLocation>();
-    private Map<String, List<String>> locationsId = new HashMap<String, List<String>>();
-    private Map<String, HostLocation> idToLocation = new HashMap<String, HostLocation>();
-    private Table<String, String, String> resHostToLocId = HashBasedTable.create();
-    private Map<String, String> resPingToLocId = new HashMap<String, String>();
+    /** Ids, node names and values repeat in every status update. */
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+    private static final Set<Class<?>> FROZEN_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            Collections.emptyMap().getClass(),
+            Collections.singletonMap(null, null).getClass(),
+            Collections.unmodifiableMap(new HashMap<Object, Object>()).getClass(),
+            Collections.emptySet().getClass(),
+            Collections.singleton(null).getClass(),
+            Collections.unmodifiableSet(new HashSet<Object>()).getClass(),
+            Collections.emptyList().getClass(),
+            Collections.singletonList(null).getClass(),
+            Collections.unmodifiableList(new ArrayList<Object>()).getClass()));
+
+    private Map<String, String> crmConfig = Collections.emptyMap();
+    private Map<String, Map<String, String>> resourceParameters = Collections.emptyMap();
+    private Map<String, Map<String, String>> resourceParametersNvpairsIds = Collections.emptyMap();
+    private Map<String, ResourceAgent> resourceType = Collections.emptyMap();
+    private Set<String> orphanedResourcesList = Collections.emptySet();
+    private Map<String, Set<String>> resourcesInLRMList = Collections.emptyMap();
+    private Map<String, String> resourceInstanceAttrId = Collections.emptyMap();
+    private Map<String, List<CrmXml.ColocationData>> colocationRsc = Collections.emptyMap();
+    private Map<String, CrmXml.ColocationData> colocationId = Collections.emptyMap();
+    private Map<String, List<CrmXml.OrderData>> orderRsc = Collections.emptyMap();
+    private Map<String, CrmXml.OrderData> orderId = Collections.emptyMap();
+    private Map<String, List<CrmXml.RscSet>> orderIdRscSets = Collections.emptyMap();
+    private Map<String, List<CrmXml.RscSet>> colocationIdRscSets = Collections.emptyMap();
+    private List<RscSetConnectionData> rscSetConnections = Collections.emptyList();
+    private Table<String, String, String> nodeParameters = ImmutableTable.of();
+    /** Node uname -> first node id in the nodes section. */
+    private Map<String, String> nodeIds = Collections.emptyMap();
+    /** Node id -> node uname. */
+    private Map<String, String> nodeUnames = Collections.emptyMap();
+    private Map<String, Map<String, HostLocation>> locations = Collections.emptyMap();
+    private Map<String, HostLocation> pingLocations = Collections.emptyMap();
+    private Map<String, List<String>> locationsId = Collections.emptyMap();
+    private Map<String, HostLocation> idToLocation = Collections.emptyMap();
+    private Table<String, String, String> resHostToLocId = ImmutableTable.of();
+    private Map<String, String> resPingToLocId = Collections.emptyMap();
     private MultiKeyMap<String, Value> operations = new MultiKeyMap<String, Value>();
-    private Map<String, String> operationsRefs = new HashMap<String, String>();
-    private Map<String, String> metaAttrsId = new HashMap<String, String>();
-    private Map<String, String> metaAttrsRefs = new HashMap<String, String>();
-    private Map<String, String> operationsId = new HashMap<String, String>();
-    private Map<String, Map<String, String>> resOpIds = new HashMap<String, Map<String, String>>();
-    private Map<String, String> nodeOnline = new HashMap<String, String>();
-    private Set<String> nodePending = new HashSet<String>();
-    private Set<String> fencedNodes = new HashSet<String>();
-    private Map<String, List<String>> groupsToResources = new HashMap<String, List<String>>();
-    private Map<String, String> cloneToResource = new HashMap<String, String>();
-    private List<String> masterList = new ArrayList<String>();
+    private Map<String, String> operationsRefs = Collections.emptyMap();
+    private Map<String, String> metaAttrsId = Collections.emptyMap();
+    private Map<String, String> metaAttrsRefs = Collections.emptyMap();
+    private Map<String, String> operationsId = Collections.emptyMap();
+    private Map<String, Map<String, String>> resOpIds = Collections.emptyMap();
+    private Map<String, String> nodeOnline = Collections.emptyMap();
+    private Set<String> nodePending = Collections.emptySet();
+    private Set<String> fencedNodes = Collections.emptySet();
+    private Map<String, List<String>> groupsToResources = Collections.emptyMap();
+    private Map<String, String> cloneToResource = Collections.emptyMap();
+    private List<String> masterList = Collections.emptyList();
     private String designatedCoOrdinator = null;
-    private Table<String, String, String> nodeFailedCount = HashBasedTable.create();
+    private Table<String, String, String> nodeFailedCount = ImmutableTable.of();
     /** Map from rsc id to list of clone ids for failed clones. */
-    private Table<String, String, Set<String>> resourceFailedCloneIds = HashBasedTable.create();
-    private Map<String, String> nodePingCount = new HashMap<String, String>();
+    private Table<String, String, Set<String>> resourceFailedCloneIds = ImmutableTable.of();
+    private Map<String, String> nodePingCount = Collections.emptyMap();
     private String rscDefaultsId = null;
-    private Map<String, String> rscDefaultsParams = new HashMap<String, String>();
-    private Map<String, String> rscDefaultsParamsNvpairIds = new HashMap<String, String>();
-    private Map<String, Value> opDefaultsParams = new HashMap<String, Value>();
+    private Map<String, String> rscDefaultsParams = Collections.emptyMap();
+    private Map<String, String> rscDefaultsParamsNvpairIds = Collections.emptyMap();
+    private Map<String, Value> opDefaultsParams = Collections.emptyMap();
+
+    /**
+     * Returns a new cib query with the same data. The data are not copied,
+     * they are frozen and can be only replaced in one of the copies.
+     */
+    CibQuery copy() {
+        final CibQuery copy = new CibQuery();
+        copy.crmConfig = crmConfig;
+        copy.resourceParameters = resourceParameters;
+        copy.resourceParametersNvpairsIds = resourceParametersNvpairsIds;
+        copy.resourceType = resourceType;
+        copy.orphanedResourcesList = orphanedResourcesList;
+        copy.resourcesInLRMList = resourcesInLRMList;
+        copy.resourceInstanceAttrId = resourceInstanceAttrId;
+        copy.colocationRsc = colocationRsc;
+        copy.colocationId = colocationId;
+        copy.orderRsc = orderRsc;
+        copy.orderId = orderId;
+        copy.orderIdRscSets = orderIdRscSets;
+        copy.colocationIdRscSets = colocationIdRscSets;
+        copy.rscSetConnections = rscSetConnections;
+        copy.nodeParameters = nodeParameters;
+        copy.nodeIds = nodeIds;
+        copy.nodeUnames = nodeUnames;
+        copy.locations = locations;
+        copy.pingLocations = pingLocations;
+        copy.locationsId = locationsId;
+        copy.idToLocation = idToLocation;
+        copy.resHostToLocId = resHostToLocId;
+        copy.resPingToLocId = resPingToLocId;
+        copy.operations = operations;
+        copy.operationsRefs = operationsRefs;
+        copy.metaAttrsId = metaAttrsId;
+        copy.metaAttrsRefs = metaAttrsRefs;
+        copy.operationsId = operationsId;
+        copy.resOpIds = resOpIds;
+        copy.nodeOnline = nodeOnline;
+        copy.nodePending = nodePending;
+        copy.fencedNodes = fencedNodes;
+        copy.groupsToResources = groupsToResources;
+        copy.cloneToResource = cloneToResource;
+        copy.masterList = masterList;
+        copy.designatedCoOrdinator = designatedCoOrdinator;
+        copy.nodeFailedCount = nodeFailedCount;
+        copy.resourceFailedCloneIds = resourceFailedCloneIds;
+        copy.nodePingCount = nodePingCount;
+        copy.rscDefaultsId = rscDefaultsId;
+        copy.rscDefaultsParams = rscDefaultsParams;
+        copy.rscDefaultsParamsNvpairIds = rscDefaultsParamsNvpairIds;
+        copy.opDefaultsParams = opDefaultsParams;
+        return copy;
+    }
 
     void setCrmConfig(final Map<String, String> crmConfig) {
-        this.crmConfig = crmConfig;
+        this.crmConfig = freeze(crmConfig);
     }
 
     Map<String, String> getCrmConfig() {
@@ -98,7 +176,7 @@ final class CibQuery {
      * second key being the parameter name.
      */
     void setResourceParameters(final Map<String, Map<String, String>> resourceParameters) {
-        this.resourceParameters = resourceParameters;
+        this.resourceParameters = freeze(resourceParameters);
     }
 
     Map<String, Map<String, String>> getResourceParameters() {
@@ -110,7 +188,7 @@ final class CibQuery {
      * resource id and the second key being the parameter name.
      */
     void setResourceParametersNvpairsIds(final Map<String, Map<String, String>> resourceParametersNvpairsIds) {
-        this.resourceParametersNvpairsIds = resourceParametersNvpairsIds;
+        this.resourceParametersNvpairsIds = freeze(resourceParametersNvpairsIds);
     }
 
     Map<String, Map<String, String>> getResourceParametersNvpairsIds() {
@@ -118,15 +196,15 @@ final class CibQuery {
     }
 
     void setResourceType(final Map<String, ResourceAgent> resourceType) {
-        this.resourceType = resourceType;
+        this.resourceType = freeze(resourceType);
     }
 
     void setOrphaned(final Set<String> orphanedList) {
-        this.orphanedResourcesList = orphanedList;
+        this.orphanedResourcesList = freeze(orphanedList);
     }
 
     void setInLRM(final Map<String, Set<String>> inLRMList) {
-        this.resourcesInLRMList = inLRMList;
+        this.resourcesInLRMList = freeze(inLRMList);
     }
 
     Map<String, ResourceAgent> getResourceType() {
@@ -142,7 +220,7 @@ final class CibQuery {
     }
 
     void setResourceInstanceAttrId(final Map<String, String> resourceInstanceAttrId) {
-        this.resourceInstanceAttrId = resourceInstanceAttrId;
+        this.resourceInstanceAttrId = freeze(resourceInstanceAttrId);
     }
 
     Map<String, String> getResourceInstanceAttrId() {
@@ -154,7 +232,7 @@ final class CibQuery {
      * colocation constraints.
      */
     void setColocationRsc(final Map<String, List<CrmXml.ColocationData>> colocationRsc) {
-        this.colocationRsc = colocationRsc;
+        this.colocationRsc = freeze(colocationRsc);
     }
 
     /**
@@ -162,7 +240,7 @@ final class CibQuery {
      * object.
      */
     void setColocationId(final Map<String, CrmXml.ColocationData> colocationId) {
-        this.colocationId = colocationId;
+        this.colocationId = freeze(colocationId);
     }
 
     Map<String, CrmXml.ColocationData> getColocationId() {
@@ -178,7 +256,7 @@ final class CibQuery {
      * colocation constraints.
      */
     void setOrderRsc(final Map<String, List<CrmXml.OrderData>> orderRsc) {
-        this.orderRsc = orderRsc;
+        this.orderRsc = freeze(orderRsc);
     }
 
     /**
@@ -186,15 +264,15 @@ final class CibQuery {
      * object.
      */
     void setOrderId(final Map<String, CrmXml.OrderData> orderId) {
-        this.orderId = orderId;
+        this.orderId = freeze(orderId);
     }
 
     void setOrderIdRscSets(final Map<String, List<CrmXml.RscSet>> orderIdRscSets) {
-        this.orderIdRscSets = orderIdRscSets;
+        this.orderIdRscSets = freeze(orderIdRscSets);
     }
 
     void setColocationIdRscSets(final Map<String, List<CrmXml.RscSet>> colocationIdRscSets) {
-        this.colocationIdRscSets = colocationIdRscSets;
+        this.colocationIdRscSets = freeze(colocationIdRscSets);
     }
 
     List<RscSetConnectionData> getRscSetConnections() {
@@ -202,7 +280,7 @@ final class CibQuery {
     }
 
     void setRscSetConnections(final List<RscSetConnectionData> rscSetConnections) {
-        this.rscSetConnections = rscSetConnections;
+        this.rscSetConnections = freeze(rscSetConnections);
     }
 
     Map<String, CrmXml.OrderData> getOrderId() {
@@ -222,15 +300,31 @@ final class CibQuery {
     }
 
     void setNodeParameters(final Table<String, String, String> nodeParameters) {
-        this.nodeParameters = nodeParameters;
+        this.nodeParameters = freezeTable(nodeParameters);
     }
 
     Table<String, String, String> getNodeParameters() {
         return nodeParameters;
     }
 
+    void setNodeIds(final Map<String, String> nodeIds) {
+        this.nodeIds = freeze(nodeIds);
+    }
+
+    Map<String, String> getNodeIds() {
+        return nodeIds;
+    }
+
+    void setNodeUnames(final Map<String, String> nodeUnames) {
+        this.nodeUnames = freeze(nodeUnames);
+    }
+
+    Map<String, String> getNodeUnames() {
+        return nodeUnames;
+    }
+
     void setLocations(final Map<String, Map<String, HostLocation>> locations) {
-        this.locations = locations;
+        this.locations = freeze(locations);
     }
 
     Map<String, Map<String, HostLocation>> getLocations() {
@@ -238,7 +332,7 @@ final class CibQuery {
     }
 
     void setPingLocations(final Map<String, HostLocation> pingLocations) {
-        this.pingLocations = pingLocations;
+        this.pingLocations = freeze(pingLocations);
     }
 
     Map<String, HostLocation> getPingLocations() {
@@ -246,7 +340,7 @@ final class CibQuery {
     }
 
     void setLocationsId(final Map<String, List<String>> locationsId) {
-        this.locationsId = locationsId;
+        this.locationsId = freeze(locationsId);
     }
 
     Map<String, List<String>> getLocationsId() {
@@ -254,7 +348,7 @@ final class CibQuery {
     }
 
     void setLocationMap(final Map<String, HostLocation> idToLocation) {
-        this.idToLocation = idToLocation;
+        this.idToLocation = freeze(idToLocation);
     }
 
     Map<String, HostLocation> getLocationMap() {
@@ -262,7 +356,7 @@ final class CibQuery {
     }
 
     void setResHostToLocId(final Table<String, String, String> resHostToLocId) {
-        this.resHostToLocId = resHostToLocId;
+        this.resHostToLocId = freezeTable(resHostToLocId);
     }
 
     Table<String, String, String> getResHostToLocId() {
@@ -270,7 +364,7 @@ final class CibQuery {
     }
 
     void setResPingToLocId(final Map<String, String> resPingToLocId) {
-        this.resPingToLocId = resPingToLocId;
+        this.resPingToLocId = freeze(resPingToLocId);
     }
 
     Map<String, String> getResPingToLocId() {
@@ -282,15 +376,15 @@ final class CibQuery {
     }
 
     void setOperationsRefs(final Map<String, String> operationsRefs) {
-        this.operationsRefs = operationsRefs;
+        this.operationsRefs = freeze(operationsRefs);
     }
 
     void setMetaAttrsRefs(final Map<String, String> metaAttrsRefs) {
-        this.metaAttrsRefs = metaAttrsRefs;
+        this.metaAttrsRefs = freeze(metaAttrsRefs);
     }
 
     void setMetaAttrsId(final Map<String, String> metaAttrsId) {
-        this.metaAttrsId = metaAttrsId;
+        this.metaAttrsId = freeze(metaAttrsId);
     }
 
     Map<String, String> getMetaAttrsId() {
@@ -310,7 +404,7 @@ final class CibQuery {
     }
 
     void setOperationsId(final Map<String, String> operationsId) {
-        this.operationsId = operationsId;
+        this.operationsId = freeze(operationsId);
     }
 
     Map<String, String> getOperationsId() {
@@ -318,7 +412,7 @@ final class CibQuery {
     }
 
     void setResOpIds(final Map<String, Map<String, String>> resOpIds) {
-        this.resOpIds = resOpIds;
+        this.resOpIds = freeze(resOpIds);
     }
 
     Map<String, Map<String, String>> getResOpIds() {
@@ -326,7 +420,7 @@ final class CibQuery {
     }
 
     void setNodeOnline(final Map<String, String> nodeOnline) {
-        this.nodeOnline = nodeOnline;
+        this.nodeOnline = freeze(nodeOnline);
     }
 
     Map<String, String> getNodeOnline() {
@@ -334,7 +428,7 @@ final class CibQuery {
     }
 
     void setNodePending(final Set<String> nodePending) {
-        this.nodePending = nodePending;
+        this.nodePending = freeze(nodePending);
     }
 
     Collection<String> getNodePending() {
@@ -342,7 +436,7 @@ final class CibQuery {
     }
 
     void setFencedNodes(final Set<String> fencedNodes) {
-        this.fencedNodes = fencedNodes;
+        this.fencedNodes = freeze(fencedNodes);
     }
 
     Collection<String> getFencedNodes() {
@@ -350,7 +444,7 @@ final class CibQuery {
     }
 
     void setGroupsToResources(final Map<String, List<String>> groupsToResources) {
-        this.groupsToResources = groupsToResources;
+        this.groupsToResources = freeze(groupsToResources);
     }
 
     Map<String, List<String>> getGroupsToResources() {
@@ -358,7 +452,7 @@ final class CibQuery {
     }
 
     void setCloneToResource(final Map<String, String> cloneToResource) {
-        this.cloneToResource = cloneToResource;
+        this.cloneToResource = freeze(cloneToResource);
     }
 
     Map<String, String> getCloneToResource() {
@@ -366,7 +460,7 @@ final class CibQuery {
     }
 
     void setMasterList(final List<String> masterList) {
-        this.masterList = masterList;
+        this.masterList = freeze(masterList);
     }
 
     Collection<String> getMasterList() {
@@ -381,8 +475,24 @@ final class CibQuery {
         return designatedCoOrdinator;
     }
 
+    /** Returns a copy with the new designated coordinator. */
+    CibQuery withDC(final String dc) {
+        final CibQuery copy = copy();
+        copy.setDC(dc);
+        return copy;
+    }
+
+    /** Returns a copy, where the node is online or not, "yes", "no" or null. */
+    CibQuery withNodeOnline(final String nodeLowerCase, final String online) {
+        final Map<String, String> newNodeOnline = new HashMap<String, String>(nodeOnline);
+        newNodeOnline.put(nodeLowerCase, online);
+        final CibQuery copy = copy();
+        copy.setNodeOnline(newNodeOnline);
+        return copy;
+    }
+
     void setNodeFailedCount(final Table<String, String, String> nodeFailedCount) {
-        this.nodeFailedCount = nodeFailedCount;
+        this.nodeFailedCount = freezeTable(nodeFailedCount);
     }
 
     Table<String, String, String> getNodeFailedCount() {
@@ -390,7 +500,7 @@ final class CibQuery {
     }
 
     void setNodePingCount(final Map<String, String> nodePingCount) {
-        this.nodePingCount = nodePingCount;
+        this.nodePingCount = freeze(nodePingCount);
     }
 
     Map<String, String> getNodePingCount() {
@@ -398,7 +508,7 @@ final class CibQuery {
     }
 
     void setResourceFailedCloneIds(final Table<String ,String, Set<String>> resourceFailedCloneIds) {
-        this.resourceFailedCloneIds = resourceFailedCloneIds;
+        this.resourceFailedCloneIds = freezeTable(resourceFailedCloneIds);
     }
 
     Table<String ,String, Set<String>> getResourceFailedCloneIds() {
@@ -422,7 +532,7 @@ final class CibQuery {
     }
 
     void setRscDefaultsParams(final Map<String, String> rscDefaultsParams) {
-        this.rscDefaultsParams = rscDefaultsParams;
+        this.rscDefaultsParams = freeze(rscDefaultsParams);
     }
 
     Map<String, String> getRscDefaultsParams() {
@@ -430,7 +540,7 @@ final class CibQuery {
     }
 
     void setRscDefaultsParamsNvpairIds(final Map<String, String> rscDefaultsParamsNvpairIds) {
-        this.rscDefaultsParamsNvpairIds = rscDefaultsParamsNvpairIds;
+        this.rscDefaultsParamsNvpairIds = freeze(rscDefaultsParamsNvpairIds);
     }
 
     Map<String, String> getRscDefaultsParamsNvpairIds() {
@@ -438,10 +548,99 @@ final class CibQuery {
     }
 
     void setOpDefaultsParams(final Map<String, Value> opDefaultsParams) {
-        this.opDefaultsParams = opDefaultsParams;
+        this.opDefaultsParams = freeze(opDefaultsParams);
     }
 
     Map<String, Value> getOpDefaultsParams() {
         return opDefaultsParams;
     }
+
+    private static boolean isFrozen(final Object collection) {
+        return collection instanceof ImmutableTable || FROZEN_CLASSES.contains(collection.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T freezeValue(final T value) {
+        if (value instanceof String) {
+            return (T) STRINGS.intern((String) value);
+        } else if (value instanceof Map) {
+            return (T) freeze((Map<?, ?>) value);
+        } else if (value instanceof List) {
+            return (T) freeze((List<?>) value);
+        } else if (value instanceof Set) {
+            return (T) freeze((Set<?>) value);
+        }
+        return value;
+    }
+
+    /** Returns an unmodifiable copy of the map with the same order, keys and values are frozen too. */
+    private static <K, V> Map<K, V> freeze(final Map<K, V> map) {
+        if (map == null || isFrozen(map)) {
+            return map;
+        }
+        if (map.isEmpty()) {
+            return Collections.emptyMap();
+        } else if (map.size() == 1) {
+            final Map.Entry<K, V> entry = map.entrySet().iterator().next();
+            return Collections.singletonMap(freezeValue(entry.getKey()), freezeValue(entry.getValue()));
+        }
+        final Map<K, V> copy;
+        if (map instanceof LinkedHashMap) {
+            copy = new LinkedHashMap<K, V>(map.size() * 4 / 3 + 1);
+        } else {
+            copy = new HashMap<K, V>(map.size() * 4 / 3 + 1);
+        }
+        for (final Map.Entry<K, V> entry : map.entrySet()) {
+            copy.put(freezeValue(entry.getKey()), freezeValue(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static <E> Set<E> freeze(final Set<E> set) {
+        if (set == null || isFrozen(set)) {
+            return set;
+        }
+        if (set.isEmpty()) {
+            return Collections.emptySet();
+        } else if (set.size() == 1) {
+            return Collections.singleton(freezeValue(set.iterator().next()));
+        }
+        final Set<E> copy;
+        if (set instanceof LinkedHashSet) {
+            copy = new LinkedHashSet<E>(set.size() * 4 / 3 + 1);
+        } else {
+            copy = new HashSet<E>(set.size() * 4 / 3 + 1);
+        }
+        for (final E element : set) {
+            copy.add(freezeValue(element));
+        }
+        return Collections.unmodifiableSet(copy);
+    }
+
+    private static <E> List<E> freeze(final List<E> list) {
+        if (list == null || isFrozen(list)) {
+            return list;
+        }
+        if (list.isEmpty()) {
+            return Collections.emptyList();
+        } else if (list.size() == 1) {
+            return Collections.singletonList(freezeValue(list.get(0)));
+        }
+        final List<E> copy = new ArrayList<E>(list.size());
+        for (final E element : list) {
+            copy.add(freezeValue(element));
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    private static <R, C, V> Table<R, C, V> freezeTable(final Table<R, C, V> table) {
+        if (table == null || isFrozen(table)) {
+            return table;
+        }
+        final ImmutableTable.Builder<R, C, V> builder = ImmutableTable.builder();
+        for (final Table.Cell<R, C, V> cell : table.cellSet()) {
+            builder.put(freezeValue(cell.getRowKey()), freezeValue(cell.getColumnKey()), freezeValue(cell.getValue()));
+        }
+        return builder.build();
+    }
 }
@@ -0,0 +1,318 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Parses the cib and the resource status as a stream, without the DOM of
+ * the whole document.
+ *
+ * The resource status is read directly into the resource status map. Of
+ * the cib only the configuration sections and the node states are kept as
+ * small DOM fragments for the section parsers in CrmXml. The operation
+ * history in the lrm, that is the biggest part of the cib and that the
+ * parsers don't use, is skipped.
+ */
+final class CibStreamParser {
+    private static final Logger LOG = LoggerFactory.getLogger(CibStreamParser.class);
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+    private static final Set<String> NO_SKIPPED_ELEMENTS = Collections.emptySet();
+    /** Operation history in the node states. */
+    private static final Set<String> LRM_OPERATIONS = Collections.singleton("lrm_rsc_op");
+    private static final Set<String> CONFIGURATION_SECTIONS =
+                                            new HashSet<String>(Arrays.asList(CrmXml.CIB_CONFIGURATION_SECTIONS));
+
+    private final CrmXml crmXml;
+
+    CibStreamParser(final CrmXml crmXml) {
+        this.crmXml = crmXml;
+    }
+
+    /** Returns CibQuery object with information from the <pcmk> document. */
+    CibQuery parseCibQuery(final String query) {
+        if (isEmpty(query)) {
+            LOG.appWarning("parseCibQuery: cib error: " + query);
+            return new CibQuery();
+        }
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(query));
+            if (!nextChild(reader) || !"pcmk".equals(reader.getLocalName())) {
+                LOG.appWarning("parseCibQuery: there is no pcmk node");
+                return new CibQuery();
+            }
+            final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+            Set<String> fencedNodes = null;
+            String dcUuid = null;
+            boolean cibFound = false;
+            boolean configurationFound = false;
+            final Map<String, Node> sections = new HashMap<String, Node>();
+            final List<Node> nodeStates = new ArrayList<Node>();
+            while (nextChild(reader)) {
+                final String name = reader.getLocalName();
+                if ("fenced".equals(name) && fencedNodes == null) {
+                    fencedNodes = crmXml.parseFencedNodes(readElement(reader, document, NO_SKIPPED_ELEMENTS));
+                } else if ("cib".equals(name) && !cibFound) {
+                    cibFound = true;
+                    /* Designated Co-ordinator */
+                    dcUuid = reader.getAttributeValue(null, "dc-uuid");
+                    while (nextChild(reader)) {
+                        final String cibChild = reader.getLocalName();
+                        if ("configuration".equals(cibChild) && !configurationFound) {
+                            configurationFound = true;
+                            readConfiguration(reader, document, sections);
+                        } else if ("status".equals(cibChild)) {
+                            readNodeStates(reader, document, nodeStates);
+                        } else {
+                            skipElement(reader);
+                        }
+                    }
+                } else {
+                    skipElement(reader);
+                }
+            }
+            if (!cibFound) {
+                LOG.appWarning("parseCibQuery: there is no cib node");
+                return new CibQuery();
+            }
+            if (!configurationFound) {
+                LOG.appWarning("parseCibQuery: there is no configuration node");
+                return new CibQuery();
+            }
+            if (fencedNodes == null) {
+                fencedNodes = new HashSet<String>();
+            }
+            return crmXml.parseCib(dcUuid, sections, nodeStates, fencedNodes);
+        } catch (final XMLStreamException e) {
+            LOG.appError("parseCibQuery: could not parse: " + query, e);
+            return new CibQuery();
+        } catch (final ParserConfigurationException e) {
+            throw new RuntimeException("parseCibQuery: parser configuration", e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /** Returns a hash with resource information from the <resource_status> document or null. */
+    Map<String, CrmXml.ResourceStatus> parseResStatus(final String resStatus) {
+        if (isEmpty(resStatus)) {
+            return null;
+        }
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(resStatus));
+            if (!nextChild(reader) || !"resource_status".equals(reader.getLocalName())) {
+                return null;
+            }
+            final Map<String, CrmXml.ResourceStatus> resStatusMap = new HashMap<String, CrmXml.ResourceStatus>();
+            /*      <resource...> */
+            while (nextChild(reader)) {
+                if ("resource".equals(reader.getLocalName())) {
+                    final String id = reader.getAttributeValue(null, "id");
+                    resStatusMap.put(id, readResourceStatus(reader));
+                } else {
+                    skipElement(reader);
+                }
+            }
+            return resStatusMap;
+        } catch (final XMLStreamException e) {
+            LOG.appError("parseResStatus: could not parse: " + resStatus, e);
+            return null;
+        } finally {
+            close(reader);
+        }
+    }
+
+    private CrmXml.ResourceStatus readResourceStatus(final XMLStreamReader reader) throws XMLStreamException {
+        final boolean managed = "managed".equals(reader.getAttributeValue(null, "managed"));
+        Map<String, String> allocationScores = new HashMap<String, String>();
+        List<String> runningOnList = null;
+        List<String> masterOnList = null;
+        List<String> slaveOnList = null;
+        while (nextChild(reader)) {
+            final String name = reader.getLocalName();
+            if (CrmXml.TARGET_ROLE_STARTED.equalsIgnoreCase(name)) {
+                if (runningOnList == null) {
+                    runningOnList = new ArrayList<String>();
+                }
+                runningOnList.add(reader.getElementText());
+            } else if (CrmXml.TARGET_ROLE_MASTER.equalsIgnoreCase(name)) {
+                if (masterOnList == null) {
+                    masterOnList = new ArrayList<String>();
+                }
+                masterOnList.add(reader.getElementText());
+            } else if (CrmXml.TARGET_ROLE_SLAVE.equalsIgnoreCase(name)) {
+                if (slaveOnList == null) {
+                    slaveOnList = new ArrayList<String>();
+                }
+                slaveOnList.add(reader.getElementText());
+            } else if ("scores".equals(name)) {
+                allocationScores = readAllocationScores(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return new CrmXml.ResourceStatus(runningOnList, masterOnList, slaveOnList, allocationScores, managed);
+    }
+
+    private Map<String, String> readAllocationScores(final XMLStreamReader reader) throws XMLStreamException {
+        final Map<String, String> allocationScores = new HashMap<String, String>();
+        while (nextChild(reader)) {
+            if ("score".equals(reader.getLocalName())) {
+                allocationScores.put(reader.getAttributeValue(null, "host"), reader.getAttributeValue(null, "score"));
+            }
+            skipElement(reader);
+        }
+        return allocationScores;
+    }
+
+    /** Keeps the first of each configuration sections. */
+    private void readConfiguration(final XMLStreamReader reader,
+                                   final Document document,
+                                   final Map<String, Node> sections) throws XMLStreamException {
+        while (nextChild(reader)) {
+            final String section = reader.getLocalName();
+            if (CONFIGURATION_SECTIONS.contains(section) && !sections.containsKey(section)) {
+                sections.put(section, readElement(reader, document, NO_SKIPPED_ELEMENTS));
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    private void readNodeStates(final XMLStreamReader reader,
+                                final Document document,
+                                final Collection<Node> nodeStates) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (CrmXml.NODE_STATE.equals(reader.getLocalName())) {
+                nodeStates.add(readElement(reader, document, LRM_OPERATIONS));
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    /**
+     * Moves the reader to the start of the next child element and returns
+     * true, or to the end of the current element and returns false.
+     */
+    static boolean nextChild(final XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /** Moves the reader from the start to the end of the current element. */
+    static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Returns the current element as DOM element, without the skipped child
+     * elements and without the white space between the elements.
+     */
+    static Element readElement(final XMLStreamReader reader,
+                               final Document document,
+                               final Set<String> skippedElements) throws XMLStreamException {
+        final Element element = document.createElement(reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (skippedElements.contains(reader.getLocalName())) {
+                    skipElement(reader);
+                } else {
+                    element.appendChild(readElement(reader, document, skippedElements));
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                if (!reader.isWhiteSpace()) {
+                    element.appendChild(document.createTextNode(reader.getText()));
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return element;
+    }
+
+    /** Same as the empty documents in XMLTools.getXMLDocument. */
+    private static boolean isEmpty(final String xml) {
+        if (xml == null) {
+            return true;
+        }
+        final String trimmed = xml.trim();
+        return trimmed.isEmpty() || "no resources defined!".equals(trimmed);
+    }
+
+    private static void close(final XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (final XMLStreamException e) {
+                LOG.appWarning("close: " + e.getMessage());
+            }
+        }
+    }
+}
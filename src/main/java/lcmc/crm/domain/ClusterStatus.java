@@ -40,6 +40,7 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -52,16 +53,30 @@ import java.util.Set;
 @Named
 public class ClusterStatus {
     private static final Logger LOG = LoggerFactory.getLogger(ClusterStatus.class);
+    /**
+     * The cib query is never changed, after it is published here, so that
+     * it can be read without locks. The updates replace it.
+     */
     private volatile CibQuery cibQuery = new CibQuery();
+    private final Object cibQueryUpdateLock = new Object();
+    /** Number of the published cib, that changes with every cib update. */
+    private volatile long cibSerial = 0;
     private volatile CibQuery shadowCibQuery = new CibQuery();
     private CrmXml crmXML;
     /** On which node the resource is running or is a slave. */
     private volatile Map<String, CrmXml.ResourceStatus> resStateMap = null;
     private volatile PtestData ptestResult = null;
+    /** Resources and constraints, that changed with the last status update. */
+    private volatile CibChanges lastChanges = CibChanges.ALL;
     private String oldStatus = null;
     private String oldCib = null;
     private boolean oldAdvancedMode = false;
+    private CibDeltaApplier cibDeltaApplier;
+    /** Whether the whole cib is being fetched again, after a gap in the deltas. */
+    private boolean cibResync = false;
     private Host host;
+    /** Host of the active status stream, the whole cib is fetched from it. */
+    private volatile Host statusHost = null;
     @Inject
     private Application application;
     @Inject
@@ -73,6 +88,7 @@ public class ClusterStatus {
     public void init(final Host host, final CrmXml crmXML) {
         this.host = host;
         this.crmXML = crmXML;
+        cibDeltaApplier = new CibDeltaApplier(crmXML);
         final String command = host.getHostParser().getDistCommand("Heartbeat.getClusterMetadata",
                                                    (ConvertCmdCallback) null);
         final SshOutput ret = host.captureCommandProgressIndicator(Tools.getString("Heartbeat.getClusterMetadata"),
@@ -130,7 +146,9 @@ public class ClusterStatus {
     }
 
     public void setDC(final String dc) {
-        cibQuery.setDC(dc);
+        synchronized (cibQueryUpdateLock) {
+            cibQuery = cibQuery.withDC(dc);
+        }
     }
 
     public Map<String, String> getRscDefaultsValuePairs() {
@@ -141,13 +159,20 @@ public class ClusterStatus {
         return cibQuery.getOpDefaultsParams();
     }
 
+    /**
+     * Returns a copy of the parameters of the resource, that the resource
+     * can add its ids to, or null.
+     */
     public Map<String, String> getParamValuePairs(final String hbId) {
-        return cibQuery.getResourceParameters().get(hbId);
+        final Map<String, String> params = cibQuery.getResourceParameters().get(hbId);
+        if (params == null) {
+            return null;
+        }
+        return new HashMap<String, String>(params);
     }
 
     public Set<String> getAllGroupsAndClones() {
-        final Map<String, List<String>> groupsToResources = cibQuery.getGroupsToResources();
-        return groupsToResources.keySet();
+        return cibQuery.getGroupsToResources().keySet();
     }
 
     public Optional<List<String>> getGroupResources(final String group, final Application.RunMode runMode) {
@@ -404,7 +429,9 @@ public class ClusterStatus {
      * "yes", "no" or null if it is unknown.
      */
     public void setOnlineNode(final String node, final String online) {
-        cibQuery.getNodeOnline().put(node.toLowerCase(Locale.US), online);
+        synchronized (cibQueryUpdateLock) {
+            cibQuery = cibQuery.withNodeOnline(node.toLowerCase(Locale.US), online);
+        }
     }
 
     public boolean isPendingNode(final String node) {
@@ -470,6 +497,20 @@ public class ClusterStatus {
                     parseCibQuery(cib);
                     return true;
                 }
+            } else if ("cib_delta".equals(cmd)) {
+                final String delta = Tools.join("\n", data.toArray(new String[data.size()]));
+                final boolean advancedMode = access.isAdvancedMode();
+                final CibDeltaApplier.Result result = cibDeltaApplier.apply(delta);
+                if (result == CibDeltaApplier.Result.GAP) {
+                    return resyncCib();
+                }
+                if (result == CibDeltaApplier.Result.CHANGED || oldAdvancedMode != advancedMode) {
+                    LOG.debug1("parseCommand: cib delta: " + host.getName());
+                    oldAdvancedMode = advancedMode;
+                    oldCib = null;
+                    publishCibQuery(cibDeltaApplier.getCibQuery());
+                    return true;
+                }
             }
         } else {
             LOG.appError("parseCommand: unknown command: " + command);
@@ -477,7 +518,38 @@ public class ClusterStatus {
         return false;
     }
 
+    /** Sets the host, that the status comes from now. */
+    public void setStatusHost(final Host statusHost) {
+        this.statusHost = statusHost;
+    }
+
+    /** Gets and applies the whole cib, if some of the cib deltas are missing. */
+    private boolean resyncCib() {
+        final Host cibHost = statusHost == null ? host : statusHost;
+        if (cibResync) {
+            LOG.appWarning("resyncCib: " + cibHost.getName() + ": the whole cib could not be applied");
+            return false;
+        }
+        LOG.info("resyncCib: " + cibHost.getName() + ": getting the whole cib");
+        final SshOutput ret = cibHost.captureCommand(new ExecCommandConfig().commandString("Heartbeat.getClusterInfo")
+                                                                         .silentCommand()
+                                                                         .silentOutput());
+        if (ret.getExitCode() != 0) {
+            LOG.appWarning("resyncCib: " + cibHost.getName() + ": could not get the cib, exit code: " + ret.getExitCode());
+            return false;
+        }
+        cibResync = true;
+        try {
+            return parseStatus(cibHost.getHostParser().getCompressedFrames().expand(ret.getOutput()));
+        } finally {
+            cibResync = false;
+        }
+    }
+
     public boolean parseStatus(final String status) {
+        final CibQuery oldCibQuery = cibQuery;
+        final Map<String, CrmXml.ResourceStatus> oldResStateMap = resStateMap;
+        final boolean oldAdvanced = oldAdvancedMode;
         final String[] lines = status.split("\n");
         String command    = null;
         List<String> data = null;
@@ -522,15 +594,45 @@ public class ClusterStatus {
                 LOG.appWarning("parseStatus: error parsing heartbeat status, line not ok: " + line + '\n' + status);
             }
         }
+        if (updated) {
+            if (oldAdvanced == oldAdvancedMode) {
+                lastChanges = CibChanges.between(oldCibQuery, oldResStateMap, cibQuery, resStateMap);
+            } else {
+                lastChanges = CibChanges.ALL;
+            }
+        }
         return updated;
     }
 
+    /**
+     * Returns the resources and constraints, that changed with the last
+     * status update, that returned true.
+     */
+    public CibChanges getLastChanges() {
+        return lastChanges;
+    }
+
     private void parseResStatus(final String resStatus) {
         resStateMap = crmXML.parseResStatus(resStatus);
     }
 
     private void parseCibQuery(final String query) {
-        cibQuery = crmXML.parseCibQuery(query);
+        publishCibQuery(crmXML.parseCibQuery(query));
+    }
+
+    private void publishCibQuery(final CibQuery newCibQuery) {
+        synchronized (cibQueryUpdateLock) {
+            cibQuery = newCibQuery;
+            cibSerial++;
+        }
+    }
+
+    /**
+     * Returns the number of the cib, that changes with every update of the
+     * cib, like the epoch and num_updates in the cib.
+     */
+    public long getCibSerial() {
+        return cibSerial;
     }
 
     public void setPtestResult(final PtestData ptestResult) {
@@ -545,6 +647,9 @@ public class ClusterStatus {
 
     /** Return last known raw cib. */
     public String getCibXml() {
+        if (oldCib == null && cibDeltaApplier != null) {
+            return cibDeltaApplier.getCibXml();
+        }
         return oldCib;
     }
 }
@@ -31,12 +31,15 @@ import lcmc.cluster.service.ssh.SshOutput;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.cluster.ui.network.InfoPresenter;
 import lcmc.common.domain.*;
+import lcmc.common.domain.util.ExecutionService;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.main.ProgressIndicator;
+import lcmc.crm.ui.resource.AvailableServiceInfo;
 import lcmc.crm.ui.resource.ServiceInfo;
 import lcmc.crm.ui.resource.ServicesInfo;
 import lcmc.crm.ui.resource.update.ResourceUpdater;
 import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.CompressedFrames;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 import lcmc.robotest.StartTests;
@@ -49,8 +52,11 @@ import org.w3c.dom.NodeList;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
+import javax.swing.SwingUtilities;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -83,6 +89,20 @@ public class CrmXml {
     private static final String PARAM_TYPE_STRING = "string";
     private static final String PARAM_TYPE_TIME = "time";
     private static final String FAIL_COUNT_PREFIX = "fail-count-";
+    static final String CRM_CONFIG_SECTION = "crm_config";
+    static final String RSC_DEFAULTS_SECTION = "rsc_defaults";
+    static final String OP_DEFAULTS_SECTION = "op_defaults";
+    static final String NODES_SECTION = "nodes";
+    static final String RESOURCES_SECTION = "resources";
+    static final String CONSTRAINTS_SECTION = "constraints";
+    /** Sections of the <configuration> in the order, in which they are parsed. */
+    static final String[] CIB_CONFIGURATION_SECTIONS = {CRM_CONFIG_SECTION,
+                                                        RSC_DEFAULTS_SECTION,
+                                                        OP_DEFAULTS_SECTION,
+                                                        NODES_SECTION,
+                                                        RESOURCES_SECTION,
+                                                        CONSTRAINTS_SECTION};
+    static final String NODE_STATE = "node_state";
     private static final Value[] ATTRIBUTE_ROLES = {new StringValue(),
                                                     new StringValue("Stopped"),
                                                     new StringValue("Started")};
@@ -103,8 +123,8 @@ public class CrmXml {
                                                                    new StringValue("demote"),
                                                                    new StringValue("stop")};
     public static final String TARGET_ROLE_STOPPED = "stopped";
-    private static final String TARGET_ROLE_STARTED = "started";
-    private static final String TARGET_ROLE_MASTER = "master";
+    static final String TARGET_ROLE_STARTED = "started";
+    static final String TARGET_ROLE_MASTER = "master";
     public static final String TARGET_ROLE_SLAVE = "slave";
     public static final Value INFINITY_VALUE = new StringValue("INFINITY");
     public static final Value PLUS_INFINITY_VALUE = new StringValue("+INFINITY");
@@ -176,6 +196,10 @@ public class CrmXml {
     public static final String PARAM_OCF_CHECK_LEVEL = "OCF_CHECK_LEVEL";
 
     private static final Pattern UNIT_PATTERN = Pattern.compile("^(\\d+)(\\D*)$");
+    /** How many agents are fetched with one command by the prefetcher. */
+    private static final int PREFETCH_BATCH_SIZE = 20;
+    /** How many agents' meta data are parsed at the same time. */
+    private static final int META_DATA_PARSER_THREADS = Runtime.getRuntime().availableProcessors();
 
     static {
         /* target-role */
@@ -333,6 +357,10 @@ public class CrmXml {
     private StartTests startTests;
     @Inject
     private Provider<ResourceUpdater> resourceUpdaterProvider;
+    @Inject
+    private ResourceAgentMetaDataCache resourceAgentMetaDataCache;
+    @Inject
+    private ExecutionService executionService;
 
     public static Unit getUnitMilliSec() {
         return new Unit("ms", "ms", "Millisecond", "Milliseconds");
@@ -406,16 +434,25 @@ public class CrmXml {
     private final ResourceAgent linbitDrbdResourceAgent = new ResourceAgent("drbd",
                                                                             "linbit",
                                                                             ResourceAgent.OCF_CLASS_NAME);
-    private final MultiKeyMap<String, ResourceAgent> serviceToResourceAgentMap =
-                                                                    new MultiKeyMap<String, ResourceAgent>();
+    /** Agents by class:provider:name, they are filled by the parsers in parallel. */
+    private final ConcurrentMap<String, ResourceAgent> serviceToResourceAgentMap =
+                                                            new ConcurrentHashMap<String, ResourceAgent>();
+    private final CibStreamParser cibStreamParser = new CibStreamParser(this);
     private boolean drbddiskResourceAgentPresent;
     private boolean linbitDrbdResourceAgentPresent;
     private final List<Value> stonithHostlistChoices = new ArrayList<Value>();
     private Map<String, String> metaAttrParams = null;
     private Map<String, String> resourceDefaultsMetaAttrs = null;
+    private ServicesInfo allServicesInfo;
+    /** Agents, whose meta-data are being fetched, by class:provider:name. */
+    private final ConcurrentMap<String, CountDownLatch> metaDataLoads =
+                                                            new ConcurrentHashMap<String, CountDownLatch>();
+    /** Agents, that didn't return any meta-data. */
+    private final Set<String> unavailableMetaData = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public void init(final Host host, final ServicesInfo allServicesInfo) {
         this.host = host;
+        this.allServicesInfo = allServicesInfo;
         final Value[] booleanValues = PCMK_BOOLEAN_VALUES;
         final Value hbBooleanTrue = booleanValues[0];
         final Value hbBooleanFalse = booleanValues[1];
@@ -718,7 +755,7 @@ public class CrmXml {
         final Thread t = new Thread(new Runnable() {
             @Override
             public void run() {
-                initOCFMetaDataAll();
+                prefetchOCFMetaData();
                 final String hn = host.getName();
                 final String text = Tools.getString("CRMXML.GetRAMetaData.Done");
                 progressIndicator.startProgressIndicator(hn, text);
@@ -739,6 +776,7 @@ public class CrmXml {
                 }
             }
         });
+        t.setPriority(Thread.MIN_PRIORITY);
         t.start();
     }
 
@@ -756,7 +794,7 @@ public class CrmXml {
             linbitDrbdResourceAgentPresent = linbitDrbdPresent0;
             return;
         }
-        final String output = ret.getOutput();
+        final String output = host.getHostParser().getCompressedFrames().expand(ret.getOutput());
         if (output == null) {
             drbddiskResourceAgentPresent = drbddiskPresent0;
             linbitDrbdResourceAgentPresent = linbitDrbdPresent0;
@@ -813,7 +851,7 @@ public class CrmXml {
                         setLsbResourceAgent(serviceName, resourceClass, ra);
                     }
                 }
-                serviceToResourceAgentMap.put(serviceName, provider, resourceClass, ra);
+                serviceToResourceAgentMap.put(getAgentKey(resourceClass, provider, serviceName), ra);
                 List<ResourceAgent> raList = classToServicesMap.get(resourceClass);
                 if (raList == null) {
                     raList = new ArrayList<ResourceAgent>();
@@ -833,76 +871,277 @@ public class CrmXml {
      * For faster start up.
      */
     private void initOCFMetaDataConfigured() {
-        initOCFResourceAgentsWithMetaData(host.getHostParser().getDistCommand("Heartbeat.getOCFParametersConfigured",
-                                          (ConvertCmdCallback) null));
+        final List<ResourceAgentOutput> agents = new ArrayList<ResourceAgentOutput>();
+        final String raVersion = fetchResourceAgents(
+                host.getHostParser().getDistCommand("Heartbeat.getOCFParametersConfigured",
+                                                    (ConvertCmdCallback) null),
+                agents);
+        if (raVersion != null) {
+            storeResourceAgents(getCacheFingerprint(raVersion), agents);
+        }
     }
 
-    /** Initialize resource agents with their meta data. */
-    private void initOCFMetaDataAll() {
-        initOCFResourceAgentsWithMetaData(host.getHostParser().getDistCommand("Heartbeat.getOCFParameters",
-                                          (ConvertCmdCallback) null));
+    /**
+     * Loads the meta data of the other agents in the background, after the
+     * cluster is shown. Only the checksums of the agents are fetched first,
+     * the meta data of the unchanged agents are taken from the local cache
+     * and the rest is fetched in small batches.
+     */
+    void prefetchOCFMetaData() {
+        final List<ResourceAgentOutput> checksums = new ArrayList<ResourceAgentOutput>();
+        final String raVersion = fetchResourceAgents(
+                host.getHostParser().getDistCommand("Heartbeat.getOCFChecksums", (ConvertCmdCallback) null),
+                checksums);
+        final List<ResourceAgent> missing = new ArrayList<ResourceAgent>();
+        int cached = 0;
+        String fingerprint = null;
+        if (raVersion == null) {
+            for (final String raClass : new String[]{ResourceAgent.OCF_CLASS_NAME,
+                                                     ResourceAgent.STONITH_CLASS_NAME}) {
+                final List<ResourceAgent> resourceAgents = classToServicesMap.get(raClass);
+                if (resourceAgents == null) {
+                    continue;
+                }
+                for (final ResourceAgent resourceAgent : resourceAgents) {
+                    if (isMetaDataLoadable(resourceAgent)) {
+                        missing.add(resourceAgent);
+                    }
+                }
+            }
+        } else {
+            fingerprint = getCacheFingerprint(raVersion);
+            for (final ResourceAgentOutput agent : checksums) {
+                if (agent.xml != null) {
+                    /* without checksum, e.g. old stonith plugins, they are loaded already */
+                    continue;
+                }
+                final ResourceAgent resourceAgent = getInstalledResourceAgent(agent.name,
+                                                                              agent.provider,
+                                                                              agent.resourceClass);
+                if (resourceAgent == null || !isMetaDataLoadable(resourceAgent)) {
+                    continue;
+                }
+                final ResourceAgentMetaDataCache.Entry entry =
+                                      resourceAgentMetaDataCache.get(fingerprint, agent.getKey(), agent.checksum);
+                if (entry == null) {
+                    missing.add(resourceAgent);
+                } else {
+                    parseMetaDataAndFillHashes(agent.name, agent.provider, entry.getXml(), entry.isMasterSlave());
+                    cached++;
+                }
+            }
+        }
+        for (int i = 0; i < missing.size(); i += PREFETCH_BATCH_SIZE) {
+            loadMetaData(missing.subList(i, Math.min(i + PREFETCH_BATCH_SIZE, missing.size())));
+        }
+        if (fingerprint != null) {
+            resourceAgentMetaDataCache.removeOthers(host.getName(), fingerprint);
+        }
+        LOG.info("prefetchOCFMetaData: " + host.getName()
+                 + ": cached: " + cached
+                 + ", fetched: " + missing.size()
+                 + ", cache " + resourceAgentMetaDataCache.getStatistics());
+        warnIfDrbddiskIsMissing();
     }
 
-    private void initOCFResourceAgentsWithMetaData(final String command) {
-        final SshOutput ret = host.captureCommand(new ExecCommandConfig().command(command)
-                                                                         .silentCommand()
-                                                                         .silentOutput()
-                                                                         .sshCommandTimeout(300000));
-        if (ret.getExitCode() != 0) {
-            return;
-        }
-        final String output = ret.getOutput();
-        if (output == null) {
+    /**
+     * Loads the meta data of the agents, that are not loaded yet. Agents,
+     * that are being loaded by another thread at the moment, are not fetched
+     * again, but waited for.
+     */
+    void loadMetaData(final Collection<ResourceAgent> resourceAgents) {
+        if (host == null) {
             return;
         }
-        final String[] lines = output.split("\\r?\\n");
-        final Pattern pp = Pattern.compile("^provider:\\s*(.*?)\\s*$");
-        final Pattern mp = Pattern.compile("^master:\\s*(.*?)\\s*$");
-        final Pattern bp = Pattern.compile("<resource-agent.*\\s+name=\"(.*?)\".*");
-        final Pattern sp = Pattern.compile("^ra-name:\\s*(.*?)\\s*$");
-        final Pattern ep = Pattern.compile("</resource-agent>");
-        final StringBuilder xml = new StringBuilder("");
-        String provider = null;
-        String serviceName = null;
-        boolean nextRA = false;
-        boolean masterSlave = false; /* is probably m/s ...*/
-        for (final String line : lines) {
-            /*
-            <resource-agent name="AudibleAlarm">
-            ...
-            </resource-agent>
-            */
-            final Matcher pm = pp.matcher(line);
-            if (pm.matches()) {
-                provider = pm.group(1);
+        final Map<String, ResourceAgent> toFetch = new LinkedHashMap<String, ResourceAgent>();
+        final Map<String, CountDownLatch> loads = new HashMap<String, CountDownLatch>();
+        final List<CountDownLatch> otherLoads = new ArrayList<CountDownLatch>();
+        for (final ResourceAgent resourceAgent : resourceAgents) {
+            if (!isMetaDataLoadable(resourceAgent)) {
                 continue;
             }
-            final Matcher mm = mp.matcher(line);
-            if (mm.matches()) {
-                masterSlave = !"".equals(mm.group(1));
-                continue;
+            final String key = getAgentKey(resourceAgent);
+            final CountDownLatch load = new CountDownLatch(1);
+            final CountDownLatch otherLoad = metaDataLoads.putIfAbsent(key, load);
+            if (otherLoad != null) {
+                otherLoads.add(otherLoad);
+            } else if (resourceAgent.isMetaDataLoaded()) {
+                /* loaded, while we were looking */
+                metaDataLoads.remove(key);
+                load.countDown();
+            } else {
+                toFetch.put(key, resourceAgent);
+                loads.put(key, load);
             }
-            final Matcher sm = sp.matcher(line);
-            if (sm.matches()) {
-                serviceName = sm.group(1);
-                continue;
+        }
+        if (!toFetch.isEmpty()) {
+            try {
+                fetchMetaDataOf(toFetch);
+            } finally {
+                for (final Map.Entry<String, CountDownLatch> load : loads.entrySet()) {
+                    metaDataLoads.remove(load.getKey());
+                    load.getValue().countDown();
+                }
             }
-            final Matcher m = bp.matcher(line);
-            if (m.matches()) {
-                nextRA = true;
+        }
+        for (final CountDownLatch otherLoad : otherLoads) {
+            try {
+                otherLoad.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
-            if (nextRA) {
-                xml.append(line);
-                xml.append('\n');
-                final Matcher m2 = ep.matcher(line);
-                if (m2.matches()) {
-                    parseMetaDataAndFillHashes(serviceName, provider, xml.toString(), masterSlave);
-                    serviceName = null;
-                    nextRA = false;
-                    xml.delete(0, xml.length());
+        }
+    }
+
+    /** Fetches the meta data of the agents with one command and stores them in the cache. */
+    private void fetchMetaDataOf(final Map<String, ResourceAgent> resourceAgents) {
+        final String command = host.getHostParser().getDistCommand("Heartbeat.getOCFParametersOf",
+                                                                   new ConvertCmdCallback() {
+            @Override
+            public String convert(final String command) {
+                final StringBuilder agents = new StringBuilder();
+                for (final String agent : resourceAgents.keySet()) {
+                    agents.append(" '").append(agent).append('\'');
                 }
+                return command.replace("@AGENTS@", agents.toString().trim());
+            }
+        });
+        final List<ResourceAgentOutput> agents = new ArrayList<ResourceAgentOutput>();
+        final String raVersion = fetchResourceAgents(command, agents);
+        if (raVersion == null) {
+            return;
+        }
+        storeResourceAgents(getCacheFingerprint(raVersion), agents);
+        for (final Map.Entry<String, ResourceAgent> resourceAgent : resourceAgents.entrySet()) {
+            if (!resourceAgent.getValue().isMetaDataLoaded()) {
+                LOG.appWarning("fetchMetaDataOf: no meta-data for: " + resourceAgent.getKey());
+                unavailableMetaData.add(resourceAgent.getKey());
             }
         }
+    }
+
+    /**
+     * Loads the meta data of the agent in the background, if they are not
+     * loaded yet, and shows them, if the agent is selected.
+     */
+    void requestMetaData(final ResourceAgent resourceAgent) {
+        if (host == null
+            || !isMetaDataLoadable(resourceAgent)
+            || metaDataLoads.containsKey(getAgentKey(resourceAgent))) {
+            return;
+        }
+        executionService.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadMetaData(Collections.singletonList(resourceAgent));
+                if (!resourceAgent.isMetaDataLoaded()) {
+                    return;
+                }
+                final ClusterBrowser browser = allServicesInfo.getBrowser();
+                final InfoPresenter lastSelectedInfo = browser.getClusterViewPanel().getLastSelectedInfo();
+                if (lastSelectedInfo instanceof ServiceInfo
+                    && ((ServiceInfo) lastSelectedInfo).getResourceAgent() == resourceAgent
+                    || lastSelectedInfo instanceof AvailableServiceInfo
+                       && ((AvailableServiceInfo) lastSelectedInfo).getResourceAgent() == resourceAgent) {
+                    browser.getClusterViewPanel().reloadRightComponent();
+                }
+            }
+        });
+    }
+
+    /** Returns whether the meta data of the agent can and should be fetched. */
+    private boolean isMetaDataLoadable(final ResourceAgent resourceAgent) {
+        return !resourceAgent.isMetaDataLoaded()
+               && (ResourceAgent.OCF_CLASS_NAME.equals(resourceAgent.getResourceClass())
+                   || resourceAgent.isStonith())
+               && !unavailableMetaData.contains(getAgentKey(resourceAgent));
+    }
+
+    /** Returns class:provider:name as the get-resource-agents takes them. */
+    private static String getAgentKey(final ResourceAgent resourceAgent) {
+        return getAgentKey(resourceAgent.getResourceClass(),
+                           resourceAgent.getProvider(),
+                           resourceAgent.getServiceName());
+    }
+
+    private static String getAgentKey(final String raClass, final String provider, final String serviceName) {
+        return raClass + ':' + provider + ':' + serviceName;
+    }
+
+    private String getCacheFingerprint(final String raVersion) {
+        return ResourceAgentMetaDataCache.getFingerprint(host.getName(),
+                                                         host.getHostParser().getPacemakerVersion(),
+                                                         raVersion);
+    }
+
+    /**
+     * Runs the get-resource-agents command, adds the agents to the list and
+     * fills the meta data of the agents in parallel, as they arrive.
+     * Returns the version of the resource agents packages, or null if the
+     * command failed.
+     */
+    private String fetchResourceAgents(final String command, final List<ResourceAgentOutput> agents) {
+        final MetaDataParsers parsers = new MetaDataParsers();
+        final ResourceAgentStreamParser parser = new ResourceAgentStreamParser(
+                host.getHostParser().getCompressedFrames(),
+                new ResourceAgentStreamParser.AgentHandler() {
+                    @Override
+                    public void agent(final ResourceAgentOutput agent) {
+                        agents.add(agent);
+                        if (agent.xml != null) {
+                            parsers.add(agent);
+                        }
+                    }
+                });
+        final SshOutput ret = host.captureCommand(new ExecCommandConfig().command(command)
+                                                                         .silentCommand()
+                                                                         .silentOutput()
+                                                                         .sshCommandTimeout(300000)
+                                                                         .newOutputCallback(new NewOutputCallback() {
+            @Override
+            public void output(final CharSequence output) {
+                parser.feed(output);
+            }
+        }));
+        parser.finish();
+        parsers.finish();
+        if (ret.getExitCode() != 0) {
+            return null;
+        }
+        return parser.getRaVersion();
+    }
+
+    /**
+     * Parses the output of get-resource-agents, the meta data or only the
+     * checksums of the agents.
+     */
+    static String parseResourceAgents(final String output, final List<ResourceAgentOutput> agents) {
+        final ResourceAgentStreamParser parser = new ResourceAgentStreamParser(
+                new CompressedFrames(),
+                new ResourceAgentStreamParser.AgentHandler() {
+                    @Override
+                    public void agent(final ResourceAgentOutput agent) {
+                        agents.add(agent);
+                    }
+                });
+        parser.feed(output);
+        parser.finish();
+        return parser.getRaVersion();
+    }
+
+    private void storeResourceAgents(final String fingerprint, final Iterable<ResourceAgentOutput> agents) {
+        for (final ResourceAgentOutput agent : agents) {
+            if (agent.xml != null) {
+                resourceAgentMetaDataCache.put(
+                        fingerprint,
+                        agent.getKey(),
+                        new ResourceAgentMetaDataCache.Entry(agent.checksum, agent.masterSlave, agent.xml));
+            }
+        }
+    }
+
+    private void warnIfDrbddiskIsMissing() {
         if (!drbddiskResourceAgentPresent) {
             LOG.appWarning("initOCFMetaData: drbddisk heartbeat script is not present");
         }
@@ -953,8 +1192,16 @@ public class CrmXml {
         return services;
     }
 
+    /**
+     * Returns the parameters of the agent, the meta data are fetched on
+     * first access. In the swing thread they are fetched in the background.
+     */
     public List<String> getOcfMetaDataParameters(final ResourceAgent resourceAgent, final boolean master) {
-        /* return cached values */
+        if (SwingUtilities.isEventDispatchThread()) {
+            requestMetaData(resourceAgent);
+        } else {
+            loadMetaData(Collections.singletonList(resourceAgent));
+        }
         return resourceAgent.getParameters(master);
     }
 
@@ -1660,7 +1907,7 @@ public class CrmXml {
         if (resourceClass == null) {
             resourceClass = ResourceAgent.OCF_CLASS_NAME;
         }
-        final ResourceAgent resourceAgent = serviceToResourceAgentMap.get(serviceName, provider, resourceClass);
+        final ResourceAgent resourceAgent = getInstalledResourceAgent(serviceName, provider, resourceClass);
         if (resourceAgent == null) {
             LOG.appWarning("parseMetaData: cannot save meta-data for: "
                            + resourceClass
@@ -1668,49 +1915,52 @@ public class CrmXml {
                            + ':' + serviceName);
             return;
         }
-        if (resourceAgent.isMetaDataLoaded()) {
-            return;
-        }
-        if (ResourceAgent.SERVICE_CLASSES.contains(resourceClass)
-            || ResourceAgent.HEARTBEAT_CLASS_NAME.equals(resourceClass)) {
-            setLsbResourceAgent(serviceName, resourceClass, resourceAgent);
-        } else {
-            /* <version> */
-            final Node versionNode = XMLTools.getChildNode(raNode, "version");
-            if (versionNode != null) {
-                resourceAgent.setServiceVersion(XMLTools.getText(versionNode));
+        /* the lazy loading and the prefetcher may fill the same agent */
+        synchronized (resourceAgent) {
+            if (resourceAgent.isMetaDataLoaded()) {
+                return;
             }
+            if (ResourceAgent.SERVICE_CLASSES.contains(resourceClass)
+                || ResourceAgent.HEARTBEAT_CLASS_NAME.equals(resourceClass)) {
+                setLsbResourceAgent(serviceName, resourceClass, resourceAgent);
+            } else {
+                /* <version> */
+                final Node versionNode = XMLTools.getChildNode(raNode, "version");
+                if (versionNode != null) {
+                    resourceAgent.setServiceVersion(XMLTools.getText(versionNode));
+                }
 
-            /* <longdesc lang="en"> */
-            final Node longdescNode = XMLTools.getChildNode(raNode, "longdesc");
-            if (longdescNode != null) {
-                resourceAgent.setServiceLongDesc(Tools.trimText(XMLTools.getText(longdescNode)));
-            }
+                /* <longdesc lang="en"> */
+                final Node longdescNode = XMLTools.getChildNode(raNode, "longdesc");
+                if (longdescNode != null) {
+                    resourceAgent.setServiceLongDesc(Tools.trimText(XMLTools.getText(longdescNode)));
+                }
 
-            /* <shortdesc lang="en"> */
-            final Node shortdescNode = XMLTools.getChildNode(raNode, "shortdesc");
-            if (shortdescNode != null) {
-                resourceAgent.setServiceShortDesc(XMLTools.getText(shortdescNode));
-            }
+                /* <shortdesc lang="en"> */
+                final Node shortdescNode = XMLTools.getChildNode(raNode, "shortdesc");
+                if (shortdescNode != null) {
+                    resourceAgent.setServiceShortDesc(XMLTools.getText(shortdescNode));
+                }
 
-            /* <parameters> */
-            final Node parametersNode = XMLTools.getChildNode(raNode, "parameters");
-            if (parametersNode != null) {
-                parseParameters(resourceAgent, parametersNode);
-            }
-            /* <actions> */
-            final Node actionsNode = XMLTools.getChildNode(raNode, "actions");
-            if (actionsNode != null) {
-                if (resourceAgent.isStonith()
-                    && resourceAgent.hasParameter(FENCING_ACTION_PARAM)) {
-                    parseStonithActions(resourceAgent, actionsNode);
-                } else {
-                    parseActionsNode(resourceAgent, actionsNode);
+                /* <parameters> */
+                final Node parametersNode = XMLTools.getChildNode(raNode, "parameters");
+                if (parametersNode != null) {
+                    parseParameters(resourceAgent, parametersNode);
                 }
+                /* <actions> */
+                final Node actionsNode = XMLTools.getChildNode(raNode, "actions");
+                if (actionsNode != null) {
+                    if (resourceAgent.isStonith()
+                        && resourceAgent.hasParameter(FENCING_ACTION_PARAM)) {
+                        parseStonithActions(resourceAgent, actionsNode);
+                    } else {
+                        parseActionsNode(resourceAgent, actionsNode);
+                    }
+                }
+                resourceAgent.setProbablyMasterSlave(masterSlave);
             }
-            resourceAgent.setProbablyMasterSlave(masterSlave);
+            resourceAgent.setMetaDataLoaded(true);
         }
-        resourceAgent.setMetaDataLoaded(true);
     }
 
     /** Set resource agent to be used as LSB script. */
@@ -1841,8 +2091,9 @@ public class CrmXml {
         globalTypeMap.put("stonith-timeout", PARAM_TYPE_TIME);
     }
 
+    /** Returns the agent, its meta data are fetched in the background, if they are not loaded yet. */
     public ResourceAgent getResourceAgent(final String serviceName, final String provider, final String raClass) {
-        final ResourceAgent resourceAgent = serviceToResourceAgentMap.get(serviceName, provider, raClass);
+        final ResourceAgent resourceAgent = getInstalledResourceAgent(serviceName, provider, raClass);
         if (resourceAgent == null) {
             final ResourceAgent notInstalledRA = new ResourceAgent(serviceName, provider, raClass);
             if (ResourceAgent.SERVICE_CLASSES.contains(raClass)
@@ -1853,13 +2104,20 @@ public class CrmXml {
                                + ':' + provider + ':' + serviceName
                                + " RA does not exist");
             }
-            serviceToResourceAgentMap.put(serviceName, provider, raClass, notInstalledRA);
+            serviceToResourceAgentMap.putIfAbsent(getAgentKey(raClass, provider, serviceName), notInstalledRA);
             return notInstalledRA;
 
         }
+        requestMetaData(resourceAgent);
         return resourceAgent;
     }
 
+    private ResourceAgent getInstalledResourceAgent(final String serviceName,
+                                                    final String provider,
+                                                    final String raClass) {
+        return serviceToResourceAgentMap.get(getAgentKey(raClass, provider, serviceName));
+    }
+
     public ResourceAgent getDrbddiskResourceAgent() {
         return drbddiskResourceAgent;
     }
@@ -2230,6 +2488,13 @@ public class CrmXml {
 
     /** Returns a hash with resource information. (running_on) */
     Map<String, ResourceStatus> parseResStatus(final String resStatus) {
+        if (application.isDomCibParser()) {
+            return parseResStatusDom(resStatus);
+        }
+        return cibStreamParser.parseResStatus(resStatus);
+    }
+
+    Map<String, ResourceStatus> parseResStatusDom(final String resStatus) {
         final Map<String, ResourceStatus> resStatusMap = new HashMap<String, ResourceStatus>();
         final Document document = XMLTools.getXMLDocument(resStatus);
         if (document == null) {
@@ -2427,42 +2692,40 @@ public class CrmXml {
         }
     }
 
-    /** Returns CibQuery object with information from the cib node. */
+    /**
+     * Returns CibQuery object with information from the cib node. The cib
+     * is parsed as a stream, the DOM parser is used only with the
+     * --dom-cib-parser option.
+     */
     CibQuery parseCibQuery(final String query) {
+        if (application.isDomCibParser()) {
+            return parseCibQueryDom(query);
+        }
+        return cibStreamParser.parseCibQuery(query);
+    }
+
+    /** Returns CibQuery object with information from the whole cib DOM. */
+    CibQuery parseCibQueryDom(final String query) {
         final Document document = XMLTools.getXMLDocument(query);
-        final CibQuery cibQueryData = new CibQuery();
         if (document == null) {
             LOG.appWarning("parseCibQuery: cib error: " + query);
-            return cibQueryData;
+            return new CibQuery();
         }
         /* get root <pacemaker> */
         final Node pcmkNode = XMLTools.getChildNode(document, "pcmk");
         if (pcmkNode == null) {
             LOG.appWarning("parseCibQuery: there is no pcmk node");
-            return cibQueryData;
+            return new CibQuery();
         }
 
         /* get fenced nodes */
-        final Set<String> fencedNodes = new HashSet<String>();
-        final Node fencedNode = XMLTools.getChildNode(pcmkNode, "fenced");
-        if (fencedNode != null) {
-            final NodeList nodes = fencedNode.getChildNodes();
-            for (int i = 0; i < nodes.getLength(); i++) {
-                final Node hostNode = nodes.item(i);
-                if (hostNode.getNodeName().equals("node")) {
-                    final String h = XMLTools.getText(hostNode);
-                    if (h != null) {
-                        fencedNodes.add(h.toLowerCase(Locale.US));
-                    }
-                }
-            }
-        }
+        final Set<String> fencedNodes = parseFencedNodes(XMLTools.getChildNode(pcmkNode, "fenced"));
 
         /* get <cib> */
         final Node cibNode = XMLTools.getChildNode(pcmkNode, "cib");
         if (cibNode == null) {
             LOG.appWarning("parseCibQuery: there is no cib node");
-            return cibQueryData;
+            return new CibQuery();
         }
         /* Designated Co-ordinator */
         final String dcUuid = XMLTools.getAttribute(cibNode, "dc-uuid");
@@ -2472,35 +2735,113 @@ public class CrmXml {
         final Node confNode = XMLTools.getChildNode(cibNode, "configuration");
         if (confNode == null) {
             LOG.appWarning("parseCibQuery: there is no configuration node");
-            return cibQueryData;
+            return new CibQuery();
         }
-
-        /* <rsc_defaults> */
-        final Node rscDefaultsNode = XMLTools.getChildNode(confNode, "rsc_defaults");
-        String rscDefaultsId = null;
-        final Map<String, String> rscDefaultsParams = new HashMap<String, String>();
-        final Map<String, String> rscDefaultsParamsNvpairIds = new HashMap<String, String>();
-        if (rscDefaultsNode != null) {
-            rscDefaultsId = parseResourceDefaults(rscDefaultsNode, rscDefaultsParams, rscDefaultsParamsNvpairIds);
+        final Map<String, Node> sections = new HashMap<String, Node>();
+        for (final String section : CIB_CONFIGURATION_SECTIONS) {
+            final Node sectionNode = XMLTools.getChildNode(confNode, section);
+            if (sectionNode != null) {
+                sections.put(section, sectionNode);
+            }
         }
 
-        /* <op_defaults> */
-        final Node opDefaultsNode = XMLTools.getChildNode(confNode, "op_defaults");
-        final Map<String, Value> opDefaultsParams = new HashMap<String, Value>();
-        if (opDefaultsNode != null) {
-            parseOpDefaults(opDefaultsNode, opDefaultsParams);
+        /* <status> */
+        final List<Node> nodeStates = new ArrayList<Node>();
+        final Node statusNode = XMLTools.getChildNode(cibNode, "status");
+        if (statusNode != null) {
+            final NodeList nodes = statusNode.getChildNodes();
+            for (int i = 0; i < nodes.getLength(); i++) {
+                final Node nodeStateNode = nodes.item(i);
+                if (NODE_STATE.equals(nodeStateNode.getNodeName())) {
+                    nodeStates.add(nodeStateNode);
+                }
+            }
         }
-        
-        
-        /* <crm_config> */
-        final Node crmConfNode = XMLTools.getChildNode(confNode, "crm_config");
+        return parseCib(dcUuid, sections, nodeStates, fencedNodes);
+    }
+
+    /**
+     * Returns CibQuery object from the configuration sections and the node
+     * states of the cib, however they were parsed.
+     */
+    CibQuery parseCib(final String dcUuid,
+                      final Map<String, Node> sections,
+                      final Iterable<Node> nodeStates,
+                      final Set<String> fencedNodes) {
+        final Node crmConfNode = sections.get(CRM_CONFIG_SECTION);
         if (crmConfNode == null) {
             LOG.appWarning("parseCibQuery: there is no crm_config node");
-            return cibQueryData;
+            return new CibQuery();
+        }
+        final CibQuery configuration = new CibQuery();
+        if (!sections.containsKey(RESOURCES_SECTION)) {
+            LOG.appWarning("parseCibQuery: there is no resources node");
+            parseConfigurationSection(CRM_CONFIG_SECTION, crmConfNode, configuration);
+            return configuration;
+        }
+        for (final String section : CIB_CONFIGURATION_SECTIONS) {
+            parseConfigurationSection(section, sections.get(section), configuration);
         }
+        return parseCibStatus(configuration, dcUuid, nodeStates, fencedNodes);
+    }
 
+    /** Returns the fenced nodes from the <fenced> node, that the gui helper adds. */
+    Set<String> parseFencedNodes(final Node fencedNode) {
+        final Set<String> fencedNodes = new HashSet<String>();
+        if (fencedNode != null) {
+            final NodeList nodes = fencedNode.getChildNodes();
+            for (int i = 0; i < nodes.getLength(); i++) {
+                final Node hostNode = nodes.item(i);
+                if (hostNode.getNodeName().equals("node")) {
+                    final String h = XMLTools.getText(hostNode);
+                    if (h != null) {
+                        fencedNodes.add(h.toLowerCase(Locale.US));
+                    }
+                }
+            }
+        }
+        return fencedNodes;
+    }
+
+    /**
+     * Parses one section of the <configuration> into the cibQuery. The
+     * values of the section are always replaced, the sectionNode is null,
+     * if the section is not in the cib.
+     */
+    void parseConfigurationSection(final String section, final Node sectionNode, final CibQuery cibQuery) {
+        if (CRM_CONFIG_SECTION.equals(section)) {
+            parseCrmConfig(sectionNode, cibQuery);
+        } else if (RSC_DEFAULTS_SECTION.equals(section)) {
+            String rscDefaultsId = null;
+            final Map<String, String> rscDefaultsParams = new HashMap<String, String>();
+            final Map<String, String> rscDefaultsParamsNvpairIds = new HashMap<String, String>();
+            if (sectionNode != null) {
+                rscDefaultsId = parseResourceDefaults(sectionNode, rscDefaultsParams, rscDefaultsParamsNvpairIds);
+            }
+            cibQuery.setRscDefaultsId(rscDefaultsId);
+            cibQuery.setRscDefaultsParams(rscDefaultsParams);
+            cibQuery.setRscDefaultsParamsNvpairIds(rscDefaultsParamsNvpairIds);
+        } else if (OP_DEFAULTS_SECTION.equals(section)) {
+            final Map<String, Value> opDefaultsParams = new HashMap<String, Value>();
+            if (sectionNode != null) {
+                parseOpDefaults(sectionNode, opDefaultsParams);
+            }
+            cibQuery.setOpDefaultsParams(opDefaultsParams);
+        } else if (NODES_SECTION.equals(section)) {
+            parseNodes(sectionNode, cibQuery);
+        } else if (RESOURCES_SECTION.equals(section)) {
+            parseResources(sectionNode, cibQuery);
+        } else if (CONSTRAINTS_SECTION.equals(section)) {
+            parseConstraints(sectionNode, cibQuery);
+        } else {
+            LOG.appWarning("parseConfigurationSection: unknown section: " + section);
+        }
+    }
+
+    private void parseCrmConfig(final Node crmConfNode, final CibQuery cibQuery) {
+        final Map<String, String> crmConfMap = new HashMap<String, String>();
         /*      <cluster_property_set> */
-        final Node cpsNode = XMLTools.getChildNode(crmConfNode, "cluster_property_set");
+        final Node cpsNode = crmConfNode == null ? null : XMLTools.getChildNode(crmConfNode, "cluster_property_set");
         if (cpsNode == null) {
             LOG.appWarning("parseCibQuery: there is no cluster_property_set node");
         } else {
@@ -2512,8 +2853,6 @@ public class CrmXml {
             } else {
                 nvpairs = cpsNode.getChildNodes();
             }
-            final Map<String, String> crmConfMap =
-                new HashMap<String, String>();
             /*              <nvpair...> */
             for (int i = 0; i < nvpairs.getLength(); i++) {
                 final Node optionNode = nvpairs.item(i);
@@ -2523,54 +2862,41 @@ public class CrmXml {
                     crmConfMap.put(name, value);
                 }
             }
-            cibQueryData.setCrmConfig(crmConfMap);
         }
+        cibQuery.setCrmConfig(crmConfMap);
+    }
 
-        /* <nodes> */
+    private void parseNodes(final Node nodesNode, final CibQuery cibQuery) {
         /* xml node with cluster node make stupid variable names, but let's
         * keep the convention. */
-        String dc = null;
         final Table<String, String, String> nodeParametersMap = HashBasedTable.create();
-        final Node nodesNode = XMLTools.getChildNode(confNode, "nodes");
-        final Map<String, String> nodeOnline = new HashMap<String, String>();
         final Map<String, String> nodeID = new HashMap<String, String>();
+        final Map<String, String> nodeUnames = new HashMap<String, String>();
         if (nodesNode != null) {
             final NodeList nodes = nodesNode.getChildNodes();
             for (int i = 0; i < nodes.getLength(); i++) {
                 final Node nodeNode = nodes.item(i);
                 if (nodeNode.getNodeName().equals("node")) {
-                    /* TODO: doing nothing with the info, just getting the dc,
-                    * for now.
-                    */
                     final String id = XMLTools.getAttribute(nodeNode, "id");
                     final String uname = XMLTools.getAttribute(nodeNode, "uname");
                     if (!nodeID.containsKey(uname)) {
                         nodeID.put(uname, id);
                     }
-                    if (dcUuid != null && dcUuid.equals(id)) {
-                        dc = uname;
-                    }
+                    nodeUnames.put(id, uname);
                     parseNode(uname, nodeNode, nodeParametersMap);
-                    if (!nodeOnline.containsKey(uname.toLowerCase(Locale.US))) {
-                        nodeOnline.put(uname.toLowerCase(Locale.US), "no");
-                    }
                 }
             }
         }
+        cibQuery.setNodeParameters(nodeParametersMap);
+        cibQuery.setNodeIds(nodeID);
+        cibQuery.setNodeUnames(nodeUnames);
+    }
 
-        /* <resources> */
-        final Node resourcesNode = XMLTools.getChildNode(confNode, "resources");
-        if (resourcesNode == null) {
-            LOG.appWarning("parseCibQuery: there is no resources node");
-            return cibQueryData;
-        }
+    private void parseResources(final Node resourcesNode, final CibQuery cibQuery) {
         /*      <primitive> */
         final Map<String, Map<String, String>> parametersMap = new HashMap<String, Map<String, String>>();
         final Map<String, Map<String, String>> parametersNvpairsIdsMap = new HashMap<String, Map<String, String>>();
         final Map<String, ResourceAgent> resourceTypeMap = new HashMap<String, ResourceAgent>();
-        final Set<String> orphanedList = new HashSet<String>();
-        /* host -> inLRMList list */
-        final Map<String, Set<String>> inLRMList = new HashMap<String, Set<String>>();
         final Map<String, String> resourceInstanceAttrIdMap = new HashMap<String, String>();
         final MultiKeyMap<String, Value> operationsMap = new MultiKeyMap<String, Value>();
         final Map<String, String> metaAttrsIdMap = new HashMap<String, String>();
@@ -2581,25 +2907,40 @@ public class CrmXml {
         final Map<String, List<String>> groupsToResourcesMap = new LinkedHashMap<String, List<String>>();
         final Map<String, String> cloneToResourceMap = new HashMap<String, String>();
         final List<String> masterList = new ArrayList<String>();
-        final Table<String, String, String> failedMap = HashBasedTable.create();
-        final Table<String, String, Set<String>> failedClonesMap = HashBasedTable.create();
-        final Map<String, String> pingCountMap = new HashMap<String, String>();
-        groupsToResourcesMap.put("none", new ArrayList<String>());
 
-        final NodeList primitivesGroups = resourcesNode.getChildNodes();
+        groupsToResourcesMap.put("none", new ArrayList<String>());
         final Map<String, String> operationsIdRefs = new HashMap<String, String>();
         final Map<String, String> operationsIdtoCRMId = new HashMap<String, String>();
         final Map<String, String> metaAttrsIdRefs = new HashMap<String, String>();
         final Map<String, String> metaAttrsIdToCRMId = new HashMap<String, String>();
-        for (int i = 0; i < primitivesGroups.getLength(); i++) {
-            final Node primitiveGroupNode = primitivesGroups.item(i);
-            final String nodeName = primitiveGroupNode.getNodeName();
-            if ("primitive".equals(nodeName)) {
-                final List<String> resList = groupsToResourcesMap.get("none");
-                parsePrimitiveNode(primitiveGroupNode,
-                                   resList,
-                                   resourceTypeMap,
+
+        if (resourcesNode != null) {
+            final NodeList primitivesGroups = resourcesNode.getChildNodes();
+            for (int i = 0; i < primitivesGroups.getLength(); i++) {
+                final Node primitiveGroupNode = primitivesGroups.item(i);
+                final String nodeName = primitiveGroupNode.getNodeName();
+                if ("primitive".equals(nodeName)) {
+                    final List<String> resList = groupsToResourcesMap.get("none");
+                    parsePrimitiveNode(primitiveGroupNode,
+                                       resList,
+                                       resourceTypeMap,
+                                       parametersMap,
+                                       parametersNvpairsIdsMap,
+                                       resourceInstanceAttrIdMap,
+                                       operationsMap,
+                                       metaAttrsIdMap,
+                                       operationsIdMap,
+                                       resOpIdsMap,
+                                       operationsIdRefs,
+                                       operationsIdtoCRMId,
+                                       metaAttrsIdRefs,
+                                       metaAttrsIdToCRMId);
+                } else if ("group".equals(nodeName)) {
+                    parseGroupNode(primitiveGroupNode,
+                                   null,
+                                   groupsToResourcesMap,
                                    parametersMap,
+                                   resourceTypeMap,
                                    parametersNvpairsIdsMap,
                                    resourceInstanceAttrIdMap,
                                    operationsMap,
@@ -2610,51 +2951,51 @@ public class CrmXml {
                                    operationsIdtoCRMId,
                                    metaAttrsIdRefs,
                                    metaAttrsIdToCRMId);
-            } else if ("group".equals(nodeName)) {
-                parseGroupNode(primitiveGroupNode,
-                               null,
-                               groupsToResourcesMap,
-                               parametersMap,
-                               resourceTypeMap,
-                               parametersNvpairsIdsMap,
-                               resourceInstanceAttrIdMap,
-                               operationsMap,
-                               metaAttrsIdMap,
-                               operationsIdMap,
-                               resOpIdsMap,
-                               operationsIdRefs,
-                               operationsIdtoCRMId,
-                               metaAttrsIdRefs,
-                               metaAttrsIdToCRMId);
-            } else if ("master".equals(nodeName) || "master_slave".equals(nodeName) || "clone".equals(nodeName)) {
-                final NodeList primitives = primitiveGroupNode.getChildNodes();
-                final String cloneId = XMLTools.getAttribute(primitiveGroupNode, "id");
-                List<String> resList = groupsToResourcesMap.get(cloneId);
-                if (resList == null) {
-                    resList = new ArrayList<String>();
-                    groupsToResourcesMap.put(cloneId, resList);
-                }
-                parseAttributes(primitiveGroupNode,
-                                cloneId,
-                                parametersMap,
-                                parametersNvpairsIdsMap,
-                                resourceInstanceAttrIdMap,
-                                operationsMap,
-                                metaAttrsIdMap,
-                                operationsIdMap,
-                                resOpIdsMap,
-                                operationsIdRefs,
-                                operationsIdtoCRMId,
-                                metaAttrsIdRefs,
-                                metaAttrsIdToCRMId,
-                                false);
-                for (int j = 0; j < primitives.getLength(); j++) {
-                    final Node primitiveNode = primitives.item(j);
-                    if (primitiveNode.getNodeName().equals("primitive")) {
-                        parsePrimitiveNode(primitiveNode,
+                } else if ("master".equals(nodeName) || "master_slave".equals(nodeName) || "clone".equals(nodeName)) {
+                    final NodeList primitives = primitiveGroupNode.getChildNodes();
+                    final String cloneId = XMLTools.getAttribute(primitiveGroupNode, "id");
+                    List<String> resList = groupsToResourcesMap.get(cloneId);
+                    if (resList == null) {
+                        resList = new ArrayList<String>();
+                        groupsToResourcesMap.put(cloneId, resList);
+                    }
+                    parseAttributes(primitiveGroupNode,
+                                    cloneId,
+                                    parametersMap,
+                                    parametersNvpairsIdsMap,
+                                    resourceInstanceAttrIdMap,
+                                    operationsMap,
+                                    metaAttrsIdMap,
+                                    operationsIdMap,
+                                    resOpIdsMap,
+                                    operationsIdRefs,
+                                    operationsIdtoCRMId,
+                                    metaAttrsIdRefs,
+                                    metaAttrsIdToCRMId,
+                                    false);
+                    for (int j = 0; j < primitives.getLength(); j++) {
+                        final Node primitiveNode = primitives.item(j);
+                        if (primitiveNode.getNodeName().equals("primitive")) {
+                            parsePrimitiveNode(primitiveNode,
+                                               resList,
+                                               resourceTypeMap,
+                                               parametersMap,
+                                               parametersNvpairsIdsMap,
+                                               resourceInstanceAttrIdMap,
+                                               operationsMap,
+                                               metaAttrsIdMap,
+                                               operationsIdMap,
+                                               resOpIdsMap,
+                                               operationsIdRefs,
+                                               operationsIdtoCRMId,
+                                               metaAttrsIdRefs,
+                                               metaAttrsIdToCRMId);
+                        } else if (primitiveNode.getNodeName().equals("group")) {
+                            parseGroupNode(primitiveNode,
                                            resList,
-                                           resourceTypeMap,
+                                           groupsToResourcesMap,
                                            parametersMap,
+                                           resourceTypeMap,
                                            parametersNvpairsIdsMap,
                                            resourceInstanceAttrIdMap,
                                            operationsMap,
@@ -2665,28 +3006,13 @@ public class CrmXml {
                                            operationsIdtoCRMId,
                                            metaAttrsIdRefs,
                                            metaAttrsIdToCRMId);
-                    } else if (primitiveNode.getNodeName().equals("group")) {
-                        parseGroupNode(primitiveNode,
-                                       resList,
-                                       groupsToResourcesMap,
-                                       parametersMap,
-                                       resourceTypeMap,
-                                       parametersNvpairsIdsMap,
-                                       resourceInstanceAttrIdMap,
-                                       operationsMap,
-                                       metaAttrsIdMap,
-                                       operationsIdMap,
-                                       resOpIdsMap,
-                                       operationsIdRefs,
-                                       operationsIdtoCRMId,
-                                       metaAttrsIdRefs,
-                                       metaAttrsIdToCRMId);
+                        }
                     }
-                }
-                if (!resList.isEmpty()) {
-                    cloneToResourceMap.put(cloneId, resList.get(0));
-                    if ("master".equals(nodeName) || "master_slave".equals(nodeName)) {
-                        masterList.add(cloneId);
+                    if (!resList.isEmpty()) {
+                        cloneToResourceMap.put(cloneId, resList.get(0));
+                        if ("master".equals(nodeName) || "master_slave".equals(nodeName)) {
+                            masterList.add(cloneId);
+                        }
                     }
                 }
             }
@@ -2705,7 +3031,22 @@ public class CrmXml {
             final String idRef = metaAttrsIdRefs.get(crmId);
             metaAttrsRefs.put(crmId, metaAttrsIdToCRMId.get(idRef));
         }
-
+        cibQuery.setResourceParameters(parametersMap);
+        cibQuery.setResourceParametersNvpairsIds(parametersNvpairsIdsMap);
+        cibQuery.setResourceType(resourceTypeMap);
+        cibQuery.setResourceInstanceAttrId(resourceInstanceAttrIdMap);
+        cibQuery.setOperations(operationsMap);
+        cibQuery.setOperationsId(operationsIdMap);
+        cibQuery.setOperationsRefs(operationsRefs);
+        cibQuery.setMetaAttrsId(metaAttrsIdMap);
+        cibQuery.setMetaAttrsRefs(metaAttrsRefs);
+        cibQuery.setResOpIds(resOpIdsMap);
+        cibQuery.setGroupsToResources(groupsToResourcesMap);
+        cibQuery.setCloneToResource(cloneToResourceMap);
+        cibQuery.setMasterList(masterList);
+    }
+
+    private void parseConstraints(final Node constraintsNode, final CibQuery cibQuery) {
         /* <constraints> */
         final Map<String, ColocationData> colocationIdMap = new LinkedHashMap<String, ColocationData>();
         final Map<String, List<ColocationData>> colocationRscMap = new HashMap<String, List<ColocationData>>();
@@ -2720,7 +3061,6 @@ public class CrmXml {
         final Table<String, String, String> resHostToLocIdMap = HashBasedTable.create();
         
         final Map<String, String> resPingToLocIdMap = new HashMap<String, String>();
-        final Node constraintsNode = XMLTools.getChildNode(confNode, "constraints");
         if (constraintsNode != null) {
             final NodeList constraints = constraintsNode.getChildNodes();
             String rscString         = "rsc";
@@ -2855,100 +3195,109 @@ public class CrmXml {
             }
         }
 
-        /* <status> */
-        final Node statusNode = XMLTools.getChildNode(cibNode, "status");
+        cibQuery.setColocationRsc(colocationRscMap);
+        cibQuery.setColocationId(colocationIdMap);
+
+        cibQuery.setOrderId(orderIdMap);
+        cibQuery.setOrderIdRscSets(orderIdRscSetsMap);
+        cibQuery.setColocationIdRscSets(colocationIdRscSetsMap);
+        cibQuery.setRscSetConnections(rscSetConnections);
+        cibQuery.setOrderRsc(orderRscMap);
+
+        cibQuery.setLocations(locationMap);
+        cibQuery.setPingLocations(pingLocationMap);
+        cibQuery.setLocationsId(locationsIdMap);
+        cibQuery.setResHostToLocId(resHostToLocIdMap);
+        cibQuery.setResPingToLocId(resPingToLocIdMap);
+    }
+
+    /**
+     * Returns a new cib query with the configuration and with the status
+     * from the node states. The configuration itself is not changed, so that
+     * it can be used again with other node states.
+     */
+    CibQuery parseCibStatus(final CibQuery configuration,
+                            final String dcUuid,
+                            final Iterable<Node> nodeStates,
+                            final Set<String> fencedNodes) {
+        final CibQuery cibQueryData = configuration.copy();
+        /* the resources, that are only in the LRM, are added to these */
+        final Map<String, List<String>> groupsToResourcesMap =
+                                          new LinkedHashMap<String, List<String>>(configuration.getGroupsToResources());
+        final List<String> configuredResList = groupsToResourcesMap.get("none");
+        final List<String> resList = configuredResList == null ? new ArrayList<String>()
+                                                               : new ArrayList<String>(configuredResList);
+        groupsToResourcesMap.put("none", resList);
+        final Map<String, ResourceAgent> resourceTypeMap =
+                                          new HashMap<String, ResourceAgent>(configuration.getResourceType());
+        final Map<String, Map<String, String>> parametersMap =
+                                          new HashMap<String, Map<String, String>>(configuration.getResourceParameters());
+        final Set<String> orphanedList = new HashSet<String>();
+        /* host -> inLRMList list */
+        final Map<String, Set<String>> inLRMList = new HashMap<String, Set<String>>();
+        final Table<String, String, String> failedMap = HashBasedTable.create();
+        final Table<String, String, Set<String>> failedClonesMap = HashBasedTable.create();
+        final Map<String, String> pingCountMap = new HashMap<String, String>();
+
+        final Map<String, String> nodeID = configuration.getNodeIds();
+        final Map<String, String> nodeOnline = new HashMap<String, String>();
+        for (final String uname : nodeID.keySet()) {
+            nodeOnline.put(uname.toLowerCase(Locale.US), "no");
+        }
         final Set<String> nodePending = new HashSet<String>();
-        if (statusNode != null) {
-            /* <node_state ...> */
-            final NodeList nodes = statusNode.getChildNodes();
-            for (int i = 0; i < nodes.getLength(); i++) {
-                final Node nodeStateNode = nodes.item(i);
-                if ("node_state".equals(nodeStateNode.getNodeName())) {
-                    final String uname = XMLTools.getAttribute(nodeStateNode, "uname");
-                    final String id = XMLTools.getAttribute(nodeStateNode, "id");
-                    if (uname == null || !id.equals(nodeID.get(uname))) {
-                        LOG.appWarning("parseCibQuery: skipping " + uname + ' ' + id);
-                        continue;
-                    }
-                    final String join = XMLTools.getAttribute(nodeStateNode, "join");
-                    final String inCCM = XMLTools.getAttribute(nodeStateNode, "in_ccm");
-                    final String crmd = XMLTools.getAttribute(nodeStateNode, "crmd");
-                    if ("member".equals(join) && "true".equals(inCCM) && !"offline".equals(crmd)) {
-                        nodeOnline.put(uname.toLowerCase(Locale.US), "yes");
-                    } else {
-                        nodeOnline.put(uname.toLowerCase(Locale.US), "no");
-                    }
-                    if ("pending".equals(join)) {
-                        nodePending.add(uname.toLowerCase(Locale.US));
-                    }
-                    final NodeList nodeStates = nodeStateNode.getChildNodes();
-                    /* transient attributes. */
-                    for (int j = 0; j < nodeStates.getLength(); j++) {
-                        final Node nodeStateChild = nodeStates.item(j);
-                        if ("transient_attributes".equals(
-                            nodeStateChild.getNodeName())) {
-                            parseTransientAttributes(uname, nodeStateChild, failedMap, failedClonesMap, pingCountMap);
-                        }
-                    }
-                    final List<String> resList =
-                        groupsToResourcesMap.get("none");
-                    for (int j = 0; j < nodeStates.getLength(); j++) {
-                        final Node nodeStateChild = nodeStates.item(j);
-                        if ("lrm".equals(nodeStateChild.getNodeName())) {
-                            parseLrmResources(uname.toLowerCase(Locale.US),
-                                    nodeStateChild,
-                                    resList,
-                                    resourceTypeMap,
-                                    parametersMap,
-                                    inLRMList,
-                                    orphanedList,
-                                    failedClonesMap);
-                        }
-                    }
+        /* <node_state ...> */
+        for (final Node nodeStateNode : nodeStates) {
+            final String uname = XMLTools.getAttribute(nodeStateNode, "uname");
+            final String id = XMLTools.getAttribute(nodeStateNode, "id");
+            if (uname == null || !id.equals(nodeID.get(uname))) {
+                LOG.appWarning("parseCibQuery: skipping " + uname + ' ' + id);
+                continue;
+            }
+            final String join = XMLTools.getAttribute(nodeStateNode, "join");
+            final String inCCM = XMLTools.getAttribute(nodeStateNode, "in_ccm");
+            final String crmd = XMLTools.getAttribute(nodeStateNode, "crmd");
+            if ("member".equals(join) && "true".equals(inCCM) && !"offline".equals(crmd)) {
+                nodeOnline.put(uname.toLowerCase(Locale.US), "yes");
+            } else {
+                nodeOnline.put(uname.toLowerCase(Locale.US), "no");
+            }
+            if ("pending".equals(join)) {
+                nodePending.add(uname.toLowerCase(Locale.US));
+            }
+            final NodeList nodeStateChildren = nodeStateNode.getChildNodes();
+            /* transient attributes. */
+            for (int j = 0; j < nodeStateChildren.getLength(); j++) {
+                final Node nodeStateChild = nodeStateChildren.item(j);
+                if ("transient_attributes".equals(
+                    nodeStateChild.getNodeName())) {
+                    parseTransientAttributes(uname, nodeStateChild, failedMap, failedClonesMap, pingCountMap);
+                }
+            }
+            for (int j = 0; j < nodeStateChildren.getLength(); j++) {
+                final Node nodeStateChild = nodeStateChildren.item(j);
+                if ("lrm".equals(nodeStateChild.getNodeName())) {
+                    parseLrmResources(uname.toLowerCase(Locale.US),
+                            nodeStateChild,
+                            resList,
+                            resourceTypeMap,
+                            parametersMap,
+                            inLRMList,
+                            orphanedList,
+                            failedClonesMap);
                 }
             }
         }
-        cibQueryData.setDC(dc);
-        cibQueryData.setNodeParameters(nodeParametersMap);
+        cibQueryData.setDC(dcUuid == null ? null : configuration.getNodeUnames().get(dcUuid));
         cibQueryData.setResourceParameters(parametersMap);
-        cibQueryData.setResourceParametersNvpairsIds(parametersNvpairsIdsMap);
         cibQueryData.setResourceType(resourceTypeMap);
+        cibQueryData.setGroupsToResources(groupsToResourcesMap);
         cibQueryData.setInLRM(inLRMList);
         cibQueryData.setOrphaned(orphanedList);
-        cibQueryData.setResourceInstanceAttrId(resourceInstanceAttrIdMap);
-
-        cibQueryData.setColocationRsc(colocationRscMap);
-        cibQueryData.setColocationId(colocationIdMap);
-
-        cibQueryData.setOrderId(orderIdMap);
-        cibQueryData.setOrderIdRscSets(orderIdRscSetsMap);
-        cibQueryData.setColocationIdRscSets(colocationIdRscSetsMap);
-        cibQueryData.setRscSetConnections(rscSetConnections);
-        cibQueryData.setOrderRsc(orderRscMap);
-
-        cibQueryData.setLocations(locationMap);
-        cibQueryData.setPingLocations(pingLocationMap);
-        cibQueryData.setLocationsId(locationsIdMap);
-        cibQueryData.setResHostToLocId(resHostToLocIdMap);
-        cibQueryData.setResPingToLocId(resPingToLocIdMap);
-        cibQueryData.setOperations(operationsMap);
-        cibQueryData.setOperationsId(operationsIdMap);
-        cibQueryData.setOperationsRefs(operationsRefs);
-        cibQueryData.setMetaAttrsId(metaAttrsIdMap);
-        cibQueryData.setMetaAttrsRefs(metaAttrsRefs);
-        cibQueryData.setResOpIds(resOpIdsMap);
         cibQueryData.setNodeOnline(nodeOnline);
         cibQueryData.setNodePending(nodePending);
-        cibQueryData.setGroupsToResources(groupsToResourcesMap);
-        cibQueryData.setCloneToResource(cloneToResourceMap);
-        cibQueryData.setMasterList(masterList);
         cibQueryData.setNodeFailedCount(failedMap);
         cibQueryData.setResourceFailedCloneIds(failedClonesMap);
         cibQueryData.setNodePingCount(pingCountMap);
-        cibQueryData.setRscDefaultsId(rscDefaultsId);
-        cibQueryData.setRscDefaultsParams(rscDefaultsParams);
-        cibQueryData.setRscDefaultsParamsNvpairIds(rscDefaultsParamsNvpairIds);
-        cibQueryData.setOpDefaultsParams(opDefaultsParams);
         cibQueryData.setFencedNodes(fencedNodes);
         return cibQueryData;
     }
@@ -3593,4 +3942,129 @@ public class CrmXml {
         }
     }
 
+    /**
+     * Parses the meta data of the agents, as they arrive, in up to
+     * META_DATA_PARSER_THREADS tasks, that drain the queue. The ssh thread,
+     * that adds the agents, never waits for them.
+     */
+    private final class MetaDataParsers {
+        private final Queue<ResourceAgentOutput> queue = new ArrayDeque<ResourceAgentOutput>();
+        private int running = 0;
+
+        void add(final ResourceAgentOutput agent) {
+            synchronized (this) {
+                queue.add(agent);
+                if (running >= META_DATA_PARSER_THREADS) {
+                    return;
+                }
+                running++;
+            }
+            try {
+                executionService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                });
+            } catch (final RuntimeException e) {
+                LOG.appWarning("add: could not start the meta data parser: " + e.getMessage());
+                synchronized (this) {
+                    running--;
+                    notifyAll();
+                }
+            }
+        }
+
+        /** Waits for the parsers and parses the agents, that were left in the queue, on this thread. */
+        void finish() {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (running > 0) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            while (true) {
+                final ResourceAgentOutput agent;
+                synchronized (this) {
+                    agent = queue.poll();
+                }
+                if (agent == null) {
+                    break;
+                }
+                parse(agent);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                final ResourceAgentOutput agent;
+                synchronized (this) {
+                    agent = queue.poll();
+                    if (agent == null) {
+                        running--;
+                        notifyAll();
+                        return;
+                    }
+                }
+                parse(agent);
+            }
+        }
+
+        private void parse(final ResourceAgentOutput agent) {
+            try {
+                parseMetaDataAndFillHashes(agent.name, agent.provider, agent.xml, agent.masterSlave);
+            } catch (final RuntimeException e) {
+                LOG.appWarning("parse: could not parse the meta data of " + agent.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** One agent from the get-resource-agents output, xml is null if only the checksum came. */
+    static final class ResourceAgentOutput {
+        private final String resourceClass;
+        private final String provider;
+        private final String name;
+        private final boolean masterSlave;
+        private final String checksum;
+        private final String xml;
+
+        ResourceAgentOutput(final String resourceClass,
+                            final String provider,
+                            final String name,
+                            final boolean masterSlave,
+                            final String checksum,
+                            final String xml) {
+            this.resourceClass = resourceClass;
+            this.provider = provider;
+            this.name = name;
+            this.masterSlave = masterSlave;
+            this.checksum = checksum;
+            this.xml = xml;
+        }
+
+        /** Returns class:provider:name as the get-resource-agents takes them. */
+        String getKey() {
+            return resourceClass + ':' + provider + ':' + name;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getChecksum() {
+            return checksum;
+        }
+
+        String getXml() {
+            return xml;
+        }
+    }
+
 }
@@ -99,7 +99,7 @@ public class ResourceAgent {
     private final boolean pingService;
     /** Whether to ignore defaults, show them, but don't assume they are defaults. */
     private boolean ignoreDefaults = false;
-    private boolean metaDataLoaded = false;
+    private volatile boolean metaDataLoaded = false;
 
     public ResourceAgent(final String serviceName, final String provider, final String resourceClass) {
         this.serviceName = serviceName;
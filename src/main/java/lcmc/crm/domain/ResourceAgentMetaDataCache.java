@@ -0,0 +1,258 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import lcmc.common.domain.util.Tools;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Local cache of the meta-data of the resource agents, so that they don't
+ * have to be run with "meta-data" on every start, that can take minutes.
+ *
+ * The meta-data are in one directory per host and pacemaker and
+ * resource-agents versions, one file per agent with the checksum of the
+ * agent's file. The meta-data are used only if the checksum is the same
+ * and the file is complete.
+ */
+@Named
+@Singleton
+public class ResourceAgentMetaDataCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceAgentMetaDataCache.class);
+    private static final String CHECKSUM_PREFIX = "checksum:";
+    private static final String MASTER_PREFIX = "master:";
+    private static final String END_MARKER = "\n--end--\n";
+    private static final int MD5_HEX_LENGTH = 32;
+
+    private final File cacheDir;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong stores = new AtomicLong(0);
+
+    public ResourceAgentMetaDataCache() {
+        this(new File(Tools.getDefault("ResourceAgentMetaDataCache.Dir")));
+    }
+
+    ResourceAgentMetaDataCache(final File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /** Returns the key of the host's cache, that changes with the versions. */
+    public static String getFingerprint(final String hostName,
+                                        final String pacemakerVersion,
+                                        final String resourceAgentsVersion) {
+        return hostName + '|' + pacemakerVersion + '|' + resourceAgentsVersion;
+    }
+
+    /**
+     * Returns the cached meta-data of the agent or null, if they are not
+     * there or the checksum is different.
+     */
+    public Entry get(final String fingerprint, final String agent, final String checksum) {
+        if (checksum == null || checksum.isEmpty()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        final File file = getFile(fingerprint, agent);
+        if (!file.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            final String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            final int checksumEnd = content.indexOf('\n');
+            final int masterEnd = checksumEnd < 0 ? -1 : content.indexOf('\n', checksumEnd + 1);
+            if (masterEnd < 0
+                || !content.startsWith(CHECKSUM_PREFIX)
+                || !checksum.equals(content.substring(CHECKSUM_PREFIX.length(), checksumEnd))) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (!content.startsWith(MASTER_PREFIX, checksumEnd + 1)
+                || !content.endsWith(END_MARKER)
+                || content.length() - END_MARKER.length() < masterEnd + 1) {
+                LOG.appWarning("get: ignoring incomplete " + file);
+                misses.incrementAndGet();
+                return null;
+            }
+            final boolean masterSlave = Boolean.parseBoolean(
+                                     content.substring(checksumEnd + 1 + MASTER_PREFIX.length(), masterEnd));
+            hits.incrementAndGet();
+            return new Entry(checksum,
+                             masterSlave,
+                             content.substring(masterEnd + 1, content.length() - END_MARKER.length()));
+        } catch (final IOException e) {
+            LOG.appWarning("get: could not read " + file + ": " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** Stores the meta-data of the agent, if there is a checksum. */
+    public void put(final String fingerprint, final String agent, final Entry entry) {
+        if (entry.getChecksum() == null || entry.getChecksum().isEmpty()) {
+            return;
+        }
+        final File file = getFile(fingerprint, agent);
+        final File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOG.appWarning("put: could not create " + dir);
+            return;
+        }
+        final String content = CHECKSUM_PREFIX + entry.getChecksum() + '\n'
+                               + MASTER_PREFIX + entry.isMasterSlave() + '\n'
+                               + entry.getXml()
+                               + END_MARKER;
+        final Path tmpFile = new File(dir, file.getName() + ".tmp").toPath();
+        try {
+            Files.write(tmpFile, content.getBytes(StandardCharsets.UTF_8));
+            moveReplacing(tmpFile, file.toPath());
+            stores.incrementAndGet();
+        } catch (final IOException e) {
+            LOG.appWarning("put: could not write " + file + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(tmpFile);
+            } catch (final IOException e2) {
+                LOG.appWarning("put: could not delete " + tmpFile + ": " + e2.getMessage());
+            }
+        }
+    }
+
+    /** Removes the caches of the host, that are not for these versions anymore. */
+    public void removeOthers(final String hostName, final String fingerprint) {
+        final File[] dirs = cacheDir.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        final String hostPrefix = getHostPrefix(hostName);
+        final String current = getDir(fingerprint).getName();
+        for (final File dir : dirs) {
+            final String name = dir.getName();
+            if (name.startsWith(hostPrefix)
+                && name.length() == hostPrefix.length() + MD5_HEX_LENGTH
+                && !name.equals(current)) {
+                LOG.debug1("removeOthers: " + dir);
+                final File[] files = dir.listFiles();
+                if (files != null) {
+                    for (final File file : files) {
+                        if (!file.delete()) {
+                            LOG.appWarning("removeOthers: could not delete " + file);
+                        }
+                    }
+                }
+                if (!dir.delete()) {
+                    LOG.appWarning("removeOthers: could not delete " + dir);
+                }
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String getStatistics() {
+        return "hits: " + hits.get() + ", misses: " + misses.get() + ", stored: " + stores.get();
+    }
+
+    /** Replaces the target atomically, if the file system can do it. */
+    private static void moveReplacing(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private File getDir(final String fingerprint) {
+        final String hostName = fingerprint.substring(0, fingerprint.indexOf('|'));
+        return new File(cacheDir, getHostPrefix(hostName) + md5(fingerprint));
+    }
+
+    private File getFile(final String fingerprint, final String agent) {
+        return new File(getDir(fingerprint), toFileName(agent) + ".xml");
+    }
+
+    private static String getHostPrefix(final String hostName) {
+        return toFileName(hostName) + '-';
+    }
+
+    private static String md5(final String text) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("MD5").digest(text.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (final byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toFileName(final String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /** Meta-data of one agent. */
+    public static final class Entry {
+        private final String checksum;
+        private final boolean masterSlave;
+        private final String xml;
+
+        public Entry(final String checksum, final boolean masterSlave, final String xml) {
+            this.checksum = checksum;
+            this.masterSlave = masterSlave;
+            this.xml = xml;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public boolean isMasterSlave() {
+            return masterSlave;
+        }
+
+        public String getXml() {
+            return xml;
+        }
+    }
+}
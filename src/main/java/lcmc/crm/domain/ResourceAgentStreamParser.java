@@ -0,0 +1,191 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lcmc.host.domain.parser.CompressedFrames;
+
+/**
+ * Splits the output of the get-resource-agents helper action into the
+ * agents, while it comes from the ssh channel in chunks:
+ *
+ * ra-version:...
+ * class:ocf
+ * provider:heartbeat
+ * ra-name:AudibleAlarm
+ * master:
+ * checksum:...
+ * <resource-agent name="AudibleAlarm">
+ * ...
+ * </resource-agent>
+ *
+ * Every agent is passed to the handler, as soon as its last line arrives.
+ * Agents, that come only with the checksum, are passed on the next agent.
+ * The compressed frames are expanded, as they come.
+ */
+final class ResourceAgentStreamParser {
+    private static final String RA_VERSION_PREFIX = "ra-version:";
+    private static final String CLASS_PREFIX = "class:";
+    private static final String PROVIDER_PREFIX = "provider:";
+    private static final String MASTER_PREFIX = "master:";
+    private static final String RA_NAME_PREFIX = "ra-name:";
+    private static final String CHECKSUM_PREFIX = "checksum:";
+    private static final String RA_START = "<resource-agent";
+    private static final String RA_END = "</resource-agent>";
+    private static final Pattern RA_START_PATTERN = Pattern.compile("<resource-agent.*\\s+name=\"(.*?)\".*");
+
+    private final CompressedFrames.StreamExpander frameExpander;
+    private final AgentHandler handler;
+    /** Output, that doesn't make a whole line yet. */
+    private final StringBuilder pending = new StringBuilder();
+    private final StringBuilder xml = new StringBuilder();
+
+    private String raVersion = "";
+    private String resourceClass = ResourceAgent.OCF_CLASS_NAME;
+    private String provider = null;
+    private String serviceName = null;
+    private String checksum = null;
+    private boolean nextRA = false;
+    private boolean masterSlave = false; /* is probably m/s ...*/
+    private int agents = 0;
+
+    ResourceAgentStreamParser(final CompressedFrames compressedFrames, final AgentHandler handler) {
+        this.frameExpander = compressedFrames.newStreamExpander();
+        this.handler = handler;
+    }
+
+    /** Parses the whole lines of the output and keeps the rest for the next time. */
+    void feed(final CharSequence chars) {
+        pending.append(frameExpander.feed(chars));
+        parseWholeLines();
+    }
+
+    /** Parses what is left, after the command has finished. */
+    void finish() {
+        pending.append(frameExpander.finish());
+        parseWholeLines();
+        if (pending.length() > 0) {
+            parseLine(pending.toString());
+            pending.setLength(0);
+        }
+        addChecksumOnly();
+    }
+
+    private void parseWholeLines() {
+        int pos = 0;
+        while (true) {
+            final int lineEnd = pending.indexOf("\n", pos);
+            if (lineEnd < 0) {
+                break;
+            }
+            parseLine(pending.substring(pos, lineEnd));
+            pos = lineEnd + 1;
+        }
+        pending.delete(0, pos);
+    }
+
+    /** Returns the version of the resource agents packages or an empty string. */
+    String getRaVersion() {
+        return raVersion;
+    }
+
+    int getAgents() {
+        return agents;
+    }
+
+    private void parseLine(final String rawLine) {
+        final String line = rawLine.endsWith("\r") ? rawLine.substring(0, rawLine.length() - 1) : rawLine;
+        if (!nextRA) {
+            if (line.startsWith(RA_VERSION_PREFIX)) {
+                raVersion = getValue(line, RA_VERSION_PREFIX);
+                return;
+            } else if (line.startsWith(CLASS_PREFIX)) {
+                addChecksumOnly();
+                resourceClass = getValue(line, CLASS_PREFIX);
+                return;
+            } else if (line.startsWith(PROVIDER_PREFIX)) {
+                addChecksumOnly();
+                provider = getValue(line, PROVIDER_PREFIX);
+                return;
+            } else if (line.startsWith(MASTER_PREFIX)) {
+                masterSlave = !getValue(line, MASTER_PREFIX).isEmpty();
+                return;
+            } else if (line.startsWith(RA_NAME_PREFIX)) {
+                addChecksumOnly();
+                serviceName = getValue(line, RA_NAME_PREFIX);
+                return;
+            } else if (line.startsWith(CHECKSUM_PREFIX)) {
+                checksum = getValue(line, CHECKSUM_PREFIX);
+                return;
+            } else if (line.contains(RA_START)) {
+                final Matcher m = RA_START_PATTERN.matcher(line);
+                if (m.matches()) {
+                    if (serviceName == null) {
+                        /* old stonith plugins come without ra-name */
+                        serviceName = m.group(1);
+                    }
+                    nextRA = true;
+                }
+            }
+        }
+        if (nextRA) {
+            xml.append(line);
+            xml.append('\n');
+            if (RA_END.equals(line)) {
+                addAgent(xml.toString());
+                nextRA = false;
+                xml.setLength(0);
+            }
+        }
+    }
+
+    /** Adds the agent, that came without the meta data. */
+    private void addChecksumOnly() {
+        if (serviceName != null && checksum != null) {
+            addAgent(null);
+        }
+        serviceName = null;
+        checksum = null;
+    }
+
+    private void addAgent(final String agentXml) {
+        handler.agent(new CrmXml.ResourceAgentOutput(resourceClass,
+                                                     provider,
+                                                     serviceName,
+                                                     masterSlave,
+                                                     checksum,
+                                                     agentXml));
+        agents++;
+        serviceName = null;
+        checksum = null;
+    }
+
+    private static String getValue(final String line, final String prefix) {
+        return line.substring(prefix.length()).trim();
+    }
+
+    /** Gets the agents, as they are parsed. */
+    interface AgentHandler {
+        void agent(CrmXml.ResourceAgentOutput agent);
+    }
+}
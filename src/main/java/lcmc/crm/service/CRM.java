@@ -26,6 +26,7 @@ import lcmc.cluster.service.ssh.ExecCommandConfig;
 import lcmc.cluster.service.ssh.SshOutput;
 import lcmc.common.domain.Application;
 import lcmc.common.domain.util.Tools;
+import lcmc.common.ui.CallbackAction;
 import lcmc.configs.DistResource;
 import lcmc.crm.domain.CrmXml;
 import lcmc.crm.domain.HostLocation;
@@ -33,6 +34,7 @@ import lcmc.host.domain.Host;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -62,6 +64,10 @@ public final class CRM {
     public static final String PTEST_END_DELIM = "--- PTEST END ---";
     /** Location of lcmc-test.xml file. */
     public static final String LCMC_TEST_FILE = "/tmp/lcmc-test-" + UUID.randomUUID() + ".xml";
+    /** Transaction, that collects the commands of this thread. */
+    private static final ThreadLocal<CrmTransaction> TRANSACTION = new ThreadLocal<CrmTransaction>();
+    /** Test mode commands of this thread, that are recorded for the ptest, instead of executed. */
+    private static final ThreadLocal<List<String>> RECORDED_TEST_COMMANDS = new ThreadLocal<List<String>>();
 
     public static String getCibCommand(final String command, final String objType, final String xml) {
         final StringBuilder cmd = new StringBuilder(300);
@@ -74,8 +80,51 @@ public final class CRM {
         return cmd.toString();
     }
 
-    /** Executes specified command on the host. */
+    /**
+     * Starts collecting the CIB changing commands of this thread for the
+     * host, until the transaction is committed or closed.
+     */
+    public static CrmTransaction beginTransaction(final Host host, final Application.RunMode runMode) {
+        final CrmTransaction transaction = new CrmTransaction(host, runMode);
+        final CrmTransaction previous = TRANSACTION.get();
+        if (previous != null) {
+            LOG.appWarning("beginTransaction: previous transaction not closed, " + previous.size() + " commands dropped");
+        }
+        TRANSACTION.set(transaction);
+        return transaction;
+    }
+
+    static void endTransaction(final CrmTransaction transaction) {
+        if (TRANSACTION.get() == transaction) {
+            TRANSACTION.remove();
+        }
+    }
+
+    static SshOutput execTransaction(final Host host, final String command, final Application.RunMode runMode) {
+        return execCommandNow(host, command, runMode);
+    }
+
+    /** Executes the command or adds it to the transaction of this thread. */
     private static SshOutput execCommand(final Host host, final String command, final Application.RunMode runMode) {
+        final CrmTransaction transaction = TRANSACTION.get();
+        if (transaction != null && transaction.accepts(host, runMode)) {
+            transaction.add(command);
+            return new SshOutput("", 0);
+        }
+        return execCommandNow(host, command, runMode);
+    }
+
+    /** Executes specified command on the host. */
+    private static SshOutput execCommandNow(final Host host,
+                                            final String command,
+                                            final Application.RunMode runMode) {
+        if (Application.isTest(runMode)) {
+            final List<String> recordedCommands = RECORDED_TEST_COMMANDS.get();
+            if (recordedCommands != null) {
+                recordedCommands.add(command);
+                return new SshOutput("", 0);
+            }
+        }
         M_PTEST_WRITELOCK.lock();
         try {
             ptestOutput = null;
@@ -100,6 +149,36 @@ public final class CRM {
         }
     }
 
+    /**
+     * Runs the action in the test mode, but only records the commands, that
+     * it would execute, and returns them as one command.
+     */
+    static String recordTestCommands(final Host host, final CallbackAction action) {
+        final List<String> recordedCommands = new ArrayList<String>();
+        RECORDED_TEST_COMMANDS.set(recordedCommands);
+        try {
+            action.run(host);
+        } finally {
+            RECORDED_TEST_COMMANDS.remove();
+        }
+        final StringBuilder commands = new StringBuilder();
+        for (final String command : recordedCommands) {
+            if (commands.length() > 0) {
+                commands.append("; ");
+            }
+            commands.append(command.trim().replaceAll(";+$", ""));
+        }
+        return commands.toString();
+    }
+
+    /** Executes the recorded test commands and the ptest command and returns results. */
+    static String getPtest(final Host host, final String testCommands) {
+        if (!testCommands.isEmpty()) {
+            execCommandNow(host, testCommands, Application.RunMode.TEST);
+        }
+        return getPtest(host);
+    }
+
     /** Executes the ptest command and returns results. */
     public static String getPtest(final Host host) {
         M_PTEST_READLOCK.lock();
@@ -787,7 +866,8 @@ public final class CRM {
         for (final Host clusterHost : clusterHosts) {
             replaceHash.put("@HOST@", clusterHost.getName());
             final String command = host.getDistCommand("CRM.cleanupResource", replaceHash);
-            execCommand(host, command, runMode);
+            /* not a CIB change, it can't be in a transaction */
+            execCommandNow(host, command, runMode);
         }
         return true; /* always return true */
     }
@@ -1145,7 +1225,8 @@ public final class CRM {
         final Map<String, String> replaceHash = new HashMap<String, String>();
         replaceHash.put("@CONFIG@", Tools.escapeQuotes(Matcher.quoteReplacement(config), 1));
         final String command = host.getDistCommand("CRM.configureCommit", replaceHash);
-        final SshOutput ret = execCommand(host, command, runMode);
+        /* the output is needed now */
+        final SshOutput ret = execCommandNow(host, command, runMode);
         if (ret.getExitCode() == 0) {
             return ret.getOutput();
         }
@@ -25,6 +25,7 @@ package lcmc.crm.service;
 import lcmc.host.domain.Host;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.util.Tools;
+import lcmc.cluster.service.ssh.ClusterCommandExecutor;
 import lcmc.cluster.service.ssh.ExecCommandConfig;
 
 /**
@@ -124,15 +125,19 @@ public final class Corosync {
     }
 
     /** Creates Corosync config on specified hosts. */
-    public static void createCorosyncConfig(final Host[] hosts, final StringBuilder config) {
+    public static void createCorosyncConfig(final ClusterCommandExecutor clusterCommandExecutor,
+                                            final Host[] hosts,
+                                            final StringBuilder config) {
         /* write heartbeat config on all hosts */
-        Tools.createConfigOnAllHosts(hosts,
+        Tools.createConfigOnAllHosts(clusterCommandExecutor,
+                                     hosts,
                                      config.toString(),
                                      COROSYNC_CONF_NAME,
                                      COROSYNC_CONF_DIR,
                                      COROSYNC_CONF_PERMS,
                                      true);
-        Tools.createConfigOnAllHosts(hosts,
+        Tools.createConfigOnAllHosts(clusterCommandExecutor,
+                                     hosts,
                                      Tools.getRandomSecret(128),
                                      AUTHKEYS_CONF_NAME,
                                      COROSYNC_CONF_DIR,
@@ -0,0 +1,265 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import lcmc.common.domain.util.StatusStaleness;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Keeps the crm status of a cluster running. The output of the active
+ * stream is parsed, a warm standby stream on another host takes over at
+ * once, when the active stream ends or hangs. A stream is started again on
+ * the same host only after the restart delay, so that a host, where the
+ * status fails at once, doesn't run it in a tight loop.
+ */
+public final class CrmStatusFailover {
+    private static final Logger LOG = LoggerFactory.getLogger(CrmStatusFailover.class);
+    /** How long the active stream may be without any output, the helper sends a keep-alive every 10 s. */
+    public static final long STALE_AFTER = 30000;
+    /** How often the crm status streams are checked, if both of them run. */
+    static final long CHECK_INTERVAL = 10000;
+    /** How often a host for a missing crm status stream is looked for. */
+    static final long RETRY_INTERVAL = 1000;
+    /** How long to wait, before the crm status is started again on the same host. */
+    static final long RESTART_DELAY = 5000;
+
+    private final String clusterName;
+    private final StreamStarter streamStarter;
+    private final StatusStaleness staleness;
+    private final LongSupplier nanoTime;
+    /** Hosts, whose crm status stream ended. */
+    private final BlockingQueue<Host> endedHosts = new LinkedBlockingQueue<Host>();
+    /** When the crm status was started on the hosts, used only in the status thread. */
+    private final Map<Host, Long> startNanos = new HashMap<Host, Long>();
+    private Stream active = null;
+    private long activeSinceNanos = 0;
+    private Stream standby = null;
+    private volatile boolean canceled = false;
+
+    public CrmStatusFailover(final String clusterName,
+                             final StreamStarter streamStarter,
+                             final StatusStaleness staleness) {
+        this(clusterName, streamStarter, staleness, new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return System.nanoTime();
+            }
+        });
+    }
+
+    CrmStatusFailover(final String clusterName,
+                      final StreamStarter streamStarter,
+                      final StatusStaleness staleness,
+                      final LongSupplier nanoTime) {
+        this.clusterName = clusterName;
+        this.streamStarter = streamStarter;
+        this.staleness = staleness;
+        this.nanoTime = nanoTime;
+    }
+
+    /** Runs the streams, until it is cancelled. */
+    public void run() {
+        while (!canceled) {
+            startStreams();
+            final Host endedHost;
+            try {
+                endedHost = waitForEndedHost(getCheckInterval());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (endedHost != null) {
+                removeEndedStream(endedHost);
+            }
+        }
+        stopStreams();
+    }
+
+    public void cancel() {
+        canceled = true;
+    }
+
+    /** The crm status stream on the host ended. */
+    public void streamEnded(final Host host) {
+        endedHosts.offer(host);
+    }
+
+    /**
+     * Makes the standby stream active, if the active stream is missing, and
+     * starts the missing streams, if there are hosts for them.
+     */
+    void startStreams() {
+        if (active == null && standby != null) {
+            LOG.info("startStreams: " + clusterName + ": crm status switched to " + standby.getHost().getName());
+            activate(standby);
+            standby = null;
+        } else if (active == null) {
+            Host host = streamStarter.getPreferredHost();
+            if (host == null || !canStart(host)) {
+                host = getStreamHost(null);
+            }
+            if (host != null) {
+                activate(start(host));
+            }
+        }
+        if (active != null && standby == null) {
+            final Host standbyHost = getStreamHost(active.getHost());
+            if (standbyHost != null) {
+                standby = start(standbyHost);
+            }
+        }
+    }
+
+    long getCheckInterval() {
+        if (active != null && standby != null) {
+            return CHECK_INTERVAL;
+        }
+        return RETRY_INTERVAL;
+    }
+
+    /**
+     * Waits for a stream to end and returns its host, or null after the
+     * timeout. The active stream, that hangs, is stopped and dropped here.
+     */
+    Host waitForEndedHost(final long timeout) throws InterruptedException {
+        final Host endedHost = endedHosts.poll(timeout, TimeUnit.MILLISECONDS);
+        if (endedHost != null) {
+            return endedHost;
+        }
+        /* in case the end of a stream was not reported */
+        if (active != null && !active.getHost().isCrmStatusRunning()) {
+            return active.getHost();
+        }
+        if (standby != null && !standby.getHost().isCrmStatusRunning()) {
+            return standby.getHost();
+        }
+        if (active != null && isHanging()) {
+            final Host host = active.getHost();
+            LOG.appWarning("waitForEndedHost: " + clusterName + ": no crm status output from " + host.getName()
+                           + " for " + staleness.getMillisSinceLastOutput() + " ms");
+            staleness.statusLost("crm status on " + host.getName() + " hangs");
+            active.deactivate();
+            active = null;
+            host.stopCrmStatus();
+        }
+        return null;
+    }
+
+    /** Drops the stream of the host, whose stream ended. */
+    void removeEndedStream(final Host host) {
+        if (active != null && active.getHost() == host) {
+            host.waitForCrmStatusFinish();
+            staleness.statusLost("crm status on " + host.getName() + " ended");
+            active = null;
+        } else if (standby != null && standby.getHost() == host) {
+            host.waitForCrmStatusFinish();
+            standby = null;
+        }
+    }
+
+    Stream getActive() {
+        return active;
+    }
+
+    Stream getStandby() {
+        return standby;
+    }
+
+    private void stopStreams() {
+        for (final Stream stream : new Stream[]{active, standby}) {
+            if (stream != null && stream.getHost().isCrmStatusRunning()) {
+                stream.getHost().stopCrmStatus();
+                stream.getHost().waitForCrmStatusFinish();
+            }
+        }
+    }
+
+    private void activate(final Stream stream) {
+        active = stream;
+        activeSinceNanos = nanoTime.getAsLong();
+        stream.activate();
+    }
+
+    /** Whether the active stream, that was active long enough, didn't send anything for too long. */
+    private boolean isHanging() {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime.getAsLong() - activeSinceNanos) > STALE_AFTER
+               && staleness.getMillisSinceLastOutput() > STALE_AFTER;
+    }
+
+    private Stream start(final Host host) {
+        LOG.debug1("start: " + clusterName + ": " + host.getName());
+        startNanos.put(host, nanoTime.getAsLong());
+        return streamStarter.start(host);
+    }
+
+    private boolean canStart(final Host host) {
+        if (!host.isConnected() || host.isCrmStatusRunning()) {
+            return false;
+        }
+        final Long started = startNanos.get(host);
+        return started == null || TimeUnit.NANOSECONDS.toMillis(nanoTime.getAsLong() - started) >= RESTART_DELAY;
+    }
+
+    /** Returns a host with running cluster, where the crm status can be started, or null. */
+    private Host getStreamHost(final Host exceptHost) {
+        for (final Host host : streamStarter.getHosts()) {
+            if (host != exceptHost
+                && canStart(host)
+                && (host.getHostParser().isHeartbeatRunning()
+                    || host.getHostParser().isCorosyncRunning()
+                    || host.getHostParser().isOpenaisRunning())) {
+                return host;
+            }
+        }
+        return null;
+    }
+
+    /** Crm status stream of one host. */
+    public interface Stream {
+        Host getHost();
+
+        /** Parses the output from now on. */
+        void activate();
+
+        /** Ignores the output from now on. */
+        void deactivate();
+    }
+
+    /** Starts the crm status streams of the cluster. */
+    public interface StreamStarter {
+        /** Returns the host, that should run the active stream, like the DC, or null. */
+        Host getPreferredHost();
+
+        Host[] getHosts();
+
+        /** Starts the crm status on the host as a standby stream. */
+        Stream start(Host host);
+    }
+}
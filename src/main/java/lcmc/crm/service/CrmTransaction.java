@@ -0,0 +1,128 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lcmc.common.domain.Application;
+import lcmc.common.domain.util.Tools;
+import lcmc.configs.DistResource;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Collects the CIB changing commands of the CRM calls on one thread and
+ * applies them at once on commit, instead of a round trip and a new CIB
+ * epoch for every command.
+ *
+ * In the live mode the commands run on a copy of the CIB and only the diff
+ * between the copy and the original is applied to the cluster, with one
+ * cibadmin --patch. If a command fails, nothing is applied. In the test
+ * mode the commands run in one call on the test CIB file, so that the ptest
+ * shows the result of all of them.
+ *
+ * CrmTransaction transaction = CRM.beginTransaction(host, runMode);
+ * try {
+ *     ... CRM calls ...
+ *     transaction.commit();
+ * } finally {
+ *     transaction.close();
+ * }
+ */
+public final class CrmTransaction {
+    private static final Logger LOG = LoggerFactory.getLogger(CrmTransaction.class);
+    /** Shell variable with the directory for the CIB copies. */
+    private static final String TX_DIR = "$LCMC_TX";
+
+    private final Host host;
+    private final Application.RunMode runMode;
+    private final List<String> commands = new ArrayList<String>();
+    private boolean done = false;
+
+    CrmTransaction(final Host host, final Application.RunMode runMode) {
+        this.host = host;
+        this.runMode = runMode;
+    }
+
+    /** Returns whether the command for this host and run mode can be collected. */
+    boolean accepts(final Host commandHost, final Application.RunMode commandRunMode) {
+        return !done && host == commandHost && runMode == commandRunMode;
+    }
+
+    void add(final String command) {
+        LOG.debug1("add: crm command: " + command);
+        commands.add(command);
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Applies all collected commands at once and ends the transaction.
+     * Returns true if there was nothing to do or everything was applied.
+     */
+    public boolean commit() {
+        close();
+        if (commands.isEmpty()) {
+            return true;
+        }
+        LOG.debug1("commit: " + host.getName() + ": commands: " + commands.size());
+        return CRM.execTransaction(host, getCommand(), runMode).getExitCode() == 0;
+    }
+
+    /** Ends the transaction, the commands, that were not committed, are dropped. */
+    public void close() {
+        if (!done) {
+            done = true;
+            CRM.endTransaction(this);
+        }
+    }
+
+    String getCommand() {
+        final StringBuilder joined = new StringBuilder();
+        for (final String command : commands) {
+            if (joined.length() > 0) {
+                joined.append(" && ");
+            }
+            joined.append(command);
+        }
+        if (Application.isTest(runMode) || Tools.versionBeforePacemaker(host)) {
+            /* the test file is the copy already, old heartbeat has no crm_diff */
+            return joined.toString();
+        }
+        final String orig = TX_DIR + "/orig.xml";
+        final String copy = TX_DIR + "/new.xml";
+        final String diff = TX_DIR + "/diff.xml";
+        return "LCMC_TX=$(mktemp -d /tmp/lcmc-tx-XXXXXX) && "
+               + DistResource.SUDO + "/usr/sbin/cibadmin -Ql > " + orig
+               + " && cp " + orig + ' ' + copy
+               + " && (export CIB_file=" + copy + "; " + joined + ')'
+               /* crm_diff exits with 1, if there are differences */
+               + " && { " + DistResource.SUDO + "/usr/sbin/crm_diff -o " + orig + " -n " + copy + " > " + diff
+               + "; [ $? -le 1 ]; }"
+               + " && { [ ! -s " + diff + " ] || "
+               + DistResource.SUDO + "/usr/sbin/cibadmin --patch --xml-file " + diff + "; }"
+               + "; LCMC_TX_RC=$?; rm -rf " + TX_DIR + "; (exit $LCMC_TX_RC)";
+    }
+}
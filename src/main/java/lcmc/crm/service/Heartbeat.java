@@ -25,6 +25,7 @@ package lcmc.crm.service;
 import lcmc.host.domain.Host;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.util.Tools;
+import lcmc.cluster.service.ssh.ClusterCommandExecutor;
 import lcmc.cluster.service.ssh.ExecCommandConfig;
 
 /**
@@ -109,9 +110,12 @@ public final class Heartbeat {
     }
 
     /** Creates heartbeat config on specified hosts. */
-    public static void createHBConfig(final Host[] hosts, final StringBuilder config) {
+    public static void createHBConfig(final ClusterCommandExecutor clusterCommandExecutor,
+                                      final Host[] hosts,
+                                      final StringBuilder config) {
         /* write heartbeat config on all hosts */
-        Tools.createConfigOnAllHosts(hosts,
+        Tools.createConfigOnAllHosts(clusterCommandExecutor,
+                                     hosts,
                                      config.toString(),
                                      HA_CONF_NAME,
                                      HA_CONF_DIR,
@@ -123,7 +127,8 @@ public final class Heartbeat {
                                                          + "1 sha1 ");
         authkeys.append(Tools.getRandomSecret(32));
         authkeys.append('\n');
-        Tools.createConfigOnAllHosts(hosts, authkeys.toString(),
+        Tools.createConfigOnAllHosts(clusterCommandExecutor,
+                                     hosts, authkeys.toString(),
                                      AUTHKEYS_CONF_NAME,
                                      HA_CONF_DIR,
                                      AUTHKEYS_CONF_PERMS,
@@ -25,6 +25,7 @@ package lcmc.crm.service;
 import lcmc.host.domain.Host;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.util.Tools;
+import lcmc.cluster.service.ssh.ClusterCommandExecutor;
 import lcmc.cluster.service.ssh.ExecCommandConfig;
 
 /**
@@ -102,11 +103,20 @@ public final class Openais {
         execCommand(host, command);
     }
 
-    public static void createAISConfig(final Host[] hosts, final StringBuilder config) {
+    public static void createAISConfig(final ClusterCommandExecutor clusterCommandExecutor,
+                                       final Host[] hosts,
+                                       final StringBuilder config) {
         /* write heartbeat config on all hosts */
-        Tools.createConfigOnAllHosts(hosts, config.toString(), AIS_CONF_NAME, AIS_CONF_DIR, AIS_CONF_PERMS, true);
+        Tools.createConfigOnAllHosts(clusterCommandExecutor,
+                                     hosts,
+                                     config.toString(),
+                                     AIS_CONF_NAME,
+                                     AIS_CONF_DIR,
+                                     AIS_CONF_PERMS,
+                                     true);
         final StringBuilder authkeys = new StringBuilder(Tools.getRandomSecret(128));
-        Tools.createConfigOnAllHosts(hosts,
+        Tools.createConfigOnAllHosts(clusterCommandExecutor,
+                                     hosts,
                                      authkeys.toString(),
                                      AUTHKEYS_CONF_NAME,
                                      AIS_CONF_DIR,
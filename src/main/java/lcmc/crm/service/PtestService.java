@@ -0,0 +1,231 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.common.ui.CallbackAction;
+import lcmc.crm.domain.PtestData;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Runs the ptest (crm_simulate) previews of the changes in the background,
+ * one at a time, and caches them for the cib, as long as it doesn't change.
+ *
+ * The change is the commands, that the action would execute in the test
+ * mode; they are only recorded, so that a preview, that was computed
+ * before, is returned without running anything on the host. The previews,
+ * that were requested with the mouse over a button or menu item, go before
+ * the precomputed ones and are cancelled, if a newer one is requested,
+ * before they started.
+ */
+@Named
+public class PtestService {
+    private static final Logger LOG = LoggerFactory.getLogger(PtestService.class);
+    private static final int MAX_CACHED_PTESTS = 32;
+
+    @Inject
+    private ExecutionService executionService;
+    /** Lock of the test cib file, that is shared with the other ptests of the cluster. */
+    private Lock ptestLock;
+
+    private final Map<String, CompletableFuture<PtestData>> cache =
+            new LinkedHashMap<String, CompletableFuture<PtestData>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, CompletableFuture<PtestData>> eldest) {
+                    return size() > MAX_CACHED_PTESTS;
+                }
+            };
+    private final Deque<Request> queue = new ArrayDeque<Request>();
+    private long cachedCibSerial = -1;
+    private boolean running = false;
+
+    public void init(final Lock ptestLock) {
+        this.ptestLock = ptestLock;
+    }
+
+    /**
+     * Returns the preview of the action for this cib. The action runs on this
+     * thread in the test mode, but nothing is executed on the host, if the
+     * same change was simulated before. The previews, that were requested
+     * before and didn't start yet, are cancelled.
+     */
+    public Future<PtestData> simulate(final Host host, final long cibSerial, final CallbackAction action) {
+        return request(host, cibSerial, action, false);
+    }
+
+    /** Computes the preview of the action, if there is nothing else to do. */
+    public void precompute(final Host host, final long cibSerial, final CallbackAction action) {
+        request(host, cibSerial, action, true);
+    }
+
+    private Future<PtestData> request(final Host host,
+                                      final long cibSerial,
+                                      final CallbackAction action,
+                                      final boolean precompute) {
+        final String commands = CRM.recordTestCommands(host, action);
+        final String key = host.getName() + '\n' + commands;
+        synchronized (this) {
+            if (cibSerial != cachedCibSerial) {
+                cancelQueued(true);
+                cache.clear();
+                cachedCibSerial = cibSerial;
+            }
+            if (!precompute) {
+                cancelQueued(false);
+            }
+            final CompletableFuture<PtestData> cached = cache.get(key);
+            if (cached != null && !cached.isCancelled() && !cached.isCompletedExceptionally()) {
+                LOG.debug2("request: cached: " + host.getName() + ": " + commands);
+                if (!precompute) {
+                    moveToFront(cached);
+                }
+                return cached;
+            }
+            final CompletableFuture<PtestData> future = new CompletableFuture<PtestData>();
+            cache.put(key, future);
+            final Request request = new Request(host, commands, key, future, precompute);
+            if (precompute) {
+                queue.addLast(request);
+            } else {
+                queue.addFirst(request);
+            }
+            if (!running) {
+                running = true;
+                executionService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runQueued();
+                    }
+                });
+            }
+            return future;
+        }
+    }
+
+    /**
+     * Cancels the preview, if it didn't start yet, when the mouse moved
+     * away. The preview, that is running, is finished and cached.
+     */
+    public synchronized void cancel(final Future<PtestData> ptest) {
+        final Iterator<Request> it = queue.iterator();
+        while (it.hasNext()) {
+            final Request request = it.next();
+            if (request.future == ptest) {
+                it.remove();
+                request.future.cancel(false);
+                cache.remove(request.key);
+                return;
+            }
+        }
+    }
+
+    /** The precomputed preview, that is waiting, is needed now. */
+    private void moveToFront(final CompletableFuture<PtestData> future) {
+        final Iterator<Request> it = queue.iterator();
+        while (it.hasNext()) {
+            final Request request = it.next();
+            if (request.future == future) {
+                it.remove();
+                queue.addFirst(new Request(request.host, request.commands, request.key, future, false));
+                return;
+            }
+        }
+    }
+
+    /** Cancels the previews, that didn't start yet, the precomputed ones too, if all is true. */
+    private void cancelQueued(final boolean all) {
+        final Iterator<Request> it = queue.iterator();
+        while (it.hasNext()) {
+            final Request request = it.next();
+            if (all || !request.precompute) {
+                it.remove();
+                request.future.cancel(false);
+                cache.remove(request.key);
+            }
+        }
+    }
+
+    private void runQueued() {
+        while (true) {
+            final Request request;
+            synchronized (this) {
+                request = queue.pollFirst();
+                if (request == null) {
+                    running = false;
+                    return;
+                }
+            }
+            if (request.future.isCancelled()) {
+                continue;
+            }
+            try {
+                final String output;
+                ptestLock.lock();
+                try {
+                    output = CRM.getPtest(request.host, request.commands);
+                } finally {
+                    ptestLock.unlock();
+                }
+                request.future.complete(new PtestData(output));
+            } catch (final RuntimeException e) {
+                LOG.appWarning("runQueued: ptest failed: " + request.host.getName() + ": " + e.getMessage());
+                synchronized (this) {
+                    cache.remove(request.key);
+                }
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class Request {
+        private final Host host;
+        private final String commands;
+        private final String key;
+        private final CompletableFuture<PtestData> future;
+        private final boolean precompute;
+
+        Request(final Host host,
+                final String commands,
+                final String key,
+                final CompletableFuture<PtestData> future,
+                final boolean precompute) {
+            this.host = host;
+            this.commands = commands;
+            this.key = key;
+            this.future = future;
+            this.precompute = precompute;
+        }
+    }
+}
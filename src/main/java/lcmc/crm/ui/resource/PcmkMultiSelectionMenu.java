@@ -40,6 +40,7 @@ import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.common.ui.Info;
 import lcmc.common.ui.utils.ButtonCallback;
 import lcmc.crm.service.CRM;
+import lcmc.crm.service.CrmTransaction;
 import lcmc.common.ui.utils.ComponentWithTest;
 import lcmc.crm.service.Corosync;
 import lcmc.common.domain.EnablePredicate;
@@ -53,10 +54,14 @@ import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.utils.UpdatableItem;
 import lcmc.common.domain.VisiblePredicate;
 import lcmc.host.domain.parser.HostParser;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
 import lombok.val;
 
 @Named
 public class PcmkMultiSelectionMenu {
+    private static final Logger LOG = LoggerFactory.getLogger(PcmkMultiSelectionMenu.class);
+
     private PcmkMultiSelectionInfo pcmkMultiSelectionInfo;
     @Inject
     private MenuFactory menuFactory;
@@ -126,22 +131,32 @@ public class PcmkMultiSelectionMenu {
                             @Override
                             public void run(final String text) {
                                 final Host dcHost = getBrowser().getDCHost();
-                                for (final HostInfo hi : selectedHostInfos) {
-                                    if (!hi.isStandby(Application.RunMode.LIVE)) {
-                                        CRM.standByOn(dcHost, hi.getHost(), Application.RunMode.LIVE);
+                                runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final HostInfo hi : selectedHostInfos) {
+                                            if (!hi.isStandby(Application.RunMode.LIVE)) {
+                                                CRM.standByOn(dcHost, hi.getHost(), Application.RunMode.LIVE);
+                                            }
+                                        }
                                     }
-                                }
+                                });
                             }
                         });
         final ButtonCallback standbyItemCallback = getBrowser().new ClMenuItemCallback(getBrowser().getDCHost())
                 .addAction(new CallbackAction() {
                     @Override
                     public void run(final Host dcHost) {
-                        for (final HostInfo hi : selectedHostInfos) {
-                            if (!hi.isStandby(Application.RunMode.LIVE)) {
-                                CRM.standByOn(dcHost, hi.getHost(), Application.RunMode.TEST);
+                        runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                            @Override
+                            public void run() {
+                                for (final HostInfo hi : selectedHostInfos) {
+                                    if (!hi.isStandby(Application.RunMode.LIVE)) {
+                                        CRM.standByOn(dcHost, hi.getHost(), Application.RunMode.TEST);
+                                    }
+                                }
                             }
-                        }
+                        });
                     }
                 });
         pcmkMultiSelectionInfo.addMouseOverListener(standbyItem, standbyItemCallback);
@@ -183,22 +198,32 @@ public class PcmkMultiSelectionMenu {
                             @Override
                             public void run(final String text) {
                                 final Host dcHost = getBrowser().getDCHost();
-                                for (final HostInfo hi : selectedHostInfos) {
-                                    if (hi.isStandby(Application.RunMode.LIVE)) {
-                                        CRM.standByOff(dcHost, hi.getHost(), Application.RunMode.LIVE);
+                                runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final HostInfo hi : selectedHostInfos) {
+                                            if (hi.isStandby(Application.RunMode.LIVE)) {
+                                                CRM.standByOff(dcHost, hi.getHost(), Application.RunMode.LIVE);
+                                            }
+                                        }
                                     }
-                                }
+                                });
                             }
                         });
         final ButtonCallback onlineItemCallback = getBrowser().new ClMenuItemCallback(getBrowser().getDCHost())
                 .addAction(new CallbackAction() {
                     @Override
                     public void run(final Host dcHost) {
-                        for (final HostInfo hi : selectedHostInfos) {
-                            if (hi.isStandby(Application.RunMode.LIVE)) {
-                                CRM.standByOff(dcHost, hi.getHost(), Application.RunMode.TEST);
+                        runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                            @Override
+                            public void run() {
+                                for (final HostInfo hi : selectedHostInfos) {
+                                    if (hi.isStandby(Application.RunMode.LIVE)) {
+                                        CRM.standByOff(dcHost, hi.getHost(), Application.RunMode.TEST);
+                                    }
+                                }
                             }
-                        }
+                        });
                     }
                 });
         pcmkMultiSelectionInfo.addMouseOverListener(onlineItem, onlineItemCallback);
@@ -276,11 +301,16 @@ public class PcmkMultiSelectionMenu {
                         .addAction(new CallbackAction() {
                             @Override
                             public void run(final Host dcHost) {
-                                for (final HostInfo hi : selectedHostInfos) {
-                                    if (!hi.isStandby(Application.RunMode.LIVE)) {
-                                        CRM.standByOn(dcHost, hi.getHost(), Application.RunMode.TEST);
+                                runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final HostInfo hi : selectedHostInfos) {
+                                            if (!hi.isStandby(Application.RunMode.LIVE)) {
+                                                CRM.standByOn(dcHost, hi.getHost(), Application.RunMode.TEST);
+                                            }
+                                        }
                                     }
-                                }
+                                });
                             }
                         });
         pcmkMultiSelectionInfo.addMouseOverListener(stopCorosyncItem, stopCorosyncItemCallback);
@@ -330,11 +360,16 @@ public class PcmkMultiSelectionMenu {
                         .addAction(new CallbackAction() {
                             @Override
                             public void run(final Host dcHost) {
-                                for (final HostInfo hi : selectedHostInfos) {
-                                    if (!hi.isStandby(Application.RunMode.LIVE)) {
-                                        CRM.standByOn(dcHost, hi.getHost(), Application.RunMode.TEST);
+                                runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final HostInfo hi : selectedHostInfos) {
+                                            if (!hi.isStandby(Application.RunMode.LIVE)) {
+                                                CRM.standByOn(dcHost, hi.getHost(), Application.RunMode.TEST);
+                                            }
+                                        }
                                     }
-                                }
+                                });
                             }
                         });
         pcmkMultiSelectionInfo.addMouseOverListener(stopHeartbeatItem, stopHeartbeatItemCallback);
@@ -629,24 +664,34 @@ public class PcmkMultiSelectionMenu {
                             public void run(final String text) {
                                 pcmkMultiSelectionInfo.hidePopup();
                                 final Host dcHost = getBrowser().getDCHost();
-                                for (final ServiceInfo si : selectedServiceInfos) {
-                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                        continue;
+                                runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final ServiceInfo si : selectedServiceInfos) {
+                                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                                continue;
+                                            }
+                                            si.startResource(dcHost, Application.RunMode.LIVE);
+                                        }
                                     }
-                                    si.startResource(dcHost, Application.RunMode.LIVE);
-                                }
+                                });
                             }
                         });
         final ButtonCallback startItemCallback = getBrowser().new ClMenuItemCallback(null)
                 .addAction(new CallbackAction() {
                     @Override
                     public void run(final Host dcHost) {
-                        for (final ServiceInfo si : selectedServiceInfos) {
-                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                continue;
+                        runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                            @Override
+                            public void run() {
+                                for (final ServiceInfo si : selectedServiceInfos) {
+                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                        continue;
+                                    }
+                                    si.startResource(dcHost, Application.RunMode.TEST);
+                                }
                             }
-                            si.startResource(dcHost, Application.RunMode.TEST);
-                        }
+                        });
                     }
                 });
         pcmkMultiSelectionInfo.addMouseOverListener(startMenuItem, startItemCallback);
@@ -688,24 +733,34 @@ public class PcmkMultiSelectionMenu {
                             public void run(final String text) {
                                 pcmkMultiSelectionInfo.hidePopup();
                                 final Host dcHost = getBrowser().getDCHost();
-                                for (final ServiceInfo si : selectedServiceInfos) {
-                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                        continue;
+                                runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final ServiceInfo si : selectedServiceInfos) {
+                                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                                continue;
+                                            }
+                                            si.stopResource(dcHost, Application.RunMode.LIVE);
+                                        }
                                     }
-                                    si.stopResource(dcHost, Application.RunMode.LIVE);
-                                }
+                                });
                             }
                         });
         final ButtonCallback stopItemCallback = getBrowser().new ClMenuItemCallback(null)
                 .addAction(new CallbackAction() {
                     @Override
                     public void run(final Host dcHost) {
-                        for (final ServiceInfo si : selectedServiceInfos) {
-                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                continue;
+                        runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                            @Override
+                            public void run() {
+                                for (final ServiceInfo si : selectedServiceInfos) {
+                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                        continue;
+                                    }
+                                    si.stopResource(dcHost, Application.RunMode.TEST);
+                                }
                             }
-                            si.stopResource(dcHost, Application.RunMode.TEST);
-                        }
+                        });
                     }
                 });
         pcmkMultiSelectionInfo.addMouseOverListener(stopMenuItem, stopItemCallback);
@@ -825,24 +880,34 @@ public class PcmkMultiSelectionMenu {
                             public void run(final String text) {
                                 pcmkMultiSelectionInfo.hidePopup();
                                 final Host dcHost = getBrowser().getDCHost();
-                                for (final ServiceInfo si : selectedServiceInfos) {
-                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                        continue;
+                                runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final ServiceInfo si : selectedServiceInfos) {
+                                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                                continue;
+                                            }
+                                            si.setManaged(true, dcHost, Application.RunMode.LIVE);
+                                        }
                                     }
-                                    si.setManaged(true, dcHost, Application.RunMode.LIVE);
-                                }
+                                });
                             }
                         });
         final ButtonCallback manageItemCallback = getBrowser().new ClMenuItemCallback(null)
                 .addAction(new CallbackAction() {
                     @Override
                     public void run(final Host dcHost) {
-                        for (final ServiceInfo si : selectedServiceInfos) {
-                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                continue;
+                        runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                            @Override
+                            public void run() {
+                                for (final ServiceInfo si : selectedServiceInfos) {
+                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                        continue;
+                                    }
+                                    si.setManaged(true, dcHost, Application.RunMode.TEST);
+                                }
                             }
-                            si.setManaged(true, dcHost, Application.RunMode.TEST);
-                        }
+                        });
                     }
                 });
         pcmkMultiSelectionInfo.addMouseOverListener(manageMenuItem, manageItemCallback);
@@ -893,24 +958,34 @@ public class PcmkMultiSelectionMenu {
                             public void run(final String text) {
                                 pcmkMultiSelectionInfo.hidePopup();
                                 final Host dcHost = getBrowser().getDCHost();
-                                for (final ServiceInfo si : selectedServiceInfos) {
-                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                        continue;
+                                runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final ServiceInfo si : selectedServiceInfos) {
+                                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                                continue;
+                                            }
+                                            si.setManaged(false, dcHost, Application.RunMode.LIVE);
+                                        }
                                     }
-                                    si.setManaged(false, dcHost, Application.RunMode.LIVE);
-                                }
+                                });
                             }
                         });
         final ButtonCallback unmanageItemCallback = getBrowser().new ClMenuItemCallback(null)
                 .addAction(new CallbackAction() {
                     @Override
                     public void run(final Host dcHost) {
-                        for (final ServiceInfo si : selectedServiceInfos) {
-                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                continue;
+                        runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                            @Override
+                            public void run() {
+                                for (final ServiceInfo si : selectedServiceInfos) {
+                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                        continue;
+                                    }
+                                    si.setManaged(false, dcHost, Application.RunMode.TEST);
+                                }
                             }
-                            si.setManaged(false, dcHost, Application.RunMode.TEST);
-                        }
+                        });
                     }
                 });
         pcmkMultiSelectionInfo.addMouseOverListener(unmanageMenuItem, unmanageItemCallback);
@@ -973,24 +1048,34 @@ public class PcmkMultiSelectionMenu {
                                 public void run(final String text) {
                                     pcmkMultiSelectionInfo.hidePopup();
                                     final Host dcHost = getBrowser().getDCHost();
-                                    for (final ServiceInfo si : selectedServiceInfos) {
-                                        if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                            continue;
+                                    runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            for (final ServiceInfo si : selectedServiceInfos) {
+                                                if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                                    continue;
+                                                }
+                                                si.migrateFromResource(dcHost, hostName, Application.RunMode.LIVE);
+                                            }
                                         }
-                                        si.migrateFromResource(dcHost, hostName, Application.RunMode.LIVE);
-                                    }
+                                    });
                                 }
                             });
             final ButtonCallback migrateItemCallback = getBrowser().new ClMenuItemCallback(null)
                     .addAction(new CallbackAction() {
                         @Override
                         public void run(final Host dcHost) {
-                            for (final ServiceInfo si : selectedServiceInfos) {
-                                if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                    continue;
+                            runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                                @Override
+                                public void run() {
+                                    for (final ServiceInfo si : selectedServiceInfos) {
+                                        if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                            continue;
+                                        }
+                                        si.migrateFromResource(dcHost, hostName, Application.RunMode.TEST);
+                                    }
                                 }
-                                si.migrateFromResource(dcHost, hostName, Application.RunMode.TEST);
-                            }
+                            });
                         }
                     });
             pcmkMultiSelectionInfo.addMouseOverListener(migrateFromMenuItem, migrateItemCallback);
@@ -1028,24 +1113,34 @@ public class PcmkMultiSelectionMenu {
                             public void run(final String text) {
                                 pcmkMultiSelectionInfo.hidePopup();
                                 final Host dcHost = getBrowser().getDCHost();
-                                for (final ServiceInfo si : selectedServiceInfos) {
-                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                        continue;
+                                runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (final ServiceInfo si : selectedServiceInfos) {
+                                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                                continue;
+                                            }
+                                            si.unmigrateResource(dcHost, Application.RunMode.LIVE);
+                                        }
                                     }
-                                    si.unmigrateResource(dcHost, Application.RunMode.LIVE);
-                                }
+                                });
                             }
                         });
         final ButtonCallback unmigrateItemCallback = getBrowser().new ClMenuItemCallback(null)
                 .addAction(new CallbackAction() {
                     @Override
                     public void run(final Host dcHost) {
-                        for (final ServiceInfo si : selectedServiceInfos) {
-                            if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
-                                continue;
+                        runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                            @Override
+                            public void run() {
+                                for (final ServiceInfo si : selectedServiceInfos) {
+                                    if (si.isConstraintPlaceholder() || si.getService().isNew() || si.getService().isOrphaned()) {
+                                        continue;
+                                    }
+                                    si.unmigrateResource(dcHost, Application.RunMode.TEST);
+                                }
                             }
-                            si.unmigrateResource(dcHost, Application.RunMode.TEST);
-                        }
+                        });
                     }
                 });
         pcmkMultiSelectionInfo.addMouseOverListener(unmigrateMenuItem, unmigrateItemCallback);
@@ -1100,17 +1195,22 @@ public class PcmkMultiSelectionMenu {
                             return;
                         }
                         final Host dcHost = getBrowser().getDCHost();
-                        for (ServiceInfo si : selectedServiceInfos) {
-                            final ServiceInfo cs = si.getContainedService();
-                            if (cs != null) {
-                                si = cs;
-                            }
-                            if (si.getService().isOrphaned()) {
-                                si.cleanupResource(dcHost, Application.RunMode.LIVE);
-                            } else {
-                                si.removeMyselfNoConfirm(dcHost, Application.RunMode.LIVE);
+                        runInTransaction(dcHost, Application.RunMode.LIVE, new Runnable() {
+                            @Override
+                            public void run() {
+                                for (ServiceInfo si : selectedServiceInfos) {
+                                    final ServiceInfo cs = si.getContainedService();
+                                    if (cs != null) {
+                                        si = cs;
+                                    }
+                                    if (si.getService().isOrphaned()) {
+                                        si.cleanupResource(dcHost, Application.RunMode.LIVE);
+                                    } else {
+                                        si.removeMyselfNoConfirm(dcHost, Application.RunMode.LIVE);
+                                    }
+                                }
                             }
-                        }
+                        });
                         getBrowser().getCrmGraph().repaint();
                     }
                 });
@@ -1131,15 +1231,37 @@ public class PcmkMultiSelectionMenu {
         removeItemCallback.addAction(new CallbackAction() {
             @Override
             public void run(final Host dcHost) {
-                for (final ServiceInfo si : selectedServiceInfos) {
-                    si.removeMyselfNoConfirm(dcHost, Application.RunMode.TEST);
-                }
+                runInTransaction(dcHost, Application.RunMode.TEST, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final ServiceInfo si : selectedServiceInfos) {
+                            si.removeMyselfNoConfirm(dcHost, Application.RunMode.TEST);
+                        }
+                    }
+                });
             }
         });
         pcmkMultiSelectionInfo.addMouseOverListener(removeMenuItem, removeItemCallback);
         items.add((UpdatableItem) removeMenuItem);
     }
 
+    /**
+     * Runs the CRM calls of the action in one transaction, that is committed
+     * at the end.
+     */
+    private void runInTransaction(final Host dcHost, final Application.RunMode runMode, final Runnable action) {
+        final CrmTransaction transaction = CRM.beginTransaction(dcHost, runMode);
+        try {
+            action.run();
+            if (!transaction.commit()) {
+                LOG.appWarning("runInTransaction: " + dcHost.getName() + ": " + runMode
+                               + ": could not apply the crm commands");
+            }
+        } finally {
+            transaction.close();
+        }
+    }
+
     private ClusterBrowser getBrowser() {
         return pcmkMultiSelectionInfo.getBrowser();
     }
@@ -38,6 +38,7 @@ import lcmc.common.domain.Value;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.Access;
 import lcmc.common.ui.Browser;
+import lcmc.common.ui.CallbackAction;
 import lcmc.common.ui.EditableInfo;
 import lcmc.common.ui.Info;
 import lcmc.common.ui.SpringUtilities;
@@ -2241,6 +2242,9 @@ public class ServiceInfo extends EditableInfo {
         } else {
             getBrowser().getCrmGraph().pickInfo(ci);
         }
+        if (!getService().isNew()) {
+            precomputePtest();
+        }
         if (infoPanel != null) {
             LOG.debug1("getInfoPanel: " + getName() + ": cached end");
             return infoPanel;
@@ -3696,6 +3700,21 @@ public class ServiceInfo extends EditableInfo {
         CRM.startResource(dcHost, getHeartbeatId(runMode), runMode);
     }
 
+    /** Precomputes the ptest of the start or stop of the selected resource, that is likely to be next. */
+    private void precomputePtest() {
+        final boolean started = isStarted(Application.RunMode.LIVE);
+        getBrowser().precomputePtest(new CallbackAction() {
+            @Override
+            public void run(final Host dcHost) {
+                if (started) {
+                    stopResource(dcHost, Application.RunMode.TEST);
+                } else {
+                    startResource(dcHost, Application.RunMode.TEST);
+                }
+            }
+        });
+    }
+
     /** Stops resource in crm. */
     void stopResource(final Host dcHost, final Application.RunMode runMode) {
         if (Application.isLive(runMode)) {
@@ -4031,6 +4050,11 @@ public class ServiceInfo extends EditableInfo {
         super.setUpdated(updated);
     }
 
+    /** Returns whether the service is being updated and waits for the new status. */
+    public boolean isBeingUpdated() {
+        return isUpdated();
+    }
+
     public ColorText getRightCornerTextForGraph(final Application.RunMode runMode) {
         if (getService().isOrphaned()) {
             if (isFailed(runMode)) {
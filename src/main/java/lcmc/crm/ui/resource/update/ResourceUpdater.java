@@ -24,6 +24,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.common.domain.Application;
+import lcmc.crm.domain.CibChanges;
 import lcmc.crm.domain.ClusterStatus;
 import lcmc.crm.domain.CrmXml;
 import lcmc.crm.domain.ResourceAgent;
@@ -49,7 +50,9 @@ import javax.inject.Named;
 import javax.inject.Provider;
 import javax.swing.tree.DefaultMutableTreeNode;
 import java.awt.geom.Point2D;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -74,6 +77,13 @@ public class ResourceUpdater {
     private Set<String> allGroupsAndClones;
     private List<ServiceInfo> groupServiceIsPresent = Lists.newArrayList();
     private List<ServiceInfo> serviceIsPresent = Lists.newArrayList();
+    /**
+     * Parameters are set after all services of the pass exist, so that the
+     * id-refs to the services, that come later, can be resolved.
+     */
+    private final Map<ServiceInfo, Map<String, String>> setParametersHash =
+                                                        new LinkedHashMap<ServiceInfo, Map<String, String>>();
+    private boolean newService = false;
 
     /**
      * This functions goes through all services, constrains etc. in
@@ -83,6 +93,62 @@ public class ResourceUpdater {
                                    final ClusterBrowser browser,
                                    final ClusterStatus clusterStatus,
                                    final Application.RunMode runMode) {
+        init(servicesInfo, browser, clusterStatus, runMode);
+
+        for (final String groupOrClone : allGroupsAndClones) {
+            updateGroupOrClone(groupOrClone);
+        }
+        setAllParameters();
+
+        updateConstraints();
+
+        servicesInfo.cleanupServiceMenu(groupServiceIsPresent);
+        crmGraph.updateRemovedElements(serviceIsPresent);
+    }
+
+    /**
+     * Updates only the resources, that changed with the last status update,
+     * and their dependents. The constraints are updated only if some of them
+     * changed. If resources were added, removed or regrouped, everything is
+     * updated.
+     */
+    public void updateChangedResources(final ServicesInfo servicesInfo,
+                                       final ClusterBrowser browser,
+                                       final ClusterStatus clusterStatus,
+                                       final Application.RunMode runMode,
+                                       final CibChanges changes) {
+        if (changes.isAll()) {
+            updateAllResources(servicesInfo, browser, clusterStatus, runMode);
+            return;
+        }
+        init(servicesInfo, browser, clusterStatus, runMode);
+        final Set<String> changedResources = new HashSet<String>(changes.getChangedResources());
+        /* the ones, that wait for the new status, even if it didn't change */
+        changedResources.addAll(getServicesBeingUpdated());
+        LOG.debug1("updateChangedResources: resources: " + changedResources.size()
+                   + ", constraints: " + changes.isConstraintsChanged());
+        for (final String crmId : changedResources) {
+            if (clusterStatus.isOrphaned(crmId) && application.isHideLRM()) {
+                continue;
+            }
+            final ServiceInfo serviceInfo = browser.getServiceInfoFromCRMId(crmId);
+            if (serviceInfo != null) {
+                setParametersHash.put(serviceInfo, clusterStatus.getParamValuePairs(crmId));
+            }
+        }
+        setAllParameters();
+
+        if (changes.isConstraintsChanged()) {
+            findPresentServices();
+            updateConstraints();
+            crmGraph.updateRemovedElements(serviceIsPresent);
+        }
+    }
+
+    private void init(final ServicesInfo servicesInfo,
+                      final ClusterBrowser browser,
+                      final ClusterStatus clusterStatus,
+                      final Application.RunMode runMode) {
         this.servicesInfo = servicesInfo;
         this.browser = browser;
         this.clusterStatus = clusterStatus;
@@ -90,11 +156,67 @@ public class ResourceUpdater {
 
         allGroupsAndClones = clusterStatus.getAllGroupsAndClones();
         crmGraph = browser.getCrmGraph();
+    }
+
+    private List<String> getServicesBeingUpdated() {
+        final List<String> crmIds = new ArrayList<String>();
+        browser.mHeartbeatIdToServiceLock();
+        try {
+            for (final Map.Entry<String, ServiceInfo> serviceEntry
+                                                        : browser.getHeartbeatIdToServiceInfo().entrySet()) {
+                if (serviceEntry.getValue().isBeingUpdated()) {
+                    crmIds.add(serviceEntry.getKey());
+                }
+            }
+        } finally {
+            browser.mHeartbeatIdToServiceUnlock();
+        }
+        return crmIds;
+    }
 
+    /** Collects the present services like the whole update, without updating them. */
+    private void findPresentServices() {
         for (final String groupOrClone : allGroupsAndClones) {
-            updateGroupOrClone(groupOrClone);
+            if (!"none".equals(groupOrClone)) {
+                final ServiceInfo groupOrCloneInfo = browser.getServiceInfoFromCRMId(groupOrClone);
+                /* cloned group is present as its clone */
+                if (groupOrCloneInfo != null && groupOrCloneInfo.getCloneInfo() == null) {
+                    serviceIsPresent.add(groupOrCloneInfo);
+                }
+            }
+            final Optional<List<String>> groupResources = clusterStatus.getGroupResources(groupOrClone, runMode);
+            if (!groupResources.isPresent()) {
+                continue;
+            }
+            for (final String hbId : groupResources.get()) {
+                if (allGroupsAndClones.contains(hbId)
+                    || (clusterStatus.isOrphaned(hbId) && application.isHideLRM())) {
+                    continue;
+                }
+                final ServiceInfo serviceInfo = browser.getServiceInfoFromCRMId(hbId);
+                if (serviceInfo != null) {
+                    serviceIsPresent.add(serviceInfo);
+                }
+            }
         }
+    }
+
+    /** Sets the parameters collected in this pass, after all the services exist. */
+    private void setAllParameters() {
+        for (final Map.Entry<ServiceInfo, Map<String, String>> setEntry : setParametersHash.entrySet()) {
+            setEntry.getKey().setParameters(setEntry.getValue());
+            if (Application.isLive(runMode)) {
+                setEntry.getKey().setUpdated(false);
+            }
+        }
+        setParametersHash.clear();
+        if (newService) {
+            servicesInfo.reloadNode();
+        }
+        browser.repaintAfterStatusUpdate();
+    }
 
+    private void updateConstraints() {
         crmGraph.clearKeepColocationList();
         crmGraph.clearKeepOrderList();
         /* resource sets */
@@ -108,9 +230,6 @@ public class ResourceUpdater {
         updateColocations();
 
         updateOrders();
-
-        servicesInfo.cleanupServiceMenu(groupServiceIsPresent);
-        crmGraph.updateRemovedElements(serviceIsPresent);
     }
 
     private void updateOrders() {
@@ -176,7 +295,7 @@ public class ResourceUpdater {
         newCi.setParameters(resourceNode);
         if (Application.isLive(runMode)) {
             newCi.setUpdated(false);
-            browser.repaint();
+            browser.repaintAfterStatusUpdate();
         }
     }
 
@@ -211,7 +330,7 @@ public class ResourceUpdater {
         newGi.setParameters(resourceNode);
         if (Application.isLive(runMode)) {
             newGi.setUpdated(false);
-            browser.repaint();
+            browser.repaintAfterStatusUpdate();
         }
     }
 
@@ -233,64 +352,37 @@ public class ResourceUpdater {
     }
 
     private void setGroupResources(final String grpOrCloneId, final GroupInfo newGi, final CloneInfo newCi) {
-        final Map<ServiceInfo, Map<String, String>> setParametersHash = new HashMap<ServiceInfo, Map<String, String>>();
+        final Optional<List<String>> groupResources = clusterStatus.getGroupResources(grpOrCloneId, runMode);
+        if (!groupResources.isPresent()) {
+            return;
+        }
         if (newCi != null) {
             setParametersHash.put(newCi, clusterStatus.getParamValuePairs(grpOrCloneId));
         } else if (newGi != null) {
             setParametersHash.put(newGi, clusterStatus.getParamValuePairs(grpOrCloneId));
         }
-        final Optional<List<String>> groupResources = clusterStatus.getGroupResources(grpOrCloneId, runMode);
-        if (!groupResources.isPresent()) {
-            return;
-        }
-        boolean newService = false;
         int pos = 0;
         for (final String hbId : groupResources.get()) {
-            final GroupServiceUpdater groupServiceUpdater = new GroupServiceUpdater(newGi, newCi, setParametersHash, newService, pos, hbId);
+            final GroupServiceUpdater groupServiceUpdater = new GroupServiceUpdater(newGi, newCi, pos, hbId);
             groupServiceUpdater.update();
-            newService = groupServiceUpdater.isNewService();
             pos = groupServiceUpdater.getPos();
         }
-
-        for (final Map.Entry<ServiceInfo, Map<String, String>> setEntry : setParametersHash.entrySet()) {
-            setEntry.getKey().setParameters(setEntry.getValue());
-            if (Application.isLive(runMode)) {
-                setEntry.getKey().setUpdated(false);
-            }
-        }
-        if (newService) {
-            servicesInfo.reloadNode();
-        }
-        browser.repaint();
     }
 
     private class GroupServiceUpdater {
         private final GroupInfo newGi;
         private final CloneInfo newCi;
-        private final Map<ServiceInfo, Map<String, String>> setParametersHash;
-        private boolean newService;
         @Getter
         private int pos;
         private final String hbId;
 
-        public GroupServiceUpdater(final GroupInfo newGi,
-                                   final CloneInfo newCi,
-                                   final Map<ServiceInfo, Map<String, String>> setParametersHash,
-                                   final boolean newService,
-                                   final int pos,
-                                   final String hbId) {
+        public GroupServiceUpdater(final GroupInfo newGi, final CloneInfo newCi, final int pos, final String hbId) {
             this.newGi = newGi;
             this.newCi = newCi;
-            this.setParametersHash = setParametersHash;
-            this.newService = newService;
             this.pos = pos;
             this.hbId = hbId;
         }
 
-        public boolean isNewService() {
-            return newService;
-        }
-
         public void update() {
             if (clusterStatus.isOrphaned(hbId) && application.isHideLRM()) {
                 return;
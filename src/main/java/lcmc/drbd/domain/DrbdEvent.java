@@ -0,0 +1,181 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.drbd.domain;
+
+import java.util.regex.Pattern;
+
+/**
+ * One event of the "drbdsetup events2" stream of DRBD 9, e.g.
+ *
+ * "2016-03-14T12:34:56.789012+01:00 change peer-device name:r0
+ * peer-node-id:1 conn-name:b volume:0 replication:SyncSource done:12.50"
+ *
+ * Only the events2 lines are split with a precompiled pattern, the
+ * properties are kept as they came.
+ */
+public final class DrbdEvent {
+    public enum Action {
+        EXISTS, CREATE, CHANGE, DESTROY, RENAME, CALL, RESPONSE
+    }
+
+    public enum Type {
+        RESOURCE, CONNECTION, DEVICE, PEER_DEVICE, HELPER
+    }
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final char KEY_VALUE_SEPARATOR = ':';
+
+    private final Action action;
+    private final Type type;
+    /** Keys and values of the properties, one after the other. */
+    private final String[] properties;
+
+    private DrbdEvent(final Action action, final Type type, final String[] properties) {
+        this.action = action;
+        this.type = type;
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the event or null, if it's not an events2 line. The action is
+     * checked first, so that the other lines are not split.
+     */
+    public static DrbdEvent parse(final String line) {
+        int start = skipWhitespace(line, 0);
+        int end = endOfToken(line, start);
+        if (isTimestamp(line, start, end)) {
+            start = skipWhitespace(line, end);
+            end = endOfToken(line, start);
+        }
+        final Action action = parseAction(line, start, end);
+        if (action == null) {
+            return null;
+        }
+        final String[] tokens = WHITESPACE.split(line.substring(end).trim());
+        final Type type = parseType(tokens[0]);
+        if (type == null) {
+            return null;
+        }
+        final String[] properties = new String[(tokens.length - 1) * 2];
+        int p = 0;
+        for (int i = 1; i < tokens.length; i++) {
+            final int separator = tokens[i].indexOf(KEY_VALUE_SEPARATOR);
+            if (separator > 0) {
+                properties[p++] = tokens[i].substring(0, separator);
+                properties[p++] = tokens[i].substring(separator + 1);
+            }
+        }
+        return new DrbdEvent(action, type, properties);
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** Returns the value of the property or null, if the event doesn't have it. */
+    public String getValue(final String key) {
+        for (int i = 0; i < properties.length && properties[i] != null; i += 2) {
+            if (key.equals(properties[i])) {
+                return properties[i + 1];
+            }
+        }
+        return null;
+    }
+
+    public String getResourceName() {
+        return getValue("name");
+    }
+
+    /** Returns the volume number or null for the events of the whole resource or connection. */
+    public String getVolume() {
+        return getValue("volume");
+    }
+
+    /** Returns whether the state of the devices may have changed. */
+    public boolean isStateChange() {
+        return action == Action.EXISTS || action == Action.CREATE || action == Action.CHANGE;
+    }
+
+    /** The timestamp of "drbdsetup events2 --timestamps" is in the ISO 8601 format. */
+    private static boolean isTimestamp(final String line, final int start, final int end) {
+        if (start == end || !Character.isDigit(line.charAt(start))) {
+            return false;
+        }
+        final int t = line.indexOf('T', start);
+        return t > start && t < end;
+    }
+
+    private static int skipWhitespace(final String line, int i) {
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int endOfToken(final String line, int i) {
+        while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static Action parseAction(final String line, final int start, final int end) {
+        if (isToken(line, start, end, "exists")) {
+            return Action.EXISTS;
+        } else if (isToken(line, start, end, "create")) {
+            return Action.CREATE;
+        } else if (isToken(line, start, end, "change")) {
+            return Action.CHANGE;
+        } else if (isToken(line, start, end, "destroy")) {
+            return Action.DESTROY;
+        } else if (isToken(line, start, end, "rename")) {
+            return Action.RENAME;
+        } else if (isToken(line, start, end, "call")) {
+            return Action.CALL;
+        } else if (isToken(line, start, end, "response")) {
+            return Action.RESPONSE;
+        }
+        return null;
+    }
+
+    private static boolean isToken(final String line, final int start, final int end, final String token) {
+        return end - start == token.length() && line.startsWith(token, start);
+    }
+
+    private static Type parseType(final String token) {
+        if ("resource".equals(token)) {
+            return Type.RESOURCE;
+        } else if ("connection".equals(token)) {
+            return Type.CONNECTION;
+        } else if ("device".equals(token)) {
+            return Type.DEVICE;
+        } else if ("peer-device".equals(token)) {
+            return Type.PEER_DEVICE;
+        } else if ("helper".equals(token)) {
+            return Type.HELPER;
+        }
+        return null;
+    }
+}
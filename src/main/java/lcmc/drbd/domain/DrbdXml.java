@@ -79,6 +79,18 @@ public class DrbdXml {
     private static final String[] EMPTY_STRING = new String[0];
 
     private static final Pattern UNIT_PATTERN = Pattern.compile("(\\d*)([kmgtsKMGTS]?)");
+    /* since drbd 8.3 there is ro: instead of st: */
+    private static final Pattern STATE_EVENT_PATTERN = Pattern.compile(
+                                        "^(\\d+)\\s+ST\\s+(\\S+)\\s+\\{\\s+cs:(\\S+)\\s+"
+                                        + "(?:st|ro):(\\S+)/(\\S+)\\s+ds:(\\S+)/(\\S+)\\s+(\\S+).*?");
+    /* 19 SP 0 16.9 */
+    private static final Pattern SYNC_PROGRESS_EVENT_PATTERN = Pattern.compile(
+                                                                   "^(\\d+)\\s+SP\\s+(\\S+)\\s(\\d+\\.\\d+).*");
+    /* 19 UH 1 split-brain */
+    private static final Pattern USER_HELPER_EVENT_PATTERN = Pattern.compile("^(\\d+)\\s+UH\\s+(\\S+)\\s([a-z-]+).*");
+    /* since 8.4 */
+    private static final Pattern DEVICE_NR_PATTERN = Pattern.compile("^(\\d+),(\\S+)\\[(\\d+)\\]$");
+    private static final String SPLIT_BRAIN_HELPER = "split-brain";
     public static final String GLOBAL_SECTION = "global";
     public static final Value PROTOCOL_A = new StringValue("A", "A / Asynchronous");
     private static final Value PROTOCOL_B = new StringValue("B", "B / Semi-Synchronous");
@@ -372,9 +384,10 @@ public class DrbdXml {
 
     public final String updateDrbdParameters(final Host host) {
         final String command = host.getHostParser().getDistCommand("Drbd.getParameters", (ConvertCmdCallback) null);
-        final SshOutput ret = host.captureCommand(new ExecCommandConfig().command(command)
-                                                                         .silentCommand()
-                                                                         .silentOutput());
+        final SshOutput ret = host.captureGuiHelperAction("get-drbd-xml",
+                                                          new ExecCommandConfig().command(command)
+                                                                                 .silentCommand()
+                                                                                 .silentOutput());
         if (ret.getExitCode() != 0) {
             return null;
         }
@@ -423,12 +436,12 @@ public class DrbdXml {
             return null;
         }
         final String command2 = host.getHostParser().getDistCommand("Drbd.getConfig", (ConvertCmdCallback) null);
-        final SshOutput ret = host.captureCommand(new ExecCommandConfig().command(command2)
-                                                                         .silentCommand()
-                                                                         .silentOutput());
+        final SshOutput ret = host.captureGuiHelperAction("get-drbd-info",
+                                                          new ExecCommandConfig().command(command2)
+                                                                                 .silentCommand()
+                                                                                 .silentOutput());
         if (ret.getExitCode() == 0) {
-            final StringBuffer confSB = new StringBuffer(ret.getOutput());
-            return host.getHostParser().getOutput("drbd", confSB);
+            return host.getHostParser().getInfoFrame("drbd", ret.getOutput());
         }
         return null;
     }
@@ -1262,12 +1275,11 @@ public class DrbdXml {
         } else {
             hostDrbdLoadedMap.put(hostName, true);
         }
-        /* since drbd 8.3 there is ro: instead of st: */
-        /* since drbd 8.4 there is ro: instead of st: */
-        Pattern p = Pattern.compile("^(\\d+)\\s+ST\\s+(\\S+)\\s+\\{\\s+cs:(\\S+)\\s+"
-                                    + "(?:st|ro):(\\S+)/(\\S+)\\s+ds:(\\S+)/(\\S+)\\s+(\\S+).*?");
-        Matcher m = p.matcher(output);
-        final Pattern pDev = Pattern.compile("^(\\d+),(\\S+)\\[(\\d+)\\]$");
+        final DrbdEvent event = DrbdEvent.parse(output);
+        if (event != null) {
+            return applyDrbdEvent(hostName, drbdGraph, event);
+        }
+        Matcher m = STATE_EVENT_PATTERN.matcher(output);
         if (m.matches()) {
             /* String counter      = m.group(1); // not used */
             final String devNrString  = m.group(2);
@@ -1278,7 +1290,7 @@ public class DrbdXml {
             final String ds2          = m.group(7);
             final String flags        = m.group(8);
 
-            final Matcher mDev = pDev.matcher(devNrString);
+            final Matcher mDev = DEVICE_NR_PATTERN.matcher(devNrString);
             String devNr = devNrString;
             if (mDev.matches()) { /* since 8.4 */
                 devNr = mDev.group(1);
@@ -1305,15 +1317,13 @@ public class DrbdXml {
             }
             return false;
         }
-        /* 19 SP 0 16.9 */
-        p = Pattern.compile("^(\\d+)\\s+SP\\s+(\\S+)\\s(\\d+\\.\\d+).*");
-        m = p.matcher(output);
+        m = SYNC_PROGRESS_EVENT_PATTERN.matcher(output);
         if (m.matches()) {
             /* String counter      = m.group(1); // not used */
             final String devNrString = m.group(2);
             final String synced = m.group(3);
 
-            final Matcher mDev = pDev.matcher(devNrString);
+            final Matcher mDev = DEVICE_NR_PATTERN.matcher(devNrString);
             String devNr = devNrString;
             if (mDev.matches()) { /* since 8.4 */
                 devNr = mDev.group(1);
@@ -1330,20 +1340,18 @@ public class DrbdXml {
             }
             return false;
         }
-        /* 19 UH 1 split-brain */
-        p = Pattern.compile("^(\\d+)\\s+UH\\s+(\\S+)\\s([a-z-]+).*");
-        m = p.matcher(output);
+        m = USER_HELPER_EVENT_PATTERN.matcher(output);
         if (m.matches()) {
             /* String counter      = m.group(1); // not used */
             final String devNrString = m.group(2);
             final String what = m.group(3);
-            final Matcher mDev = pDev.matcher(devNrString);
+            final Matcher mDev = DEVICE_NR_PATTERN.matcher(devNrString);
             String devNr = devNrString;
             if (mDev.matches()) { /* since 8.4 */
                 devNr = mDev.group(1);
             }
             LOG.debug("parseDrbdEvent: event: " + devNr + " - " + what);
-            if ("split-brain".equals(what)) {
+            if (SPLIT_BRAIN_HELPER.equals(what)) {
                 final BlockDevInfo bdi = getBlockDevInfo(devNr, hostName, drbdGraph);
 
                 if (bdi != null && bdi.getBlockDevice().isDrbd()) {
@@ -1361,6 +1369,121 @@ public class DrbdXml {
         return false;
     }
 
+    /**
+     * Stores the state from the "drbdsetup events2" event of DRBD 9 in the
+     * block devices of the resource or volume.
+     */
+    private boolean applyDrbdEvent(final String hostName, final DrbdGraph drbdGraph, final DrbdEvent event) {
+        final String resName = event.getResourceName();
+        if (resName == null) {
+            return false;
+        }
+        if (event.getType() == DrbdEvent.Type.HELPER) {
+            if (event.getAction() != DrbdEvent.Action.CALL
+                || !SPLIT_BRAIN_HELPER.equals(event.getValue("helper"))) {
+                return false;
+            }
+            LOG.debug("parseDrbdEvent: event: " + resName + " - " + SPLIT_BRAIN_HELPER);
+        } else if (!event.isStateChange()) {
+            return false;
+        }
+        boolean changed = false;
+        for (final BlockDevInfo bdi : getBlockDevInfos(resName, event.getVolume(), hostName, drbdGraph)) {
+            if (applyDrbdEvent(bdi.getBlockDevice(), event)) {
+                bdi.updateInfo();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private boolean applyDrbdEvent(final BlockDevice blockDevice, final DrbdEvent event) {
+        boolean changed = false;
+        switch (event.getType()) {
+            case RESOURCE:
+                final String role = event.getValue("role");
+                if (role != null && !Tools.areEqual(blockDevice.getNodeState(), role)) {
+                    blockDevice.setNodeState(role);
+                    changed = true;
+                }
+                break;
+            case CONNECTION:
+                final String connection = event.getValue("connection");
+                if (connection != null && !Tools.areEqual(blockDevice.getConnectionState(), connection)) {
+                    blockDevice.setConnectionState(connection);
+                    changed = true;
+                }
+                final String peerRole = event.getValue("role");
+                if (peerRole != null && !Tools.areEqual(blockDevice.getNodeStateOther(), peerRole)) {
+                    blockDevice.setNodeStateOther(peerRole);
+                    changed = true;
+                }
+                break;
+            case DEVICE:
+                final String disk = event.getValue("disk");
+                if (disk != null && !Tools.areEqual(blockDevice.getDiskState(), disk)) {
+                    blockDevice.setDiskState(disk);
+                    changed = true;
+                }
+                break;
+            case PEER_DEVICE:
+                /* the replication state is the connection state of drbd 8 */
+                String replication = event.getValue("replication");
+                if ("Established".equals(replication)) {
+                    replication = "Connected";
+                } else if ("Off".equals(replication)) {
+                    replication = null;
+                }
+                if (replication != null && !Tools.areEqual(blockDevice.getConnectionState(), replication)) {
+                    blockDevice.setConnectionState(replication);
+                    changed = true;
+                }
+                final String peerDisk = event.getValue("peer-disk");
+                if (peerDisk != null && !Tools.areEqual(blockDevice.getDiskStateOther(), peerDisk)) {
+                    blockDevice.setDiskStateOther(peerDisk);
+                    changed = true;
+                }
+                final String done = event.getValue("done");
+                if (done != null && !Tools.areEqual(blockDevice.getSyncedProgress(), done)) {
+                    blockDevice.setSyncedProgressInPercents(done);
+                    changed = true;
+                }
+                break;
+            case HELPER:
+                if (!blockDevice.isSplitBrain()) {
+                    blockDevice.setSplitBrain(true);
+                    changed = true;
+                }
+                break;
+            default:
+                break;
+        }
+        return changed;
+    }
+
+    /** Returns the backing block devices of the volume or of all volumes, if the volume is null. */
+    private Collection<BlockDevInfo> getBlockDevInfos(final String resName,
+                                                      final String volumeNr,
+                                                      final String hostName,
+                                                      final DrbdGraph drbdGraph) {
+        final Collection<BlockDevInfo> bdis = new ArrayList<BlockDevInfo>();
+        final Map<String, Map<String, String>> volumeHostDiskMap = resourceHostDiskMap.row(resName);
+        for (final Map.Entry<String, Map<String, String>> volumeHostDisk : volumeHostDiskMap.entrySet()) {
+            if (volumeNr != null && !volumeNr.equals(volumeHostDisk.getKey())) {
+                continue;
+            }
+            final String disk = volumeHostDisk.getValue().get(hostName);
+            if (disk == null) {
+                continue;
+            }
+            final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(hostName, disk);
+            if (bdi != null) {
+                bdis.add(bdi);
+            }
+        }
+        return bdis;
+    }
+
     /** Removes the resource from resources, so that it does not reappear. */
     public void removeResource(final String res) {
         resourceList.remove(res);
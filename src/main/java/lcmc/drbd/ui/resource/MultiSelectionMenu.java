@@ -34,6 +34,8 @@ import javax.inject.Named;
 import javax.inject.Provider;
 import javax.swing.JColorChooser;
 
+import lcmc.cluster.service.ssh.ClusterCommandExecutor;
+import lcmc.cluster.service.ssh.ClusterCommandResult;
 import lcmc.common.ui.Access;
 import lcmc.common.ui.CallbackAction;
 import lcmc.common.ui.main.MainData;
@@ -56,9 +58,12 @@ import lcmc.common.ui.utils.MyMenuItem;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.utils.UpdatableItem;
 import lcmc.common.domain.VisiblePredicate;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
 
 @Named
 public class MultiSelectionMenu {
+    private static final Logger LOG = LoggerFactory.getLogger(MultiSelectionMenu.class);
     private static final String LV_CREATE_MENU_ITEM = Tools.getString("MultiSelectionInfo.LVCreate");
     
     private MultiSelectionInfo multiSelectionInfo;
@@ -81,6 +86,8 @@ public class MultiSelectionMenu {
     private Provider<VGRemove> vgRemoveProvider;
     @Inject
     private Provider<LVCreate> lvCreateProvider;
+    @Inject
+    private ClusterCommandExecutor clusterCommandExecutor;
 
     public List<UpdatableItem> getPulldownMenu(final MultiSelectionInfo multiSelectionInfo,
                                                final List<Info> selectedInfos) {
@@ -132,9 +139,12 @@ public class MultiSelectionMenu {
             .addAction(new MenuAction() {
                     @Override
                     public void run(final String text) {
-                        for (final HostDrbdInfo hi : selectedHostInfos) {
-                            DRBD.load(hi.getHost(), Application.RunMode.LIVE);
-                        }
+                        runOnHosts(selectedHostInfos, new ClusterCommandExecutor.HostTask<Boolean>() {
+                            @Override
+                            public Boolean run(final Host host) {
+                                return DRBD.load(host, Application.RunMode.LIVE);
+                            }
+                        });
                         for (final HostDrbdInfo hi : selectedHostInfos) {
                             getBrowser().updateHWInfo(hi.getHost(), !Host.UPDATE_LVM);
                         }
@@ -162,9 +172,12 @@ public class MultiSelectionMenu {
                 .addAction(new MenuAction() {
                         @Override
                         public void run(final String text) {
-                    for (final HostDrbdInfo hi : selectedHostInfos) {
-                        DRBD.adjustApply(hi.getHost(), DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
-                    }
+                    runOnHosts(selectedHostInfos, new ClusterCommandExecutor.HostTask<Integer>() {
+                        @Override
+                        public Integer run(final Host host) {
+                            return DRBD.adjustApply(host, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
+                        }
+                    });
                     for (final HostDrbdInfo hi : selectedHostInfos) {
                         getBrowser().updateHWInfo(hi.getHost(), !Host.UPDATE_LVM);
                     }
@@ -201,9 +214,12 @@ public class MultiSelectionMenu {
                 .addAction(new MenuAction() {
                         @Override
                         public void run(final String text) {
-                    for (final HostDrbdInfo hi : selectedHostInfos) {
-                        DRBD.up(hi.getHost(), DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
-                    }
+                    runOnHosts(selectedHostInfos, new ClusterCommandExecutor.HostTask<Boolean>() {
+                        @Override
+                        public Boolean run(final Host host) {
+                            return DRBD.up(host, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
+                        }
+                    });
                 }});
         items.add(upAllItem);
         final ButtonCallback upAllItemCallback =
@@ -238,9 +254,12 @@ public class MultiSelectionMenu {
                 .addAction(new MenuAction() {
                         @Override
                         public void run(final String text) {
-                    for (final HostDrbdInfo hi : selectedHostInfos) {
-                        DRBD.stopProxy(hi.getHost(), Application.RunMode.LIVE);
-                    }
+                    runOnHosts(selectedHostInfos, new ClusterCommandExecutor.HostTask<Boolean>() {
+                        @Override
+                        public Boolean run(final Host host) {
+                            return DRBD.stopProxy(host, Application.RunMode.LIVE);
+                        }
+                    });
                     for (final HostDrbdInfo hi : selectedHostInfos) {
                         getBrowser().updateHWInfo(hi.getHost(), !Host.UPDATE_LVM);
                     }
@@ -267,9 +286,12 @@ public class MultiSelectionMenu {
                 .addAction(new MenuAction() {
                         @Override
                         public void run(final String text) {
-                    for (final HostDrbdInfo hi : selectedHostInfos) {
-                        DRBD.startProxy(hi.getHost(), Application.RunMode.LIVE);
-                    }
+                    runOnHosts(selectedHostInfos, new ClusterCommandExecutor.HostTask<Boolean>() {
+                        @Override
+                        public Boolean run(final Host host) {
+                            return DRBD.startProxy(host, Application.RunMode.LIVE);
+                        }
+                    });
                     for (final HostDrbdInfo hi : selectedHostInfos) {
                         getBrowser().updateHWInfo(hi.getHost(), !Host.UPDATE_LVM);
                     }
@@ -1497,4 +1519,21 @@ public class MultiSelectionMenu {
     private ClusterBrowser getBrowser() {
         return multiSelectionInfo.getBrowser();
     }
+
+    /**
+     * Runs the drbd action on the selected hosts at the same time. The
+     * errors are shown by the action itself.
+     */
+    private <T> void runOnHosts(final Collection<HostDrbdInfo> hostInfos,
+                                final ClusterCommandExecutor.HostTask<T> task) {
+        final List<Host> hosts = new ArrayList<Host>();
+        for (final HostDrbdInfo hi : hostInfos) {
+            hosts.add(hi.getHost());
+        }
+        final ClusterCommandResult<T> result =
+                clusterCommandExecutor.runOnHosts(hosts, task, ClusterCommandExecutor.NO_DEADLINE);
+        if (!result.isSuccess()) {
+            LOG.appWarning("runOnHosts: " + result.getFailureSummary());
+        }
+    }
 }
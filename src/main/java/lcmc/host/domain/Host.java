@@ -29,8 +29,10 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.JComponent;
 
@@ -50,6 +52,7 @@ import lcmc.common.domain.ExecCallback;
 import lcmc.common.domain.NewOutputCallback;
 import lcmc.common.domain.Unit;
 import lcmc.common.domain.Value;
+import lcmc.common.domain.util.StartupTiming;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.ProgressBar;
 import lcmc.common.ui.main.MainData;
@@ -93,8 +96,6 @@ public class Host implements Comparable<Host>, Value {
     private static final Logger LOG = LoggerFactory.getLogger(Host.class);
     public static final String NOT_CONNECTED_MENU_TOOLTIP_TEXT = "not connected to the host";
     public static final String PROXY_NOT_CONNECTED_MENU_TOOLTIP_TEXT = "not connected to the proxy host";
-    /** Timeout after which the connection is considered to be dead. */
-    private static final int PING_TIMEOUT = 40000;
     private static final int DRBD_EVENTS_TIMEOUT = 40000;
     private static final int CLUSTER_EVENTS_TIMEOUT = 40000;
 
@@ -130,9 +131,14 @@ public class Host implements Comparable<Host>, Value {
     private String vmInfoFromServerMD5 = null;
     private int positionInTheCluster = 0;
     private volatile boolean lastConnectionCheckPositive = false;
+    /** Is set while connecting, until the helper is installed and the host info parsed. */
+    private volatile boolean connecting = false;
+    /** Completes, when the host is connected and usable. */
+    private CompletableFuture<Host> usableFuture = new CompletableFuture<Host>();
+    private final Lock mUsableFutureLock = new ReentrantLock();
+    @Getter
+    private volatile StartupTiming connectTiming = null;
     private boolean savable = true;
-    /** Ping is set every 10s. */
-    private volatile AtomicBoolean ping = new AtomicBoolean(true);
     private boolean inCluster = false;
 
     private boolean crmStatusOk = false;
@@ -303,6 +309,10 @@ public class Host implements Comparable<Host>, Value {
         if (ssh.isConnected()) {
             ssh.forceDisconnect();
         }
+        if (hostParser.getCompressedFrames().isEnabled()) {
+            LOG.debug1("disconnect: " + getName() + ": compressed output: "
+                       + hostParser.getCompressedFrames().getStatistics());
+        }
         setVMInfoMD5(null);
     }
 
@@ -320,6 +330,11 @@ public class Host implements Comparable<Host>, Value {
         return ssh.captureCommand(execCommandConfig);
     }
 
+    /** Executes the gui helper action in the resident gui helper if possible. */
+    public SshOutput captureGuiHelperAction(final String action, final ExecCommandConfig execCommandConfig) {
+        return ssh.captureGuiHelperAction(action, execCommandConfig);
+    }
+
     public SshOutput captureCommandProgressIndicator(final String text, final ExecCommandConfig execCommandConfig) {
         final String hostName = getName();
         progressIndicator.startProgressIndicator(hostName, text);
@@ -412,6 +427,12 @@ public class Host implements Comparable<Host>, Value {
         }
     }
 
+    /** Returns whether the crm status command runs on this host. */
+    public boolean isCrmStatusRunning() {
+        final ExecCommandThread cst = crmStatusThread;
+        return cst != null && cst.isAlive();
+    }
+
     public void waitForCrmStatusFinish() {
         final ExecCommandThread cst = crmStatusThread;
         if (cst == null) {
@@ -676,6 +697,7 @@ public class Host implements Comparable<Host>, Value {
                LOG.info("setConnected: " + getName() + ": connection established");
             } else {
                LOG.info("setConnected: " + getName() + ": connection lost");
+               resetUsableFuture();
             }
             final ClusterBrowser cb = getBrowser().getClusterBrowser();
             if (cb != null) {
@@ -685,10 +707,52 @@ public class Host implements Comparable<Host>, Value {
         }
     }
 
+    /**
+     * Returns future, that completes, when the host is connected, the gui
+     * helper installed and the host info parsed. After the connection is
+     * lost, a new future is returned.
+     */
+    public CompletableFuture<Host> getUsableFuture() {
+        mUsableFutureLock.lock();
+        try {
+            if (!connecting && isConnected()) {
+                usableFuture.complete(this);
+            }
+            return usableFuture;
+        } finally {
+            mUsableFutureLock.unlock();
+        }
+    }
+
+    private void usable() {
+        mUsableFutureLock.lock();
+        try {
+            connecting = false;
+            usableFuture.complete(this);
+        } finally {
+            mUsableFutureLock.unlock();
+        }
+    }
+
+    private void resetUsableFuture() {
+        mUsableFutureLock.lock();
+        try {
+            if (usableFuture.isDone()) {
+                usableFuture = new CompletableFuture<Host>();
+            }
+        } finally {
+            mUsableFutureLock.unlock();
+        }
+    }
+
     /** Make an ssh connection to the host. */
     public void connect(SSHGui sshGui, final boolean useProgressIndicator, final int index) {
         if (!isConnected()) {
             final String hostName = getName();
+            final StartupTiming timing = new StartupTiming(hostName);
+            final long connectStart = System.nanoTime();
+            connectTiming = timing;
+            connecting = true;
             if (useProgressIndicator) {
                 progressIndicator.startProgressIndicator(hostName,
                         Tools.getString("Dialog.Host.SSH.Connecting") + " (" + index + ')');
@@ -701,14 +765,21 @@ public class Host implements Comparable<Host>, Value {
                     new ConnectionCallback() {
                         @Override
                         public void done(final int flag) {
+                            timing.phaseDone(StartupTiming.Phase.CONNECT, connectStart);
                             setConnected();
+                            final long helperStart = System.nanoTime();
                             getSSH().execCommandAndWait(new ExecCommandConfig()
                                                             .command(":") /* activate sudo */
                                                             .silentCommand()
                                                             .silentOutput()
                                                             .sshCommandTimeout(10000));
-                                    getSSH().installGuiHelper();
+                            getSSH().installGuiHelper();
+                            hostParser.checkGuiHelperFeatures();
+                            timing.phaseDone(StartupTiming.Phase.HELPER_UPLOAD, helperStart);
+                            final long hostInfoStart = System.nanoTime();
                             hostParser.getAllInfo();
+                            timing.phaseDone(StartupTiming.Phase.HOST_INFO, hostInfoStart);
+                            usable();
                             if (useProgressIndicator) {
                                 progressIndicator.stopProgressIndicator(
                                         hostName,
@@ -718,6 +789,7 @@ public class Host implements Comparable<Host>, Value {
 
                         @Override
                         public void doneError(final String errorText) {
+                            connecting = false;
                             setLoadingError();
                             setConnected();
                             if (useProgressIndicator) {
@@ -736,55 +808,29 @@ public class Host implements Comparable<Host>, Value {
         }
     }
 
-    public void startPing() {
-        ssh.execCommand(new ExecCommandConfig()
-                         .commandString("PingCommand")
-                         .inBash(true)
-                         .inSudo(false)
-                         .execCallback(new ExecCallback() {
-                             @Override
-                             public void done(final String ans) {
-                             }
-
-                             @Override
-                             public void doneError(final String ans, final int exitCode) {
-                             }
-                         })
-                         .newOutputCallback(new NewOutputCallback() {
-                             @Override
-                             public void output(final String output) {
-                                 ping.set(true);
-                             }
-                         })
-                         .silentCommand()
-                         .silentOutput()
-                         .sshCommandTimeout(PING_TIMEOUT)).block();
-    }
-
-    public void startConnectionStatus() {
-        final Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                while (true) {
-                    if (ping.get()) {
-                       LOG.debug2("startConnectionStatus: connection ok on " + getName());
-                       setConnected();
-                       ping.set(false);
-                    } else {
-                       LOG.debug2("startConnectionStatus: connection lost on " + getName());
-                       getSSH().forceReconnect();
-                       setConnected();
-                    }
-                    Tools.sleep(PING_TIMEOUT);
-                    final ClusterBrowser cb = getBrowser().getClusterBrowser();
-                    /* cluster could be removed */
-                    if (cb == null || cb.isCancelServerStatus()) {
-                        break;
-                    }
-                }
-            }
-        });
-        thread.start();
+    /** Shows the new ssh round-trip time in the hosts table of the cluster. */
+    public void roundTripTimeChanged() {
+        final ClusterBrowser cb = getBrowser().getClusterBrowser();
+        if (cb != null) {
+            cb.updateClusterHostsTable();
+        }
+    }
+
+    /** Returns the ssh round-trip time as a string, or an empty string if it's not known. */
+    public String getRoundTripTimeString() {
+        final long rtt = ssh.getRoundTripTime();
+        if (rtt < 0) {
+            return "";
+        }
+        return rtt + " ms";
+    }
+
+    /** Returns the statistics of the pooled ssh sessions, or null if the host is not connected. */
+    public String getSessionPoolStatistics() {
+        if (ssh == null) {
+            return null;
+        }
+        return ssh.getSessionPoolStatistics();
     }
 
     /** Returns whether host ssh connection was established. */
@@ -0,0 +1,577 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.host.domain.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Expands the bulk output blocks, that the gui helper sends compressed,
+ * if it runs with the --gzip-frames option. A frame is
+ *
+ * "--gzip-frame-- <raw length> <encoded length>\n<base64 of gzip data>\n"
+ *
+ * The base64 encoding and the length keep the data intact in the pty. The
+ * decompressed text gets the \r\n line endings, that the pty would make,
+ * so the parsers see the same output as without the compression.
+ *
+ * The output, that comes in chunks, is expanded with a StreamExpander, the
+ * whole output with expand.
+ */
+public final class CompressedFrames {
+    private static final Logger LOG = LoggerFactory.getLogger(CompressedFrames.class);
+    /** Helper option, that turns the frames on. */
+    static final String GZIP_FRAMES_OPTION = "--gzip-frames";
+    /** What the helper's "features" action prints, if it can make the frames. */
+    static final String GZIP_FRAMES_FEATURE = "gzip-frames";
+    static final String FRAME_HEADER = "--gzip-frame-- ";
+    private static final int READ_BUFFER_SIZE = 8192;
+    /** Longest header, that is still waited for, before it is passed on as text. */
+    private static final int MAX_HEADER_LENGTH = 64;
+
+    private volatile boolean enabled = false;
+    private final AtomicLong frames = new AtomicLong(0);
+    private final AtomicLong rawChars = new AtomicLong(0);
+    private final AtomicLong transferredChars = new AtomicLong(0);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Returns the text with all complete frames decompressed. Text without frames is returned as is. */
+    public String expand(final String text) {
+        if (text == null) {
+            return null;
+        }
+        int frameStart = text.indexOf(FRAME_HEADER);
+        if (frameStart < 0) {
+            return text;
+        }
+        final StringBuilder expanded = new StringBuilder(text.length() * 4);
+        int pos = 0;
+        while (frameStart >= 0) {
+            final int headerEnd = text.indexOf('\n', frameStart);
+            if (headerEnd < 0) {
+                break;
+            }
+            /* the raw length is only informative */
+            final String[] lengths = text.substring(frameStart + FRAME_HEADER.length(), headerEnd).trim().split(" ");
+            final int dataStart = headerEnd + 1;
+            final int dataEnd;
+            try {
+                if (lengths.length != 2) {
+                    throw new NumberFormatException();
+                }
+                dataEnd = dataStart + Integer.parseInt(lengths[1]);
+            } catch (final NumberFormatException e) {
+                LOG.appWarning("expand: wrong frame header: " + text.substring(frameStart, headerEnd));
+                break;
+            }
+            if (dataEnd > text.length()) {
+                LOG.appWarning("expand: incomplete frame: " + (dataEnd - dataStart) + " chars expected");
+                break;
+            }
+            expanded.append(text, pos, frameStart);
+            final int expandedBefore = expanded.length();
+            try {
+                decompress(text, dataStart, dataEnd, expanded);
+            } catch (final IOException e) {
+                LOG.appWarning("expand: could not decompress the frame: " + e.getMessage());
+                expanded.setLength(expandedBefore);
+                expanded.append(text, frameStart, dataEnd);
+            }
+            frames.incrementAndGet();
+            rawChars.addAndGet(expanded.length() - expandedBefore);
+            transferredChars.addAndGet(dataEnd - frameStart);
+            pos = skipLineEnd(text, dataEnd);
+            frameStart = text.indexOf(FRAME_HEADER, pos);
+        }
+        expanded.append(text, pos, text.length());
+        LOG.debug2("expand: frames: " + frames.get() + ", compression ratio: " + getCompressionRatio());
+        return expanded.toString();
+    }
+
+    /** Returns a new expander for the output of one command. */
+    public StreamExpander newStreamExpander() {
+        return new StreamExpander();
+    }
+
+    /** Returns how many times the expanded output was bigger, than what was transferred, or 1. */
+    public double getCompressionRatio() {
+        final long transferred = transferredChars.get();
+        if (transferred == 0) {
+            return 1;
+        }
+        return (double) rawChars.get() / transferred;
+    }
+
+    public String getStatistics() {
+        return String.format("frames: %d, raw: %d, transferred: %d, compression ratio: %.1f",
+                             frames.get(),
+                             rawChars.get(),
+                             transferredChars.get(),
+                             getCompressionRatio());
+    }
+
+    private void decompress(final CharSequence text,
+                            final int dataStart,
+                            final int dataEnd,
+                            final StringBuilder expanded) throws IOException {
+        final InputStream encoded = new CharSequenceInputStream(text, dataStart, dataEnd);
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(Base64.getDecoder().wrap(encoded)),
+                                                   StandardCharsets.UTF_8)) {
+            final char[] buffer = new char[READ_BUFFER_SIZE];
+            char last = 0;
+            int len;
+            while ((len = reader.read(buffer)) > 0) {
+                for (int i = 0; i < len; i++) {
+                    final char c = buffer[i];
+                    if (c == '\n' && last != '\r') {
+                        expanded.append('\r');
+                    }
+                    expanded.append(c);
+                    last = c;
+                }
+            }
+        }
+    }
+
+    private static int skipLineEnd(final CharSequence text, int pos) {
+        if (pos < text.length() && text.charAt(pos) == '\r') {
+            pos++;
+        }
+        if (pos < text.length() && text.charAt(pos) == '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Expands the frames of the output of one command, while the output
+     * comes. The data of a frame goes through a FramePipe to a thread, that
+     * decompresses it, so that its text is passed on, before the whole frame
+     * is there. The text between the frames is passed on as it
+     * is, only a possible frame header at the start of a line is held back,
+     * until it is complete.
+     *
+     * The "---reset---" strings, that come from another process in the middle
+     * of the output, are dropped from the frames.
+     */
+    public final class StreamExpander {
+        /** Frame header at the start of a line, that is not complete yet. */
+        private final StringBuilder header = new StringBuilder();
+        private boolean lineStart = true;
+        /** Encoded chars of the current frame, that didn't come yet, or -1 between the frames. */
+        private int encodedLeft = -1;
+        private boolean skipLineEnd = false;
+        private boolean skipReset = false;
+        private int transferred = 0;
+        private FramePipe pipe = null;
+
+        private StreamExpander() {
+        }
+
+        /** Returns the text of the chunk with the frames expanded, as far as they came. */
+        public String feed(final CharSequence chars) {
+            final StringBuilder out = new StringBuilder(chars.length());
+            final int length = chars.length();
+            int pos = 0;
+            while (pos < length) {
+                final char c = chars.charAt(pos);
+                if (skipReset) {
+                    skipReset = c != '\n';
+                } else if (encodedLeft >= 0) {
+                    pos = data(chars, pos, out);
+                    continue;
+                } else if (skipLineEnd) {
+                    skipLineEnd = c == '\r';
+                    if (c != '\r' && c != '\n') {
+                        continue;
+                    }
+                } else if (header.length() > 0 || (lineStart && c == FRAME_HEADER.charAt(0))) {
+                    header(c, out);
+                } else {
+                    out.append(c);
+                    lineStart = c == '\n';
+                }
+                pos++;
+            }
+            if (pipe != null) {
+                out.append(pipe.takeText());
+            }
+            return out.toString();
+        }
+
+        /** Returns the rest of the output, after the command has finished. */
+        public String finish() {
+            if (encodedLeft >= 0) {
+                LOG.appWarning("finish: incomplete frame: " + encodedLeft + " chars missing");
+            }
+            final String rest = header.toString();
+            reset();
+            return rest;
+        }
+
+        /** Drops the incomplete frame. */
+        public void reset() {
+            header.setLength(0);
+            lineStart = true;
+            skipLineEnd = false;
+            skipReset = false;
+            if (pipe != null) {
+                pipe.drop();
+            }
+            endFrame();
+        }
+
+        private void header(final char c, final StringBuilder out) {
+            final int matched = header.length();
+            if (matched < FRAME_HEADER.length()) {
+                if (c == FRAME_HEADER.charAt(matched)) {
+                    header.append(c);
+                } else {
+                    passHeader(out);
+                    out.append(c);
+                    lineStart = c == '\n';
+                }
+                return;
+            }
+            if (c == '-') {
+                skipReset = true;
+            } else if (c != '\n') {
+                header.append(c);
+                if (header.length() > MAX_HEADER_LENGTH) {
+                    passHeader(out);
+                }
+            } else {
+                startFrame(out);
+            }
+        }
+
+        /** Passes on the held back text, that is not a frame header. */
+        private void passHeader(final StringBuilder out) {
+            out.append(header);
+            header.setLength(0);
+            lineStart = false;
+        }
+
+        private void startFrame(final StringBuilder out) {
+            /* the raw length is only informative */
+            final String[] lengths = header.substring(FRAME_HEADER.length()).trim().split(" ");
+            int encodedLength = -1;
+            if (lengths.length == 2) {
+                try {
+                    encodedLength = Integer.parseInt(lengths[1]);
+                } catch (final NumberFormatException e) {
+                    encodedLength = -1;
+                }
+            }
+            if (encodedLength < 0) {
+                LOG.appWarning("startFrame: wrong frame header: " + header);
+                passHeader(out);
+                out.append('\n');
+                lineStart = true;
+                return;
+            }
+            transferred = header.length() + 1 + encodedLength;
+            header.setLength(0);
+            encodedLeft = encodedLength;
+            pipe = new FramePipe();
+            final Thread thread = new Thread(pipe, "gzip-frame");
+            thread.setDaemon(true);
+            thread.start();
+            if (encodedLeft == 0) {
+                frameDone(out);
+            }
+        }
+
+        /** Writes the data of the frame from the chunk to the pipe and returns the position after it. */
+        private int data(final CharSequence chars, final int pos, final StringBuilder out) {
+            final int end = Math.min(chars.length(), pos + encodedLeft);
+            int dataEnd = pos;
+            while (dataEnd < end && chars.charAt(dataEnd) != '-') {
+                dataEnd++;
+            }
+            pipe.write(chars, pos, dataEnd);
+            encodedLeft -= dataEnd - pos;
+            if (encodedLeft == 0) {
+                frameDone(out);
+                return dataEnd;
+            }
+            if (dataEnd < end) {
+                skipReset = true;
+                return dataEnd + 1;
+            }
+            return dataEnd;
+        }
+
+        private void frameDone(final StringBuilder out) {
+            pipe.close();
+            out.append(pipe.takeText());
+            frames.incrementAndGet();
+            rawChars.addAndGet(pipe.getRawLength());
+            transferredChars.addAndGet(transferred);
+            LOG.debug2("frameDone: frames: " + frames.get() + ", compression ratio: " + getCompressionRatio());
+            endFrame();
+            skipLineEnd = true;
+            lineStart = true;
+        }
+
+        private void endFrame() {
+            pipe = null;
+            encodedLeft = -1;
+            transferred = 0;
+        }
+    }
+
+    /**
+     * The data of one frame. The expander writes the encoded data, as it
+     * comes, the pipe decodes the whole base64 quads of it and its thread
+     * reads the gzip data through GZIPInputStream and leaves the text for the
+     * expander. takeText waits, until the thread has used up all the data,
+     * that was written, so the expander gets all the text, that can be made
+     * from it.
+     */
+    private static final class FramePipe extends InputStream implements Runnable {
+        private static final int QUAD = 4;
+        /** The encoded chars, that don't make a whole quad yet. */
+        private final StringBuilder encoded = new StringBuilder(QUAD);
+        private byte[] data = new byte[READ_BUFFER_SIZE];
+        private int start = 0;
+        private int end = 0;
+        /** All the data was written. */
+        private boolean closed = false;
+        /** The frame is incomplete, the text is not needed. */
+        private boolean dropped = false;
+        /** The thread waits for more data. */
+        private boolean waiting = false;
+        /** The thread has finished. */
+        private boolean done = false;
+        private final StringBuilder text = new StringBuilder();
+        private char lastChar = 0;
+        private long rawLength = 0;
+
+        @Override
+        public void run() {
+            final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+                                                              .onMalformedInput(CodingErrorAction.REPLACE)
+                                                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            final byte[] inflated = new byte[READ_BUFFER_SIZE];
+            /* the bytes of a UTF-8 char, that is split between the reads */
+            ByteBuffer undecoded = ByteBuffer.allocate(0);
+            try (InputStream gzip = new GZIPInputStream(this)) {
+                int len;
+                while ((len = gzip.read(inflated)) >= 0) {
+                    final ByteBuffer bytes = ByteBuffer.allocate(undecoded.remaining() + len);
+                    bytes.put(undecoded).put(inflated, 0, len).flip();
+                    final CharBuffer chars = CharBuffer.allocate(bytes.remaining());
+                    utf8.decode(bytes, chars, false);
+                    undecoded = bytes;
+                    append(chars);
+                }
+            } catch (final IOException e) {
+                if (!isDropped()) {
+                    LOG.appWarning("run: could not decompress the frame: " + e.getMessage());
+                }
+            } finally {
+                if (undecoded.hasRemaining()) {
+                    final CharBuffer chars = CharBuffer.allocate(undecoded.remaining() + 1);
+                    utf8.decode(undecoded, chars, true);
+                    append(chars);
+                }
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /** Writes the encoded data. */
+        synchronized void write(final CharSequence chars, final int from, final int to) {
+            if (done || dropped) {
+                return;
+            }
+            encoded.append(chars, from, to);
+            final int quads = encoded.length() - encoded.length() % QUAD;
+            if (quads == 0) {
+                return;
+            }
+            final byte[] bytes;
+            try {
+                bytes = Base64.getDecoder().decode(encoded.substring(0, quads));
+            } catch (final IllegalArgumentException e) {
+                LOG.appWarning("write: could not decode the frame: " + e.getMessage());
+                drop();
+                return;
+            }
+            encoded.delete(0, quads);
+            final int length = bytes.length;
+            if (end + length > data.length) {
+                final int used = end - start;
+                final byte[] dest = used + length > data.length
+                                    ? new byte[Math.max(data.length * 2, used + length)]
+                                    : data;
+                System.arraycopy(data, start, dest, 0, used);
+                data = dest;
+                start = 0;
+                end = used;
+            }
+            System.arraycopy(bytes, 0, data, end, length);
+            end += length;
+            notifyAll();
+        }
+
+        /** Returns the text, after the thread has used up the data, that was written. */
+        synchronized String takeText() {
+            boolean interrupted = false;
+            while (!done && !(waiting && start == end)) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            final String taken = text.toString();
+            text.setLength(0);
+            return taken;
+        }
+
+        /** No more data will be written. */
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        /** Stops the thread without the text. */
+        synchronized void drop() {
+            dropped = true;
+            close();
+        }
+
+        synchronized long getRawLength() {
+            return rawLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (start == end && !closed) {
+                waiting = true;
+                notifyAll();
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    throw new InterruptedIOException("read: interrupted");
+                }
+            }
+            waiting = false;
+            if (dropped || start == end) {
+                return -1;
+            }
+            final int n = Math.min(len, end - start);
+            System.arraycopy(data, start, b, off, n);
+            start += n;
+            return n;
+        }
+
+        private synchronized boolean isDropped() {
+            return dropped;
+        }
+
+        /** Adds the chars with the \r\n line endings. */
+        private synchronized void append(final CharBuffer chars) {
+            chars.flip();
+            while (chars.hasRemaining()) {
+                final char c = chars.get();
+                if (c == '\n' && lastChar != '\r') {
+                    text.append('\r');
+                    rawLength++;
+                }
+                text.append(c);
+                rawLength++;
+                lastChar = c;
+            }
+        }
+    }
+
+    /** Reads the ASCII chars of the encoded data without copying them. */
+    private static final class CharSequenceInputStream extends InputStream {
+        private final CharSequence chars;
+        private final int end;
+        private int pos;
+
+        CharSequenceInputStream(final CharSequence chars, final int start, final int end) {
+            this.chars = chars;
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            if (pos >= end) {
+                return -1;
+            }
+            return chars.charAt(pos++) & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (pos >= end) {
+                return -1;
+            }
+            final int n = Math.min(len, end - pos);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) chars.charAt(pos++);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.host.domain.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Incremental decoder of the framed output streams of the gui helper. The
+ * output is fed in the chunks, as it comes, every char is looked at only
+ * once and the whole frames are passed to the handlers of their type.
+ *
+ * The info frames of the hw, vm, drbd and event streams are
+ *
+ * "--TYPE-info-start--TIMESTAMP\n<payload>--TYPE-info-end--\n"
+ *
+ * The cluster status frames are "---start---\n<payload>---done---\n", the
+ * "---reset---\n" keep-alive strings, that may come in the middle of a
+ * line, are dropped. The payload keeps the line endings, as they came.
+ *
+ * An expanding decoder expands the compressed frames of the gui helper in
+ * the output, while it comes, before it is decoded.
+ */
+public final class FrameDecoder {
+    private static final Logger LOG = LoggerFactory.getLogger(FrameDecoder.class);
+    /** Type of the cluster status frames. */
+    public static final String STATUS = "status";
+    /** Timestamp of the frames without one. */
+    public static final long NO_TIMESTAMP = -1;
+
+    private static final String INFO_START = "-info-start--";
+    private static final String INFO_END = "-info-end--";
+    private static final String STATUS_START = "---start---";
+    private static final String STATUS_DONE = "---done---";
+    private static final String STATUS_RESET = "---reset---";
+    private static final int INITIAL_CAPACITY = 300;
+
+    private final boolean statusFrames;
+    private final FrameFilter filter;
+    private final Map<String, FrameHandler> handlers = new HashMap<String, FrameHandler>();
+    private CompressedFrames.StreamExpander frameExpander = null;
+    /** The payload of the current frame and the current line, or only the current line between the frames. */
+    private final StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+    private int lineStart = 0;
+    private String frameType = null;
+    private String frameEnd = null;
+    private long frameTimestamp = NO_TIMESTAMP;
+    private long frames = 0;
+
+    private FrameDecoder(final boolean statusFrames, final FrameFilter filter) {
+        this.statusFrames = statusFrames;
+        this.filter = filter;
+    }
+
+    /** Decoder of the info frames. Only the frames, that the filter accepts, are passed to the handlers. */
+    public static FrameDecoder infoFrames(final FrameFilter filter) {
+        return new FrameDecoder(false, filter);
+    }
+
+    /** Decoder of the cluster status frames, that are all of the STATUS type. */
+    public static FrameDecoder statusFrames() {
+        return new FrameDecoder(true, null);
+    }
+
+    /** Sets the handler of the frames of the type. Frames without a handler are dropped. */
+    public FrameDecoder handle(final String type, final FrameHandler handler) {
+        handlers.put(type, handler);
+        return this;
+    }
+
+    /** Expands the compressed frames in the output, before it is decoded. */
+    public FrameDecoder expanding(final CompressedFrames compressedFrames) {
+        frameExpander = compressedFrames.newStreamExpander();
+        return this;
+    }
+
+    public void feed(final CharSequence output) {
+        final CharSequence chars = frameExpander == null ? output : frameExpander.feed(output);
+        final int length = chars.length();
+        int pos = 0;
+        while (pos < length) {
+            final int lineEnd = indexOfNewLine(chars, pos, length);
+            if (lineEnd < 0) {
+                buffer.append(chars, pos, length);
+                break;
+            }
+            buffer.append(chars, pos, lineEnd);
+            lineDone();
+            pos = lineEnd + 1;
+        }
+        if (frameEnd != null && endsWithFrameEnd()) {
+            /* don't wait for the new line of the last frame */
+            frameDone();
+        }
+    }
+
+    /** Drops the incomplete frame. */
+    public void reset() {
+        if (frameExpander != null) {
+            frameExpander.reset();
+        }
+        buffer.setLength(0);
+        lineStart = 0;
+        frameType = null;
+        frameEnd = null;
+    }
+
+    /** Returns how many complete frames were decoded. */
+    public long getFrames() {
+        return frames;
+    }
+
+    private void lineDone() {
+        if (statusFrames && endsWith(STATUS_RESET)) {
+            /* the line goes on after the reset string */
+            buffer.setLength(contentEnd() - STATUS_RESET.length());
+            return;
+        }
+        if (frameEnd == null) {
+            frameStart();
+        } else if (endsWithFrameEnd()) {
+            frameDone();
+        } else {
+            buffer.append('\n');
+            lineStart = buffer.length();
+        }
+    }
+
+    private void frameStart() {
+        if (statusFrames) {
+            if (endsWith(STATUS_START)) {
+                frameType = STATUS;
+                frameEnd = STATUS_DONE;
+                frameTimestamp = NO_TIMESTAMP;
+            }
+        } else {
+            final int start = buffer.indexOf(INFO_START);
+            final int typeStart = start < 2 ? -1 : buffer.lastIndexOf("--", start - 2);
+            if (typeStart >= 0) {
+                frameType = buffer.substring(typeStart + 2, start);
+                frameEnd = "--" + frameType + INFO_END;
+                frameTimestamp = parseTimestamp(start + INFO_START.length(), contentEnd());
+            }
+        }
+        buffer.setLength(0);
+        lineStart = 0;
+    }
+
+    private void frameDone() {
+        buffer.setLength(contentEnd() - frameEnd.length());
+        final String type = frameType;
+        final long timestamp = frameTimestamp;
+        frameType = null;
+        frameEnd = null;
+        frames++;
+        final FrameHandler handler = handlers.get(type);
+        if (handler != null && (filter == null || filter.accept(type, timestamp))) {
+            final String payload = buffer.toString();
+            buffer.setLength(0);
+            lineStart = 0;
+            handler.frame(payload);
+        } else {
+            buffer.setLength(0);
+            lineStart = 0;
+        }
+    }
+
+    /** Returns the end of the current line without the '\r'. */
+    private int contentEnd() {
+        final int end = buffer.length();
+        if (end > lineStart && buffer.charAt(end - 1) == '\r') {
+            return end - 1;
+        }
+        return end;
+    }
+
+    private boolean endsWithFrameEnd() {
+        return endsWith(frameEnd);
+    }
+
+    private boolean endsWith(final String suffix) {
+        final int start = contentEnd() - suffix.length();
+        if (start < lineStart) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (buffer.charAt(start + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Parses the "date +%s%N" timestamp without making a string of it. */
+    private long parseTimestamp(final int start, final int end) {
+        long timestamp = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            final char c = buffer.charAt(i);
+            if (c >= '0' && c <= '9' && timestamp <= (Long.MAX_VALUE - 9) / 10) {
+                timestamp = timestamp * 10 + (c - '0');
+                digits++;
+            } else if (c != ' ') {
+                digits = 0;
+                break;
+            }
+        }
+        if (digits == 0) {
+            LOG.debug("parseTimestamp: could not parse: " + buffer.substring(start, end));
+            return NO_TIMESTAMP;
+        }
+        return timestamp;
+    }
+
+    private static int indexOfNewLine(final CharSequence chars, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (chars.charAt(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Handler of the frames of one type. */
+    public interface FrameHandler {
+        void frame(String payload);
+    }
+
+    /** Decides, which info frames are passed to the handlers, e.g. only the newer ones. */
+    public interface FrameFilter {
+        boolean accept(String type, long timestamp);
+    }
+}
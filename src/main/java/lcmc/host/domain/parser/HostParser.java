@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -51,6 +52,7 @@ import lcmc.HwEventBus;
 import lcmc.cluster.domain.Cluster;
 import lcmc.cluster.service.ssh.ExecCommandConfig;
 import lcmc.cluster.service.ssh.ExecCommandThread;
+import lcmc.cluster.service.ssh.SshOutput;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.common.domain.Application;
 import lcmc.common.domain.ConvertCmdCallback;
@@ -134,11 +136,37 @@ public class HostParser {
                     VERSION_INFO_DELIM,
                     DRBD_PROXY_INFO_DELIM}));
 
+    /**
+     * Sections, that are parsed only if they changed. The other sections
+     * are always parsed, because their fields can be set from elsewhere.
+     */
+    private static final Collection<String> HW_INFO_TYPES =
+            new HashSet<String>(Arrays.asList(new String[]{NET_INFO_DELIM,
+                    BRIDGE_INFO_DELIM,
+                    DISK_INFO_DELIM,
+                    DISK_SPACE_DELIM,
+                    VG_INFO_DELIM,
+                    FILESYSTEMS_INFO_DELIM,
+                    CRYPTO_INFO_DELIM,
+                    QEMU_KEYMAPS_INFO_DELIM,
+                    CPU_MAP_MODEL_INFO_DELIM,
+                    CPU_MAP_VENDOR_INFO_DELIM,
+                    MOUNT_POINTS_INFO_DELIM,
+                    DRBD_PROXY_INFO_DELIM}));
+
     private Set<String> availableCryptoModules = Sets.newTreeSet();
     private Set<Value> availableQemuKeymaps = new TreeSet<Value>();
     private Set<Value> availableCpuMapModels = new TreeSet<Value>();
     private Set<Value> availableCpuMapVendors = new TreeSet<Value>();
     private Map<String, BlockDevice> drbdBlockDevices = Maps.newLinkedHashMap();
+    /** Block devices without the drbd devices from the last disk info. */
+    private Collection<BlockDevice> blockDevices = ImmutableList.of();
+    /** Block devices and net interfaces by their lines, that are reused, if the line didn't change. */
+    private Map<String, BlockDevice> blockDevicesByLine = Maps.newHashMap();
+    private Map<String, NetInterface> netInterfacesByLine = Maps.newHashMap();
+    private Map<String, String> lastDiskSpaces = Maps.newHashMap();
+    /** Lines of the hw sections from the last time. */
+    private final Map<String, List<String>> lastHwSections = Maps.newHashMap();
     /** Options for GUI drop down lists. */
     private Map<String, List<String>> guiOptions = Maps.newHashMap();
     private Set<String> drbdResourcesWithProxy = Sets.newHashSet();
@@ -181,7 +209,9 @@ public class HostParser {
     private ExecCommandThread serverStatusThread = null;
     private final CountDownLatch waitForServerStatusLatch = new CountDownLatch(1);
     /** Time stamp hash. */
-    private final Map<String, Double> infoTimestamp = Maps.newHashMap();
+    private final Map<String, Long> infoTimestamp = Maps.newHashMap();
+    /** Compressed bulk output of the gui helper. */
+    private final CompressedFrames compressedFrames = new CompressedFrames();
     private boolean drbdStatusOk = false;
 
     private static final String TOKEN_DISK_ID = "disk-id";
@@ -229,125 +259,131 @@ public class HostParser {
         mountPoints.add("/mnt/");
         String guiOptionName = null;
 
-        String type = "";
-        for (final String line : lines) {
-            if (line.indexOf("ERROR:") == 0) {
-                break;
-            } else if (line.indexOf("WARNING:") == 0) {
-                continue;
-            }
-            if (INFO_TYPES.contains(line)) {
-                type = line;
-                changedTypes.add(type);
-                continue;
-            }
-            if (NET_INFO_DELIM.equals(type)) {
-                try {
-                    final NetInterface netInterface = new NetInterface(line);
+        final Map<String, NetInterface> newNetInterfacesByLine = Maps.newHashMap();
+        final Map<String, BlockDevice> newBlockDevicesByLine = Maps.newHashMap();
+        for (final Map.Entry<String, List<String>> section : getChangedSections(lines).entrySet()) {
+            final String type = section.getKey();
+            changedTypes.add(type);
+            for (final String line : section.getValue()) {
+                if (NET_INFO_DELIM.equals(type)) {
+                    NetInterface netInterface = netInterfacesByLine.get(line);
+                    if (netInterface == null) {
+                        try {
+                            netInterface = new NetInterface(line);
+                        } catch (final UnknownHostException e) {
+                            LOG.appWarning("parseHostInfo: cannot parse: net-info: " + line);
+                            continue;
+                        }
+                    }
+                    newNetInterfacesByLine.put(line, netInterface);
                     if (netInterface.hasIp() && !application.isSkipNetInterface(netInterface.getName())) {
                         newNetInterfaces.add(netInterface);
                     }
-                } catch (final UnknownHostException e) {
-                    LOG.appWarning("parseHostInfo: cannot parse: net-info: " + line);
-                }
-            } else if (BRIDGE_INFO_DELIM.equals(type)) {
-                newBridges.add(new StringValue(line));
-            } else if (DISK_INFO_DELIM.equals(type)) {
-                final Optional<BlockDevice> blockDevice = createBlockDevice(line);
-                if (!blockDevice.isPresent()) {
-                    continue;
-                }
-                final String bdName = blockDevice.get().getName();
-                if (bdName != null) {
-                    final Matcher drbdM = DRBD_DEV_FILE_PATTERN.matcher(bdName);
-                    if (drbdM.matches()) {
-                        if (drbdBlockDevices.containsKey(bdName)) {
-                            drbdBlockDevices.get(bdName).updateFrom(blockDevice.get());
-                        } else {
-                            newDrbdBlockDevices.put(bdName, blockDevice.get());
+                } else if (BRIDGE_INFO_DELIM.equals(type)) {
+                    newBridges.add(new StringValue(line));
+                } else if (DISK_INFO_DELIM.equals(type)) {
+                    BlockDevice blockDevice = blockDevicesByLine.get(line);
+                    if (blockDevice == null) {
+                        final Optional<BlockDevice> parsedBlockDevice = createBlockDevice(line);
+                        if (!parsedBlockDevice.isPresent()) {
+                            continue;
                         }
-                    } else {
-                        newBlockDevices.put(bdName, blockDevice.get());
-                        if (blockDevice.get().getVolumeGroup() == null
-                                && bdName.length() > 5 && bdName.indexOf('/', 5) < 0) {
-                            final Matcher m = BLOCK_DEV_FILE_PATTERN.matcher(bdName);
-                            if (m.matches()) {
-                                newBlockDevices.remove(m.group(1));
+                        blockDevice = parsedBlockDevice.get();
+                    }
+                    final String bdName = blockDevice.getName();
+                    if (bdName != null) {
+                        final Matcher drbdM = DRBD_DEV_FILE_PATTERN.matcher(bdName);
+                        if (drbdM.matches()) {
+                            final BlockDevice drbdBlockDevice = drbdBlockDevices.get(bdName);
+                            if (drbdBlockDevice != null && drbdBlockDevice != blockDevice) {
+                                drbdBlockDevice.updateFrom(blockDevice);
+                                blockDevice = drbdBlockDevice;
+                            }
+                            newDrbdBlockDevices.put(bdName, blockDevice);
+                        } else {
+                            newBlockDevices.put(bdName, blockDevice);
+                            if (blockDevice.getVolumeGroup() == null
+                                    && bdName.length() > 5 && bdName.indexOf('/', 5) < 0) {
+                                final Matcher m = BLOCK_DEV_FILE_PATTERN.matcher(bdName);
+                                if (m.matches()) {
+                                    newBlockDevices.remove(m.group(1));
+                                }
                             }
                         }
                     }
-                }
-                final String vg = blockDevice.get().getVolumeGroup();
-                if (vg != null) {
-                    Set<String> logicalVolumes = newVolumeGroupsLVS.get(vg);
-                    if (logicalVolumes == null) {
-                        logicalVolumes = new HashSet<String>();
-                        newVolumeGroupsLVS.put(vg, logicalVolumes);
+                    newBlockDevicesByLine.put(line, blockDevice);
+                    final String vg = blockDevice.getVolumeGroup();
+                    if (vg != null) {
+                        Set<String> logicalVolumes = newVolumeGroupsLVS.get(vg);
+                        if (logicalVolumes == null) {
+                            logicalVolumes = new HashSet<String>();
+                            newVolumeGroupsLVS.put(vg, logicalVolumes);
+                        }
+                        final String lv = blockDevice.getLogicalVolume();
+                        if (lv != null) {
+                            logicalVolumes.add(lv);
+                        }
                     }
-                    final String lv = blockDevice.get().getLogicalVolume();
-                    if (lv != null) {
-                        logicalVolumes.add(lv);
+                    if (blockDevice.isPhysicalVolume()) {
+                        newPhysicalVolumes.add(blockDevice);
                     }
-                }
-                if (blockDevice.get().isPhysicalVolume()) {
-                    newPhysicalVolumes.add(blockDevice.get());
-                }
-            } else if (DISK_SPACE_DELIM.equals(type)) {
-                final Matcher dsM = USED_DISK_SPACE_PATTERN.matcher(line);
-                if (dsM.matches()) {
-                    final String bdName = dsM.group(1);
-                    final String used = dsM.group(2);
-                    diskSpaces.put(bdName, used);
-                }
-            } else if ("vg-info".equals(type)) {
-                final String[] vgi = line.split("\\s+");
-                if (vgi.length == 2) {
-                    newVolumeGroups.put(vgi[0], Long.parseLong(vgi[1]));
-                } else {
-                    LOG.appWarning("parseHostInfo: could not parse volume info: " + line);
-                }
-            } else if ("filesystems-info".equals(type)) {
-                fileSystems.add(line);
-            } else if ("crypto-info".equals(type)) {
-                newCryptoModules.add(line);
-            } else if ("qemu-keymaps-info".equals(type)) {
-                newQemuKeymaps.add(new StringValue(line));
-            } else if ("cpu-map-model-info".equals(type)) {
-                newCpuMapModels.add(new StringValue(line));
-            } else if ("cpu-map-vendor-info".equals(type)) {
-                newCpuMapVendors.add(new StringValue(line));
-            } else if ("mount-points-info".equals(type)) {
-                mountPoints.add(line);
-            } else if ("gui-info".equals(type)) {
-                parseGuiInfo(line);
-            } else if ("installation-info".equals(type)) {
-                parseInstallationInfo(line);
-            } else if ("gui-options-info".equals(type)) {
-                guiOptionName = parseGuiOptionsInfo(line, guiOptionName, newGuiOptions);
-            } else if (VERSION_INFO_DELIM.equals(type)) {
-                versionLines.add(line);
-            } else if ("drbd-proxy-info".equals(type)) {
-                /* res-other.host-this.host */
-                final Cluster cluster = host.getCluster();
-                if (cluster != null) {
-                    String res = null;
-                    if (line.startsWith("up:")) {
-                        for (final Host otherHost : cluster.getProxyHosts()) {
-                            if (otherHost == host) {
-                                continue;
-                            }
-                            final String hostsPart = '-' + otherHost.getName() + '-' + host.getName();
-                            final int i = line.indexOf(hostsPart);
-                            if (i > 0) {
-                                res = line.substring(3, i);
-                                break;
-                            }
-                        }
+                } else if (DISK_SPACE_DELIM.equals(type)) {
+                    final Matcher dsM = USED_DISK_SPACE_PATTERN.matcher(line);
+                    if (dsM.matches()) {
+                        final String bdName = dsM.group(1);
+                        final String used = dsM.group(2);
+                        diskSpaces.put(bdName, used);
                     }
-                    if (res == null) {
-                        LOG.appWarning("parseHostInfo: could not parse proxy line: " + line);
+                } else if ("vg-info".equals(type)) {
+                    final String[] vgi = line.split("\\s+");
+                    if (vgi.length == 2) {
+                        newVolumeGroups.put(vgi[0], Long.parseLong(vgi[1]));
                     } else {
-                        newDrbdResProxy.add(res);
+                        LOG.appWarning("parseHostInfo: could not parse volume info: " + line);
+                    }
+                } else if ("filesystems-info".equals(type)) {
+                    fileSystems.add(line);
+                } else if ("crypto-info".equals(type)) {
+                    newCryptoModules.add(line);
+                } else if ("qemu-keymaps-info".equals(type)) {
+                    newQemuKeymaps.add(new StringValue(line));
+                } else if ("cpu-map-model-info".equals(type)) {
+                    newCpuMapModels.add(new StringValue(line));
+                } else if ("cpu-map-vendor-info".equals(type)) {
+                    newCpuMapVendors.add(new StringValue(line));
+                } else if ("mount-points-info".equals(type)) {
+                    mountPoints.add(line);
+                } else if ("gui-info".equals(type)) {
+                    parseGuiInfo(line);
+                } else if ("installation-info".equals(type)) {
+                    parseInstallationInfo(line);
+                } else if ("gui-options-info".equals(type)) {
+                    guiOptionName = parseGuiOptionsInfo(line, guiOptionName, newGuiOptions);
+                } else if (VERSION_INFO_DELIM.equals(type)) {
+                    versionLines.add(line);
+                } else if ("drbd-proxy-info".equals(type)) {
+                    /* res-other.host-this.host */
+                    final Cluster cluster = host.getCluster();
+                    if (cluster != null) {
+                        String res = null;
+                        if (line.startsWith("up:")) {
+                            for (final Host otherHost : cluster.getProxyHosts()) {
+                                if (otherHost == host) {
+                                    continue;
+                                }
+                                final String hostsPart = '-' + otherHost.getName() + '-' + host.getName();
+                                final int i = line.indexOf(hostsPart);
+                                if (i > 0) {
+                                    res = line.substring(3, i);
+                                    break;
+                                }
+                            }
+                        }
+                        if (res == null) {
+                            LOG.appWarning("parseHostInfo: could not parse proxy line: " + line);
+                        } else {
+                            newDrbdResProxy.add(res);
+                        }
                     }
                 }
             }
@@ -362,6 +398,7 @@ public class HostParser {
                 + ", drbd module: " + drbdHost.getDrbdModuleVersion());
 
         if (changedTypes.contains(NET_INFO_DELIM)) {
+            netInterfacesByLine = newNetInterfacesByLine;
             hwEventBus.post(new HwNetInterfacesChangedEvent(host, newNetInterfaces));
         }
 
@@ -370,13 +407,15 @@ public class HostParser {
         }
 
         if (changedTypes.contains(DISK_INFO_DELIM)) {
+            blockDevicesByLine = newBlockDevicesByLine;
+            blockDevices = ImmutableList.copyOf(newBlockDevices.values());
             drbdBlockDevices = newDrbdBlockDevices;
             physicalVolumes = newPhysicalVolumes;
             volumeGroupsWithLvs = newVolumeGroupsLVS;
         }
 
         if (changedTypes.contains(DISK_SPACE_DELIM)) {
-            hwEventBus.post(new HwBlockDevicesDiskSpaceEvent(host, diskSpaces));
+            lastDiskSpaces = diskSpaces;
         }
 
         if (changedTypes.contains(VG_INFO_DELIM)) {
@@ -420,8 +459,57 @@ public class HostParser {
         }
 
         if (changedTypes.contains(DISK_INFO_DELIM) || changedTypes.contains(VG_INFO_DELIM)) {
-            hwEventBus.post(new HwBlockDevicesChangedEvent(host, newBlockDevices.values()));
+            /* the disk info may not come with the vg info, if it didn't change */
+            hwEventBus.post(new HwBlockDevicesChangedEvent(host, blockDevices));
+        }
+
+        if (changedTypes.contains(DISK_SPACE_DELIM) || changedTypes.contains(DISK_INFO_DELIM)) {
+            /* the new block devices need the disk space, that may not have changed;
+               must be posted after the block devices event, that creates them
+               in the BlockDeviceService */
+            hwEventBus.post(new HwBlockDevicesDiskSpaceEvent(host, lastDiskSpaces));
+        }
+    }
+
+    /**
+     * Returns the lines of the sections of the hw info. The hw sections,
+     * that didn't change since the last time, are left out, so that
+     * nothing is updated and no events are posted for them.
+     */
+    private Map<String, List<String>> getChangedSections(final String[] lines) {
+        final Map<String, List<String>> sections = Maps.newLinkedHashMap();
+        List<String> sectionLines = null;
+        for (final String line : lines) {
+            if (line.indexOf("ERROR:") == 0) {
+                break;
+            } else if (line.indexOf("WARNING:") == 0) {
+                continue;
+            }
+            if (INFO_TYPES.contains(line)) {
+                sectionLines = sections.get(line);
+                if (sectionLines == null) {
+                    sectionLines = Lists.newArrayList();
+                    sections.put(line, sectionLines);
+                }
+            } else if (sectionLines != null) {
+                sectionLines.add(line);
+            }
         }
+        synchronized (lastHwSections) {
+            final Iterator<Map.Entry<String, List<String>>> it = sections.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, List<String>> section = it.next();
+                if (!HW_INFO_TYPES.contains(section.getKey())) {
+                    continue;
+                }
+                if (section.getValue().equals(lastHwSections.get(section.getKey()))) {
+                    it.remove();
+                } else {
+                    lastHwSections.put(section.getKey(), section.getValue());
+                }
+            }
+        }
+        return sections;
     }
 
     public String getArch() {
@@ -780,6 +868,30 @@ public class HostParser {
                 .silentCommand()).block();
     }
 
+    /**
+     * Turns on the compressed output of the gui helper, if it was asked for
+     * and the installed helper can do it.
+     */
+    public void checkGuiHelperFeatures() {
+        if (!application.isCompressHelperOutput()) {
+            compressedFrames.setEnabled(false);
+            return;
+        }
+        final SshOutput ret = host.captureCommand(new ExecCommandConfig().commandString("GuiHelperFeatures")
+                                                                         .silentCommand()
+                                                                         .silentOutput()
+                                                                         .sshCommandTimeout(HW_INFO_TIMEOUT));
+        final boolean enabled = ret.isSuccess()
+                                && Arrays.asList(ret.getOutput().split("\\r?\\n"))
+                                         .contains(CompressedFrames.GZIP_FRAMES_FEATURE);
+        compressedFrames.setEnabled(enabled);
+        LOG.debug1("checkGuiHelperFeatures: " + host.getName() + ": compressed output: " + enabled);
+    }
+
+    public CompressedFrames getCompressedFrames() {
+        return compressedFrames;
+    }
+
     /** Gets and stores hardware info about the host. */
     public void getHWInfo(final boolean updateLVM) {
         getHWInfo(new CategoryInfo[]{}, new ResourceGraph[]{}, updateLVM);
@@ -788,36 +900,34 @@ public class HostParser {
     /** Gets and stores hardware info about the host. */
     public void getHWInfo(final CategoryInfo[] infosToUpdate, final ResourceGraph[] graphs, final boolean updateLVM) {
         final String cmd;
+        final String action;
         if (updateLVM) {
             cmd = "GetHostHWInfoLVM";
+            action = "hw-info-lvm";
         } else {
             cmd = "GetHostHWInfo";
+            action = "hw-info";
         }
-        host.execCommand(new ExecCommandConfig().commandString(cmd)
-                .execCallback(new ExecCallback() {
-                    @Override
-                    public void done(final String ans) {
-                        parseHostInfo(ans);
-                        for (final CategoryInfo ci : infosToUpdate) {
-                            ci.updateTable(CategoryInfo.MAIN_TABLE);
-                        }
-                        for (final ResourceGraph g : graphs) {
-                            if (g != null) {
-                                g.repaint();
-                            }
-                        }
-                        host.setLoadingDone();
-                    }
-
-                    @Override
-                    public void doneError(final String ans, final int exitCode) {
-                        host.setLoadingError();
-                        host.getSSH().forceReconnect();
-                    }
-                })
-                .sshCommandTimeout(HW_INFO_TIMEOUT)
-                .silentCommand()
-                .silentOutput()).block();
+        final SshOutput ret = host.captureGuiHelperAction(action,
+                                                          new ExecCommandConfig().commandString(cmd)
+                                                                                 .sshCommandTimeout(HW_INFO_TIMEOUT)
+                                                                                 .silentCommand()
+                                                                                 .silentOutput());
+        if (!ret.isSuccess()) {
+            host.setLoadingError();
+            host.getSSH().forceReconnect();
+            return;
+        }
+        parseHostInfo(ret.getOutput());
+        for (final CategoryInfo ci : infosToUpdate) {
+            ci.updateTable(CategoryInfo.MAIN_TABLE);
+        }
+        for (final ResourceGraph g : graphs) {
+            if (g != null) {
+                g.repaint();
+            }
+        }
+        host.setLoadingDone();
     }
 
     /** Gets and stores hardware info about the host. */
@@ -856,36 +966,49 @@ public class HostParser {
                     }
                 })
                 .newOutputCallback(new NewOutputCallback() {
-                    private final StringBuffer outputBuffer = new StringBuffer(300);
-                    @Override
-                    public void output(final String output) {
-                        outputBuffer.append(output);
-                        final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
-                        String hw, vm, drbdConfig;
-                        String hwUpdate = null;
-                        String vmUpdate = null;
-                        String drbdUpdate = null;
-                        do {
-                            hw = getOutput("hw", outputBuffer);
-                            if (hw != null) {
-                                hwUpdate = hw;
+                    private String hwUpdate = null;
+                    private String vmUpdate = null;
+                    /** Changed domains, that wait for the vm status lock. */
+                    private final List<String> vmDomainUpdates = new ArrayList<String>();
+                    private String drbdUpdate = null;
+                    private final FrameDecoder frameDecoder = createInfoFrameDecoder()
+                        .expanding(compressedFrames)
+                        .handle("hw", new FrameDecoder.FrameHandler() {
+                            @Override
+                            public void frame(final String payload) {
+                                hwUpdate = payload;
                             }
-                            vm = getOutput("vm", outputBuffer);
-                            if (vmStatusTryLock()) {
-                                if (vm != null) {
-                                    vmUpdate = vm;
+                        })
+                        .handle("vm", new FrameDecoder.FrameHandler() {
+                            @Override
+                            public void frame(final String payload) {
+                                if (vmStatusTryLock()) {
+                                    vmUpdate = payload;
+                                    vmDomainUpdates.clear();
+                                    vmStatusUnlock();
                                 }
-                                vmStatusUnlock();
                             }
-                            drbdStatusLock();
-                            drbdConfig = getOutput("drbd", outputBuffer);
-                            if (drbdConfig != null) {
-                                drbdUpdate = drbdConfig;
+                        })
+                        .handle("vm-domain", new FrameDecoder.FrameHandler() {
+                            @Override
+                            public void frame(final String payload) {
+                                vmDomainUpdates.add(payload);
+                            }
+                        })
+                        .handle("drbd", new FrameDecoder.FrameHandler() {
+                            @Override
+                            public void frame(final String payload) {
+                                drbdUpdate = payload;
                             }
-                            drbdStatusUnlock();
-                        } while (hw != null || vm != null || drbdConfig != null);
+                        });
 
-                        Tools.chomp(outputBuffer);
+                    @Override
+                    public void output(final CharSequence output) {
+                        final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
+                        hwUpdate = null;
+                        vmUpdate = null;
+                        drbdUpdate = null;
+                        frameDecoder.feed(output);
                         if (hwUpdate != null) {
                             parseHostInfo(hwUpdate);
                             for (final ResourceGraph g : graphs) {
@@ -902,6 +1025,7 @@ public class HostParser {
                                 cb.updateVms();
                             }
                         }
+                        final boolean vmDomainsUpdated = mergeVmDomainUpdates(cb);
                         if (drbdUpdate != null) {
                             final DrbdXml dxml = drbdXmlProvider.get();
                             dxml.init(host.getCluster().getHostsArray(), cb.getHostDrbdParameters());
@@ -916,7 +1040,8 @@ public class HostParser {
                             });
                         }
                         if (drbdUpdate != null
-                                || vmUpdate != null) {
+                                || vmUpdate != null
+                                || vmDomainsUpdated) {
                             cb.updateHWInfo(host, !Host.UPDATE_LVM);
                         }
                         if (drbdUpdate != null) {
@@ -927,41 +1052,69 @@ public class HostParser {
                         }
                         host.setLoadingDone();
                     }
+
+                    /** Merges the changed domains into the current vms, if nobody is changing them. */
+                    private boolean mergeVmDomainUpdates(final ClusterBrowser cb) {
+                        if (vmDomainUpdates.isEmpty() || !vmStatusTryLock()) {
+                            return false;
+                        }
+                        vmStatusUnlock();
+                        final VmsXml vmsXml = cb.getVmsXml(host);
+                        if (vmsXml == null || !vmsXml.mergeDomains(vmDomainUpdates)) {
+                            /* they wait for the full vm info, that replaces them */
+                            return false;
+                        }
+                        vmDomainUpdates.clear();
+                        cb.updateVms();
+                        return true;
+                    }
                 })
                 .silentCommand()
                 .silentOutput()
                 .sshCommandTimeout(HW_INFO_TIMEOUT)).block();
     }
 
-    public String getOutput(final String type, final StringBuffer buffer) {
-        final String infoStart = "--" + type + "-info-start--";
-        final String infoEnd = "--" + type + "-info-end--";
-        final int infoStartLength = infoStart.length();
-        final int infoEndLength = infoEnd.length();
-        final int s = buffer.indexOf(infoStart);
-        final int s2 = buffer.indexOf("\r\n", s);
-        final int e = buffer.indexOf(infoEnd, s);
-        String out = null;
-        if (s > -1 && s < s2 && s2 <= e) {
-            Double timestamp = null;
-            final String ts = buffer.substring(s + infoStartLength, s2);
-            try {
-                timestamp = Double.parseDouble(ts);
-            }  catch (final NumberFormatException nfe) {
-                LOG.debug("getOutput: could not parse: " + ts + ' ' + nfe);
+    /**
+     * Returns a decoder of the info frames of the gui helper, that passes
+     * on only the frames, that are not older than the last frame of the same
+     * type.
+     */
+    public FrameDecoder createInfoFrameDecoder() {
+        return FrameDecoder.infoFrames(new FrameDecoder.FrameFilter() {
+            @Override
+            public boolean accept(final String type, final long timestamp) {
+                return isNewerInfo(type, timestamp);
             }
-            mInfoTimestampLock.lock();
-            if (timestamp != null
-                    && (!infoTimestamp.containsKey(type) || timestamp >= infoTimestamp.get(type))) {
-                infoTimestamp.put(type, timestamp);
-                mInfoTimestampLock.unlock();
-                out = buffer.substring(s2 + 2, e);
-            } else {
-                mInfoTimestampLock.unlock();
+        });
+    }
+
+    /** Returns the payload of the last info frame of the type in the output or null. */
+    public String getInfoFrame(final String type, final CharSequence output) {
+        final String[] payload = new String[1];
+        createInfoFrameDecoder().handle(type, new FrameDecoder.FrameHandler() {
+            @Override
+            public void frame(final String framePayload) {
+                payload[0] = framePayload;
+            }
+        }).feed(output);
+        return payload[0];
+    }
+
+    private boolean isNewerInfo(final String type, final long timestamp) {
+        if (timestamp == FrameDecoder.NO_TIMESTAMP) {
+            return false;
+        }
+        mInfoTimestampLock.lock();
+        try {
+            final Long lastTimestamp = infoTimestamp.get(type);
+            if (lastTimestamp != null && timestamp < lastTimestamp) {
+                return false;
             }
-            buffer.delete(0, e + infoEndLength + 2);
+            infoTimestamp.put(type, timestamp);
+            return true;
+        } finally {
+            mInfoTimestampLock.unlock();
         }
-        return out;
     }
 
     public void vmStatusLock() {
@@ -1344,6 +1497,10 @@ public class HostParser {
                 helperProg.append(' ');
                 helperProg.append(LOG_COMMANDS_ON_SERVER_OPTION);
             }
+            if (compressedFrames.isEnabled()) {
+                helperProg.append(' ');
+                helperProg.append(CompressedFrames.GZIP_FRAMES_OPTION);
+            }
             command = command.replaceAll("@GUI-HELPER@", helperProg.toString());
         }
         if (command.contains("@GUI-HELPER-PROG@")) {
@@ -51,7 +51,7 @@ public final class ClusterHostsInfo extends CategoryInfo {
 
     @Override
     protected String[] getColumnNames(final String tableName) {
-        return new String[]{"Host", "DRBD", "Cluster Software"};
+        return new String[]{"Host", "DRBD", "Cluster Software", "RTT"};
     }
 
     @Override
@@ -62,7 +62,8 @@ public final class ClusterHostsInfo extends CategoryInfo {
             hostLabel.setOpaque(true);
             rows.add(new Object[]{hostLabel,
                                   host.getDrbdInfoAboutInstallation(),
-                                  host.getPacemakerInfo()});
+                                  host.getPacemakerInfo(),
+                                  host.getRoundTripTimeString()});
         }
         return rows.toArray(new Object[rows.size()][]);
     }
@@ -45,11 +45,13 @@ import org.w3c.dom.NodeList;
 import javax.inject.Named;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import com.google.common.base.Optional;
@@ -59,12 +61,14 @@ public class VMParser {
     private static final Logger LOG = LoggerFactory.getLogger(VMParser.class);
     private static final Pattern DISPLAY_PATTERN = Pattern.compile(".*:(\\d+)$");
 
-    private final Map<String, DomainData> domainDataMap = Maps.newHashMap();
+    /* the domains are merged in place, while they are being read */
+    private final Map<String, DomainData> domainDataMap = Maps.newConcurrentMap();
 
-    private final Collection<String> domainNames = new ArrayList<String>();
-    private final Map<Value, String> configsToNames = new HashMap<Value, String>();
-    private final Collection<String> usedMacAddresses = new HashSet<String>();
-    private final Collection<String> sourceFileDirs = new TreeSet<String>();
+    private final Collection<String> domainNames = new CopyOnWriteArrayList<String>();
+    private final Map<Value, String> configsToNames = new ConcurrentHashMap<Value, String>();
+    private final Collection<String> usedMacAddresses =
+                                       Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Collection<String> sourceFileDirs = new ConcurrentSkipListSet<String>();
 
     private DomainData getDomainData(final String domainName) {
         DomainData domainData = domainDataMap.get(domainName);
@@ -111,6 +115,40 @@ public class VMParser {
         namesToConfigs.put(domainName, configName);
     }
 
+    /**
+     * Forgets the domain, before it's parsed again or if it was removed.
+     * The mac addresses and source file directories are kept, if other
+     * domains use them too.
+     */
+    public void removeDomain(final String domainName, final Map<String, String> namesToConfigs) {
+        final DomainData domainData = domainDataMap.remove(domainName);
+        domainNames.remove(domainName);
+        configsToNames.values().remove(domainName);
+        namesToConfigs.remove(domainName);
+        if (domainData == null) {
+            return;
+        }
+        final Collection<String> macAddresses = new HashSet<String>(domainData.getInterfacesMap().keySet());
+        final Collection<String> dirs = getSourceFileDirs(domainData);
+        for (final DomainData otherDomainData : domainDataMap.values()) {
+            macAddresses.removeAll(otherDomainData.getInterfacesMap().keySet());
+            dirs.removeAll(getSourceFileDirs(otherDomainData));
+        }
+        usedMacAddresses.removeAll(macAddresses);
+        sourceFileDirs.removeAll(dirs);
+    }
+
+    private Collection<String> getSourceFileDirs(final DomainData domainData) {
+        final Collection<String> dirs = new HashSet<String>();
+        for (final DiskData diskData : domainData.getDisksMap().values()) {
+            final String dir = Tools.getDirectoryPart(diskData.getSourceFile());
+            if (dir != null) {
+                dirs.add(dir);
+            }
+        }
+        return dirs;
+    }
+
     public String getValue(final String name, final String param) {
         return getDomainData(name).getValue(param);
     }
@@ -28,6 +28,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -88,7 +89,7 @@ public class VmsXml {
     @Autowired
     private Provider<VMCreator> vmCreatorProvider;
 
-    private final Map<String, String> namesToConfigs = new HashMap<String, String>();
+    private final Map<String, String> namesToConfigs = new ConcurrentHashMap<String, String>();
 
     /** Returns string representation of the port; it can be autoport. */
     static String portString(final String port) {
@@ -205,18 +206,18 @@ public class VmsXml {
     }
 
     public Node getDomainNode(final String domainName) {
-        mXMLDocumentReadLock.lock();
-        final Document document;
-        try {
-            document = xmlDocument;
-        } finally {
-            mXMLDocumentReadLock.unlock();
-        }
         final XPath xpath = XPathFactory.newInstance().newXPath();
         final Node domainNode;
         try {
             final String path = "//vms/vm[@name='" + domainName + "']/config/domain";
-            final NodeList domainNodes = (NodeList) xpath.evaluate(path, document, XPathConstants.NODESET);
+            final NodeList domainNodes;
+            /* the domains may be merged into the document */
+            mXMLDocumentReadLock.lock();
+            try {
+                domainNodes = (NodeList) xpath.evaluate(path, xmlDocument, XPathConstants.NODESET);
+            } finally {
+                mXMLDocumentReadLock.unlock();
+            }
             if (domainNodes.getLength() == 1) {
                 domainNode = domainNodes.item(0);
             } else if (domainNodes.getLength() >= 1) {
@@ -666,9 +667,10 @@ public class VmsXml {
 
     public boolean parseXml() {
         final String command = definedOnHost.getHostParser().getDistCommand("VMSXML.GetData", (ConvertCmdCallback) null);
-        final SshOutput ret = definedOnHost.captureCommand(new ExecCommandConfig().command(command)
-                                                                                  .silentCommand()
-                                                                                  .silentOutput());
+        final SshOutput ret = definedOnHost.captureGuiHelperAction("get-vm-info",
+                                                                   new ExecCommandConfig().command(command)
+                                                                                          .silentCommand()
+                                                                                          .silentOutput());
         if (ret.getExitCode() != 0) {
             return false;
         }
@@ -676,7 +678,7 @@ public class VmsXml {
         if (output == null) {
             return false;
         }
-        return parseXml(output);
+        return parseXml(definedOnHost.getHostParser().getCompressedFrames().expand(output));
     }
 
     public boolean parseXml(final String xml) {
@@ -711,6 +713,84 @@ public class VmsXml {
         return true;
     }
 
+    /**
+     * Merges the <vm> elements of the domains, that changed, into the
+     * document and the parsed domains, instead of parsing all of them
+     * again. Returns false, if there's nothing to merge them into yet, then
+     * none of them is merged.
+     */
+    public boolean mergeDomains(final Iterable<String> domainXmls) {
+        final Node vmsNode;
+        mXMLDocumentReadLock.lock();
+        try {
+            vmsNode = xmlDocument == null ? null : XMLTools.getChildNode(xmlDocument, "vms");
+        } finally {
+            mXMLDocumentReadLock.unlock();
+        }
+        if (vmsNode == null) {
+            return false;
+        }
+        boolean merged = false;
+        for (final String domainXml : domainXmls) {
+            final Document domainDocument = XMLTools.getXMLDocument(domainXml);
+            if (domainDocument == null) {
+                continue;
+            }
+            final Node domainVmNode = XMLTools.getChildNode(domainDocument, "vm");
+            if (domainVmNode == null) {
+                continue;
+            }
+            final String domainName = XMLTools.getAttribute(domainVmNode, VMParams.VM_PARAM_NAME);
+            if (domainName == null) {
+                continue;
+            }
+            final boolean removed = "True".equals(XMLTools.getAttribute(domainVmNode, "removed"));
+            final Node vmNode;
+            mXMLDocumentWriteLock.lock();
+            try {
+                final Node oldVmNode = getVmNode(vmsNode, domainName);
+                if (removed) {
+                    vmNode = null;
+                    if (oldVmNode != null) {
+                        vmsNode.removeChild(oldVmNode);
+                    }
+                } else {
+                    vmNode = xmlDocument.importNode(domainVmNode, true);
+                    if (oldVmNode == null) {
+                        vmsNode.appendChild(vmNode);
+                    } else {
+                        vmsNode.replaceChild(vmNode, oldVmNode);
+                    }
+                }
+            } finally {
+                mXMLDocumentWriteLock.unlock();
+            }
+            LOG.debug1("mergeDomains: " + domainName + (removed ? " removed" : " changed"));
+            vmParser.removeDomain(domainName, namesToConfigs);
+            if (vmNode != null) {
+                vmParser.parseVM(vmNode, definedOnHost, namesToConfigs);
+            }
+            merged = true;
+        }
+        if (merged) {
+            /* the next full vm info is not the same anymore */
+            definedOnHost.setVMInfoMD5(null);
+        }
+        return true;
+    }
+
+    private Node getVmNode(final Node vmsNode, final String domainName) {
+        final NodeList vms = vmsNode.getChildNodes();
+        for (int i = 0; i < vms.getLength(); i++) {
+            final Node node = vms.item(i);
+            if ("vm".equals(node.getNodeName())
+                && domainName.equals(XMLTools.getAttribute(node, VMParams.VM_PARAM_NAME))) {
+                return node;
+            }
+        }
+        return null;
+    }
+
     public Collection<String> getDomainNames() {
         return vmParser.getDomainNames();
     }
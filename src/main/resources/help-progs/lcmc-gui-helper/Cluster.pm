@@ -6,6 +6,7 @@ our $OCF_RESOURCE_DIR = $OCF_DIR;
 our $STONITH_ADMIN_PROG;
 our $PCMK_SERVICE_AGENTS;
 our @SERVICE_CLASSES;
+our @CIB_CONFIGURATION_SECTIONS;
 
 sub init() {
     $CLUSTER_INFO_INTERVAL = 10;
@@ -15,6 +16,12 @@ sub init() {
     $PCMK_SERVICE_AGENTS = "crm_resource --list-agents ";
 
     @SERVICE_CLASSES = ("service", "systemd", "upstart");
+    @CIB_CONFIGURATION_SECTIONS = ("crm_config",
+                                   "rsc_defaults",
+                                   "op_defaults",
+                                   "nodes",
+                                   "resources",
+                                   "constraints");
 }
 
 sub get_cluster_events {
@@ -34,10 +41,15 @@ sub get_cluster_events {
     }
 }
 
-sub do_cluster_events {
+sub get_hb_version {
     my $libpath = Host_software::get_hb_lib_path();
-    my $hb_version = Command::_exec("$libpath/heartbeat -V 2>/dev/null") || "";
-    my $info = get_cluster_info($hb_version);
+    return Command::_exec("$libpath/heartbeat -V 2>/dev/null") || "";
+}
+
+sub do_cluster_events {
+    my $hb_version = get_hb_version();
+    my %cib_state;
+    my $info = get_cluster_delta($hb_version, \%cib_state);
     my $pcmk_path = "/usr/libexec/pacemaker:/usr/lib/heartbeat:/usr/lib64/heartbeat:/usr/lib/pacemaker:/usr/lib64/pacemaker:/usr/lib/x86_64-linux-gnu/pacemaker";
     my $command =
         "PATH=$pcmk_path exec cibmon -udVVVV -m1 2>&1";
@@ -65,8 +77,8 @@ sub do_cluster_events {
                 elsif (/error:/
                     || /Diff: ---/
                     || /Local-only Change:/) {
-                    my $cluster_info = get_cluster_info($hb_version);
-                    if ($cluster_info ne $prev_info) {
+                    my $cluster_info = get_cluster_delta($hb_version, \%cib_state);
+                    if ($cluster_info && $cluster_info ne $prev_info) {
                         print "---start---\n";
                         print $cluster_info;
                         print "---done---\n";
@@ -81,6 +93,15 @@ sub do_cluster_events {
     }
 }
 
+#
+# Prints the whole cib as one delta, if the gui misses some of them.
+sub get_cluster_full_info {
+    my %cib_state;
+    print "---start---\n";
+    print get_cluster_delta(get_hb_version(), \%cib_state);
+    print "---done---\n";
+}
+
 #
 # Get info from ptest and make xml from it. This is used only to find out
 # if a resource is running, not running and/or unmanaged
@@ -256,19 +277,203 @@ sub get_resource_status {
     return("", $fenced_nodes_ret);
 }
 
-sub get_cluster_info {
+#
+# Returns the resource status and the cib delta: the sections of the cib,
+# that changed since the previous call. The state of the previous call is
+# kept in the cib state hash, if it is empty, the delta has the whole cib.
+# Returns an empty string, if nothing changed.
+sub get_cluster_delta {
     my $hb_version = shift;
+    my $cib_state = shift;
     my ($info, $fenced_nodes) = get_resource_status($hb_version);
     # TODO: use cib.xml if cibadmin can't connect
     my $cibinfo = Command::_exec("/usr/sbin/cibadmin -Ql || cat /var/lib/pacemaker/cib/cib.xml /var/lib/heartbeat/crm/cib.xml 2>/dev/null");
-    if ($cibinfo) {
-        my $res_status = "res_status";
-        my $cibquery = "cibadmin";
-        return "$res_status\nok\n$info\n>>>$res_status\n"
-            . "$cibquery\nok\n<pcmk>\n$fenced_nodes$cibinfo</pcmk>\n"
-            . ">>>$cibquery\n";
-    }
-    return "\n";
+    if (!$cibinfo) {
+        return "\n";
+    }
+    my $sections = get_cib_sections($cibinfo);
+    if (!$sections) {
+        # the same as without the cib
+        return "\n";
+    }
+    if ($fenced_nodes) {
+        $$sections{"fenced"} = $fenced_nodes;
+    }
+    my $full = !$$cib_state{"sections"};
+    my $prev_sections = $$cib_state{"sections"} || {};
+    my $delta = "";
+    for my $id (sort keys %$sections) {
+        if (!defined $$prev_sections{$id}
+            || $$prev_sections{$id} ne $$sections{$id}) {
+            $delta .= "<section id=\"" . xml_escape($id) . "\">\n$$sections{$id}\n</section>\n";
+        }
+    }
+    for my $id (sort keys %$prev_sections) {
+        if (!defined $$sections{$id}) {
+            $delta .= "<removed id=\"" . xml_escape($id) . "\"/>\n";
+        }
+    }
+    my $res_status = "res_status";
+    if (!$delta && $info eq $$cib_state{$res_status}) {
+        return "";
+    }
+    my $base = $$cib_state{"version"} || "";
+    my $version = get_cib_version($$sections{"cib"});
+    $$cib_state{"sections"} = $sections;
+    $$cib_state{"version"} = $version;
+    $$cib_state{$res_status} = $info;
+    my $cib_delta = "cib_delta";
+    return "$res_status\nok\n$info\n>>>$res_status\n"
+        . "$cib_delta\nok\n"
+        . Frame::frame("<cib_delta full=\"" . ($full ? "true" : "false")
+                       . "\" base=\"$base\" version=\"$version\">\n"
+                       . $delta
+                       . "</cib_delta>\n")
+        . ">>>$cib_delta\n";
+}
+
+#
+# Splits the cibadmin output in the sections, that can change separately:
+# the cib attributes, the configuration sections and the node states. The
+# sections are cut out of the output as they are, at the element boundaries,
+# that the xml parser finds. Returns undef, if the output is not xml.
+sub get_cib_sections {
+    my $cibinfo = shift;
+    my %sections;
+    my %configuration_sections = map { $_ => 1 } @CIB_CONFIGURATION_SECTIONS;
+    my $parsed = parse_xml_elements($cibinfo, sub {
+        my ($name, $attrs, $parents, $start, $start_tag_length, $end) = @_;
+        my $parent = join "/", @$parents;
+        if ($parent eq "" && $name eq "cib") {
+            my $cib = substr $cibinfo, $start, $start_tag_length;
+            $cib =~ s/\s*\/?>\z//;
+            $sections{"cib"} = "$cib/>";
+        }
+        elsif ($parent eq "cib/configuration" && $configuration_sections{$name}) {
+            $sections{$name} = substr $cibinfo, $start, $end - $start;
+        }
+        elsif ($parent eq "cib/status" && $name eq "node_state"
+               && defined $$attrs{"id"}) {
+            $sections{"node_state:$$attrs{id}"} =
+                substr $cibinfo, $start, $end - $start;
+        }
+    });
+    return $parsed ? \%sections : undef;
+}
+
+#
+# Calls the function for every element of the xml, after its end, with the
+# name, the attributes, the names of the parents, the start, the length of
+# the start tag and the end. XML::Parser is used, if it is installed,
+# otherwise the markup is scanned here: the comments, CDATA sections and
+# quoted attribute values are skipped whole, so a ">" in them doesn't end a
+# tag. Only the first root element is parsed, the rest, e.g. of the
+# concatenated cib files, is ignored. Returns whether the root element was
+# complete.
+sub parse_xml_elements {
+    my $xml = shift;
+    my $element_done = shift;
+    my @open; # [name, attributes, start, start tag length]
+    my $root_done = 0;
+    if (eval { require XML::Parser; 1 }) {
+        my $parser = XML::Parser->new(Handlers => {
+            Start => sub {
+                my ($expat, $name, %attrs) = @_;
+                push @open, [$name,
+                             \%attrs,
+                             $expat->current_byte,
+                             length $expat->original_string];
+            },
+            End => sub {
+                my ($expat, $name) = @_;
+                my ($n, $attrs, $start, $start_tag_length) = @{pop @open};
+                my $end_tag = $expat->original_string;
+                # the end of an empty element has no string
+                my $end = $end_tag eq ""
+                          ? $start + $start_tag_length
+                          : $expat->current_byte + length $end_tag;
+                $element_done->($name, $attrs, [map { $$_[0] } @open],
+                                $start, $start_tag_length, $end);
+                if (!@open) {
+                    $root_done = 1;
+                    # the rest is not needed
+                    die "root element done\n";
+                }
+            },
+        });
+        eval { $parser->parse($xml) };
+        return $root_done;
+    }
+    my $name_re = qr/[^\s\/>=<"']+/;
+    while ($xml =~ /\G(?:[^<]+
+                         |<!--.*?-->
+                         |<!\[CDATA\[.*?\]\]>
+                         |<\?.*?\?>
+                         |<![^>]*>
+                         |<\/($name_re)\s*>
+                         |<($name_re)((?:\s+$name_re\s*=\s*(?:"[^"]*"|'[^']*'))*)\s*(\/?)>)/gcsx) {
+        my ($start, $end) = ($-[0], $+[0]);
+        my ($end_name, $name, $attr_text, $empty) = ($1, $2, $3, $4);
+        if (defined $end_name) {
+            my $element = pop @open;
+            return 0 if !$element || $$element[0] ne $end_name;
+            $element_done->($end_name, $$element[1], [map { $$_[0] } @open],
+                            $$element[2], $$element[3], $end);
+            return 1 if !@open;
+        }
+        elsif (defined $name) {
+            my %attrs;
+            while ($attr_text =~ /($name_re)\s*=\s*(?:"([^"]*)"|'([^']*)')/g) {
+                $attrs{$1} = xml_unescape(defined $2 ? $2 : $3);
+            }
+            if ($empty) {
+                $element_done->($name, \%attrs, [map { $$_[0] } @open],
+                                $start, $end - $start, $end);
+                return 1 if !@open;
+            }
+            else {
+                push @open, [$name, \%attrs, $start, $end - $start];
+            }
+        }
+    }
+    return 0;
+}
+
+sub xml_escape {
+    my $value = shift;
+    $value =~ s/&/&amp;/g;
+    $value =~ s/</&lt;/g;
+    $value =~ s/"/&quot;/g;
+    return $value;
+}
+
+sub xml_unescape {
+    my $value = shift;
+    $value =~ s/&(lt|gt|quot|apos|#\d+|#x[0-9a-fA-F]+);/
+        $1 eq "lt" ? "<"
+        : $1 eq "gt" ? ">"
+        : $1 eq "quot" ? "\""
+        : $1 eq "apos" ? "'"
+        : substr($1, 1, 1) eq "x" ? chr(hex(substr($1, 2)))
+        : chr(substr($1, 1))/ge;
+    $value =~ s/&amp;/&/g;
+    return $value;
+}
+
+#
+# Returns admin_epoch:epoch:num_updates from the cib attributes.
+sub get_cib_version {
+    my $cib = shift || "";
+    my @version;
+    for my $attr ("admin_epoch", "epoch", "num_updates") {
+        if ($cib =~ /\b$attr="(\d+)"/) {
+            push @version, $1;
+        }
+        else {
+            push @version, 0;
+        }
+    }
+    return join(":", @version);
 }
 
 sub get_cluster_metadata {
@@ -300,8 +505,18 @@ sub get_existing_resources {
     return \%existing_rscs;
 }
 
+# The types are:
+#   quick:      only the names of all the agents
+#   configured: meta-data of the agents, that are used in the cib
+#   checksums:  checksums of all the agents, without the meta-data
+#   agents:     meta-data of the agents in the arguments, e.g.
+#               ocf:heartbeat:IPaddr2 stonith::fence_xvm
+#   otherwise meta-data of all the agents
+# With the meta-data there are checksums of the agents' files, so that the
+# gui can cache them.
 sub get_resource_agents {
     my $type = shift // "";
+    my @agents = @_;
     my $existing_rscs_ocf;
     my $existing_rscs_stonith;
     if ("configured" eq $type) {
@@ -309,6 +524,19 @@ sub get_resource_agents {
         $existing_rscs_ocf = $$existing_rscs{"ocf"};
         $existing_rscs_stonith = $$existing_rscs{"stonith"};
     }
+    elsif ("agents" eq $type) {
+        my %agents;
+        for (@agents) {
+            my ($class, $prov, $name) = split /:/, $_, 3;
+            next if !$name;
+            $agents{$class}{$prov}{$name} = 1;
+        }
+        $existing_rscs_ocf = $agents{"ocf"} || {};
+        $existing_rscs_stonith = $agents{"stonith"} || {};
+    }
+    if ("quick" ne $type) {
+        print "ra-version:" . get_resource_agents_version() . "\n";
+    }
     print "class:ocf\n";
     get_ocf_resources($type, $existing_rscs_ocf);
     print "provider:heartbeat\n";
@@ -328,18 +556,34 @@ sub get_resource_agents {
     }
 }
 
+# Returns versions of the packages, that the meta-data may depend on,
+# besides the agents' files.
+sub get_resource_agents_version {
+    my $version =
+        Command::_exec("rpm -q --qf '%{VERSION}-%{RELEASE} ' resource-agents pacemaker 2>/dev/null"
+                       . " || dpkg-query -W -f '\${Version} ' resource-agents pacemaker 2>/dev/null");
+    $version =~ s/\s+$//;
+    return $version;
+}
+
+# Returns md5 checksum of the file or an empty string.
+sub file_checksum {
+    my $file = shift;
+    open my $fh, "<", $file or return "";
+    binmode $fh;
+    my $checksum = Digest::MD5->new->addfile($fh)->hexdigest;
+    close $fh;
+    return $checksum;
+}
+
 sub get_ocf_resources {
     my $type = shift // "";
     my $existing_rscs = shift;
-    my $quick = 0;
-    if ("quick" eq $type) {
-        $quick = 1;
-    }
-    if ("configured" eq $type) {
+    if ("configured" eq $type || "agents" eq $type) {
         for my $prov (keys %{$existing_rscs}) {
             print "provider:$prov\n";
             for my $s (keys %{$$existing_rscs{$prov}}) {
-                get_ocf_resource($prov, $s, $quick);
+                get_ocf_resource($prov, $s, $type);
             }
         }
     }
@@ -349,7 +593,7 @@ sub get_ocf_resources {
             print "provider:$prov\n";
             opendir my $d2fh, "$OCF_RESOURCE_DIR/$prov" or next;
             for my $s (sort grep {/^[^.]/ && !/\.metadata$/} readdir $d2fh) {
-                get_ocf_resource($prov, $s, $quick);
+                get_ocf_resource($prov, $s, $type);
             }
         }
     }
@@ -358,8 +602,8 @@ sub get_ocf_resources {
 sub get_ocf_resource {
     my $prov = shift;
     my $s = shift;
-    my $quick = shift;
-    if ($quick) {
+    my $type = shift // "";
+    if ("quick" eq $type) {
         $s =~ s/\.sh$//;
         print "ra:$s\n";
     }
@@ -369,7 +613,11 @@ sub get_ocf_resource {
         print "ra-name:$ra_name\n";
         print "master:";
         print Command::_exec("grep -wl crm_master $OCF_RESOURCE_DIR/$prov/$s;echo;") . "\n";
-        print Command::_exec("OCF_RESKEY_vmxpath=a OCF_ROOT=$OCF_DIR $OCF_RESOURCE_DIR/$prov/$s meta-data 2>/dev/null");
+        print "checksum:" . file_checksum("$OCF_RESOURCE_DIR/$prov/$s") . "\n";
+        if ("checksums" ne $type) {
+            print Command::_exec("OCF_RESKEY_vmxpath=a OCF_ROOT=$OCF_DIR $OCF_RESOURCE_DIR/$prov/$s meta-data 2>/dev/null");
+        }
+        Frame::flush();
     }
 }
 
@@ -416,7 +664,7 @@ sub get_stonith_devices {
     if ("quick" eq $type) {
         $quick = 1;
     }
-    elsif ("configured" eq $type) {
+    elsif ("configured" eq $type || "agents" eq $type) {
         $configured = 1;
         for my $p (keys %$existing_rscs) {
             for my $s (keys %{$$existing_rscs{$p}}) {
@@ -435,13 +683,22 @@ sub get_stonith_devices {
         if ($configured && !$configured_devs{$name}) {
             next;
         }
+        # the fence agents, if there is no file, it's not cached
+        my $checksum = file_checksum("/usr/sbin/$name");
+        if ("checksums" eq $type) {
+            print "ra-name:$name\n";
+            print "checksum:$checksum\n";
+            next;
+        }
         my $metadata = Command::_exec("$STONITH_ADMIN_PROG -M -a $name");
         $metadata =~ s/(<resource-agent.*?)\>/$1 class="stonith">/;
         if (!$metadata) {
             next;
         }
         print "ra-name:$name\n";
+        print "checksum:$checksum\n";
         print $metadata;
+        Frame::flush();
     }
 }
 
@@ -455,7 +712,7 @@ sub get_stonith_devices_old {
     if ("quick" eq $type) {
         $quick = 1;
     }
-    elsif ("configured" eq $type) {
+    elsif ("configured" eq $type || "agents" eq $type) {
         $configured = 1;
         for my $p (keys %$existing_rscs) {
             for my $s (keys %{$$existing_rscs{$p}}) {
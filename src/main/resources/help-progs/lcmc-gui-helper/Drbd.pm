@@ -1,12 +1,17 @@
 package Drbd;
 
 our $DRBD_INFO_INTERVAL;
+our $DRBD_CONFIG_DEBOUNCE;
+our $DRBD_CONFIG_MAX_DELAY;
 our $PROC_DRBD;
 our $DRBD_PROXY_GET_PLUGINS;
 our $DRBD_PROXY_SHOW;
 
 sub init {
     $DRBD_INFO_INTERVAL = 10;
+    # the config is dumped, when the events are quiet for a while
+    $DRBD_CONFIG_DEBOUNCE = 0.2;
+    $DRBD_CONFIG_MAX_DELAY = 1;
     $PROC_DRBD = "/proc/drbd";
     $DRBD_PROXY_GET_PLUGINS = "drbd-proxy-ctl -c 'show avail-plugins'";
     $DRBD_PROXY_SHOW = "drbd-proxy-ctl -c show";
@@ -36,37 +41,106 @@ sub do_drbd_events {
     }
     my ($v1, $v2) = Host_software::get_drbd_version();
     my $command;
+    my $events2 = 0;
     if ($v1 < 7 || ($v1 == 8 && $v2 < 4)) { # < 8.4.0
         $command = "/sbin/drbdsetup /dev/drbd0 events -a -u";
     }
-    else {
+    elsif ($v1 < 9) {
         $command = "/sbin/drbdsetup all events";
     }
-    my $prev_drbd_info = 0;
+    else {
+        $command = "/sbin/drbdsetup events2 --timestamps --statistics all";
+        $events2 = 1;
+    }
     if (!open EVENTS, "$command|") {
         Log::print_warning("can't execute $command\n");
         return;
     }
-    else {
-        while (<EVENTS>) {
-            if ($_ && $_ !~ /\d+\s+(ZZ|\?\?)/) {
-                my $drbd_info = get_drbd_dump_xml();
-                if ($drbd_info ne $prev_drbd_info) {
-                    print "--drbd-info-start--"
-                        . `date +%s%N`;
-                    print $drbd_info;
-                    print "--drbd-info-end--\n";
-                    $prev_drbd_info = $drbd_info;
-                }
-                print "--event-info-start--" . `date +%s%N`;
-                print "$_";
-                print "--event-info-end--\n";
+    my $prev_drbd_info = print_drbd_info_if_changed(0);
+    # the events after a config change wait for the new config
+    my $config_changed_at = 0;
+    my @pending_events;
+    # the events are read unbuffered, so that select sees, if there are
+    # more of them, that are not in the buffer yet
+    my $buffer = "";
+    while (1) {
+        my $complete_line = $buffer =~ /\n/;
+        if ($config_changed_at) {
+            my $timeout = $config_changed_at + $DRBD_CONFIG_MAX_DELAY
+                          - Time::HiRes::time();
+            $timeout = $DRBD_CONFIG_DEBOUNCE
+                if $timeout > $DRBD_CONFIG_DEBOUNCE;
+            my $quiet = 0;
+            if (!$complete_line && $timeout > 0) {
+                my $rin = "";
+                vec($rin, fileno(EVENTS), 1) = 1;
+                $quiet = !select($rin, undef, undef, $timeout);
+            }
+            if ($timeout <= 0 || $quiet) {
+                $prev_drbd_info = print_drbd_info_if_changed($prev_drbd_info);
+                print @pending_events;
+                @pending_events = ();
+                $config_changed_at = 0;
             }
         }
+        if (!$complete_line) {
+            my $read = sysread EVENTS, $buffer, 4096, length $buffer;
+            last if !$read;
+            next;
+        }
+        $buffer =~ s/^(.*\n)//;
+        my $line = $1;
+        my $config_change;
+        if ($events2) {
+            # 2016-03-14T12:34:56.789012+01:00 create device name:r0 ...
+            next if $line =~ /^\S*\s*exists -$/;
+            $config_change =
+                $line =~ /\b(?:create|destroy|rename)\s+(?:resource|connection|device|peer-device)\b/;
+        }
+        else {
+            next if !$line || $line =~ /\d+\s+(ZZ|\?\?)/;
+            # the sync progress is most of them
+            $config_change = $line !~ /^\d+\s+SP\s/;
+        }
+        if ($config_change && !$config_changed_at) {
+            $config_changed_at = Time::HiRes::time();
+        }
+        my $event = "--event-info-start--" . timestamp()
+                    . $line
+                    . "--event-info-end--\n";
+        if ($config_changed_at) {
+            push @pending_events, $event;
+        }
+        else {
+            print $event;
+        }
+    }
+    if (@pending_events) {
+        print_drbd_info_if_changed($prev_drbd_info);
+        print @pending_events;
     }
     close EVENTS;
 }
 
+# Prints the drbd config, if it's different than the previous one and
+# returns it.
+sub print_drbd_info_if_changed {
+    my $prev_drbd_info = shift;
+    my $drbd_info = get_drbd_dump_xml();
+    if ($drbd_info ne $prev_drbd_info) {
+        print "--drbd-info-start--" . timestamp();
+        print $drbd_info;
+        print "--drbd-info-end--\n";
+    }
+    return $drbd_info;
+}
+
+# Same as `date +%s%N`, without running it for every event.
+sub timestamp {
+    my ($seconds, $microseconds) = Time::HiRes::gettimeofday();
+    return sprintf "%d%06d000\n", $seconds, $microseconds;
+}
+
 sub get_drbd_info {
     print "--drbd-info-start--" . `date +%s%N`;
     print get_drbd_dump_xml();
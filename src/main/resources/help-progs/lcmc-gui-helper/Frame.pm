@@ -0,0 +1,77 @@
+package Frame;
+
+# Bulk output, like the cib or the vm and resource agent xml, can be sent
+# compressed with gzip and encoded with base64, so that the pty doesn't
+# change it. The encoded length is in the header.
+# "--gzip-frame-- <raw length> <encoded length>\n<encoded data>\n"
+our $FRAME_HEADER;
+our $FEATURE;
+our $ENABLED;
+# How much output print_framed collects, before flush sends it.
+our $FLUSH_SIZE;
+our $FRAMED_OUT;
+our $FRAMED_FH;
+our $FRAMED_STDOUT;
+
+sub init {
+    my $want = shift;
+    $FRAME_HEADER = "--gzip-frame--";
+    $FEATURE = "gzip-frames";
+    $FLUSH_SIZE = 65536;
+    $ENABLED = $want && available();
+}
+
+sub available {
+    return eval { require IO::Compress::Gzip; require MIME::Base64; 1 } ? 1 : 0;
+}
+
+# Returns features, that the gui can ask for.
+sub get_features {
+    return available() ? "$FEATURE\n" : "";
+}
+
+sub frame {
+    my $out = shift;
+    return $out if !$ENABLED || $out eq "";
+    my $gzipped;
+    # no timestamp in the header, the same output gives the same frame
+    if (!IO::Compress::Gzip::gzip(\$out => \$gzipped, Minimal => 1)) {
+        return $out;
+    }
+    my $encoded = MIME::Base64::encode_base64($gzipped, "");
+    return "$FRAME_HEADER " . bytes::length($out) . " " . length($encoded)
+           . "\n$encoded\n";
+}
+
+# Runs the function and prints its output in a frame.
+sub print_framed {
+    my $function = shift;
+    if (!$ENABLED) {
+        $function->();
+        return;
+    }
+    my $out = "";
+    open my $out_fh, ">", \$out or die "$!";
+    my $stdout = select $out_fh;
+    local $FRAMED_OUT = \$out;
+    local $FRAMED_FH = $out_fh;
+    local $FRAMED_STDOUT = $stdout;
+    my $ok = eval { $function->(); 1 };
+    my $error = $@;
+    select $stdout;
+    close $out_fh;
+    print frame($out);
+    die $error if !$ok;
+}
+
+# Sends the output, that print_framed has collected so far, in its own
+# frame, if there is enough of it. It is called between the items of a long
+# output, so that the gui can parse them, while the rest is being made.
+sub flush {
+    return if !$FRAMED_OUT || length($$FRAMED_OUT) < $FLUSH_SIZE;
+    my $out_fh = select $FRAMED_STDOUT;
+    print frame($$FRAMED_OUT);
+    select $out_fh;
+    $$FRAMED_OUT = "";
+    seek $FRAMED_FH, 0, 0;
+}
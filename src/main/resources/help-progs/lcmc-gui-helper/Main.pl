@@ -26,8 +26,20 @@ $| = 1;
 use Fcntl qw(F_GETFL F_SETFL O_NONBLOCK);
 use POSIX qw(:errno_h); # EAGAIN
 use Digest::MD5;
+use Time::HiRes ();
 
 use Socket;
+use bytes ();
+
+# The served actions must not end the resident helper, exit dies inside of
+# them, so that serve_action can answer with the exit code.
+BEGIN {
+    *CORE::GLOBAL::exit = sub {
+        my $exit_code = shift // 0;
+        die { exit_code => $exit_code } if $Main::IN_SERVED_ACTION;
+        CORE::exit($exit_code);
+    };
+}
 
 $ENV{LANG} = "C";
 $ENV{LANGUAGE} = "C";
@@ -44,13 +56,36 @@ for (keys %ENV) {
     # options
     our $CMD_LOG_OP = "--cmd-log";
     our $LOG_TIME_OP = "--log-time";
+    our $GZIP_FRAMES_OP = "--gzip-frames";
     our $CMD_LOG_DEFAULT = 0;
     our $LOG_TIME_DEFAULT = 300;
 
     our $HW_INFO_INTERVAL = 10;
+    our $VM_INFO_RESYNC_CYCLES = 30;
+    # the hw info daemon sends only the sections, that changed
+    our %HW_INFO_SECTIONS = map { $_ => 1 } qw(net-info bridge-info
+                                               filesystems-info disk-space
+                                               crypto-info qemu-keymaps-info
+                                               cpu-map-model-info
+                                               cpu-map-vendor-info
+                                               mount-points-info
+                                               drbd-proxy-info gui-info
+                                               installation-info
+                                               gui-options-info version-info
+                                               vg-info disk-info);
 
     our $NO_LVM_CACHE = 0;
 
+    # serve mode
+    our $SERVE_READY = "--serve-ready--";
+    our $SERVE_RESPONSE = "--serve-response--";
+    our $IN_SERVED_ACTION = 0;
+    # only the queries, that don't change anything on the host, are
+    # served, so that the client can run them again, if the response
+    # doesn't come in time
+    our %SERVED = map { $_ => 1 } qw(hw-info hw-info-lvm get-vm-info
+                                    get-drbd-xml get-drbd-info);
+
     start(\@ARGV);
 
     sub start {
@@ -59,6 +94,7 @@ for (keys %ENV) {
         my $do_log = $$helper_options{$CMD_LOG_OP} || $CMD_LOG_DEFAULT;
         my $log_time = $$helper_options{$LOG_TIME_OP} || $LOG_TIME_DEFAULT;
         Log::init($do_log, $log_time);
+        Frame::init($$helper_options{$GZIP_FRAMES_OP});
         Disk::init();
         Drbd::init();
         Drbd_proxy::init();
@@ -66,6 +102,17 @@ for (keys %ENV) {
         VM::init();
         Cluster::init();
         my $action = shift @$action_options || die;
+        if ($action eq "serve") {
+            serve();
+        }
+        else {
+            run_action($action, $action_options);
+        }
+    }
+
+    sub run_action {
+        my $action = shift // die;
+        my $action_options = shift // die;
         if ($action eq "all") {
             Disk::clear_lvm_cache();
             my $drbd_devs = Drbd::get_drbd_devs();
@@ -158,7 +205,9 @@ for (keys %ENV) {
             Drbd::get_drbd_events();
         }
         elsif ($action eq "get-resource-agents") {
-            Cluster::get_resource_agents(@$action_options);
+            Frame::print_framed(sub {
+                Cluster::get_resource_agents(@$action_options);
+            });
         }
         elsif ($action eq "get-old-style-resources") {
             Cluster::get_old_style_resources(@$action_options);
@@ -182,6 +231,9 @@ for (keys %ENV) {
                 exit 1;
             }
         }
+        elsif ($action eq "get-cluster-info") {
+            Cluster::get_cluster_full_info();
+        }
         elsif ($action eq "get-cluster-metadata") {
             Cluster::get_cluster_metadata();
         }
@@ -189,7 +241,10 @@ for (keys %ENV) {
             print Host_software::get_cluster_versions();
         }
         elsif ($action eq "get-vm-info") {
-            print VM::get_vm_info();
+            print Frame::frame(VM::get_vm_info());
+        }
+        elsif ($action eq "features") {
+            print Frame::get_features();
         }
         elsif ($action eq "gui-test") {
             Gui_Test::gui_pcmk_config_test(@$action_options);
@@ -218,11 +273,74 @@ for (keys %ENV) {
         }
     }
 
+    # Resident mode, the perl modules are compiled only once and the
+    # actions are requested over stdin.
+    # request:  "<id> <length>\n<action and action options>"
+    # response: "--serve-response-- <id> <exit code> <length>\n<output>"
+    # The requests are served one at a time, in the order they came. A slow
+    # action delays all the requests after it and it runs to the end, even
+    # if the client stopped waiting for it.
+    sub serve {
+        # the requests must not be echoed and the lengths must stay exact
+        if (-t STDIN) {
+            system("stty raw -echo 2>/dev/null");
+        }
+        open STDERR, ">", "/dev/null";
+        print "$SERVE_READY\n";
+        while (defined(my $header = <STDIN>)) {
+            $header =~ s/\r?\n$//;
+            next if $header !~ /^(\d+) (\d+)$/;
+            my ($id, $length) = ($1, $2);
+            my $request = "";
+            while (length($request) < $length) {
+                my $read = read(STDIN, $request, $length - length($request),
+                                length($request));
+                return if !$read;
+            }
+            my ($action, @action_options) = split ' ', $request;
+            my ($exit_code, $out) = serve_action($action, \@action_options);
+            # the same line endings, that the pty would make
+            $out =~ s/\r?\n/\r\n/g;
+            print "$SERVE_RESPONSE $id $exit_code " . bytes::length($out) . "\n";
+            print $out;
+        }
+    }
+
+    sub serve_action {
+        my $action = shift;
+        my $action_options = shift // die;
+        if (!defined $action || !$SERVED{$action}) {
+            return (1, "cannot serve: " . ($action // "") . "\n");
+        }
+        my $out = "";
+        open my $out_fh, ">", \$out or return (1, "$!\n");
+        my $stdout = select $out_fh;
+        my $ok = eval {
+            local $IN_SERVED_ACTION = 1;
+            run_action($action, $action_options);
+            1;
+        };
+        my $error = $@;
+        select $stdout;
+        close $out_fh;
+        if (!$ok && ref $error eq "HASH" && exists $$error{exit_code}) {
+            my $exit_code = $$error{exit_code};
+            # _exec_or_die exits with the whole $?
+            $exit_code >>= 8 if $exit_code > 255;
+            return ($exit_code, $out);
+        }
+        if (!$ok) {
+            return (1, $out . $error);
+        }
+        return (0, $out);
+    }
+
     # periodic stuff
     sub start_hw_info_daemon {
-        my $prev_hw_info = 0;
-        my $prev_hw_info_lazy = 0;
+        my %hw_info_digests;
         my $prev_vm_info = 0;
+        my $vm_events = 0;
+        my $vm_count = 0;
         my $prev_drbd_info = 0;
         my $count = 0;
         my $use_lvm_cache = 0;
@@ -233,41 +351,66 @@ for (keys %ENV) {
                 Disk::useLvmCache();
             }
             my $drbd_devs = Drbd::get_drbd_devs();
+            my $hw_info;
             if ($count % 5 == 0) {
-                my $hw_info = get_hw_info();
-                $hw_info .= "vg-info\n";
-                $hw_info .= Disk::get_vg_info($use_lvm_cache);
-                $hw_info .= "disk-info\n";
-                $hw_info .= Disk::get_disk_info($use_lvm_cache, $drbd_devs);
-                if ($hw_info ne $prev_hw_info) {
-                    print "--hw-info-start--" . `date +%s%N`;
-                    print $hw_info;
-                    $prev_hw_info = $hw_info;
-                    print "--hw-info-end--\n";
-                }
+                $hw_info = get_hw_info();
                 $count = 0;
             }
             else {
-                my $hw_info_lazy = get_hw_info_lazy();
-                $hw_info_lazy .= "vg-info\n";
-                $hw_info_lazy .= Disk::get_vg_info($use_lvm_cache);
-                $hw_info_lazy .= "disk-info\n";
-                $hw_info_lazy .= Disk::get_disk_info($use_lvm_cache, $drbd_devs);
-                if ($hw_info_lazy ne $prev_hw_info_lazy) {
-                    print "--hw-info-start--" . `date +%s%N`;
-                    print $hw_info_lazy;
-                    print "--hw-info-end--\n";
-                    $prev_hw_info_lazy = $hw_info_lazy;
-                }
+                $hw_info = get_hw_info_lazy();
+            }
+            $hw_info .= "vg-info\n";
+            $hw_info .= Disk::get_vg_info($use_lvm_cache);
+            $hw_info .= "disk-info\n";
+            $hw_info .= Disk::get_disk_info($use_lvm_cache, $drbd_devs);
+            my $hw_info_delta = get_changed_sections($hw_info,
+                                                     \%hw_info_digests);
+            if ($hw_info_delta) {
+                print "--hw-info-start--" . `date +%s%N`;
+                print $hw_info_delta;
+                print "--hw-info-end--\n";
             }
             $use_lvm_cache = 1;
-            my $vm_info = VM::get_vm_info();
-            if ($vm_info ne $prev_vm_info) {
-                print "--vm-info-start--" . `date +%s%N`;
-                print $vm_info;
-                print "--vm-info-end--\n";
-                $prev_vm_info = $vm_info;
+            # with the libvirt events only the changed domains are dumped,
+            # all of them only every $VM_INFO_RESYNC_CYCLES
+            my $vm_full = !$vm_events
+                          || $vm_count % $VM_INFO_RESYNC_CYCLES == 0;
+            if (!$vm_full) {
+                my ($changed_domains, $ok) = VM::get_changed_domains();
+                if ($ok) {
+                    my @domains = VM::get_changed_domains_info($changed_domains);
+                    if (@domains) {
+                        my $timestamp = `date +%s%N`;
+                        for my $domain (@domains) {
+                            print "--vm-domain-info-start--" . $timestamp;
+                            print Frame::frame($domain);
+                            print "--vm-domain-info-end--\n";
+                        }
+                        $prev_vm_info = 0;
+                    }
+                }
+                else {
+                    $vm_full = 1;
+                }
+            }
+            if ($vm_full) {
+                # subscribe before the dump, so that the changes during it
+                # are not lost, they are sent in the next pass; the events
+                # from before it are in the dump
+                $vm_events = VM::start_domain_events();
+                if ($vm_events) {
+                    (undef, $vm_events) = VM::get_changed_domains();
+                }
+                my $vm_info = VM::get_vm_info();
+                if ($vm_info ne $prev_vm_info) {
+                    print "--vm-info-start--" . `date +%s%N`;
+                    print Frame::frame($vm_info);
+                    print "--vm-info-end--\n";
+                    $prev_vm_info = $vm_info;
+                }
+                $vm_count = 0;
             }
+            $vm_count++;
             my $drbd_info = Drbd::get_drbd_dump_xml();
             if ($drbd_info ne $prev_drbd_info) {
                 print "--drbd-info-start--" . `date +%s%N`;
@@ -280,6 +423,34 @@ for (keys %ENV) {
         }
     }
 
+    # Returns the sections of the hw info, whose digest changed since the
+    # last call. The digests of the sections are kept in the hash.
+    sub get_changed_sections {
+        my $hw_info = shift;
+        my $digests = shift // die;
+        my @sections;
+        for my $line (split /^/, $hw_info) {
+            my $name = $line;
+            chomp $name;
+            if ($HW_INFO_SECTIONS{$name}) {
+                push @sections, [$name, $line];
+            }
+            elsif (@sections) {
+                $sections[-1][1] .= $line;
+            }
+        }
+        my $out = "";
+        for my $section (@sections) {
+            my ($name, $text) = @$section;
+            my $digest = Digest::MD5::md5_hex($text);
+            if (!defined $$digests{$name} || $$digests{$name} ne $digest) {
+                $$digests{$name} = $digest;
+                $out .= $text;
+            }
+        }
+        return $out;
+    }
+
     sub get_hw_info {
         my $out = "net-info\n";
         $out .= Network::get_net_info();
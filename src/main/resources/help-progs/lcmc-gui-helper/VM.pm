@@ -4,6 +4,8 @@ our $VIRSH_COMMAND;
 our %DISABLE_VM_OPTIONS; # it'll be populated for options that give an error
 our $VIRSH_COMMAND_NO_RO;
 our @VM_OPTIONS;
+our %DOMAIN_EVENTS; # virsh event processes by the connection options
+our %NO_DOMAIN_EVENTS; # options, whose virsh event process exited
 
 sub init() {
     $VIRSH_COMMAND = "virsh -r";
@@ -81,14 +83,146 @@ sub get_vm_networks {
 }
 
 
-sub get_vm_info {
-    my $networks = get_vm_networks();
+sub get_autostart {
     my %autostart;
     for (Command::_exec("ls /etc/libvirt/qemu/autostart/*.xml 2>/dev/null; ls /etc/xen/auto/ 2>/dev/null")) {
         my ($name) = /([^\/]+).xml/;
         next if !$name;
         $autostart{$name}++;
     }
+    return \%autostart;
+}
+
+# Quotes the argument for the shell. The domain names come from the
+# virsh output and the libvirt events.
+sub shell_quote {
+    my $arg = shift;
+    $arg =~ s/'/'\\''/g;
+    return "'$arg'";
+}
+
+# Returns the <vm> element of one domain or an empty string, if the
+# domain doesn't exist.
+sub get_domain_info {
+    my $options = shift;
+    my $name = shift;
+    my $autostart = shift // die;
+    my $quoted_name = shell_quote($name);
+    my $info =
+        Command::_exec("$VIRSH_COMMAND $options dominfo $quoted_name 2>/dev/null|grep -v 'CPU time'")
+            || "";
+    return "" if !$info;
+    my $vncdisplay =
+        Command::_exec("$VIRSH_COMMAND $options vncdisplay $quoted_name 2>/dev/null") || "";
+    my $config =
+        Command::_exec("$VIRSH_COMMAND_NO_RO $options dumpxml --security-info $quoted_name 2>/dev/null") || "";
+    my $out = "<vm name=\"$name\"";
+    if ($$autostart{$name}) {
+        $out .= ' autostart="True"';
+    }
+    else {
+        $out .= ' autostart="False"';
+    }
+    if ($options) {
+        $out .= ' virsh-options="' . $options . '"';
+    }
+    $out .= ">\n";
+    $out .= "<info>\n";
+    $out .= $info;
+    $out .= "</info>\n";
+    $out .= "<vncdisplay>$vncdisplay</vncdisplay>\n";
+    if ($config) {
+        $out .= "<config>\n";
+        $out .= $config;
+        $out .= "</config>\n";
+    }
+    $out .= "</vm>\n";
+    return $out;
+}
+
+# Subscribes to the domain events of libvirt, one "virsh event" process
+# per connection option. Returns false, if it's not possible for some of
+# them, e.g. with old libvirt, then the domains must be polled.
+sub start_domain_events {
+    my $ok = 1;
+    for my $options (@VM_OPTIONS) {
+        next if $DISABLE_VM_OPTIONS{$options} || $DOMAIN_EVENTS{$options};
+        if ($NO_DOMAIN_EVENTS{$options}) {
+            $ok = 0;
+            next;
+        }
+        my $pid = open my $events_fh, "-|",
+                       "$VIRSH_COMMAND $options event --all --loop 2>/dev/null";
+        if (!$pid) {
+            $ok = 0;
+            next;
+        }
+        my $flags = fcntl $events_fh, Fcntl::F_GETFL(), 0;
+        fcntl $events_fh, Fcntl::F_SETFL(), $flags | Fcntl::O_NONBLOCK();
+        $DOMAIN_EVENTS{$options} = {fh => $events_fh, pid => $pid, buffer => ""};
+    }
+    return $ok;
+}
+
+# Returns the names of the domains with events since the last call, by
+# the connection options and false, if some of the event processes
+# exited. These options are polled from then on.
+sub get_changed_domains {
+    my %changed;
+    my $ok = 1;
+    for my $options (keys %DOMAIN_EVENTS) {
+        my $events = $DOMAIN_EVENTS{$options};
+        while (1) {
+            my $read = sysread $$events{fh}, $$events{buffer}, 4096,
+                               length $$events{buffer};
+            if (!defined $read) {
+                last if $! == POSIX::EAGAIN();
+            }
+            elsif ($read > 0) {
+                next;
+            }
+            # eof or error
+            close $$events{fh};
+            delete $DOMAIN_EVENTS{$options};
+            # the events are subscribed before the options, that give an
+            # error, are disabled by the first dump
+            last if $DISABLE_VM_OPTIONS{$options};
+            $NO_DOMAIN_EVENTS{$options}++;
+            $ok = 0;
+            last;
+        }
+        while ($$events{buffer} =~ s/^(.*)\n//) {
+            my $line = $1;
+            # event 'lifecycle' for domain vm1: Started Booted
+            if ($line =~ /^event\s+'[^']+'\s+for\s+domain\s+'?(.+?)'?:/) {
+                $changed{$options}{$1}++;
+            }
+        }
+    }
+    return (\%changed, $ok);
+}
+
+# Returns one <vm> element for every changed domain. The domains, that
+# don't exist anymore, have the removed attribute.
+sub get_changed_domains_info {
+    my $changed = shift // die;
+    my $autostart = get_autostart();
+    my @out;
+    for my $options (sort keys %$changed) {
+        for my $name (sort keys %{$$changed{$options}}) {
+            my $info = get_domain_info($options, $name, $autostart);
+            if (!$info) {
+                $info = "<vm name=\"$name\" removed=\"True\"/>\n";
+            }
+            push @out, $info;
+        }
+    }
+    return @out;
+}
+
+sub get_vm_info {
+    my $networks = get_vm_networks();
+    my $autostart = get_autostart();
     my $libvirt_version = "";
     if (Command::_exec("$VIRSH_COMMAND version 2>/dev/null") =~ /libvirt\s+([0-9\.]+)/) {
         $libvirt_version = $1;
@@ -115,48 +249,7 @@ sub get_vm_info {
             }
             my ($name) = /^\s*\S+\s+(\S+)/;
             next if !$name;
-            chomp;
-            my $info =
-                Command::_exec("$VIRSH_COMMAND $options dominfo $name 2>/dev/null|grep -v 'CPU time'")
-                    || "";
-            next if !$info;
-            my $vncdisplay =
-                Command::_exec("$VIRSH_COMMAND $options vncdisplay $name 2>/dev/null") || "";
-            my $config_in_etc;
-            #if (open CONFIG, $_) {
-            #	local $/;
-            #	$config_in_etc = <CONFIG>;
-            #	close CONFIG;
-            #}
-            my $config;
-            $config =
-                Command::_exec("$VIRSH_COMMAND_NO_RO $options dumpxml --security-info $name 2>/dev/null") || "";
-            $out .= "<vm name=\"$name\"";
-            if ($autostart{$name}) {
-                $out .= ' autostart="True"';
-            }
-            else {
-                $out .= ' autostart="False"';
-            }
-            if ($options) {
-                $out .= ' virsh-options="' . $options . '"';
-            }
-            $out .= ">\n";
-            $out .= "<info>\n";
-            $out .= $info;
-            $out .= "</info>\n";
-            $out .= "<vncdisplay>$vncdisplay</vncdisplay>\n";
-            if ($config) {
-                $out .= "<config>\n";
-                $out .= $config;
-                $out .= "</config>\n";
-            }
-            if ($config_in_etc) {
-                $out .= "<config-in-etc>\n";
-                $out .= "<![CDATA[$config_in_etc]]>";
-                $out .= "</config-in-etc>\n";
-            }
-            $out .= "</vm>\n";
+            $out .= get_domain_info($options, $name, $autostart);
         }
     }
     if ($networks) {
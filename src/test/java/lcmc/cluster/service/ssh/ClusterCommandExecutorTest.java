@@ -0,0 +1,131 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.host.domain.Host;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClusterCommandExecutorTest {
+    private static final long DEADLINE = 200;
+
+    @Spy
+    private ExecutionService executionService = new ExecutionService();
+    @InjectMocks
+    private ClusterCommandExecutor clusterCommandExecutor;
+    @Mock
+    private Host host1;
+    @Mock
+    private Host host2;
+    private List<Host> hosts;
+
+    @Before
+    public void setUp() {
+        when(host1.getName()).thenReturn("host1");
+        when(host2.getName()).thenReturn("host2");
+        hosts = Arrays.asList(host1, host2);
+    }
+
+    @Test
+    public void failureOnOneHostShouldBeReported() {
+        final ClusterCommandResult<String> result = clusterCommandExecutor.runOnHosts(
+                hosts,
+                new ClusterCommandExecutor.HostTask<String>() {
+                    @Override
+                    public String run(final Host host) {
+                        if (host == host2) {
+                            throw new IllegalStateException("failed");
+                        }
+                        return host.getName();
+                    }
+                },
+                ClusterCommandExecutor.NO_DEADLINE);
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getResult(host1)).isEqualTo("host1");
+        assertThat(result.getFailedHosts()).containsOnly(host2);
+        assertThat(result.getFailureSummary()).isEqualTo("host2: failed\n");
+    }
+
+    @Test
+    public void hostsShouldRunAtTheSameTime() {
+        final CountDownLatch allStarted = new CountDownLatch(hosts.size());
+        final ClusterCommandResult<Boolean> result = clusterCommandExecutor.runOnHosts(
+                hosts,
+                new ClusterCommandExecutor.HostTask<Boolean>() {
+                    @Override
+                    public Boolean run(final Host host) {
+                        allStarted.countDown();
+                        try {
+                            return allStarted.await(DEADLINE * 10, TimeUnit.MILLISECONDS);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return false;
+                        }
+                    }
+                },
+                ClusterCommandExecutor.NO_DEADLINE);
+
+        assertThat(result.getResult(host1)).isTrue();
+        assertThat(result.getResult(host2)).isTrue();
+    }
+
+    @Test
+    public void hostOverDeadlineShouldFail() {
+        final CountDownLatch never = new CountDownLatch(1);
+        final ClusterCommandResult<Void> result = clusterCommandExecutor.runOnHosts(
+                hosts,
+                new ClusterCommandExecutor.HostTask<Void>() {
+                    @Override
+                    public Void run(final Host host) {
+                        if (host == host2) {
+                            try {
+                                never.await();
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return null;
+                    }
+                },
+                DEADLINE);
+        never.countDown();
+
+        assertThat(result.getFailedHosts()).containsOnly(host2);
+        assertThat(result.getResults()).containsKey(host1);
+    }
+}
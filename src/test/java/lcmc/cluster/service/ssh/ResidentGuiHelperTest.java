@@ -0,0 +1,253 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2026, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.trilead.ssh2.Session;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResidentGuiHelperTest {
+    private static final int NO_TIMEOUT = 0;
+
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+    @Mock
+    private ConnectionThread connectionThread;
+    @Mock
+    private Session session;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    /** What the helper reads from its stdin. */
+    private InputStream requests;
+    /** What the helper writes to its stdout. */
+    private OutputStream responses;
+    private ResidentGuiHelper residentGuiHelper;
+
+    @Before
+    public void setUp() throws IOException {
+        final Pipe stdin = Pipe.open();
+        final Pipe stdout = Pipe.open();
+        requests = Channels.newInputStream(stdin.source());
+        responses = Channels.newOutputStream(stdout.sink());
+        when(session.getStdin()).thenReturn(Channels.newOutputStream(stdin.sink()));
+        when(session.getStdout()).thenReturn(Channels.newInputStream(stdout.source()));
+        when(host.getName()).thenReturn("host1");
+        when(host.getHostParser()).thenReturn(hostParser);
+        when(host.getSudoPassword()).thenReturn("secret");
+        when(connectionThread.getSessionPool()).thenReturn(
+                new SessionPool("host1", new SessionPool.SessionOpener() {
+                    @Override
+                    public Session open() {
+                        return session;
+                    }
+                }, executor, 1, 0));
+        residentGuiHelper = new ResidentGuiHelper(host, connectionThread, executor);
+    }
+
+    @After
+    public void tearDown() {
+        residentGuiHelper.stop();
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void requestShouldBeFramedWithItsIdAndLength() throws Exception {
+        startHelper();
+
+        final Future<SshOutput> output = callInBackground("get-vm-info domain-\u00fc");
+
+        assertThat(readRequest()).isEqualTo("1 21\nget-vm-info domain-\u00fc");
+        respond(1, 0, "<vms>\r\n\u00fc\r\n</vms>\r\n");
+        assertThat(output.get().getOutput()).isEqualTo("<vms>\r\n\u00fc\r\n</vms>\r\n");
+        assertThat(output.get().getExitCode()).isEqualTo(0);
+    }
+
+    @Test(timeout = 10000)
+    public void exitCodeOfTheActionShouldBeReturned() throws Exception {
+        startHelper();
+
+        final Future<SshOutput> output = callInBackground("get-drbd-xml");
+        readRequest();
+        respond(1, 3, "drbdadm: not found\r\n");
+
+        assertThat(output.get().getExitCode()).isEqualTo(3);
+        assertThat(output.get().getOutput()).isEqualTo("drbdadm: not found\r\n");
+    }
+
+    @Test(timeout = 10000)
+    public void responsesShouldBeMatchedByTheirIds() throws Exception {
+        startHelper();
+
+        final Future<SshOutput> first = callInBackground("hw-info");
+        readRequest();
+        final Future<SshOutput> second = callInBackground("get-drbd-info");
+        readRequest();
+        respond(2, 0, "drbd info");
+        respond(1, 0, "hw info");
+
+        assertThat(first.get().getOutput()).isEqualTo("hw info");
+        assertThat(second.get().getOutput()).isEqualTo("drbd info");
+    }
+
+    @Test(timeout = 10000)
+    public void sudoPromptShouldBeAnsweredWithThePassword() throws Exception {
+        write(Ssh.SUDO_PROMPT);
+
+        startHelper();
+
+        assertThat(readLine()).isEqualTo("secret");
+    }
+
+    @Test(timeout = 10000)
+    public void timeoutShouldStopTheHelper() throws Exception {
+        startHelper();
+
+        try {
+            residentGuiHelper.call("hw-info", 100);
+            fail("the call should time out");
+        } catch (final IOException e) {
+            assertThat(e.getMessage()).isEqualTo("call: timeout: hw-info");
+        }
+
+        assertThat(residentGuiHelper.isRunning()).isFalse();
+        verify(session).close();
+    }
+
+    @Test(timeout = 10000)
+    public void waitingCallShouldFailWhenTheHelperExits() throws Exception {
+        startHelper();
+        final Future<SshOutput> output = callInBackground("hw-info");
+        readRequest();
+
+        responses.close();
+
+        try {
+            output.get();
+            fail("the call should fail");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class);
+        }
+        assertThat(residentGuiHelper.isRunning()).isFalse();
+    }
+
+    @Test(timeout = 10000)
+    public void stoppedHelperShouldNotBeCalled() throws Exception {
+        startHelper();
+        residentGuiHelper.stop();
+
+        try {
+            residentGuiHelper.call("hw-info", NO_TIMEOUT);
+            fail("the call should fail");
+        } catch (final IOException e) {
+            assertThat(e.getMessage()).contains("not running");
+        }
+    }
+
+    @Test
+    public void onlyQueriesShouldBeServed() {
+        assertThat(ResidentGuiHelper.isServed("hw-info")).isTrue();
+        assertThat(ResidentGuiHelper.isServed("get-vm-info -d domain1")).isTrue();
+        assertThat(ResidentGuiHelper.isServed("hw-info-daemon")).isFalse();
+        assertThat(ResidentGuiHelper.isServed("get-drbd-events")).isFalse();
+        assertThat(ResidentGuiHelper.isServed("installation-info")).isFalse();
+    }
+
+    private void startHelper() throws IOException {
+        write(ResidentGuiHelper.SERVE_READY + '\n');
+        assertThat(residentGuiHelper.start()).isTrue();
+    }
+
+    private Future<SshOutput> callInBackground(final String action) {
+        return executor.submit(new Callable<SshOutput>() {
+            @Override
+            public SshOutput call() throws IOException {
+                return residentGuiHelper.call(action, NO_TIMEOUT);
+            }
+        });
+    }
+
+    /** Returns the header and the action of the next request. */
+    private String readRequest() throws IOException {
+        final String header = readLine();
+        final int length = Integer.parseInt(header.split(" ")[1]);
+        final byte[] action = new byte[length];
+        int read = 0;
+        while (read < length) {
+            final int n = requests.read(action, read, length - read);
+            if (n < 0) {
+                throw new IOException("request too short");
+            }
+            read += n;
+        }
+        return header + '\n' + new String(action, StandardCharsets.UTF_8);
+    }
+
+    private String readLine() throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = requests.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("line not finished");
+            }
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void respond(final int requestId, final int exitCode, final String output) throws IOException {
+        final byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        write(ResidentGuiHelper.SERVE_RESPONSE + ' ' + requestId + ' ' + exitCode + ' ' + bytes.length + '\n');
+        responses.write(bytes);
+        responses.flush();
+    }
+
+    private void write(final String text) throws IOException {
+        responses.write(text.getBytes(StandardCharsets.UTF_8));
+        responses.flush();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import com.trilead.ssh2.Session;
+import org.junit.Test;
+
+public class SessionPoolTest {
+    private static final int NO_WAIT = 0;
+
+    private final Executor sameThreadExecutor = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    private final SessionPool.SessionOpener opener = new SessionPool.SessionOpener() {
+        @Override
+        public Session open() throws IOException {
+            return mock(Session.class);
+        }
+    };
+
+    @Test
+    public void firstSessionShouldBeMiss() throws IOException {
+        final SessionPool pool = new SessionPool("host", opener, sameThreadExecutor, 2, NO_WAIT);
+
+        pool.acquire();
+
+        assertThat(pool.getMisses()).isEqualTo(1);
+        assertThat(pool.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void sessionsOverLimitShouldBeCounted() throws IOException {
+        final SessionPool pool = new SessionPool("host", opener, sameThreadExecutor, 1, NO_WAIT);
+
+        pool.acquire();
+        pool.acquire();
+
+        assertThat(pool.getOvercommitted()).isEqualTo(1);
+    }
+
+    @Test
+    public void sessionShouldBeClosedOnlyOnce() throws IOException {
+        final SessionPool pool = new SessionPool("host", opener, sameThreadExecutor, 2, NO_WAIT);
+        final SessionPool.PooledSession pooledSession = pool.acquire();
+
+        pooledSession.close();
+        pooledSession.close();
+
+        verify(pooledSession.getSession(), times(1)).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void closedPoolShouldNotGiveSessions() throws IOException {
+        final SessionPool pool = new SessionPool("host", opener, sameThreadExecutor, 2, NO_WAIT);
+        pool.close();
+
+        pool.acquire();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import lcmc.common.domain.util.ExecutionService;
+
+public class SshKeepaliveTest {
+    private static final int MAX_MISSED_BEATS = 3;
+    private static final long WAIT_SECONDS = 5;
+
+    private final ExecutionService executionService = new ExecutionService();
+    private final CountDownLatch lost = new CountDownLatch(1);
+    private final CountDownLatch noAnswer = new CountDownLatch(1);
+    private final CountDownLatch rttChanged = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        noAnswer.countDown();
+    }
+
+    private SshKeepalive keepalive(final SshKeepalive.Beat beat) {
+        return new SshKeepalive("host", beat, executionService, 1000, MAX_MISSED_BEATS, new Runnable() {
+            @Override
+            public void run() {
+                lost.countDown();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                rttChanged.countDown();
+            }
+        });
+    }
+
+    @Test
+    public void answeredBeatShouldSetRtt() throws InterruptedException {
+        final CountDownLatch answered = new CountDownLatch(1);
+        final SshKeepalive keepalive = keepalive(new SshKeepalive.Beat() {
+            @Override
+            public void send() {
+                answered.countDown();
+            }
+        });
+
+        keepalive.check();
+
+        assertThat(answered.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(rttChanged.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(keepalive.getRttMillis()).isNotEqualTo(SshKeepalive.NO_RTT);
+        assertThat(keepalive.getMissedBeats()).isEqualTo(0);
+        assertThat(lost.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void answeredBeatShouldReportTheNewRtt() throws InterruptedException {
+        final SshKeepalive keepalive = keepalive(new SshKeepalive.Beat() {
+            @Override
+            public void send() {
+            }
+        });
+
+        keepalive.check();
+
+        assertThat(rttChanged.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(keepalive.getRttMillis()).isNotEqualTo(SshKeepalive.NO_RTT);
+    }
+
+    @Test
+    public void connectionShouldBeLostAfterMissedBeats() throws InterruptedException {
+        final SshKeepalive keepalive = keepalive(new SshKeepalive.Beat() {
+            @Override
+            public void send() throws IOException {
+                try {
+                    noAnswer.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        keepalive.check();
+        for (int i = 1; i < MAX_MISSED_BEATS; i++) {
+            keepalive.check();
+            assertThat(keepalive.getMissedBeats()).isEqualTo(i);
+            assertThat(lost.getCount()).isEqualTo(1);
+        }
+        keepalive.check();
+
+        assertThat(lost.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void failedBeatShouldLoseConnection() throws InterruptedException {
+        final SshKeepalive keepalive = keepalive(new SshKeepalive.Beat() {
+            @Override
+            public void send() throws IOException {
+                throw new IOException("closed");
+            }
+        });
+
+        keepalive.check();
+
+        assertThat(lost.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(keepalive.getRttMillis()).isEqualTo(SshKeepalive.NO_RTT);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import lcmc.testutils.Benchmark;
+
+/**
+ * Compares the old way of reading the command output, a new string per
+ * chunk, with the SshOutputReader. The output is a long xml, that arrives
+ * in ssh packet sized chunks and is passed to a consumer, that keeps it,
+ * like the status parsers do.
+ */
+public final class SshOutputReaderBenchmark {
+    private static final int OUTPUT_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 32 * 1024;
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int ROUNDS = 50;
+
+    private SshOutputReaderBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final byte[] output = createOutput();
+        final StringBuilder consumer = new StringBuilder(OUTPUT_SIZE * 2);
+
+        new Benchmark("new String per chunk", output.length, ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() throws IOException {
+                consumer.setLength(0);
+                final InputStream in = new ChunkedInputStream(output);
+                final byte[] buff = new byte[READ_BUFFER_SIZE];
+                while (in.available() > 0) {
+                    final StringBuilder chunk = new StringBuilder();
+                    while (in.available() > 0) {
+                        final int len = in.read(buff);
+                        chunk.append(new String(buff, 0, len, "UTF-8"));
+                    }
+                    if (chunk.indexOf(Ssh.SUDO_PROMPT) < 0) {
+                        consumer.append(chunk.toString());
+                    }
+                }
+            }
+        });
+
+        new Benchmark("SshOutputReader", output.length, ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() throws IOException {
+                consumer.setLength(0);
+                final InputStream in = new ChunkedInputStream(output);
+                final SshOutputReader reader = new SshOutputReader(in,
+                                                                   StandardCharsets.UTF_8,
+                                                                   READ_BUFFER_SIZE,
+                                                                   new BooleanSupplier() {
+                                                                       @Override
+                                                                       public boolean getAsBoolean() {
+                                                                           return false;
+                                                                       }
+                                                                   });
+                while (in.available() > 0) {
+                    final CharBuffer chunk = reader.readAvailable();
+                    if (SshOutputReader.indexOf(chunk, Ssh.SUDO_PROMPT) < 0) {
+                        consumer.append(chunk);
+                    }
+                }
+            }
+        });
+    }
+
+    private static byte[] createOutput() {
+        final StringBuilder xml = new StringBuilder(OUTPUT_SIZE);
+        int i = 0;
+        while (xml.length() < OUTPUT_SIZE) {
+            xml.append("<nvpair id=\"status-").append(i).append("\" name=\"fail-count-r\u00e9sum\u00e9\" value=\"")
+               .append(i).append("\"/>\r\n");
+            i++;
+        }
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Makes the output available in chunks, like they come from the ssh channel. */
+    private static final class ChunkedInputStream extends ByteArrayInputStream {
+        ChunkedInputStream(final byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public synchronized int available() {
+            return Math.min(super.available(), CHUNK_SIZE - pos % CHUNK_SIZE);
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len) {
+            return super.read(b, off, Math.min(len, available()));
+        }
+    }
+}
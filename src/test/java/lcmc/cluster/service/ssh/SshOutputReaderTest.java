@@ -0,0 +1,119 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.service.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+public class SshOutputReaderTest {
+    private static final BooleanSupplier NOT_CANCELED = new BooleanSupplier() {
+        @Override
+        public boolean getAsBoolean() {
+            return false;
+        }
+    };
+
+    @Test
+    public void characterSplitBetweenReadsShouldBeDecoded() throws IOException {
+        final byte[] output = "a\u010db".getBytes(StandardCharsets.UTF_8);
+        final ChunkedInputStream in = new ChunkedInputStream(Arrays.copyOfRange(output, 0, 2),
+                                                             Arrays.copyOfRange(output, 2, output.length));
+        final SshOutputReader reader = new SshOutputReader(in, StandardCharsets.UTF_8, 16, NOT_CANCELED);
+
+        final String first = reader.readAvailable().toString();
+        in.nextChunk();
+        final String second = reader.readAvailable().toString();
+
+        assertThat(first).isEqualTo("a");
+        assertThat(second).isEqualTo("\u010db");
+    }
+
+    @Test
+    public void outputLongerThanBufferShouldBeReadInChunks() throws IOException {
+        final StringBuilder longOutput = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longOutput.append("line ").append(i).append("\r\n");
+        }
+        final SshOutputReader reader = new SshOutputReader(
+                new ByteArrayInputStream(longOutput.toString().getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8,
+                16,
+                NOT_CANCELED);
+
+        final StringBuilder output = new StringBuilder();
+        int chunks = 0;
+        while (true) {
+            final CharSequence chunk = reader.readAvailable();
+            if (chunk.length() == 0) {
+                break;
+            }
+            output.append(chunk);
+            chunks++;
+        }
+
+        assertThat(output.toString()).isEqualTo(longOutput.toString());
+        assertThat(chunks).isGreaterThan(1);
+    }
+
+    @Test
+    public void incompleteCharacterAtTheEndShouldBeReplaced() throws IOException {
+        final byte[] output = "a\u010d".getBytes(StandardCharsets.UTF_8);
+        final SshOutputReader reader = new SshOutputReader(
+                new ByteArrayInputStream(Arrays.copyOfRange(output, 0, 2)),
+                StandardCharsets.UTF_8,
+                16,
+                NOT_CANCELED);
+
+        assertThat(reader.readAvailable().toString()).isEqualTo("a");
+        assertThat(reader.finish().toString()).isEqualTo("\ufffd");
+    }
+
+    @Test
+    public void sudoPromptShouldBeFound() {
+        assertThat(SshOutputReader.indexOf("xx" + Ssh.SUDO_PROMPT, Ssh.SUDO_PROMPT)).isEqualTo(2);
+        assertThat(SshOutputReader.indexOf("xx", Ssh.SUDO_PROMPT)).isEqualTo(-1);
+    }
+
+    /** Stream that makes only one chunk available at a time. */
+    private static final class ChunkedInputStream extends ByteArrayInputStream {
+        private final byte[][] chunks;
+        private int chunk = 0;
+
+        ChunkedInputStream(final byte[]... chunks) {
+            super(chunks[0]);
+            this.chunks = chunks;
+        }
+
+        void nextChunk() {
+            chunk++;
+            buf = chunks[chunk];
+            pos = 0;
+            count = buf.length;
+        }
+    }
+}
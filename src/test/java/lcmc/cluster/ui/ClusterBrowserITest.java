@@ -19,9 +19,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
-
 @Category(IntegrationTest.class)
 public final class ClusterBrowserITest {
     private IntegrationTestLauncher integrationTestLauncher;
@@ -40,28 +37,6 @@ public final class ClusterBrowserITest {
 
     @Test
     public void testProcessClusterOutput() {
-        final CountDownLatch nolatch = new CountDownLatch(0);
-        for (final Host host : integrationTestLauncher.getHosts()) {
-            final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
-            assertNotNull("cb is null", cb);
-
-            StringBuffer buffer = new StringBuffer("cd");
-            cb.parseClusterOutput("a---reset---\r\nb", buffer, host, nolatch, Application.RunMode.LIVE);
-            assertEquals("cdab", buffer.toString());
-
-            buffer = new StringBuffer("");
-            cb.parseClusterOutput("a---reset---\r\nb", buffer, host, nolatch, Application.RunMode.LIVE);
-            assertEquals("ab", buffer.toString());
-
-            buffer = new StringBuffer("cd");
-            cb.parseClusterOutput("a---reset---\r\nb", buffer, host, nolatch, Application.RunMode.LIVE);
-            assertEquals("cdab", buffer.toString());
-
-            buffer = new StringBuffer("cd");
-            cb.parseClusterOutput("a---reset---\r\nb---reset---\r\nc", buffer, host, nolatch, Application.RunMode.LIVE);
-            assertEquals("cdabc", buffer.toString());
-        }
-
         final List<String> files = new ArrayList<String>();
         final String userHome = System.getProperty("user.home");
         files.add(userHome + "/testdir/empty.xml");
@@ -138,7 +113,7 @@ public final class ClusterBrowserITest {
             for (final Host host : integrationTestLauncher.getHosts()) {
                 final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
                 cb.setDisabledDuringLoad(true);
-                cb.parseClusterOutput(cib, new StringBuffer(""), host, firstTime, runMode);
+                cb.parseClusterOutput(cib, cb.createClusterStatusDecoder(host, firstTime, runMode), host, firstTime);
                 swingUtils.waitForSwing();
                 cb.setDisabledDuringLoad(false);
                 cb.getCrmGraph().repaint();
@@ -147,7 +122,10 @@ public final class ClusterBrowserITest {
             for (final Host host : integrationTestLauncher.getHosts()) {
                 final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
                 swingUtils.waitForSwing();
-                cb.parseClusterOutput(emptyCib, new StringBuffer(""), host, firstTime, runMode);
+                cb.parseClusterOutput(emptyCib,
+                                      cb.createClusterStatusDecoder(host, firstTime, runMode),
+                                      host,
+                                      firstTime);
                 swingUtils.waitForSwing();
             }
         }
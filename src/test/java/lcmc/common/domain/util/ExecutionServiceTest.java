@@ -0,0 +1,172 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package lcmc.common.domain.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ExecutionServiceTest {
+    private static final int MAX_THREADS = 2;
+    private static final int SCHEDULER_THREADS = 1;
+    private static final long WAIT_SECONDS = 10;
+
+    private final ExecutionService executionService = new ExecutionService(MAX_THREADS, SCHEDULER_THREADS, false);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test(timeout = 20000)
+    public void taskShouldRunInTheBackground() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executionService.execute(countDown(done));
+
+        assertThat(done.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(executionService.isVirtual()).isFalse();
+        assertThat(executionService.getSubmittedTasks()).isEqualTo(1);
+    }
+
+    @Test(timeout = 20000)
+    public void failedTaskShouldBeCompleted() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        executionService.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        executionService.execute(countDown(done));
+
+        assertThat(done.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        waitForCompleted(2);
+        assertThat(executionService.getRunningTasks()).isEqualTo(0);
+    }
+
+    @Test(timeout = 20000)
+    public void scheduledTaskShouldRunAfterTheDelay() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final long start = System.nanoTime();
+
+        executionService.schedule(countDown(done), 100);
+
+        assertThat(done.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100);
+    }
+
+    @Test(timeout = 20000)
+    public void cancelledTimeoutShouldNotRun() throws InterruptedException {
+        final CountDownLatch timedOut = new CountDownLatch(1);
+
+        final ScheduledFuture<?> timeout = executionService.schedule(countDown(timedOut), 200);
+        timeout.cancel(false);
+
+        assertThat(timedOut.await(500, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(executionService.getScheduledTasks()).isEqualTo(0);
+    }
+
+    @Test(timeout = 20000)
+    public void repeatedTaskShouldRunUntilItReturnsFalse() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        executionService.repeatWithFixedDelay(new BooleanSupplier() {
+            @Override
+            public boolean getAsBoolean() {
+                if (runs.incrementAndGet() < 3) {
+                    return true;
+                }
+                done.countDown();
+                return false;
+            }
+        }, 10);
+
+        assertThat(done.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        waitForCompleted(3);
+        assertThat(runs.get()).isEqualTo(3);
+        assertThat(executionService.getRepeatedTasks()).isEqualTo(0);
+    }
+
+    @Test(timeout = 20000)
+    public void tasksShouldWaitForAFreeThreadWhenThePoolIsSaturated() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(MAX_THREADS);
+        for (int i = 0; i < MAX_THREADS; i++) {
+            executionService.execute(blockUntilReleased(started));
+        }
+        assertThat(started.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        final CountDownLatch done = new CountDownLatch(MAX_THREADS);
+
+        for (int i = 0; i < MAX_THREADS; i++) {
+            executionService.execute(countDown(done));
+        }
+
+        assertThat(done.await(200, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(executionService.getPoolThreads()).isEqualTo(MAX_THREADS);
+        assertThat(executionService.getQueuedTasks()).isEqualTo(MAX_THREADS);
+        assertThat(executionService.getQueueLength()).isEqualTo(MAX_THREADS);
+        assertThat(executionService.getMaxQueueLength()).isEqualTo(MAX_THREADS);
+
+        release.countDown();
+
+        assertThat(done.await(WAIT_SECONDS, TimeUnit.SECONDS)).isTrue();
+        assertThat(executionService.getPoolThreads()).isEqualTo(MAX_THREADS);
+        assertThat(executionService.getQueueLength()).isEqualTo(0);
+    }
+
+    private void waitForCompleted(final long tasks) throws InterruptedException {
+        while (executionService.getCompletedTasks() < tasks) {
+            Thread.sleep(10);
+        }
+    }
+
+    private Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+    private Runnable blockUntilReleased(final CountDownLatch started) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
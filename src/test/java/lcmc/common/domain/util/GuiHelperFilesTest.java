@@ -1,12 +1,26 @@
 package lcmc.common.domain.util;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import lombok.val;
 
 public class GuiHelperFilesTest {
+    /** Served action, that prints its name and exits with the code from its option. */
+    private static final String EXITING_ACTION = "\n{\npackage Main;\nno warnings \"redefine\";\n"
+            + "sub run_action { my ($action, $options) = @_; print \"$action\\n\"; exit $$options[0]; }\n}\n";
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
     private final GuiHelperFiles guiHelperFiles = new GuiHelperFiles();
     @Test
     public void shouldInlinePerlModules() {
@@ -15,4 +29,37 @@ public class GuiHelperFilesTest {
         assertThat(guiHelper).contains("#!/usr/bin/perl");
         assertThat(guiHelper).contains("package Log");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void guiHelperShouldBeReadOnlyOnce() {
+        assertThat(guiHelperFiles.readGuiHelper()).isSameAs(guiHelperFiles.readGuiHelper());
+    }
+
+    @Test
+    public void hashShouldBeSha256InHex() {
+        assertThat(guiHelperFiles.getGuiHelperSha256()).matches("[0-9a-f]{64}");
+    }
+
+    @Test
+    public void servedActionShouldNotEndTheHelperWhenItExits() throws Exception {
+        assumeTrue(new File("/usr/bin/perl").canExecute());
+        final File helper = temporaryFolder.newFile("lcmc-gui-helper");
+        Files.write(helper.toPath(), (guiHelperFiles.readGuiHelper() + EXITING_ACTION).getBytes(StandardCharsets.UTF_8));
+
+        final String out = serve(helper, "1 8\nexit-3 3" + "2 8\nexit-0 0");
+
+        assertThat(out).isEqualTo("--serve-ready--\n"
+                                  + "--serve-response-- 1 3 8\nexit-3\r\n"
+                                  + "--serve-response-- 2 0 8\nexit-0\r\n");
+    }
+
+    private String serve(final File helper, final String requests) throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder("/usr/bin/perl", helper.getPath(), "serve").start();
+        try (final OutputStream in = process.getOutputStream()) {
+            in.write(requests.getBytes(StandardCharsets.UTF_8));
+        }
+        final String out = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        process.waitFor();
+        return out;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package lcmc.common.domain.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.junit.Test;
+
+public class StatusStalenessTest {
+    private static final long STALE_AFTER = 30000;
+
+    private long nanos = 0;
+    private final StatusStaleness staleness = new StatusStaleness("test", STALE_AFTER, new LongSupplier() {
+        @Override
+        public long getAsLong() {
+            return nanos;
+        }
+    });
+
+    @Test
+    public void regularOutputShouldNotBeStale() {
+        for (int i = 0; i < 10; i++) {
+            advance(10000);
+            staleness.outputReceived();
+        }
+
+        assertThat(staleness.isStale()).isFalse();
+        assertThat(staleness.getCurrentStaleMillis()).isEqualTo(0);
+        assertThat(staleness.getStaleCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void streamWithoutOutputShouldBeStale() {
+        advance(STALE_AFTER + 5000);
+
+        assertThat(staleness.isStale()).isTrue();
+        assertThat(staleness.getCurrentStaleMillis()).isEqualTo(STALE_AFTER + 5000);
+
+        staleness.outputReceived();
+
+        assertThat(staleness.isStale()).isFalse();
+        assertThat(staleness.getStaleCount()).isEqualTo(1);
+        assertThat(staleness.getLastStaleMillis()).isEqualTo(STALE_AFTER + 5000);
+    }
+
+    @Test
+    public void lostStreamShouldBeStaleSinceTheLastOutput() {
+        advance(2000);
+        staleness.outputReceived();
+        advance(3000);
+
+        staleness.statusLost("ended");
+        advance(4000);
+
+        assertThat(staleness.isStale()).isTrue();
+        assertThat(staleness.getCurrentStaleMillis()).isEqualTo(7000);
+    }
+
+    @Test
+    public void lostStreamShouldStayStaleUntilTheNextStatus() {
+        staleness.statusLost("ended");
+        advance(1000);
+
+        staleness.outputReceived();
+
+        assertThat(staleness.isStale()).isTrue();
+
+        advance(1000);
+        staleness.statusReceived();
+
+        assertThat(staleness.isStale()).isFalse();
+        assertThat(staleness.getStaleCount()).isEqualTo(1);
+        assertThat(staleness.getLastStaleMillis()).isEqualTo(2000);
+    }
+
+    @Test
+    public void longestStaleTimeShouldBeKept() {
+        staleness.statusLost("first");
+        advance(5000);
+        staleness.statusReceived();
+        staleness.statusLost("second");
+        advance(1000);
+        staleness.statusReceived();
+
+        assertThat(staleness.getStaleCount()).isEqualTo(2);
+        assertThat(staleness.getLastStaleMillis()).isEqualTo(1000);
+        assertThat(staleness.getMaxStaleMillis()).isEqualTo(5000);
+        assertThat(staleness.getSummary()).contains("stale 2 times", "total: 6000 ms");
+    }
+
+    private void advance(final long millis) {
+        nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package lcmc.common.ui.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lcmc.common.domain.util.ExecutionService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InvalidationDispatcherTest {
+    private static final String WHAT = "what";
+    @Mock
+    private SwingUtils swingUtils;
+    @Mock
+    private ExecutionService executionService;
+    @InjectMocks
+    private InvalidationDispatcher invalidationDispatcher;
+
+    private final List<Runnable> scheduledFrames = new ArrayList<Runnable>();
+    private final List<Runnable> backgroundBatches = new ArrayList<Runnable>();
+    private final List<String> ran = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(swingUtils).invokeLater(any(Runnable.class));
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                scheduledFrames.add((Runnable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(executionService).schedule(any(Runnable.class), anyLong());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                backgroundBatches.add((Runnable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(executionService).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void invalidationsShouldBeCoalescedInOneFrame() {
+        //given:
+        final Object component = new Object();
+        for (int i = 0; i < 5; i++) {
+            invalidationDispatcher.invalidate(component, WHAT, update("update " + i));
+        }
+
+        assertThat(scheduledFrames).hasSize(1);
+
+        //when:
+        runFrame(0);
+
+        //then:
+        assertThat(ran).containsExactly("update 4");
+        assertThat(invalidationDispatcher.getInvalidations()).isEqualTo(5);
+        assertThat(invalidationDispatcher.getUpdates()).isEqualTo(1);
+        assertThat(invalidationDispatcher.getFrames()).isEqualTo(1);
+    }
+
+    @Test
+    public void differentComponentsShouldBeUpdatedInTheSameFrame() {
+        //given:
+        invalidationDispatcher.invalidate(new Object(), WHAT, update("first"));
+        invalidationDispatcher.invalidate(new Object(), WHAT, update("second"));
+
+        //when:
+        runFrame(0);
+
+        //then:
+        assertThat(scheduledFrames).hasSize(1);
+        assertThat(ran).containsExactly("first", "second");
+    }
+
+    @Test
+    public void backgroundUpdatesOfConsecutiveFramesShouldNotOverlap() {
+        //given:
+        final Object graph = new Object();
+        invalidationDispatcher.invalidateInBackground(graph, WHAT, update("popup menus 1"));
+        runFrame(0);
+        assertThat(backgroundBatches).hasSize(1);
+
+        //when:
+        invalidationDispatcher.invalidateInBackground(graph, WHAT, update("popup menus 2"));
+        runFrame(1);
+
+        //then:
+        assertThat(backgroundBatches).hasSize(1);
+        assertThat(scheduledFrames).hasSize(2);
+
+        backgroundBatches.get(0).run();
+
+        assertThat(ran).containsExactly("popup menus 1");
+        assertThat(scheduledFrames).hasSize(3);
+
+        runFrame(2);
+        assertThat(backgroundBatches).hasSize(2);
+        backgroundBatches.get(1).run();
+
+        assertThat(ran).containsExactly("popup menus 1", "popup menus 2");
+        assertThat(scheduledFrames).hasSize(3);
+    }
+
+    @Test
+    public void frameShouldNotBeScheduledWhenNothingWaitsForTheBackground() {
+        //given:
+        invalidationDispatcher.invalidateInBackground(new Object(), WHAT, update("popup menus"));
+        runFrame(0);
+
+        //when:
+        backgroundBatches.get(0).run();
+
+        //then:
+        assertThat(ran).containsExactly("popup menus");
+        assertThat(scheduledFrames).hasSize(1);
+    }
+
+    private void runFrame(final int index) {
+        scheduledFrames.get(index).run();
+    }
+
+    private Runnable update(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import lcmc.common.domain.Application;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CibChangesTest {
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+    @Mock
+    private Application application;
+    @InjectMocks
+    private CrmXml crmXml;
+
+    @Before
+    public void setUp() {
+        when(host.getHostParser()).thenReturn(hostParser);
+    }
+
+    private CibChanges changes(final String newCib) {
+        return CibChanges.between(crmXml.parseCibQueryDom(CibStreamParserTest.CIB),
+                                  null,
+                                  crmXml.parseCibQueryDom(newCib),
+                                  null);
+    }
+
+    @Test
+    public void sameCibShouldHaveNoChanges() {
+        assertThat(changes(CibStreamParserTest.CIB).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void changedParameterShouldChangeOnlyItsResource() {
+        final CibChanges changes = changes(CibStreamParserTest.CIB.replace("10.0.0.1", "10.0.0.2"));
+
+        assertThat(changes.isAll()).isFalse();
+        assertThat(changes.isConstraintsChanged()).isFalse();
+        assertThat(changes.getChangedResources()).containsOnly("ip");
+    }
+
+    @Test
+    public void changedFailCountShouldChangeTheCloneToo() {
+        final CibChanges changes = changes(CibStreamParserTest.CIB.replace("fail-count-ping:0\" value=\"2",
+                                                                           "fail-count-ping:0\" value=\"3"));
+
+        assertThat(changes.getChangedResources()).contains("ping", "cl");
+    }
+
+    @Test
+    public void changedColocationShouldChangeItsResources() {
+        final CibChanges changes = changes(CibStreamParserTest.CIB.replace(
+                                   "with-rsc=\"ip\" score=\"INFINITY\"", "with-rsc=\"ip\" score=\"100\""));
+
+        assertThat(changes.isConstraintsChanged()).isTrue();
+        assertThat(changes.getChangedResources()).containsOnly("grp", "ip");
+    }
+
+    @Test
+    public void newResourceShouldChangeAll() {
+        final CibChanges changes = changes(CibStreamParserTest.CIB.replace(
+             "</resources>",
+             "<primitive id=\"new\" class=\"ocf\" provider=\"heartbeat\" type=\"IPaddr2\"/></resources>"));
+
+        assertThat(changes.isAll()).isTrue();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CibDeltaApplierTest {
+    private static final String FULL = "<cib_delta full=\"true\" version=\"0:5:12\">"
+                                       + "<section id=\"cib\"><cib epoch=\"5\" num_updates=\"12\"/></section>"
+                                       + "</cib_delta>";
+    @Mock
+    private CrmXml crmXml;
+
+    private static String delta(final String base, final String version) {
+        return "<cib_delta full=\"false\" base=\"" + base + "\" version=\"" + version + "\">"
+               + "<section id=\"node_state:1\"><node_state id=\"1\" uname=\"host1\"/></section>"
+               + "</cib_delta>";
+    }
+
+    @Test
+    public void deltaWithoutFullCibShouldBeGap() {
+        final CibDeltaApplier applier = new CibDeltaApplier(crmXml);
+
+        assertThat(applier.apply(delta("0:5:12", "0:5:13"))).isEqualTo(CibDeltaApplier.Result.GAP);
+    }
+
+    @Test
+    public void deltaShouldBeAppliedOnItsBase() {
+        final CibDeltaApplier applier = new CibDeltaApplier(crmXml);
+
+        assertThat(applier.apply(FULL)).isEqualTo(CibDeltaApplier.Result.CHANGED);
+        assertThat(applier.apply(delta("0:5:12", "0:5:13"))).isEqualTo(CibDeltaApplier.Result.CHANGED);
+        assertThat(applier.apply(delta("0:5:12", "0:5:12"))).isEqualTo(CibDeltaApplier.Result.UNCHANGED);
+    }
+
+    @Test
+    public void missingDeltaShouldBeGap() {
+        final CibDeltaApplier applier = new CibDeltaApplier(crmXml);
+
+        applier.apply(FULL);
+
+        assertThat(applier.apply(delta("0:6:1", "0:6:2"))).isEqualTo(CibDeltaApplier.Result.GAP);
+    }
+
+    @Test
+    public void cibXmlShouldHaveTheFencedNodesInThePcmkDocument() {
+        final CibDeltaApplier applier = new CibDeltaApplier(crmXml);
+
+        applier.apply("<cib_delta full=\"true\" version=\"0:5:12\">"
+                      + "<section id=\"cib\"><cib epoch=\"5\" num_updates=\"12\"/></section>"
+                      + "<section id=\"fenced\"><fenced><node>host2</node></fenced></section>"
+                      + "<section id=\"node_state:1\"><node_state id=\"1\" uname=\"host1\"/></section>"
+                      + "</cib_delta>");
+
+        assertThat(applier.getCibXml()).isEqualTo("<pcmk><fenced><node>host2</node></fenced>"
+                                                  + "<cib epoch=\"5\" num_updates=\"12\"><configuration/>"
+                                                  + "<status><node_state id=\"1\" uname=\"host1\"/></status>"
+                                                  + "</cib></pcmk>");
+    }
+
+    @Test
+    public void versionsShouldBeComparedByParts() {
+        assertThat(CibDeltaApplier.CibVersion.parse("0:10:1").compareTo(CibDeltaApplier.CibVersion.parse("0:9:20")))
+                .isGreaterThan(0);
+        assertThat(CibDeltaApplier.CibVersion.parse("1:0:0").compareTo(CibDeltaApplier.CibVersion.parse("0:99:99")))
+                .isGreaterThan(0);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import static org.mockito.Mockito.when;
+
+import lcmc.common.domain.Application;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import lcmc.testutils.Benchmark;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Compares the DOM and the stream parser of the cib on a synthetic cib of
+ * a big cluster, with the operation history of every resource on every
+ * node, as the cib of a long running cluster has it.
+ */
+public final class CibParserBenchmark {
+    private static final int NODES = 16;
+    private static final int RESOURCES = 300;
+    private static final int OPERATIONS_PER_RESOURCE = 6;
+    private static final int ROUNDS = 20;
+
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+    @Mock
+    private Application application;
+    @InjectMocks
+    private CrmXml crmXml;
+
+    private CibParserBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new CibParserBenchmark().run();
+    }
+
+    private void run() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(host.getHostParser()).thenReturn(hostParser);
+        final String cib = createCib();
+        final String resStatus = createResStatus();
+        System.out.printf("cib: %d chars, resource status: %d chars%n", cib.length(), resStatus.length());
+
+        new Benchmark("DOM cib", cib.length(), ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() {
+                crmXml.parseCibQueryDom(cib);
+            }
+        });
+
+        final CibStreamParser cibStreamParser = new CibStreamParser(crmXml);
+        new Benchmark("stream cib", cib.length(), ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() {
+                cibStreamParser.parseCibQuery(cib);
+            }
+        });
+
+        new Benchmark("DOM resource status", resStatus.length(), ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() {
+                crmXml.parseResStatusDom(resStatus);
+            }
+        });
+
+        new Benchmark("stream resource status", resStatus.length(), ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() {
+                cibStreamParser.parseResStatus(resStatus);
+            }
+        });
+    }
+
+    private static String createCib() {
+        final StringBuilder cib = new StringBuilder("<pcmk>\n<cib epoch=\"1\" num_updates=\"1\" dc-uuid=\"1\">\n");
+        cib.append("<configuration>\n<crm_config><cluster_property_set id=\"cib-bootstrap-options\">\n")
+           .append("<nvpair id=\"o1\" name=\"stonith-enabled\" value=\"false\"/>\n")
+           .append("</cluster_property_set></crm_config>\n<nodes>\n");
+        for (int n = 1; n <= NODES; n++) {
+            cib.append("<node id=\"").append(n).append("\" uname=\"host").append(n).append("\"/>\n");
+        }
+        cib.append("</nodes>\n<resources>\n");
+        for (int r = 0; r < RESOURCES; r++) {
+            cib.append("<primitive id=\"res").append(r).append("\" class=\"ocf\" provider=\"heartbeat\"")
+               .append(" type=\"Dummy\"><instance_attributes id=\"res").append(r).append("-ia\">")
+               .append("<nvpair id=\"res").append(r).append("-state\" name=\"state\" value=\"/tmp/res")
+               .append(r).append("\"/></instance_attributes><operations><op id=\"res").append(r)
+               .append("-monitor\" name=\"monitor\" interval=\"10s\" timeout=\"20s\"/></operations>")
+               .append("</primitive>\n");
+        }
+        cib.append("</resources>\n<constraints>\n");
+        for (int r = 1; r < RESOURCES; r++) {
+            cib.append("<rsc_order id=\"ord").append(r).append("\" first=\"res").append(r - 1)
+               .append("\" then=\"res").append(r).append("\" score=\"INFINITY\"/>\n");
+        }
+        cib.append("</constraints>\n</configuration>\n<status>\n");
+        for (int n = 1; n <= NODES; n++) {
+            cib.append("<node_state id=\"").append(n).append("\" uname=\"host").append(n)
+               .append("\" join=\"member\" in_ccm=\"true\" crmd=\"online\">\n")
+               .append("<transient_attributes id=\"").append(n).append("\"><instance_attributes id=\"status-")
+               .append(n).append("\"><nvpair id=\"status-").append(n)
+               .append("-probe\" name=\"probe_complete\" value=\"true\"/></instance_attributes>")
+               .append("</transient_attributes>\n<lrm id=\"").append(n).append("\"><lrm_resources>\n");
+            for (int r = 0; r < RESOURCES; r++) {
+                cib.append("<lrm_resource id=\"res").append(r)
+                   .append("\" type=\"Dummy\" class=\"ocf\" provider=\"heartbeat\">\n");
+                for (int o = 0; o < OPERATIONS_PER_RESOURCE; o++) {
+                    cib.append("<lrm_rsc_op id=\"res").append(r).append("_monitor_").append(o)
+                       .append("\" operation_key=\"res").append(r).append("_monitor_10000\" operation=\"monitor\"")
+                       .append(" crm-debug-origin=\"do_update_resource\" crm_feature_set=\"3.0.7\"")
+                       .append(" transition-key=\"12:34:0:3c3ec8f6-a0b4-4a83-9a5d-6bb6a8a43d1").append(o)
+                       .append("\" call-id=\"").append(o).append("\" rc-code=\"0\" op-status=\"0\"")
+                       .append(" interval=\"10000\" last-rc-change=\"1400000000\" exec-time=\"12\"")
+                       .append(" queue-time=\"0\" op-digest=\"f2317cad3d54cec5d7d7aa7d0bf35cf8\"/>\n");
+                }
+                cib.append("</lrm_resource>\n");
+            }
+            cib.append("</lrm_resources></lrm>\n</node_state>\n");
+        }
+        return cib.append("</status>\n</cib>\n</pcmk>").toString();
+    }
+
+    private static String createResStatus() {
+        final StringBuilder resStatus = new StringBuilder("<resource_status>\n");
+        for (int r = 0; r < RESOURCES; r++) {
+            resStatus.append("<resource id=\"res").append(r).append("\" managed=\"managed\"><started>host")
+                     .append(r % NODES + 1).append("</started><scores>");
+            for (int n = 1; n <= NODES; n++) {
+                resStatus.append("<score host=\"host").append(n).append("\" score=\"").append(n).append("\"/>");
+            }
+            resStatus.append("</scores></resource>\n");
+        }
+        return resStatus.append("</resource_status>").toString();
+    }
+}
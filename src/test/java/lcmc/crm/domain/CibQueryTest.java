@@ -0,0 +1,80 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import lcmc.common.domain.Application;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CibQueryTest {
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+    @Mock
+    private Application application;
+    @InjectMocks
+    private CrmXml crmXml;
+
+    @Before
+    public void setUp() {
+        when(host.getHostParser()).thenReturn(hostParser);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void parsedMapsShouldBeUnmodifiable() {
+        crmXml.parseCibQueryDom(CibStreamParserTest.CIB).getNodeOnline().put("host1", "no");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void parsedNestedListsShouldBeUnmodifiable() {
+        crmXml.parseCibQueryDom(CibStreamParserTest.CIB).getGroupsToResources().get("grp").add("ip");
+    }
+
+    @Test
+    public void idsShouldBeSharedBetweenCibQueries() {
+        final CibQuery first = crmXml.parseCibQueryDom(CibStreamParserTest.CIB);
+        final CibQuery second = crmXml.parseCibQueryDom(CibStreamParserTest.CIB);
+
+        assertThat(second.getGroupsToResources().get("grp").get(0))
+                .isSameAs(first.getGroupsToResources().get("grp").get(0));
+    }
+
+    @Test
+    public void nodeOnlineShouldMakeANewCibQuery() {
+        final CibQuery cibQuery = crmXml.parseCibQueryDom(CibStreamParserTest.CIB);
+
+        final CibQuery newCibQuery = cibQuery.withNodeOnline("host2", "yes");
+
+        assertThat(cibQuery.getNodeOnline().get("host2")).isEqualTo("no");
+        assertThat(newCibQuery.getNodeOnline().get("host2")).isEqualTo("yes");
+        assertThat(newCibQuery.getResourceParameters()).isSameAs(cibQuery.getResourceParameters());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import lcmc.common.domain.Application;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CibStreamParserTest {
+    static final String CIB = "<pcmk>\n"
+        + "<fenced><node>HOST2</node></fenced>\n"
+        + "<cib epoch=\"5\" num_updates=\"12\" dc-uuid=\"1\">\n"
+        + "<configuration>\n"
+        + "<crm_config><cluster_property_set id=\"cib-bootstrap-options\">\n"
+        + "<nvpair id=\"o1\" name=\"stonith-enabled\" value=\"false\"/>\n"
+        + "</cluster_property_set></crm_config>\n"
+        + "<nodes>\n"
+        + "<node id=\"1\" uname=\"host1\"><instance_attributes id=\"n1\">"
+        + "<nvpair id=\"n1a\" name=\"standby\" value=\"off\"/></instance_attributes></node>\n"
+        + "<node id=\"2\" uname=\"host2\"/>\n"
+        + "</nodes>\n"
+        + "<resources>\n"
+        + "<primitive id=\"ip\" class=\"ocf\" provider=\"heartbeat\" type=\"IPaddr2\">"
+        + "<instance_attributes id=\"ip-ia\"><nvpair id=\"ip-ia-ip\" name=\"ip\" value=\"10.0.0.1\"/>"
+        + "</instance_attributes>"
+        + "<operations><op id=\"ip-monitor\" name=\"monitor\" interval=\"10s\" timeout=\"20s\"/></operations>"
+        + "<meta_attributes id=\"ip-ma\"><nvpair id=\"ip-ma-tr\" name=\"target-role\" value=\"Started\"/>"
+        + "</meta_attributes></primitive>\n"
+        + "<group id=\"grp\"><primitive id=\"fs\" class=\"ocf\" provider=\"heartbeat\" type=\"Filesystem\"/>"
+        + "</group>\n"
+        + "<clone id=\"cl\"><primitive id=\"ping\" class=\"ocf\" provider=\"pacemaker\" type=\"ping\"/></clone>\n"
+        + "</resources>\n"
+        + "<constraints>\n"
+        + "<rsc_colocation id=\"col\" rsc=\"grp\" with-rsc=\"ip\" score=\"INFINITY\"/>\n"
+        + "<rsc_order id=\"ord\" first=\"ip\" then=\"grp\" score=\"INFINITY\"/>\n"
+        + "<rsc_location id=\"loc\" rsc=\"ip\" node=\"host1\" score=\"100\"/>\n"
+        + "</constraints>\n"
+        + "</configuration>\n"
+        + "<status>\n"
+        + "<node_state id=\"1\" uname=\"host1\" join=\"member\" in_ccm=\"true\" crmd=\"online\">"
+        + "<transient_attributes id=\"1\"><instance_attributes id=\"status-1\">"
+        + "<nvpair id=\"status-1-fc\" name=\"fail-count-ping:0\" value=\"2\"/>"
+        + "<nvpair id=\"status-1-pingd\" name=\"pingd\" value=\"100\"/>"
+        + "</instance_attributes></transient_attributes>"
+        + "<lrm id=\"1\"><lrm_resources>"
+        + "<lrm_resource id=\"ip\" type=\"IPaddr2\" class=\"ocf\" provider=\"heartbeat\">"
+        + "<lrm_rsc_op id=\"ip_start_0\" operation=\"start\" rc-code=\"0\"/>"
+        + "<lrm_rsc_op id=\"ip_monitor_10000\" operation=\"monitor\" rc-code=\"0\"/>"
+        + "</lrm_resource>"
+        + "<lrm_resource id=\"orphan\" type=\"Dummy\" class=\"ocf\" provider=\"pacemaker\">"
+        + "<lrm_rsc_op id=\"orphan_stop_0\" operation=\"stop\" rc-code=\"0\"/>"
+        + "</lrm_resource>"
+        + "</lrm_resources></lrm></node_state>\n"
+        + "<node_state id=\"2\" uname=\"host2\" join=\"down\" in_ccm=\"false\" crmd=\"offline\"/>\n"
+        + "</status>\n"
+        + "</cib>\n"
+        + "</pcmk>";
+
+    private static final String RES_STATUS = "<resource_status>\n"
+        + "<resource id=\"ip\" managed=\"managed\"><started>host1</started>"
+        + "<scores><score host=\"host1\" score=\"100\"/><score host=\"host2\" score=\"0\"/></scores></resource>\n"
+        + "<resource id=\"ms\" managed=\"unmanaged\"><master>host1</master><slave>host2</slave></resource>\n"
+        + "</resource_status>";
+
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+    @Mock
+    private Application application;
+    @InjectMocks
+    private CrmXml crmXml;
+
+    @Before
+    public void setUp() {
+        when(host.getHostParser()).thenReturn(hostParser);
+    }
+
+    @Test
+    public void streamShouldBeParsedLikeDom() {
+        final CibQuery dom = crmXml.parseCibQueryDom(CIB);
+        final CibQuery stream = new CibStreamParser(crmXml).parseCibQuery(CIB);
+
+        assertThat(stream.getDC()).isEqualTo("host1").isEqualTo(dom.getDC());
+        assertThat(stream.getCrmConfig()).isEqualTo(dom.getCrmConfig());
+        assertThat(stream.getNodeParameters()).isEqualTo(dom.getNodeParameters());
+        assertThat(stream.getGroupsToResources()).isEqualTo(dom.getGroupsToResources());
+        assertThat(stream.getCloneToResource()).isEqualTo(dom.getCloneToResource());
+        assertThat(stream.getResourceParameters()).isEqualTo(dom.getResourceParameters());
+        assertThat(stream.getResourceType()).isEqualTo(dom.getResourceType());
+        assertThat(stream.getMetaAttrsId()).isEqualTo(dom.getMetaAttrsId());
+        assertThat(stream.getOperationsId()).isEqualTo(dom.getOperationsId());
+        assertThat(stream.getColocationId().keySet()).isEqualTo(dom.getColocationId().keySet());
+        assertThat(stream.getOrderId().keySet()).isEqualTo(dom.getOrderId().keySet());
+        assertThat(stream.getLocationsId()).isEqualTo(dom.getLocationsId());
+        assertThat(stream.getNodeOnline()).isEqualTo(dom.getNodeOnline());
+        assertThat(stream.getInLRM()).isEqualTo(dom.getInLRM());
+        assertThat(stream.getOrphaned()).containsOnly("orphan").isEqualTo(dom.getOrphaned());
+        assertThat(stream.getNodeFailedCount()).isEqualTo(dom.getNodeFailedCount());
+        assertThat(stream.getResourceFailedCloneIds()).isEqualTo(dom.getResourceFailedCloneIds());
+        assertThat(stream.getNodePingCount()).isEqualTo(dom.getNodePingCount());
+        assertThat(stream.getFencedNodes()).containsOnly("host2").isEqualTo(dom.getFencedNodes());
+    }
+
+    @Test
+    public void resourceStatusShouldBeParsedLikeDom() {
+        final Map<String, CrmXml.ResourceStatus> dom = crmXml.parseResStatusDom(RES_STATUS);
+        final Map<String, CrmXml.ResourceStatus> stream = new CibStreamParser(crmXml).parseResStatus(RES_STATUS);
+
+        assertThat(stream.keySet()).containsOnly("ip", "ms").isEqualTo(dom.keySet());
+        for (final String id : dom.keySet()) {
+            assertThat(stream.get(id).getRunningOnNodes()).isEqualTo(dom.get(id).getRunningOnNodes());
+            assertThat(stream.get(id).getMasterOnNodes()).isEqualTo(dom.get(id).getMasterOnNodes());
+            assertThat(stream.get(id).getSlaveOnNodes()).isEqualTo(dom.get(id).getSlaveOnNodes());
+            assertThat(stream.get(id).getAllocationScores()).isEqualTo(dom.get(id).getAllocationScores());
+            assertThat(stream.get(id).isManagedByCrm()).isEqualTo(dom.get(id).isManagedByCrm());
+        }
+    }
+
+    @Test
+    public void cibWithoutResourcesShouldHaveOnlyCrmConfig() {
+        final String cib = "<pcmk><cib><configuration><crm_config><cluster_property_set id=\"o\">"
+                           + "<nvpair id=\"o1\" name=\"stonith-enabled\" value=\"false\"/>"
+                           + "</cluster_property_set></crm_config></configuration></cib></pcmk>";
+
+        final CibQuery stream = new CibStreamParser(crmXml).parseCibQuery(cib);
+
+        assertThat(stream.getCrmConfig()).containsEntry("stonith-enabled", "false");
+        assertThat(stream.getGroupsToResources()).isEqualTo(crmXml.parseCibQueryDom(cib).getGroupsToResources());
+    }
+}
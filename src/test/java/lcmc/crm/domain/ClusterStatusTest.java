@@ -0,0 +1,124 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lcmc.cluster.ui.ClusterBrowser;
+import lcmc.common.domain.Application;
+import lcmc.crm.ui.CrmGraph;
+import lcmc.crm.ui.resource.CloneInfo;
+import lcmc.crm.ui.resource.CrmServiceFactory;
+import lcmc.crm.ui.resource.GroupInfo;
+import lcmc.crm.ui.resource.ServiceInfo;
+import lcmc.crm.ui.resource.ServicesInfo;
+import lcmc.crm.ui.resource.update.ResourceUpdater;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClusterStatusTest {
+    private static final Application.RunMode RUN_MODE = Application.RunMode.LIVE;
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+    @Mock
+    private Application application;
+    @Mock
+    private ServicesInfo servicesInfo;
+    @Mock
+    private ClusterBrowser clusterBrowser;
+    @Mock
+    private CrmGraph crmGraph;
+    @Mock
+    private CrmServiceFactory crmServiceFactory;
+    @InjectMocks
+    private CrmXml crmXml;
+    @InjectMocks
+    private ResourceUpdater resourceUpdater = new ResourceUpdater();
+
+    private final ClusterStatus clusterStatus = new ClusterStatus();
+    /** The parameters, that were set, with the ids, that the services add to them. */
+    private final Map<String, Map<String, String>> setParameters = new HashMap<String, Map<String, String>>();
+
+    @Before
+    public void setUp() {
+        when(host.getHostParser()).thenReturn(hostParser);
+        when(clusterBrowser.getCrmGraph()).thenReturn(crmGraph);
+        when(clusterBrowser.getClusterHosts()).thenReturn(new Host[]{});
+        ReflectionTestUtils.setField(clusterStatus, "cibQuery", crmXml.parseCibQueryDom(CibStreamParserTest.CIB));
+    }
+
+    @Test
+    public void resourceUpdaterShouldAddIdsToTheParsedParameters() {
+        //given:
+        existingService(ServiceInfo.class, "ip");
+        existingService(ServiceInfo.class, "fs");
+        existingService(ServiceInfo.class, "ping");
+        existingService(GroupInfo.class, "grp");
+        existingService(CloneInfo.class, "cl");
+
+        //when:
+        resourceUpdater.updateAllResources(servicesInfo, clusterBrowser, clusterStatus, RUN_MODE);
+
+        //then:
+        assertThat(setParameters.get("ip")).containsEntry("ip", "10.0.0.1")
+                                           .containsEntry(ServiceInfo.PCMK_ID, "ip");
+        assertThat(setParameters).containsKeys("fs", "ping", "grp", "cl");
+        assertThat(clusterStatus.getParamValuePairs("ip")).doesNotContainKey(ServiceInfo.PCMK_ID);
+    }
+
+    /** Makes an existing service, that adds its ids to the parameters like ServiceInfo.setParameters does. */
+    private <T extends ServiceInfo> void existingService(final Class<T> clazz, final String crmId) {
+        final T serviceInfo = mock(clazz);
+        when(serviceInfo.getHeartbeatId(RUN_MODE)).thenReturn(crmId);
+        when(clusterBrowser.getServiceInfoFromCRMId(crmId)).thenReturn(serviceInfo);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                @SuppressWarnings("unchecked")
+                final Map<String, String> resourceNode = (Map<String, String>) invocation.getArguments()[0];
+                if (resourceNode != null) {
+                    resourceNode.put(ServiceInfo.PCMK_ID, crmId);
+                    resourceNode.put(ServiceInfo.GUI_ID, crmId);
+                    setParameters.put(crmId, resourceNode);
+                }
+                return null;
+            }
+        }).when(serviceInfo).setParameters((Map<String, String>) anyObject());
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2026, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lcmc.cluster.service.ssh.ExecCommandConfig;
+import lcmc.cluster.service.ssh.SshOutput;
+import lcmc.cluster.ui.ClusterBrowser;
+import lcmc.cluster.ui.ClusterViewPanel;
+import lcmc.common.domain.ConvertCmdCallback;
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.crm.ui.resource.ServicesInfo;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.CompressedFrames;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CrmXmlMetaDataTest {
+    private static final String META_DATA_COMMAND = "Heartbeat.getOCFParametersOf";
+    private static final String CHECKSUMS_COMMAND = "Heartbeat.getOCFChecksums";
+    private static final Pattern AGENT_PATTERN = Pattern.compile("'ocf:heartbeat:([^']+)'");
+    private static final long TIMEOUT = 10;
+
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+    @Mock
+    private ResourceAgentMetaDataCache resourceAgentMetaDataCache;
+    @Mock
+    private ExecutionService executionService;
+    @Mock
+    private ServicesInfo allServicesInfo;
+    @Mock
+    private ClusterBrowser clusterBrowser;
+    @Mock
+    private ClusterViewPanel clusterViewPanel;
+    @InjectMocks
+    private CrmXml crmXml;
+
+    /** Agents requested by every meta-data command. */
+    private final List<List<String>> metaDataRequests = new CopyOnWriteArrayList<List<String>>();
+    private final CountDownLatch firstFetchStarted = new CountDownLatch(1);
+    private final CountDownLatch firstFetchReleased = new CountDownLatch(1);
+    private final CountDownLatch metaDataOutputRead = new CountDownLatch(1);
+    private volatile boolean blockFirstFetch = false;
+    private volatile int failingFetches = 0;
+    private volatile String omittedAgent = null;
+    private final List<ResourceAgent> ocfAgents = new ArrayList<ResourceAgent>();
+
+    @Before
+    public void setUp() {
+        when(host.getName()).thenReturn("host1");
+        when(host.getHostParser()).thenReturn(hostParser);
+        when(hostParser.getCompressedFrames()).thenReturn(new CompressedFrames());
+        when(hostParser.getPacemakerVersion()).thenReturn("2.0.3");
+        when(hostParser.getDistCommand(anyString(), (ConvertCmdCallback) anyObject())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                final String command = (String) invocation.getArguments()[0];
+                final ConvertCmdCallback callback = (ConvertCmdCallback) invocation.getArguments()[1];
+                return callback == null ? command : callback.convert(command + " @AGENTS@");
+            }
+        });
+        when(host.captureCommand(any(ExecCommandConfig.class))).thenAnswer(new Answer<SshOutput>() {
+            @Override
+            public SshOutput answer(final InvocationOnMock invocation) throws InterruptedException {
+                return runCommand((ExecCommandConfig) invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                new Thread((Runnable) invocation.getArguments()[0]).start();
+                return null;
+            }
+        }).when(executionService).execute(any(Runnable.class));
+        when(allServicesInfo.getBrowser()).thenReturn(clusterBrowser);
+        when(clusterBrowser.getClusterViewPanel()).thenReturn(clusterViewPanel);
+        ReflectionTestUtils.setField(crmXml, "host", host);
+        ReflectionTestUtils.setField(crmXml, "allServicesInfo", allServicesInfo);
+    }
+
+    @Test(timeout = 20000)
+    public void concurrentLoadsOfTheSameAgentShouldFetchItOnce() throws InterruptedException {
+        //given
+        final ResourceAgent agent = addAgent("A1");
+        blockFirstFetch = true;
+        final Thread first = loadInBackground(agent);
+        assertThat(firstFetchStarted.await(TIMEOUT, TimeUnit.SECONDS)).isTrue();
+
+        //when
+        final Thread second = loadInBackground(agent);
+        waitUntilWaiting(second);
+        firstFetchReleased.countDown();
+        first.join();
+        second.join();
+
+        //then
+        assertThat(metaDataRequests).hasSize(1);
+        assertThat(agent.isMetaDataLoaded()).isTrue();
+        assertThat(getMetaDataLoads()).isEmpty();
+    }
+
+    @Test(timeout = 20000)
+    public void requestWhileLoadingShouldNotFetchAgain() throws InterruptedException {
+        //given
+        final ResourceAgent agent = addAgent("A1");
+        blockFirstFetch = true;
+        crmXml.requestMetaData(agent);
+        assertThat(firstFetchStarted.await(TIMEOUT, TimeUnit.SECONDS)).isTrue();
+
+        //when
+        crmXml.requestMetaData(agent);
+        crmXml.requestMetaData(agent);
+        firstFetchReleased.countDown();
+        waitUntilLoaded(agent);
+
+        //then
+        crmXml.requestMetaData(agent);
+        assertThat(metaDataRequests).hasSize(1);
+    }
+
+    @Test(timeout = 20000)
+    public void prefetchShouldFetchInBatches() {
+        //given
+        for (int i = 0; i < 45; i++) {
+            addAgent("A" + i);
+        }
+
+        //when
+        crmXml.prefetchOCFMetaData();
+
+        //then
+        assertThat(metaDataRequests).hasSize(3);
+        assertThat(metaDataRequests.get(0)).hasSize(20);
+        assertThat(metaDataRequests.get(1)).hasSize(20);
+        assertThat(metaDataRequests.get(2)).hasSize(5);
+        for (final ResourceAgent agent : ocfAgents) {
+            assertThat(agent.isMetaDataLoaded()).isTrue();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void failedFetchShouldBeRetried() {
+        //given
+        final ResourceAgent agent = addAgent("A1");
+        failingFetches = 1;
+        crmXml.loadMetaData(Collections.singletonList(agent));
+        assertThat(agent.isMetaDataLoaded()).isFalse();
+        assertThat(getMetaDataLoads()).isEmpty();
+
+        //when
+        crmXml.loadMetaData(Collections.singletonList(agent));
+
+        //then
+        assertThat(metaDataRequests).hasSize(2);
+        assertThat(agent.isMetaDataLoaded()).isTrue();
+    }
+
+    @Test(timeout = 20000)
+    public void agentWithoutMetaDataShouldNotBeFetchedAgain() {
+        //given
+        final ResourceAgent agent = addAgent("A1");
+        omittedAgent = "A1";
+        crmXml.loadMetaData(Collections.singletonList(agent));
+
+        //when
+        crmXml.loadMetaData(Collections.singletonList(agent));
+
+        //then
+        assertThat(metaDataRequests).hasSize(1);
+        assertThat(agent.isMetaDataLoaded()).isFalse();
+    }
+
+    @Test(timeout = 20000)
+    public void prefetchShouldWaitForTheAgentLoadedOnDemand() throws InterruptedException {
+        //given
+        final ResourceAgent onDemand = addAgent("A1");
+        addAgent("A2");
+        addAgent("A3");
+        blockFirstFetch = true;
+        final Thread load = loadInBackground(onDemand);
+        assertThat(firstFetchStarted.await(TIMEOUT, TimeUnit.SECONDS)).isTrue();
+
+        //when
+        final Thread prefetch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                crmXml.prefetchOCFMetaData();
+            }
+        });
+        prefetch.start();
+        /* the prefetcher fetches the others, while the on-demand load is still running */
+        while (metaDataRequests.size() < 2) {
+            Thread.sleep(10);
+        }
+        firstFetchReleased.countDown();
+        load.join();
+        prefetch.join();
+
+        //then
+        assertThat(metaDataRequests).hasSize(2);
+        assertThat(metaDataRequests.get(0)).containsExactly("A1");
+        assertThat(metaDataRequests.get(1)).containsExactly("A2", "A3");
+        for (final ResourceAgent agent : ocfAgents) {
+            assertThat(agent.isMetaDataLoaded()).isTrue();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void outputShouldNotWaitForTheParsers() {
+        //given
+        final List<ResourceAgent> agents = new ArrayList<ResourceAgent>();
+        for (int i = 0; i <= Runtime.getRuntime().availableProcessors(); i++) {
+            agents.add(addAgent("A" + i));
+        }
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                final Runnable parser = (Runnable) invocation.getArguments()[0];
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            metaDataOutputRead.await();
+                        } catch (final InterruptedException e) {
+                            return;
+                        }
+                        parser.run();
+                    }
+                }).start();
+                return null;
+            }
+        }).when(executionService).execute(any(Runnable.class));
+
+        //when
+        crmXml.loadMetaData(agents);
+
+        //then
+        assertThat(metaDataRequests).hasSize(1);
+        for (final ResourceAgent agent : agents) {
+            assertThat(agent.isMetaDataLoaded()).isTrue();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void metaDataShouldBeParsedIfTheParsersCannotBeStarted() {
+        //given
+        final ResourceAgent agent1 = addAgent("A1");
+        final ResourceAgent agent2 = addAgent("A2");
+        doThrow(new RejectedExecutionException("shut down")).when(executionService).execute(any(Runnable.class));
+
+        //when
+        crmXml.loadMetaData(ocfAgents);
+
+        //then
+        assertThat(agent1.isMetaDataLoaded()).isTrue();
+        assertThat(agent2.isMetaDataLoaded()).isTrue();
+        assertThat(getMetaDataLoads()).isEmpty();
+    }
+
+    private SshOutput runCommand(final ExecCommandConfig config) throws InterruptedException {
+        final String command = (String) ReflectionTestUtils.getField(config, "command");
+        final StringBuilder output = new StringBuilder("ra-version:4.1.1\n");
+        if (command.startsWith(CHECKSUMS_COMMAND)) {
+            for (final ResourceAgent agent : ocfAgents) {
+                output.append(agentHeader(agent.getServiceName()));
+            }
+        } else if (command.startsWith(META_DATA_COMMAND)) {
+            final List<String> names = new ArrayList<String>();
+            final Matcher m = AGENT_PATTERN.matcher(command);
+            while (m.find()) {
+                names.add(m.group(1));
+            }
+            metaDataRequests.add(names);
+            if (blockFirstFetch && metaDataRequests.size() == 1) {
+                firstFetchStarted.countDown();
+                firstFetchReleased.await();
+            }
+            if (failingFetches > 0) {
+                failingFetches--;
+                return new SshOutput("", 1);
+            }
+            for (final String name : names) {
+                if (!name.equals(omittedAgent)) {
+                    output.append(agentHeader(name))
+                          .append("<?xml version=\"1.0\"?>\n")
+                          .append("<resource-agent name=\"").append(name).append("\">\n")
+                          .append("<parameters></parameters>\n")
+                          .append("</resource-agent>\n");
+                }
+            }
+        }
+        config.getNewOutputCallback().output(output.toString());
+        if (command.startsWith(META_DATA_COMMAND)) {
+            metaDataOutputRead.countDown();
+        }
+        return new SshOutput(output.toString(), 0);
+    }
+
+    private String agentHeader(final String name) {
+        return "class:ocf\nprovider:heartbeat\nra-name:" + name + "\nmaster:\nchecksum:" + name + "-sum\n";
+    }
+
+    @SuppressWarnings("unchecked")
+    private ResourceAgent addAgent(final String name) {
+        final ResourceAgent agent = new ResourceAgent(name, "heartbeat", ResourceAgent.OCF_CLASS_NAME);
+        ((Map<String, ResourceAgent>) ReflectionTestUtils.getField(crmXml, "serviceToResourceAgentMap"))
+                .put("ocf:heartbeat:" + name, agent);
+        final Map<String, List<ResourceAgent>> classToServices =
+                (Map<String, List<ResourceAgent>>) ReflectionTestUtils.getField(crmXml, "classToServicesMap");
+        if (!classToServices.containsKey(ResourceAgent.OCF_CLASS_NAME)) {
+            classToServices.put(ResourceAgent.OCF_CLASS_NAME, ocfAgents);
+        }
+        ocfAgents.add(agent);
+        return agent;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentMap<String, CountDownLatch> getMetaDataLoads() {
+        return (ConcurrentMap<String, CountDownLatch>) ReflectionTestUtils.getField(crmXml, "metaDataLoads");
+    }
+
+    private Thread loadInBackground(final ResourceAgent agent) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                crmXml.loadMetaData(Collections.singletonList(agent));
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void waitUntilWaiting(final Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            assertThat(thread.isAlive()).isTrue();
+            Thread.sleep(10);
+        }
+    }
+
+    private void waitUntilLoaded(final ResourceAgent agent) throws InterruptedException {
+        while (!agent.isMetaDataLoaded() || !getMetaDataLoads().isEmpty()) {
+            Thread.sleep(10);
+        }
+    }
+}
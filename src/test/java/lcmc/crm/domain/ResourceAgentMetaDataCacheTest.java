@@ -0,0 +1,169 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResourceAgentMetaDataCacheTest {
+    private static final String HOST = "node1";
+    private static final String OTHER_HOST = "node2";
+    private static final String AGENT = "ocf:heartbeat:IPaddr2";
+    private static final String CHECKSUM = "0123456789abcdef";
+    private static final String XML = "<resource-agent name=\"IPaddr2\">\n</resource-agent>\n";
+    private static final String FINGERPRINT = ResourceAgentMetaDataCache.getFingerprint(HOST, "1.1.10", "3.9.5");
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private ResourceAgentMetaDataCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ResourceAgentMetaDataCache(temporaryFolder.getRoot());
+    }
+
+    @Test
+    public void storedMetaDataShouldBeHit() {
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry(CHECKSUM, true, XML));
+
+        final ResourceAgentMetaDataCache.Entry entry = cache.get(FINGERPRINT, AGENT, CHECKSUM);
+
+        assertThat(entry).isNotNull();
+        assertThat(entry.getChecksum()).isEqualTo(CHECKSUM);
+        assertThat(entry.isMasterSlave()).isTrue();
+        assertThat(entry.getXml()).isEqualTo(XML);
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void changedChecksumShouldBeMiss() {
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry(CHECKSUM, false, XML));
+
+        assertThat(cache.get(FINGERPRINT, AGENT, "fedcba9876543210")).isNull();
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void missingOrEmptyChecksumShouldBeMiss() {
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry(CHECKSUM, false, XML));
+
+        assertThat(cache.get(FINGERPRINT, AGENT, null)).isNull();
+        assertThat(cache.get(FINGERPRINT, AGENT, "")).isNull();
+        assertThat(cache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    public void metaDataWithoutChecksumShouldNotBeStored() {
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry("", false, XML));
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry(null, false, XML));
+
+        assertThat(cacheFiles()).isEmpty();
+    }
+
+    @Test
+    public void uncachedAgentShouldBeMiss() {
+        assertThat(cache.get(FINGERPRINT, AGENT, CHECKSUM)).isNull();
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void truncatedFileShouldBeMiss() throws IOException {
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry(CHECKSUM, false, XML));
+        final File file = cacheFiles().get(0);
+        final byte[] content = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(content, content.length - 10));
+
+        assertThat(cache.get(FINGERPRINT, AGENT, CHECKSUM)).isNull();
+    }
+
+    @Test
+    public void corruptFileShouldBeMiss() throws IOException {
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry(CHECKSUM, false, XML));
+        final File file = cacheFiles().get(0);
+
+        Files.write(file.toPath(), ("checksum:" + CHECKSUM + "\ngarbage").getBytes(StandardCharsets.UTF_8));
+        assertThat(cache.get(FINGERPRINT, AGENT, CHECKSUM)).isNull();
+
+        Files.write(file.toPath(), new byte[0]);
+        assertThat(cache.get(FINGERPRINT, AGENT, CHECKSUM)).isNull();
+        assertThat(cache.getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void existingEntryShouldBeOverwritten() {
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry(CHECKSUM, false, XML));
+
+        cache.put(FINGERPRINT, AGENT, new ResourceAgentMetaDataCache.Entry("fedcba9876543210", true, "<new/>"));
+
+        assertThat(cache.get(FINGERPRINT, AGENT, CHECKSUM)).isNull();
+        final ResourceAgentMetaDataCache.Entry entry = cache.get(FINGERPRINT, AGENT, "fedcba9876543210");
+        assertThat(entry.getXml()).isEqualTo("<new/>");
+        assertThat(entry.isMasterSlave()).isTrue();
+        assertThat(cacheFiles()).hasSize(1);
+    }
+
+    @Test
+    public void removeOthersShouldKeepTheCurrentVersionsAndOtherHosts() {
+        final String oldFingerprint = ResourceAgentMetaDataCache.getFingerprint(HOST, "1.1.9", "3.9.5");
+        final String otherHostFingerprint = ResourceAgentMetaDataCache.getFingerprint(OTHER_HOST, "1.1.9", "3.9.5");
+        final String similarHostFingerprint = ResourceAgentMetaDataCache.getFingerprint(HOST + "-b", "1.1.9", "3.9.5");
+        final ResourceAgentMetaDataCache.Entry entry = new ResourceAgentMetaDataCache.Entry(CHECKSUM, false, XML);
+        cache.put(FINGERPRINT, AGENT, entry);
+        cache.put(oldFingerprint, AGENT, entry);
+        cache.put(otherHostFingerprint, AGENT, entry);
+        cache.put(similarHostFingerprint, AGENT, entry);
+
+        cache.removeOthers(HOST, FINGERPRINT);
+
+        assertThat(cache.get(FINGERPRINT, AGENT, CHECKSUM)).isNotNull();
+        assertThat(cache.get(oldFingerprint, AGENT, CHECKSUM)).isNull();
+        assertThat(cache.get(otherHostFingerprint, AGENT, CHECKSUM)).isNotNull();
+        assertThat(cache.get(similarHostFingerprint, AGENT, CHECKSUM)).isNotNull();
+        assertThat(temporaryFolder.getRoot().listFiles()).hasSize(3);
+    }
+
+    private List<File> cacheFiles() {
+        final List<File> files = new ArrayList<File>();
+        final File[] dirs = temporaryFolder.getRoot().listFiles();
+        if (dirs != null) {
+            for (final File dir : dirs) {
+                final File[] dirFiles = dir.listFiles();
+                if (dirFiles != null) {
+                    for (final File file : dirFiles) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+}
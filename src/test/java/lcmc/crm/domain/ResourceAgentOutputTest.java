@@ -0,0 +1,85 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ResourceAgentOutputTest {
+    private final List<CrmXml.ResourceAgentOutput> agents = new ArrayList<CrmXml.ResourceAgentOutput>();
+
+    @Test
+    public void checksumsShouldBeParsedWithoutMetaData() {
+        final String raVersion = CrmXml.parseResourceAgents("ra-version:4.1.1 2.0.3\n"
+                                                            + "class:ocf\n"
+                                                            + "provider:heartbeat\n"
+                                                            + "ra-name:IPaddr2\n"
+                                                            + "master:\n"
+                                                            + "checksum:aaa\n"
+                                                            + "provider:pacemaker\n"
+                                                            + "ra-name:Stateful\n"
+                                                            + "master:/usr/lib/ocf/resource.d/pacemaker/Stateful\n"
+                                                            + "checksum:bbb\n"
+                                                            + "provider:heartbeat\n"
+                                                            + "master:\n"
+                                                            + "class:stonith\n"
+                                                            + "ra-name:fence_xvm\n"
+                                                            + "checksum:ccc\n",
+                                                            agents);
+
+        assertThat(raVersion).isEqualTo("4.1.1 2.0.3");
+        assertThat(agents).hasSize(3);
+        assertThat(agents.get(0).getKey()).isEqualTo("ocf:heartbeat:IPaddr2");
+        assertThat(agents.get(1).getKey()).isEqualTo("ocf:pacemaker:Stateful");
+        assertThat(agents.get(1).getChecksum()).isEqualTo("bbb");
+        assertThat(agents.get(2).getKey()).isEqualTo("stonith:heartbeat:fence_xvm");
+        assertThat(agents.get(2).getXml()).isNull();
+    }
+
+    @Test
+    public void metaDataShouldBeParsedWithChecksums() {
+        CrmXml.parseResourceAgents("ra-version:4.1.1\r\n"
+                                   + "class:ocf\r\n"
+                                   + "provider:heartbeat\r\n"
+                                   + "ra-name:IPaddr2\r\n"
+                                   + "master:\r\n"
+                                   + "checksum:aaa\r\n"
+                                   + "<?xml version=\"1.0\"?>\r\n"
+                                   + "<resource-agent name=\"IPaddr2\">\r\n"
+                                   + "</resource-agent>\r\n"
+                                   + "provider:heartbeat\r\n"
+                                   + "master:\r\n"
+                                   + "class:stonith\r\n"
+                                   + "<resource-agent name=\"external/ssh\" class=\"stonith\">\r\n"
+                                   + "</resource-agent>\r\n",
+                                   agents);
+
+        assertThat(agents).hasSize(2);
+        assertThat(agents.get(0).getChecksum()).isEqualTo("aaa");
+        assertThat(agents.get(0).getXml()).isEqualTo("<resource-agent name=\"IPaddr2\">\n</resource-agent>\n");
+        assertThat(agents.get(1).getName()).isEqualTo("external/ssh");
+        assertThat(agents.get(1).getChecksum()).isNull();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lcmc.common.domain.XMLTools;
+import lcmc.host.domain.parser.CompressedFrames;
+import lcmc.testutils.Benchmark;
+
+/**
+ * Compares the old way of parsing the get-resource-agents output, after
+ * all of it has arrived, with the stream parser, that hands the agents to
+ * the parser threads, as the output arrives in chunks. The allocated
+ * memory is only of the main thread.
+ */
+public final class ResourceAgentParserBenchmark {
+    private static final int AGENTS = 400;
+    private static final int PARAMETERS_PER_AGENT = 25;
+    private static final int CHUNK = 4096;
+    private static final int ROUNDS = 10;
+    private static final int PARSER_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private ResourceAgentParserBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final String output = createOutput();
+        final List<String> chunks = new ArrayList<String>();
+        for (int i = 0; i < output.length(); i += CHUNK) {
+            chunks.add(output.substring(i, Math.min(i + CHUNK, output.length())));
+        }
+        System.out.printf("output: %d agents, %d chars, %d parser threads%n",
+                          AGENTS, output.length(), PARSER_THREADS);
+
+        new Benchmark("split, regex, serial DOM", output.length(), ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() {
+                final StringBuilder buffer = new StringBuilder();
+                for (final String chunk : chunks) {
+                    buffer.append(chunk);
+                }
+                parseSerially(buffer.toString());
+            }
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(PARSER_THREADS);
+        try {
+            new Benchmark("stream, parallel DOM", output.length(), ROUNDS).run(new Benchmark.Task() {
+                @Override
+                public void run() {
+                    final Semaphore parsers = new Semaphore(PARSER_THREADS);
+                    final ResourceAgentStreamParser parser = new ResourceAgentStreamParser(
+                            new CompressedFrames(),
+                            new ResourceAgentStreamParser.AgentHandler() {
+                                @Override
+                                public void agent(final CrmXml.ResourceAgentOutput agent) {
+                                    parsers.acquireUninterruptibly();
+                                    executor.execute(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            try {
+                                                XMLTools.getXMLDocument(agent.getXml());
+                                            } finally {
+                                                parsers.release();
+                                            }
+                                        }
+                                    });
+                                }
+                            });
+                    for (final String chunk : chunks) {
+                        parser.feed(chunk);
+                    }
+                    parser.finish();
+                    parsers.acquireUninterruptibly(PARSER_THREADS);
+                    parsers.release(PARSER_THREADS);
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /** The old CrmXml.initOCFResourceAgentsWithMetaData without filling the agents. */
+    private static void parseSerially(final String output) {
+        final String[] lines = output.split("\\r?\\n");
+        final Pattern pp = Pattern.compile("^provider:\\s*(.*?)\\s*$");
+        final Pattern mp = Pattern.compile("^master:\\s*(.*?)\\s*$");
+        final Pattern bp = Pattern.compile("<resource-agent.*\\s+name=\"(.*?)\".*");
+        final Pattern sp = Pattern.compile("^ra-name:\\s*(.*?)\\s*$");
+        final Pattern ep = Pattern.compile("</resource-agent>");
+        final StringBuilder xml = new StringBuilder("");
+        boolean nextRA = false;
+        for (final String line : lines) {
+            if (pp.matcher(line).matches() || mp.matcher(line).matches() || sp.matcher(line).matches()) {
+                continue;
+            }
+            final Matcher m = bp.matcher(line);
+            if (m.matches()) {
+                nextRA = true;
+            }
+            if (nextRA) {
+                xml.append(line);
+                xml.append('\n');
+                if (ep.matcher(line).matches()) {
+                    XMLTools.getXMLDocument(xml.toString());
+                    nextRA = false;
+                    xml.delete(0, xml.length());
+                }
+            }
+        }
+    }
+
+    private static String createOutput() {
+        final StringBuilder output = new StringBuilder();
+        output.append("ra-version:4.1.1 2.0.3\r\nclass:ocf\r\nprovider:heartbeat\r\n");
+        for (int a = 0; a < AGENTS; a++) {
+            output.append("ra-name:Agent").append(a).append("\r\n")
+                  .append("master:\r\n")
+                  .append("checksum:0123456789abcdef0123456789abcdef\r\n")
+                  .append("<?xml version=\"1.0\"?>\r\n")
+                  .append("<resource-agent name=\"Agent").append(a).append("\">\r\n")
+                  .append("<version>1.0</version>\r\n")
+                  .append("<longdesc lang=\"en\">\r\nResource agent number ").append(a).append(".\r\n</longdesc>\r\n")
+                  .append("<shortdesc lang=\"en\">Agent ").append(a).append("</shortdesc>\r\n")
+                  .append("<parameters>\r\n");
+            for (int p = 0; p < PARAMETERS_PER_AGENT; p++) {
+                output.append("<parameter name=\"param").append(p).append("\" unique=\"0\" required=\"0\">\r\n")
+                      .append("<longdesc lang=\"en\">\r\nThe parameter ").append(p)
+                      .append(", that configures something of the service.\r\n</longdesc>\r\n")
+                      .append("<shortdesc lang=\"en\">Parameter ").append(p).append("</shortdesc>\r\n")
+                      .append("<content type=\"string\" default=\"value").append(p).append("\"/>\r\n")
+                      .append("</parameter>\r\n");
+            }
+            output.append("</parameters>\r\n")
+                  .append("<actions>\r\n")
+                  .append("<action name=\"start\" timeout=\"20s\"/>\r\n")
+                  .append("<action name=\"stop\" timeout=\"20s\"/>\r\n")
+                  .append("<action name=\"monitor\" timeout=\"20s\" interval=\"10s\" depth=\"0\"/>\r\n")
+                  .append("<action name=\"meta-data\" timeout=\"5s\"/>\r\n")
+                  .append("</actions>\r\n")
+                  .append("</resource-agent>\r\n");
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package lcmc.crm.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import lcmc.common.domain.util.StatusStaleness;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CrmStatusFailoverTest {
+    private static final long NO_WAIT = 0;
+    @Mock
+    private Host host1;
+    @Mock
+    private Host host2;
+    @Mock
+    private Host host3;
+    @Mock
+    private HostParser hostParser;
+
+    private long nanos = 0;
+    private final LongSupplier clock = new LongSupplier() {
+        @Override
+        public long getAsLong() {
+            return nanos;
+        }
+    };
+    private final StatusStaleness staleness = new StatusStaleness("test", CrmStatusFailover.STALE_AFTER, clock);
+    /** Hosts, where the crm status runs. */
+    private final Set<Host> running = new HashSet<Host>();
+    private final List<TestStream> started = new ArrayList<TestStream>();
+    private Host dcHost = null;
+    private Host[] hosts;
+    private CrmStatusFailover failover;
+
+    @Before
+    public void setUp() {
+        hosts = new Host[]{host1, host2, host3};
+        when(hostParser.isCorosyncRunning()).thenReturn(true);
+        for (final Host host : hosts) {
+            when(host.isConnected()).thenReturn(true);
+            when(host.getHostParser()).thenReturn(hostParser);
+            when(host.isCrmStatusRunning()).thenAnswer(new Answer<Boolean>() {
+                @Override
+                public Boolean answer(final InvocationOnMock invocation) {
+                    return running.contains(host);
+                }
+            });
+        }
+        when(host1.getName()).thenReturn("host1");
+        when(host2.getName()).thenReturn("host2");
+        when(host3.getName()).thenReturn("host3");
+        failover = new CrmStatusFailover("cluster", new CrmStatusFailover.StreamStarter() {
+            @Override
+            public Host getPreferredHost() {
+                return dcHost;
+            }
+
+            @Override
+            public Host[] getHosts() {
+                return hosts;
+            }
+
+            @Override
+            public CrmStatusFailover.Stream start(final Host host) {
+                final TestStream stream = new TestStream(host);
+                running.add(host);
+                started.add(stream);
+                return stream;
+            }
+        }, staleness, clock);
+    }
+
+    @Test
+    public void activeStreamShouldRunOnTheDcAndStandbyOnAnotherHost() {
+        dcHost = host2;
+
+        failover.startStreams();
+
+        assertThat(failover.getActive().getHost()).isSameAs(host2);
+        assertThat(((TestStream) failover.getActive()).active).isTrue();
+        assertThat(failover.getStandby().getHost()).isSameAs(host1);
+        assertThat(((TestStream) failover.getStandby()).active).isFalse();
+        assertThat(failover.getCheckInterval()).isEqualTo(CrmStatusFailover.CHECK_INTERVAL);
+    }
+
+    @Test
+    public void withoutDcTheActiveStreamShouldRunOnAHostWithCluster() {
+        when(host1.isConnected()).thenReturn(false);
+
+        failover.startStreams();
+
+        assertThat(failover.getActive().getHost()).isSameAs(host2);
+        assertThat(failover.getStandby().getHost()).isSameAs(host3);
+    }
+
+    @Test
+    public void standbyShouldTakeOverAtOnceWhenTheActiveStreamEnds() throws InterruptedException {
+        dcHost = host2;
+        failover.startStreams();
+        final CrmStatusFailover.Stream standby = failover.getStandby();
+
+        end(host2);
+        final Host endedHost = failover.waitForEndedHost(NO_WAIT);
+        failover.removeEndedStream(endedHost);
+
+        assertThat(endedHost).isSameAs(host2);
+        verify(host2).waitForCrmStatusFinish();
+        assertThat(failover.getActive()).isNull();
+        assertThat(staleness.isStale()).isTrue();
+
+        failover.startStreams();
+
+        assertThat(failover.getActive()).isSameAs(standby);
+        assertThat(((TestStream) standby).active).isTrue();
+        assertThat(failover.getStandby().getHost()).isSameAs(host3);
+        assertThat(started).hasSize(3);
+    }
+
+    @Test
+    public void streamShouldBeStartedAgainOnTheSameHostOnlyAfterTheRestartDelay() throws InterruptedException {
+        hosts = new Host[]{host1, host2};
+        failover.startStreams();
+        end(host1);
+        failover.removeEndedStream(failover.waitForEndedHost(NO_WAIT));
+
+        failover.startStreams();
+
+        assertThat(failover.getActive().getHost()).isSameAs(host2);
+        assertThat(failover.getStandby()).isNull();
+        assertThat(failover.getCheckInterval()).isEqualTo(CrmStatusFailover.RETRY_INTERVAL);
+
+        advance(CrmStatusFailover.RESTART_DELAY);
+        failover.startStreams();
+
+        assertThat(failover.getStandby().getHost()).isSameAs(host1);
+    }
+
+    @Test
+    public void endedStandbyShouldBeReplacedWithoutStaleness() throws InterruptedException {
+        failover.startStreams();
+        final CrmStatusFailover.Stream active = failover.getActive();
+
+        end(host2);
+        failover.removeEndedStream(failover.waitForEndedHost(NO_WAIT));
+
+        assertThat(failover.getActive()).isSameAs(active);
+        assertThat(failover.getStandby()).isNull();
+        assertThat(staleness.isStale()).isFalse();
+
+        failover.startStreams();
+
+        assertThat(failover.getStandby().getHost()).isSameAs(host3);
+    }
+
+    @Test
+    public void unreportedEndOfStreamShouldBeFound() throws InterruptedException {
+        failover.startStreams();
+
+        running.remove(host1);
+
+        assertThat(failover.waitForEndedHost(NO_WAIT)).isSameAs(host1);
+    }
+
+    @Test
+    public void hangingActiveStreamShouldBeStopped() throws InterruptedException {
+        failover.startStreams();
+        final TestStream hanging = (TestStream) failover.getActive();
+
+        advance(CrmStatusFailover.STALE_AFTER + 1);
+
+        assertThat(failover.waitForEndedHost(NO_WAIT)).isNull();
+        assertThat(failover.getActive()).isNull();
+        assertThat(hanging.active).isFalse();
+        verify(host1).stopCrmStatus();
+        assertThat(staleness.isStale()).isTrue();
+
+        failover.startStreams();
+
+        assertThat(failover.getActive().getHost()).isSameAs(host2);
+    }
+
+    @Test
+    public void activeStreamWithKeepAlivesShouldNotHang() throws InterruptedException {
+        failover.startStreams();
+
+        for (int i = 0; i < 10; i++) {
+            advance(10000);
+            staleness.outputReceived();
+            assertThat(failover.waitForEndedHost(NO_WAIT)).isNull();
+        }
+
+        verify(host1, never()).stopCrmStatus();
+        assertThat(failover.getActive().getHost()).isSameAs(host1);
+    }
+
+    @Test
+    public void endOfAnAbandonedStreamShouldBeIgnored() throws InterruptedException {
+        failover.startStreams();
+        advance(CrmStatusFailover.STALE_AFTER + 1);
+        failover.waitForEndedHost(NO_WAIT);
+        failover.startStreams();
+        final CrmStatusFailover.Stream active = failover.getActive();
+
+        end(host1);
+        failover.removeEndedStream(failover.waitForEndedHost(NO_WAIT));
+
+        assertThat(failover.getActive()).isSameAs(active);
+    }
+
+    @Test
+    public void cancelledFailoverShouldStopTheStreams() {
+        failover.startStreams();
+
+        failover.cancel();
+        failover.run();
+
+        verify(host1).stopCrmStatus();
+        verify(host2).stopCrmStatus();
+        verify(host3, never()).stopCrmStatus();
+    }
+
+    private void end(final Host host) {
+        running.remove(host);
+        failover.streamEnded(host);
+    }
+
+    private void advance(final long millis) {
+        nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static final class TestStream implements CrmStatusFailover.Stream {
+        private final Host host;
+        private boolean active = false;
+
+        TestStream(final Host host) {
+            this.host = host;
+        }
+
+        @Override
+        public Host getHost() {
+            return host;
+        }
+
+        @Override
+        public void activate() {
+            active = true;
+        }
+
+        @Override
+        public void deactivate() {
+            active = false;
+        }
+    }
+}
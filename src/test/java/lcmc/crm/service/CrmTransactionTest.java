@@ -0,0 +1,101 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import lcmc.cluster.service.ssh.ExecCommandConfig;
+import lcmc.cluster.service.ssh.SshOutput;
+import lcmc.common.domain.Application;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CrmTransactionTest {
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+
+    @Before
+    public void setUp() {
+        when(host.getHostParser()).thenReturn(hostParser);
+        when(hostParser.getPacemakerVersion()).thenReturn("1.1.12");
+        when(host.getDistCommand(eq("CRM.startResource"), anyMap())).thenReturn("start");
+        when(host.getDistCommand(eq("CRM.stopResource"), anyMap())).thenReturn("stop");
+        when(host.captureCommand(any(ExecCommandConfig.class))).thenReturn(new SshOutput("", 0));
+    }
+
+    @Test
+    public void commandsShouldBeAppliedAsOnePatch() {
+        final CrmTransaction transaction = CRM.beginTransaction(host, Application.RunMode.LIVE);
+        try {
+            assertThat(CRM.startResource(host, "r1", Application.RunMode.LIVE)).isTrue();
+            assertThat(CRM.stopResource(host, "r2", Application.RunMode.LIVE)).isTrue();
+
+            verify(host, never()).captureCommand(any(ExecCommandConfig.class));
+            assertThat(transaction.size()).isEqualTo(2);
+            assertThat(transaction.getCommand()).contains("start && stop")
+                                                .contains("crm_diff")
+                                                .contains("cibadmin --patch");
+        } finally {
+            transaction.close();
+        }
+    }
+
+    @Test
+    public void testModeShouldRunAllCommandsAtOnce() {
+        final CrmTransaction transaction = CRM.beginTransaction(host, Application.RunMode.TEST);
+        try {
+            CRM.startResource(host, "r1", Application.RunMode.TEST);
+            CRM.stopResource(host, "r2", Application.RunMode.TEST);
+
+            assertThat(transaction.commit()).isTrue();
+        } finally {
+            transaction.close();
+        }
+
+        verify(host, times(1)).captureCommand(any(ExecCommandConfig.class));
+    }
+
+    @Test
+    public void commandsAfterCloseShouldRunImmediately() {
+        final CrmTransaction transaction = CRM.beginTransaction(host, Application.RunMode.TEST);
+        transaction.close();
+
+        CRM.startResource(host, "r1", Application.RunMode.TEST);
+
+        assertThat(transaction.size()).isEqualTo(0);
+        verify(host, times(1)).captureCommand(any(ExecCommandConfig.class));
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2026, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lcmc.cluster.service.ssh.ExecCommandConfig;
+import lcmc.cluster.service.ssh.SshOutput;
+import lcmc.common.domain.Application;
+import lcmc.common.domain.util.ExecutionService;
+import lcmc.common.ui.CallbackAction;
+import lcmc.crm.domain.PtestData;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.parser.HostParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PtestServiceTest {
+    private static final long CIB_SERIAL = 1;
+
+    @Mock
+    private Host host;
+    @Mock
+    private HostParser hostParser;
+    @Mock
+    private ExecutionService executionService;
+    @InjectMocks
+    private PtestService ptestService;
+
+    private final List<Runnable> pendingTasks = new ArrayList<Runnable>();
+    /** The recorded changes, that were simulated on the host, in this order. */
+    private final List<String> simulatedChanges = new ArrayList<String>();
+    private int ptestRuns = 0;
+    private int failingPtests = 0;
+
+    @Before
+    public void setUp() {
+        ptestService.init(new ReentrantLock());
+        when(host.getName()).thenReturn("host1");
+        when(host.getHostParser()).thenReturn(hostParser);
+        when(hostParser.getPacemakerVersion()).thenReturn("1.1.12");
+        when(host.getDistCommand(eq("CRM.stopResource"), anyMap())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                final Map<?, ?> replaceHash = (Map<?, ?>) invocation.getArguments()[1];
+                return "stop " + replaceHash.get("@ID@");
+            }
+        });
+        when(host.captureCommand(any(ExecCommandConfig.class))).thenAnswer(new Answer<SshOutput>() {
+            @Override
+            public SshOutput answer(final InvocationOnMock invocation) {
+                final String command = (String) ReflectionTestUtils.getField(invocation.getArguments()[0], "command");
+                if (command.contains(CRM.PTEST_END_DELIM)) {
+                    ptestRuns++;
+                    if (failingPtests > 0) {
+                        failingPtests--;
+                        throw new RuntimeException("connection lost");
+                    }
+                    return new SshOutput("LogActions: Stop r1 (host1)\n" + CRM.PTEST_END_DELIM + "\n<cib/>", 0);
+                }
+                final String testFile = CRM.LCMC_TEST_FILE + ';';
+                simulatedChanges.add(command.substring(command.lastIndexOf(testFile) + testFile.length()));
+                return new SshOutput("", 0);
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) {
+                pendingTasks.add((Runnable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(executionService).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void sameChangeShouldBeSimulatedOnce() throws Exception {
+        final Future<PtestData> first = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        runPendingTasks();
+
+        final Future<PtestData> second = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        runPendingTasks();
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.get()).isNotNull();
+        assertThat(ptestRuns).isEqualTo(1);
+        assertThat(simulatedChanges).containsExactly("stop r1");
+    }
+
+    @Test
+    public void cacheShouldBeClearedWhenTheCibChanges() {
+        final Future<PtestData> first = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        runPendingTasks();
+
+        final Future<PtestData> second = ptestService.simulate(host, CIB_SERIAL + 1, stop("r1"));
+        runPendingTasks();
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.isDone()).isTrue();
+        assertThat(ptestRuns).isEqualTo(2);
+    }
+
+    @Test
+    public void leastRecentlyUsedPreviewShouldBeEvicted() {
+        final Future<PtestData> eldest = ptestService.simulate(host, CIB_SERIAL, stop("r0"));
+        runPendingTasks();
+        final Future<PtestData> used = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        runPendingTasks();
+        for (int i = 2; i <= 33; i++) {
+            ptestService.simulate(host, CIB_SERIAL, stop("r" + i));
+            runPendingTasks();
+            if (i == 16) {
+                assertThat(ptestService.simulate(host, CIB_SERIAL, stop("r1"))).isSameAs(used);
+            }
+        }
+
+        assertThat(ptestService.simulate(host, CIB_SERIAL, stop("r1"))).isSameAs(used);
+        assertThat(ptestService.simulate(host, CIB_SERIAL, stop("r0"))).isNotSameAs(eldest);
+    }
+
+    @Test
+    public void newRequestShouldCancelTheRequestThatDidNotStart() {
+        final Future<PtestData> first = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+
+        final Future<PtestData> second = ptestService.simulate(host, CIB_SERIAL, stop("r2"));
+        runPendingTasks();
+
+        assertThat(first.isCancelled()).isTrue();
+        assertThat(second.isDone()).isTrue();
+        assertThat(simulatedChanges).containsExactly("stop r2");
+    }
+
+    @Test
+    public void cancelledPreviewShouldNotBeCached() throws Exception {
+        final Future<PtestData> cancelled = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        ptestService.cancel(cancelled);
+        runPendingTasks();
+
+        assertThat(cancelled.isCancelled()).isTrue();
+        assertThat(ptestRuns).isEqualTo(0);
+
+        final Future<PtestData> again = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        runPendingTasks();
+
+        assertThat(again).isNotSameAs(cancelled);
+        assertThat(again.get()).isNotNull();
+        assertThat(ptestRuns).isEqualTo(1);
+    }
+
+    @Test
+    public void cancelShouldNotDropTheFinishedPreview() {
+        final Future<PtestData> finished = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        runPendingTasks();
+
+        ptestService.cancel(finished);
+
+        assertThat(finished.isCancelled()).isFalse();
+        assertThat(ptestService.simulate(host, CIB_SERIAL, stop("r1"))).isSameAs(finished);
+    }
+
+    @Test
+    public void failedPreviewShouldNotBeCached() throws Exception {
+        failingPtests = 1;
+        final Future<PtestData> failed = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        runPendingTasks();
+
+        try {
+            failed.get();
+            fail("the failed ptest should throw");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).hasMessage("connection lost");
+        }
+
+        final Future<PtestData> again = ptestService.simulate(host, CIB_SERIAL, stop("r1"));
+        runPendingTasks();
+
+        assertThat(again).isNotSameAs(failed);
+        assertThat(again.get()).isNotNull();
+        assertThat(ptestRuns).isEqualTo(2);
+    }
+
+    @Test
+    public void requestedPreviewShouldGoBeforeThePrecomputedOnes() {
+        ptestService.precompute(host, CIB_SERIAL, stop("r1"));
+        ptestService.precompute(host, CIB_SERIAL, stop("r2"));
+        final Future<PtestData> requested = ptestService.simulate(host, CIB_SERIAL, stop("r3"));
+        runPendingTasks();
+
+        assertThat(requested.isDone()).isTrue();
+        assertThat(simulatedChanges).containsExactly("stop r3", "stop r1", "stop r2");
+        verify(executionService, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void requestedPrecomputedPreviewShouldBeMovedToTheFront() {
+        final Future<PtestData> precomputed = ptestService.simulate(host, CIB_SERIAL, stop("r0"));
+        runPendingTasks();
+        ptestService.precompute(host, CIB_SERIAL, stop("r1"));
+        ptestService.precompute(host, CIB_SERIAL, stop("r2"));
+
+        final Future<PtestData> requested = ptestService.simulate(host, CIB_SERIAL, stop("r2"));
+        runPendingTasks();
+
+        assertThat(precomputed.isDone()).isTrue();
+        assertThat(requested.isDone()).isTrue();
+        assertThat(simulatedChanges).containsExactly("stop r0", "stop r2", "stop r1");
+    }
+
+    @Test
+    public void cibChangeShouldCancelThePrecomputedPreviews() {
+        ptestService.precompute(host, CIB_SERIAL, stop("r1"));
+        ptestService.precompute(host, CIB_SERIAL, stop("r2"));
+
+        ptestService.precompute(host, CIB_SERIAL + 1, stop("r3"));
+        runPendingTasks();
+
+        assertThat(simulatedChanges).containsExactly("stop r3");
+    }
+
+    @Test
+    public void recordedCommandsShouldBeJoined() {
+        final String commands = CRM.recordTestCommands(host, new CallbackAction() {
+            @Override
+            public void run(final Host host) {
+                CRM.stopResource(host, "r1", Application.RunMode.TEST);
+                CRM.stopResource(host, "r2", Application.RunMode.TEST);
+            }
+        });
+
+        assertThat(commands).isEqualTo("stop r1; stop r2");
+        assertThat(simulatedChanges).isEmpty();
+    }
+
+    @Test
+    public void recordingShouldStopWhenTheActionThrows() {
+        try {
+            CRM.recordTestCommands(host, new CallbackAction() {
+                @Override
+                public void run(final Host host) {
+                    CRM.stopResource(host, "r1", Application.RunMode.TEST);
+                    throw new IllegalStateException("action failed");
+                }
+            });
+            fail("the exception of the action should be thrown");
+        } catch (final IllegalStateException e) {
+            assertThat(e).hasMessage("action failed");
+        }
+
+        CRM.stopResource(host, "r2", Application.RunMode.TEST);
+
+        assertThat(simulatedChanges).containsExactly("stop r2");
+    }
+
+    private CallbackAction stop(final String resId) {
+        return new CallbackAction() {
+            @Override
+            public void run(final Host host) {
+                CRM.stopResource(host, resId, Application.RunMode.TEST);
+            }
+        };
+    }
+
+    private void runPendingTasks() {
+        while (!pendingTasks.isEmpty()) {
+            pendingTasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.drbd.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class DrbdEventTest {
+    @Test
+    public void peerDeviceEventShouldBeParsed() {
+        final DrbdEvent event = DrbdEvent.parse(
+                "2016-03-14T12:34:56.789012+01:00 change peer-device name:r0 peer-node-id:1 conn-name:b "
+                + "volume:0 replication:SyncSource peer-disk:Inconsistent done:12.50\n");
+
+        assertThat(event.getAction()).isEqualTo(DrbdEvent.Action.CHANGE);
+        assertThat(event.getType()).isEqualTo(DrbdEvent.Type.PEER_DEVICE);
+        assertThat(event.isStateChange()).isTrue();
+        assertThat(event.getResourceName()).isEqualTo("r0");
+        assertThat(event.getVolume()).isEqualTo("0");
+        assertThat(event.getValue("replication")).isEqualTo("SyncSource");
+        assertThat(event.getValue("done")).isEqualTo("12.50");
+        assertThat(event.getValue("out-of-sync")).isNull();
+    }
+
+    @Test
+    public void eventWithoutTimestampShouldBeParsed() {
+        final DrbdEvent event = DrbdEvent.parse("exists connection name:r0 peer-node-id:1 connection:Connected");
+
+        assertThat(event.getType()).isEqualTo(DrbdEvent.Type.CONNECTION);
+        assertThat(event.getVolume()).isNull();
+        assertThat(event.getValue("connection")).isEqualTo("Connected");
+    }
+
+    @Test
+    public void splitBrainHelperShouldNotBeStateChange() {
+        final DrbdEvent event = DrbdEvent.parse("call helper name:r0 volume:0 helper:split-brain");
+
+        assertThat(event.getType()).isEqualTo(DrbdEvent.Type.HELPER);
+        assertThat(event.isStateChange()).isFalse();
+        assertThat(event.getValue("helper")).isEqualTo("split-brain");
+    }
+
+    @Test
+    public void legacyEventsShouldNotBeParsed() {
+        assertThat(DrbdEvent.parse("19 ST 0,r0[0] { cs:Connected ro:Primary/Secondary ds:UpToDate/UpToDate r--- }"))
+            .isNull();
+        assertThat(DrbdEvent.parse("19 SP 0 16.9")).isNull();
+        assertThat(DrbdEvent.parse("2016-03-14T12:34:56.789012+01:00 exists -")).isNull();
+        assertThat(DrbdEvent.parse("")).isNull();
+    }
+
+    @Test
+    public void eventWithLeadingWhitespaceShouldBeParsed() {
+        final DrbdEvent event = DrbdEvent.parse("  \t2016-03-14T12:34:56.789012+01:00  destroy  device name:r0 volume:1");
+
+        assertThat(event.getAction()).isEqualTo(DrbdEvent.Action.DESTROY);
+        assertThat(event.getType()).isEqualTo(DrbdEvent.Type.DEVICE);
+        assertThat(event.getVolume()).isEqualTo("1");
+    }
+
+    @Test
+    public void incompleteEventsShouldNotBeParsed() {
+        assertThat(DrbdEvent.parse("exists")).isNull();
+        assertThat(DrbdEvent.parse("change  ")).isNull();
+        assertThat(DrbdEvent.parse("2016-03-14T12:34:56.789012+01:00")).isNull();
+        assertThat(DrbdEvent.parse("changed resource name:r0")).isNull();
+        assertThat(DrbdEvent.parse("   ")).isNull();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.host.domain.parser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class CompressedFramesTest {
+    private final CompressedFrames compressedFrames = new CompressedFrames();
+
+    /** Makes the frame, as the gui helper does, with the line ending of the pty. */
+    private static String frame(final String raw) throws IOException {
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        final String encoded = Base64.getEncoder().encodeToString(gzipped.toByteArray());
+        return CompressedFrames.FRAME_HEADER + raw.length() + ' ' + encoded.length() + "\r\n" + encoded + "\r\n";
+    }
+
+    @Test
+    public void frameShouldBeExpandedWithPtyLineEndings() throws IOException {
+        final StringBuilder cib = new StringBuilder("<pcmk>\n");
+        for (int i = 0; i < 100; i++) {
+            cib.append("<primitive id=\"res").append(i).append("\"/>\n");
+        }
+        cib.append("</pcmk>\n");
+
+        final String expanded = compressedFrames.expand("cibadmin\r\nok\r\n" + frame(cib.toString()) + ">>>cibadmin\r\n");
+
+        assertThat(expanded).isEqualTo("cibadmin\r\nok\r\n" + cib.toString().replace("\n", "\r\n") + ">>>cibadmin\r\n");
+        assertThat(compressedFrames.getCompressionRatio()).isGreaterThan(5);
+    }
+
+    @Test
+    public void textWithoutFramesShouldStayTheSame() {
+        final String text = "<vms>\r\n</vms>\r\n";
+
+        assertThat(compressedFrames.expand(text)).isSameAs(text);
+        assertThat(compressedFrames.getCompressionRatio()).isEqualTo(1);
+    }
+
+    @Test
+    public void incompleteFrameShouldStayTheSame() throws IOException {
+        final String frame = frame("<vms>\n</vms>\n");
+        final String incomplete = "before\r\n" + frame.substring(0, frame.length() - 6);
+
+        assertThat(compressedFrames.expand(incomplete)).isEqualTo(incomplete);
+    }
+
+    @Test
+    public void frameShouldBeExpandedWhileItComes() throws IOException {
+        final String raw = "<resource-agent name=\"IPaddr2\">\n<longdesc>\u00e9t\u00e9</longdesc>\n</resource-agent>\n";
+        final String output = "ra-version: 4.0\r\n" + frame(raw) + frame(raw) + "done\r\n";
+        final CompressedFrames.StreamExpander expander = compressedFrames.newStreamExpander();
+
+        final StringBuilder expanded = new StringBuilder();
+        for (int i = 0; i < output.length(); i++) {
+            expanded.append(expander.feed(output.subSequence(i, i + 1)));
+        }
+        expanded.append(expander.finish());
+
+        assertThat(expanded.toString()).isEqualTo(compressedFrames.expand(output));
+        assertThat(expanded.toString()).startsWith("ra-version: 4.0\r\n<resource-agent name=\"IPaddr2\">\r\n");
+    }
+
+    @Test
+    public void framesSplitAcrossChunksShouldBeExpanded() throws IOException {
+        final String output = "ok\r\n" + frame("<vm name=\"vm1\"/>\n") + frame("<vm name=\"vm2\"/>\n") + ">>>vms\r\n";
+        final String expected = "ok\r\n<vm name=\"vm1\"/>\r\n<vm name=\"vm2\"/>\r\n>>>vms\r\n";
+
+        for (int split = 1; split < output.length(); split++) {
+            final CompressedFrames.StreamExpander expander = compressedFrames.newStreamExpander();
+
+            final String expanded = expander.feed(output.substring(0, split))
+                                    + expander.feed(output.substring(split))
+                                    + expander.finish();
+
+            assertThat(expanded).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void beginningOfFrameShouldBeExpandedBeforeItsEnd() throws IOException {
+        final StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            raw.append("<primitive id=\"res").append(i).append("\"/>\n");
+        }
+        final String frame = frame(raw.toString());
+        final CompressedFrames.StreamExpander expander = compressedFrames.newStreamExpander();
+
+        final String firstHalf = expander.feed(frame.substring(0, frame.length() / 2));
+
+        assertThat(firstHalf).startsWith("<primitive id=\"res0\"/>\r\n");
+        assertThat(firstHalf + expander.feed(frame.substring(frame.length() / 2)))
+                .isEqualTo(raw.toString().replace("\n", "\r\n"));
+    }
+
+    @Test
+    public void resetsShouldBeDroppedFromTheFrame() throws IOException {
+        final String frame = frame("<cib_delta/>\n");
+        final int middle = frame.length() - 10;
+        final String output = "ok\r\n" + frame.substring(0, middle) + "---reset---\r\n" + frame.substring(middle);
+
+        assertThat(compressedFrames.newStreamExpander().feed(output)).isEqualTo("ok\r\n<cib_delta/>\r\n");
+    }
+
+    @Test
+    public void textShouldBePassedOnAsItComes() {
+        final CompressedFrames.StreamExpander expander = compressedFrames.newStreamExpander();
+
+        assertThat(expander.feed("---start---\r\nok\r\n---done---")).isEqualTo("---start---\r\nok\r\n---done---");
+        assertThat(expander.feed("\r\n--gzip")).isEqualTo("\r\n");
+        assertThat(expander.finish()).isEqualTo("--gzip");
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.host.domain.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lcmc.testutils.Benchmark;
+
+/**
+ * Compares the frame decoder with the old way of rescanning the growing
+ * buffer with indexOf for every type, on the hw stream of the gui helper,
+ * as it comes from the ssh channel in small chunks.
+ */
+public final class FrameDecoderBenchmark {
+    private static final int FRAMES = 300;
+    private static final int LINES_PER_FRAME = 200;
+    private static final int CHUNK = 1024;
+    private static final int ROUNDS = 20;
+    private static final String[] TYPES = {"hw", "vm", "drbd"};
+
+    private FrameDecoderBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final List<String> chunks = createChunks();
+        long length = 0;
+        for (final String chunk : chunks) {
+            length += chunk.length();
+        }
+        System.out.printf("output: %d chars in %d chunks%n", length, chunks.size());
+
+        new Benchmark("indexOf buffer", length, ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() {
+                final StringBuffer buffer = new StringBuffer(300);
+                for (final String chunk : chunks) {
+                    buffer.append(chunk);
+                    String out;
+                    do {
+                        out = null;
+                        for (final String type : TYPES) {
+                            final String frame = getOutput(type, buffer);
+                            if (frame != null) {
+                                out = frame;
+                            }
+                        }
+                    } while (out != null);
+                }
+            }
+        });
+
+        new Benchmark("frame decoder", length, ROUNDS).run(new Benchmark.Task() {
+            @Override
+            public void run() {
+                final FrameDecoder.FrameHandler handler = new FrameDecoder.FrameHandler() {
+                    @Override
+                    public void frame(final String payload) {
+                    }
+                };
+                final FrameDecoder decoder = FrameDecoder.infoFrames(null);
+                for (final String type : TYPES) {
+                    decoder.handle(type, handler);
+                }
+                for (final String chunk : chunks) {
+                    decoder.feed(chunk);
+                }
+            }
+        });
+    }
+
+    private static List<String> createChunks() {
+        final StringBuilder output = new StringBuilder();
+        for (int f = 0; f < FRAMES; f++) {
+            final String type = TYPES[f % TYPES.length];
+            output.append("--").append(type).append("-info-start--").append(1400000000000000000L + f).append("\r\n");
+            for (int l = 0; l < LINES_PER_FRAME; l++) {
+                output.append("disk-info /dev/sda").append(l).append(" size:1024000 mp:/mnt/").append(l)
+                      .append(" fs:ext4\r\n");
+            }
+            output.append("--").append(type).append("-info-end--\r\n");
+        }
+        final List<String> chunks = new ArrayList<String>();
+        for (int i = 0; i < output.length(); i += CHUNK) {
+            chunks.add(output.substring(i, Math.min(i + CHUNK, output.length())));
+        }
+        return chunks;
+    }
+
+    /** The old HostParser.getOutput without the timestamp check. */
+    private static String getOutput(final String type, final StringBuffer buffer) {
+        final String infoStart = "--" + type + "-info-start--";
+        final String infoEnd = "--" + type + "-info-end--";
+        final int s = buffer.indexOf(infoStart);
+        final int s2 = buffer.indexOf("\r\n", s);
+        final int e = buffer.indexOf(infoEnd, s);
+        String out = null;
+        if (s > -1 && s < s2 && s2 <= e) {
+            Double.parseDouble(buffer.substring(s + infoStart.length(), s2));
+            out = buffer.substring(s2 + 2, e);
+            buffer.delete(0, e + infoEnd.length() + 2);
+        }
+        return out;
+    }
+}
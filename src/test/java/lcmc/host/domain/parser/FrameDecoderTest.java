@@ -0,0 +1,118 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.host.domain.parser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FrameDecoderTest {
+    private final List<String> frames = new ArrayList<String>();
+    private final List<Long> timestamps = new ArrayList<Long>();
+
+    private final FrameDecoder.FrameHandler collector = new FrameDecoder.FrameHandler() {
+        @Override
+        public void frame(final String payload) {
+            frames.add(payload);
+        }
+    };
+
+    private final FrameDecoder.FrameFilter newerOnly = new FrameDecoder.FrameFilter() {
+        @Override
+        public boolean accept(final String type, final long timestamp) {
+            if (timestamp == FrameDecoder.NO_TIMESTAMP
+                || !timestamps.isEmpty() && timestamp < timestamps.get(timestamps.size() - 1)) {
+                return false;
+            }
+            timestamps.add(timestamp);
+            return true;
+        }
+    };
+
+    @Test
+    public void infoFramesShouldBeDispatchedByType() {
+        final List<String> vms = new ArrayList<String>();
+        final FrameDecoder decoder = FrameDecoder.infoFrames(newerOnly)
+            .handle("hw", collector)
+            .handle("vm", new FrameDecoder.FrameHandler() {
+                @Override
+                public void frame(final String payload) {
+                    vms.add(payload);
+                }
+            });
+
+        decoder.feed("--hw-info-start--1400000000123456789\r\nnet-info\r\n--hw-info-end--\r\n"
+                     + "--vm-info-start--1400000000123456790\r\n<vms/>\r\n--vm-info-end--\r\n");
+
+        assertThat(frames).containsExactly("net-info\r\n");
+        assertThat(vms).containsExactly("<vms/>\r\n");
+        assertThat(timestamps).containsExactly(1400000000123456789L, 1400000000123456790L);
+    }
+
+    @Test
+    public void frameSplitInChunksShouldBeDecodedOnce() {
+        final FrameDecoder decoder = FrameDecoder.infoFrames(newerOnly).handle("drbd", collector);
+        final String output = "garbage\r\n--drbd-info-start--1400000000000000001\r\n<config>\r\n</config>\r\n"
+                              + "--drbd-info-end--\r\n";
+
+        for (int i = 0; i < output.length(); i++) {
+            decoder.feed(output.substring(i, i + 1));
+        }
+
+        assertThat(frames).containsExactly("<config>\r\n</config>\r\n");
+        assertThat(decoder.getFrames()).isEqualTo(1);
+    }
+
+    @Test
+    public void olderFrameShouldBeDropped() {
+        final FrameDecoder decoder = FrameDecoder.infoFrames(newerOnly).handle("event", collector);
+
+        decoder.feed("--event-info-start--200\r\nnew\r\n--event-info-end--\r\n"
+                     + "--event-info-start--100\r\nold\r\n--event-info-end--\r\n"
+                     + "--event-info-start--bad\r\nbad\r\n--event-info-end--\r\n");
+
+        assertThat(frames).containsExactly("new\r\n");
+    }
+
+    @Test
+    public void lastFrameShouldNotWaitForTheNewLine() {
+        final FrameDecoder decoder = FrameDecoder.statusFrames().handle(FrameDecoder.STATUS, collector);
+
+        decoder.feed("---start---\r\nstatus\r\n---done---");
+        assertThat(frames).containsExactly("status\r\n");
+
+        decoder.feed("\r\n---start---\r\nnext\r\n---done---\r\n");
+        assertThat(frames).containsExactly("status\r\n", "next\r\n");
+    }
+
+    @Test
+    public void resetStringsShouldBeDropped() {
+        final FrameDecoder decoder = FrameDecoder.statusFrames().handle(FrameDecoder.STATUS, collector);
+
+        decoder.feed("---reset---\r\n---start---\r\ncd");
+        decoder.feed("a---reset---\r\nb---reset---\r\nc\r\n---done---\r\n");
+
+        assertThat(frames).containsExactly("cdabc\r\n");
+    }
+}
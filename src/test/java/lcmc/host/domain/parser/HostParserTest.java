@@ -0,0 +1,312 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2026, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.host.domain.parser;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import javax.inject.Provider;
+
+import com.google.common.collect.Lists;
+
+import lcmc.HwEventBus;
+import lcmc.common.domain.Application;
+import lcmc.common.ui.utils.SwingUtils;
+import lcmc.drbd.domain.BlockDevice;
+import lcmc.drbd.domain.DrbdHost;
+import lcmc.drbd.domain.DrbdXml;
+import lcmc.drbd.domain.NetInterface;
+import lcmc.event.HwBlockDevicesChangedEvent;
+import lcmc.event.HwBlockDevicesDiskSpaceEvent;
+import lcmc.event.HwBridgesChangedEvent;
+import lcmc.event.HwFileSystemsChangedEvent;
+import lcmc.event.HwMountPointsChangedEvent;
+import lcmc.event.HwNetInterfacesChangedEvent;
+import lcmc.host.domain.Host;
+import lcmc.vm.domain.VmsXml;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HostParserTest {
+    private static final String NET_INFO = "net-info\n"
+                                           + "eth0 ipv4 192.168.1.10 24\n";
+    private static final String BRIDGE_INFO = "bridge-info\n"
+                                              + "br0\n";
+    private static final String DISK_INFO = "disk-info\n"
+                                            + "/dev/sdb uuid:1 size:100 mp:/mnt fs:ext4\n"
+                                            + "/dev/sdc uuid:2 size:200 vg:vg0 lv:lv0\n";
+    private static final String DISK_SPACE = "disk-space\n"
+                                             + "/dev/sdb 10\n";
+    private static final String VG_INFO = "vg-info\n"
+                                          + "vg0 1000\n";
+    private static final String FILESYSTEMS_INFO = "filesystems-info\n"
+                                                   + "ext4\n";
+    private static final String CRYPTO_INFO = "crypto-info\n"
+                                              + "sha1\n";
+    private static final String MOUNT_POINTS_INFO = "mount-points-info\n"
+                                                    + "/mnt\n";
+    private static final String FULL_HW_INFO = NET_INFO
+                                               + BRIDGE_INFO
+                                               + DISK_INFO
+                                               + DISK_SPACE
+                                               + VG_INFO
+                                               + FILESYSTEMS_INFO
+                                               + CRYPTO_INFO
+                                               + MOUNT_POINTS_INFO;
+    @Mock
+    private Host host;
+    @Mock
+    private DrbdHost drbdHost;
+    @Mock
+    private HwEventBus hwEventBus;
+    @Mock
+    private Provider<VmsXml> vmsXmlProvider;
+    @Mock
+    private Provider<DrbdXml> drbdXmlProvider;
+    @Mock
+    private SwingUtils swingUtils;
+    @Mock
+    private Application application;
+    @Mock
+    private DistributionDetector distributionDetector;
+
+    private HostParser hostParser;
+
+    @Before
+    public void setUp() {
+        when(host.getName()).thenReturn("host1");
+        hostParser = new HostParser(host,
+                                    drbdHost,
+                                    hwEventBus,
+                                    vmsXmlProvider,
+                                    drbdXmlProvider,
+                                    swingUtils,
+                                    application,
+                                    distributionDetector);
+    }
+
+    @Test
+    public void fullFrameShouldPostAllEvents() {
+        hostParser.parseHostInfo(FULL_HW_INFO);
+
+        assertThat(getPostedEvents(HwNetInterfacesChangedEvent.class)).hasSize(1);
+        assertThat(getPostedEvents(HwBridgesChangedEvent.class)).hasSize(1);
+        assertThat(getPostedEvents(HwFileSystemsChangedEvent.class)).hasSize(1);
+        assertThat(getPostedEvents(HwMountPointsChangedEvent.class)).hasSize(1);
+        assertThat(getPostedEvents(HwBlockDevicesChangedEvent.class)).hasSize(1);
+        assertThat(getPostedEvents(HwBlockDevicesDiskSpaceEvent.class)).hasSize(1);
+        assertThat(hostParser.getAvailableCryptoModules()).containsExactly("sha1");
+        assertThat(hostParser.getVolumeGroupNames()).containsExactly("vg0");
+    }
+
+    @Test
+    public void sameFrameAgainShouldPostNoEvents() {
+        //given
+        hostParser.parseHostInfo(FULL_HW_INFO);
+        reset(hwEventBus);
+
+        //when
+        hostParser.parseHostInfo(FULL_HW_INFO);
+
+        //then
+        verify(hwEventBus, never()).post(anyObject());
+    }
+
+    @Test
+    public void sectionsNotSentShouldBeKept() {
+        //given
+        hostParser.parseHostInfo(FULL_HW_INFO);
+        reset(hwEventBus);
+
+        //when
+        hostParser.parseHostInfo(BRIDGE_INFO.replace("br0", "br1"));
+
+        //then
+        final List<HwBridgesChangedEvent> bridgeEvents = getPostedEvents(HwBridgesChangedEvent.class);
+        assertThat(bridgeEvents).hasSize(1);
+        assertThat(bridgeEvents.get(0).getBridges().get(0).getValueForConfig()).isEqualTo("br1");
+        assertThat(getPostedEvents(HwNetInterfacesChangedEvent.class)).isEmpty();
+        assertThat(getPostedEvents(HwBlockDevicesChangedEvent.class)).isEmpty();
+        assertThat(getPostedEvents(HwBlockDevicesDiskSpaceEvent.class)).isEmpty();
+        assertThat(hostParser.getAvailableCryptoModules()).containsExactly("sha1");
+        assertThat(hostParser.getVolumeGroupNames()).containsExactly("vg0");
+    }
+
+    @Test
+    public void unchangedSectionsInPartialFrameShouldPostNoEvents() {
+        //given
+        hostParser.parseHostInfo(FULL_HW_INFO);
+        reset(hwEventBus);
+
+        //when
+        hostParser.parseHostInfo(NET_INFO + FILESYSTEMS_INFO.replace("ext4", "xfs") + MOUNT_POINTS_INFO);
+
+        //then
+        assertThat(getPostedEvents(HwFileSystemsChangedEvent.class)).hasSize(1);
+        assertThat(getPostedEvents(HwNetInterfacesChangedEvent.class)).isEmpty();
+        assertThat(getPostedEvents(HwMountPointsChangedEvent.class)).isEmpty();
+        assertThat(getPostedEvents(HwBridgesChangedEvent.class)).isEmpty();
+    }
+
+    @Test
+    public void changedSectionShouldBeParsedAgainAfterItWasSkipped() {
+        //given
+        hostParser.parseHostInfo(FULL_HW_INFO);
+        hostParser.parseHostInfo(CRYPTO_INFO);
+
+        //when
+        hostParser.parseHostInfo(CRYPTO_INFO + "md5\n");
+
+        //then
+        assertThat(hostParser.getAvailableCryptoModules()).containsExactly("md5", "sha1");
+    }
+
+    @Test
+    public void unchangedDiskLinesShouldReuseBlockDevices() {
+        //given
+        hostParser.parseHostInfo(FULL_HW_INFO);
+        final BlockDevice sdb = getBlockDevice(getLastPostedEvent(HwBlockDevicesChangedEvent.class), "/dev/sdb");
+        final BlockDevice sdc = getBlockDevice(getLastPostedEvent(HwBlockDevicesChangedEvent.class), "/dev/sdc");
+        reset(hwEventBus);
+
+        //when
+        hostParser.parseHostInfo(DISK_INFO.replace("size:200", "size:300"));
+
+        //then
+        final HwBlockDevicesChangedEvent event = getLastPostedEvent(HwBlockDevicesChangedEvent.class);
+        assertThat(getBlockDevice(event, "/dev/sdb")).isSameAs(sdb);
+        assertThat(getBlockDevice(event, "/dev/sdc")).isNotSameAs(sdc);
+        assertThat(getBlockDevice(event, "/dev/sdc").getBlockSize()).isEqualTo("300");
+    }
+
+    @Test
+    public void unchangedNetLinesShouldReuseNetInterfaces() {
+        //given
+        final String netInfo = NET_INFO + "eth1 ipv4 10.0.0.10 8\n";
+        hostParser.parseHostInfo(netInfo);
+        final List<NetInterface> oldInterfaces =
+                                  getLastPostedEvent(HwNetInterfacesChangedEvent.class).getNetInterfaces();
+        reset(hwEventBus);
+
+        //when
+        hostParser.parseHostInfo(netInfo.replace("10.0.0.10", "10.0.0.11"));
+
+        //then
+        final List<NetInterface> newInterfaces =
+                                  getLastPostedEvent(HwNetInterfacesChangedEvent.class).getNetInterfaces();
+        assertThat(newInterfaces).hasSize(2);
+        assertThat(newInterfaces.get(0)).isSameAs(oldInterfaces.get(0));
+        assertThat(newInterfaces.get(1)).isNotSameAs(oldInterfaces.get(1));
+        assertThat(newInterfaces.get(1).getIp()).isEqualTo("10.0.0.11");
+    }
+
+    @Test
+    public void diskSpaceEventShouldBePostedAfterBlockDevicesEvent() {
+        hostParser.parseHostInfo(FULL_HW_INFO);
+
+        final List<Object> events = getPostedEvents(Object.class);
+        final int blockDevicesIndex = indexOf(events, HwBlockDevicesChangedEvent.class);
+        final int diskSpaceIndex = indexOf(events, HwBlockDevicesDiskSpaceEvent.class);
+        assertThat(blockDevicesIndex).isGreaterThanOrEqualTo(0);
+        assertThat(diskSpaceIndex).isGreaterThan(blockDevicesIndex);
+    }
+
+    @Test
+    public void changedDiskInfoShouldPostCachedDiskSpaces() {
+        //given
+        hostParser.parseHostInfo(FULL_HW_INFO);
+        reset(hwEventBus);
+
+        //when
+        hostParser.parseHostInfo(DISK_INFO.replace("size:200", "size:300"));
+
+        //then
+        final List<Object> events = getPostedEvents(Object.class);
+        assertThat(indexOf(events, HwBlockDevicesDiskSpaceEvent.class))
+                .isGreaterThan(indexOf(events, HwBlockDevicesChangedEvent.class));
+        assertThat(getLastPostedEvent(HwBlockDevicesDiskSpaceEvent.class).getDiskSpaces())
+                .containsEntry("/dev/sdb", "10");
+    }
+
+    @Test
+    public void changedVgInfoShouldPostCachedBlockDevices() {
+        //given
+        hostParser.parseHostInfo(FULL_HW_INFO);
+        final HwBlockDevicesChangedEvent oldEvent = getLastPostedEvent(HwBlockDevicesChangedEvent.class);
+        reset(hwEventBus);
+
+        //when
+        hostParser.parseHostInfo(VG_INFO.replace("1000", "2000"));
+
+        //then
+        final HwBlockDevicesChangedEvent event = getLastPostedEvent(HwBlockDevicesChangedEvent.class);
+        assertThat(event.getBlockDevices()).isSameAs(oldEvent.getBlockDevices());
+        assertThat(getPostedEvents(HwBlockDevicesDiskSpaceEvent.class)).isEmpty();
+    }
+
+    private <T> List<T> getPostedEvents(final Class<T> eventClass) {
+        final ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(hwEventBus, atLeast(0)).post(captor.capture());
+        final List<T> events = Lists.newArrayList();
+        for (final Object event : captor.getAllValues()) {
+            if (eventClass.isInstance(event)) {
+                events.add(eventClass.cast(event));
+            }
+        }
+        return events;
+    }
+
+    private <T> T getLastPostedEvent(final Class<T> eventClass) {
+        final List<T> events = getPostedEvents(eventClass);
+        assertThat(events).isNotEmpty();
+        return events.get(events.size() - 1);
+    }
+
+    private int indexOf(final List<Object> events, final Class<?> eventClass) {
+        for (int i = 0; i < events.size(); i++) {
+            if (eventClass.isInstance(events.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private BlockDevice getBlockDevice(final HwBlockDevicesChangedEvent event, final String name) {
+        for (final BlockDevice blockDevice : event.getBlockDevices()) {
+            if (name.equals(blockDevice.getName())) {
+                return blockDevice;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.testutils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Simple benchmark for the main methods of the *Benchmark classes. It
+ * measures throughput and the allocated memory in the current thread.
+ * Run it e.g. with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=lcmc.cluster.service.ssh.SshOutputReaderBenchmark
+ */
+public final class Benchmark {
+    private static final double MB = 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 5;
+
+    private final String name;
+    private final long bytesPerRound;
+    private final int rounds;
+
+    public Benchmark(final String name, final long bytesPerRound, final int rounds) {
+        this.name = name;
+        this.bytesPerRound = bytesPerRound;
+        this.rounds = rounds;
+    }
+
+    /** Runs the task after the warm up and prints MB/s and allocated bytes per processed MB. */
+    public void run(final Task task) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            task.run();
+        }
+        final long nanos = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+        final double processedMb = bytesPerRound * (double) rounds / MB;
+        System.out.printf("%-40s %10.1f MB/s %14.0f bytes allocated/MB %10.3f ms/round%n",
+                          name,
+                          processedMb / (nanos / 1e9),
+                          allocated / processedMb,
+                          nanos / 1e6 / rounds);
+    }
+
+    private static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(
+                                                                        Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    public interface Task {
+        void run() throws Exception;
+    }
+}
@@ -21,9 +21,23 @@
 package lcmc.vm.domain;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import lcmc.common.domain.StringValue;
+import lcmc.host.domain.Host;
 import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
 
 public final class VmsXmlTest {
@@ -78,4 +92,76 @@ public final class VmsXmlTest {
         assertEquals(-1, VmsXml.convertToKilobytes(new StringValue("P")));
         assertEquals(-1, VmsXml.convertToKilobytes(new StringValue("-3")));
     }
+
+    @Test
+    public void domainsShouldNotBeMergedBeforeTheVmsAreParsed() {
+        assertFalse(new VmsXml().mergeDomains(Collections.singletonList("<vm name=\"vm1\"/>")));
+    }
+
+    @Test
+    public void mergedDomainShouldReplaceTheOldOne() {
+        final VmsXml vmsXml = parsedVmsXml();
+
+        assertTrue(vmsXml.mergeDomains(Collections.singletonList(
+                domainXml("vm1", "/srv/new/vm1.img", "52:54:00:00:00:03"))));
+
+        assertEquals(Sets.newHashSet("vm1", "vm2"), Sets.newHashSet(vmsXml.getDomainNames()));
+        assertTrue(vmsXml.getUsedMacAddresses().contains("52:54:00:00:00:03"));
+        assertFalse(vmsXml.getUsedMacAddresses().contains("52:54:00:00:00:01"));
+        assertTrue(vmsXml.getUsedMacAddresses().contains("52:54:00:00:00:02"));
+        final Collection<String> dirs = Lists.newArrayList(vmsXml.getSourceFileDirs());
+        assertTrue(dirs.contains("/srv/new/"));
+        assertFalse(dirs.contains("/srv/vm1/"));
+        assertTrue(dirs.contains("/var/lib/vms/"));
+        assertEquals("vm1", vmsXml.getNameFromConfig("/etc/libvirt/qemu/vm1.xml"));
+        assertEquals("/srv/new/vm1.img", vmsXml.getDisks("vm1").get("vda").getSourceFile());
+        assertNotNull(vmsXml.getDomainNode("vm1"));
+    }
+
+    @Test
+    public void removedDomainShouldBeForgotten() {
+        final VmsXml vmsXml = parsedVmsXml();
+
+        assertTrue(vmsXml.mergeDomains(Collections.singletonList("<vm name=\"vm2\" removed=\"True\"/>")));
+
+        assertEquals(Collections.singletonList("vm1"), Lists.newArrayList(vmsXml.getDomainNames()));
+        assertNull(vmsXml.getNameFromConfig("/etc/libvirt/qemu/vm2.xml"));
+        assertFalse(getNamesToConfigs(vmsXml).containsKey("vm2"));
+        assertFalse(vmsXml.getUsedMacAddresses().contains("52:54:00:00:00:02"));
+        assertTrue(vmsXml.getUsedMacAddresses().contains("52:54:00:00:00:01"));
+        final Collection<String> dirs = Lists.newArrayList(vmsXml.getSourceFileDirs());
+        assertFalse(dirs.contains("/srv/vm2/"));
+        assertTrue(dirs.contains("/srv/vm1/"));
+        assertTrue("shared with vm1", dirs.contains("/var/lib/vms/"));
+        assertNull(vmsXml.getDomainNode("vm2"));
+        assertNotNull(vmsXml.getDomainNode("vm1"));
+    }
+
+    private VmsXml parsedVmsXml() {
+        final VmsXml vmsXml = new VmsXml();
+        ReflectionTestUtils.setField(vmsXml, "vmParser", new VMParser());
+        ReflectionTestUtils.setField(vmsXml, "networkParser", new NetworkParser());
+        vmsXml.init(mock(Host.class));
+        assertTrue(vmsXml.parseXml("<vms md5=\"1\">"
+                                   + domainXml("vm1", "/srv/vm1/vm1.img", "52:54:00:00:00:01")
+                                   + domainXml("vm2", "/srv/vm2/vm2.img", "52:54:00:00:00:02")
+                                   + "</vms>"));
+        return vmsXml;
+    }
+
+    private String domainXml(final String name, final String sourceFile, final String macAddress) {
+        return "<vm name=\"" + name + "\"><info>State: running</info><config>"
+               + "<domain type=\"kvm\"><name>" + name + "</name><devices>"
+               + "<disk type=\"file\" device=\"disk\"><source file=\"" + sourceFile + "\"/>"
+               + "<target dev=\"vda\" bus=\"virtio\"/></disk>"
+               + "<disk type=\"file\" device=\"cdrom\"><source file=\"/var/lib/vms/" + name + ".iso\"/>"
+               + "<target dev=\"hdc\" bus=\"ide\"/></disk>"
+               + "<interface type=\"bridge\"><mac address=\"" + macAddress + "\"/><source bridge=\"br0\"/>"
+               + "</interface><input type=\"tablet\" bus=\"usb\"/></devices></domain></config></vm>";
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getNamesToConfigs(final VmsXml vmsXml) {
+        return (Map<String, String>) ReflectionTestUtils.getField(vmsXml, "namesToConfigs");
+    }
 }